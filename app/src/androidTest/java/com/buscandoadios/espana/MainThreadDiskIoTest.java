@@ -0,0 +1,98 @@
+package com.buscandoadios.espana;
+
+import android.app.Instrumentation;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.os.StrictMode;
+
+import androidx.lifecycle.Lifecycle;
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * MainThreadDiskIoTest - Ni el arranque, ni guardar cookies, ni los cambios de ciclo de vida
+ * leen o escriben en disco desde el hilo principal
+ *
+ * Cada violación de StrictMode (ver StrictModeTestRunner) hace fallar el test con su traza.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MainThreadDiskIoTest {
+
+    private final Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+    private final Context context = instrumentation.getTargetContext();
+
+    @Test
+    public void startupDoesNoDiskIoOnMainThread() throws InterruptedException {
+        instrumentation.waitForIdleSync();
+        assertTrue("El arranque no terminó", StrictModeTestRunner.awaitStartup(10_000));
+
+        assertNoViolations("BuscandoADiosApp.onCreate", StrictModeTestRunner.startupViolations());
+    }
+
+    @Test
+    public void cookieFlushesDoNoDiskIoOnMainThread() {
+        assertNoDiskIoOnMainThread("CookieFlushScheduler", () -> instrumentation.runOnMainSync(() -> {
+            CookieFlushScheduler scheduler = CookieFlushScheduler.get();
+            for (int i = 0; i < 10; i++) {
+                scheduler.requestFlush();
+            }
+            scheduler.flushNow();
+            // La señal del sistema que fuerza el guardado
+            MemoryTrimManager.get(context).onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+        }));
+    }
+
+    @Test
+    public void lifecycleTransitionsDoNoDiskIoOnMainThread() {
+        // onCreate (WebView incluido) queda fuera: aquí solo las transiciones
+        try (ActivityScenario<MainActivity> scenario = ActivityScenario.launch(MainActivity.class)) {
+            assertNoDiskIoOnMainThread("MainActivity", () -> {
+                scenario.moveToState(Lifecycle.State.STARTED);   // onPause
+                scenario.moveToState(Lifecycle.State.CREATED);   // onStop
+                scenario.moveToState(Lifecycle.State.RESUMED);   // onStart, onResume
+            });
+        }
+    }
+
+    // =============================================
+    // AYUDAS
+    // =============================================
+
+    /**
+     * Ejecuta action (desde el hilo del test) con la política de disco en el hilo principal
+     */
+    private void assertNoDiskIoOnMainThread(String what, Runnable action) {
+        List<String> violations = Collections.synchronizedList(new ArrayList<>());
+        StrictMode.ThreadPolicy[] previous = new StrictMode.ThreadPolicy[1];
+        instrumentation.runOnMainSync(() -> {
+            previous[0] = StrictMode.getThreadPolicy();
+            StrictMode.setThreadPolicy(StrictModeTestRunner.diskPolicy(violations));
+        });
+        try {
+            action.run();
+            // Los avisos llegan en un mensaje posterior del hilo principal
+            instrumentation.waitForIdleSync();
+        } finally {
+            instrumentation.runOnMainSync(() -> StrictMode.setThreadPolicy(previous[0]));
+        }
+        assertNoViolations(what, new ArrayList<>(violations));
+    }
+
+    private static void assertNoViolations(String what, List<String> violations) {
+        if (!violations.isEmpty()) {
+            fail(what + ": " + violations.size() + " accesos a disco en el hilo principal\n"
+                    + String.join("\n", violations));
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.buscandoadios.espana;
+
+import android.app.Application;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.StrictMode;
+import android.util.Log;
+
+import androidx.test.runner.AndroidJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * StrictModeTestRunner - Tests instrumentados con StrictMode vigilando el disco en el hilo
+ * principal desde antes de que arranque la app
+ *
+ * La política se pone antes de BuscandoADiosApp.onCreate, así que cubre el arranque real,
+ * también lo que la app deja para cuando el hilo principal queda libre. Lo que se detecta
+ * queda en startupViolations() (lo comprueba MainThreadDiskIoTest); después el hilo vuelve a
+ * su política y cada test pone la suya con diskPolicy().
+ */
+public class StrictModeTestRunner extends AndroidJUnitRunner {
+
+    private static final List<String> startupViolations = Collections.synchronizedList(new ArrayList<>());
+    private static final CountDownLatch startupDone = new CountDownLatch(1);
+
+    /**
+     * Lecturas y escrituras en disco: cada una se apunta en sink (API 28+). Antes de
+     * penaltyListener no hay forma de apuntarlas: el proceso muere y los tests fallan.
+     */
+    static StrictMode.ThreadPolicy diskPolicy(List<String> sink) {
+        StrictMode.ThreadPolicy.Builder builder = new StrictMode.ThreadPolicy.Builder()
+                .detectDiskReads()
+                .detectDiskWrites();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            builder.penaltyListener(Runnable::run, violation -> sink.add(Log.getStackTraceString(violation)));
+        } else {
+            builder.penaltyDeath();
+        }
+        return builder.build();
+    }
+
+    /**
+     * Espera a que termine el arranque (hace falta que el hilo principal quede libre)
+     */
+    static boolean awaitStartup(long timeoutMs) throws InterruptedException {
+        return startupDone.await(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    static List<String> startupViolations() {
+        return new ArrayList<>(startupViolations);
+    }
+
+    @Override
+    public void callApplicationOnCreate(Application app) {
+        StrictMode.ThreadPolicy previous = StrictMode.getThreadPolicy();
+        StrictMode.setThreadPolicy(diskPolicy(startupViolations));
+        super.callApplicationOnCreate(app);
+
+        // Los IdleHandler de la app van antes que este. StrictMode avisa en un mensaje al
+        // principio de la cola: el post de aquí llega después de todos esos avisos
+        Looper.myQueue().addIdleHandler(() -> {
+            new Handler(Looper.myLooper()).post(() -> {
+                StrictMode.setThreadPolicy(previous);
+                startupDone.countDown();
+            });
+            return false;
+        });
+    }
+}
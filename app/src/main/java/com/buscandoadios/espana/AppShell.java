@@ -0,0 +1,275 @@
+package com.buscandoadios.espana;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+import android.webkit.JavascriptInterface;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * AppShell - Esqueleto de la portada guardado de la sesión anterior
+ *
+ * Cuando la portada termina de cargar, CAPTURE_SCRIPT envía por el puente JS el nombre del
+ * sitio, el menú y los titulares, y se guardan en files/app_shell.json. En el siguiente
+ * arranque MainActivity los pinta al momento (sin red ni WebView) y los cambia por la página
+ * real en cuanto esta tiene su primer pintado. El archivo se lee en segundo plano desde
+ * BuscandoADiosApp (preload) para que el hilo principal no espere al disco.
+ */
+public final class AppShell {
+
+    private static final String TAG = "AppShell";
+
+    static final String JS_BRIDGE_NAME = "AndroidAppShell";
+
+    private static final String FILE_NAME = "app_shell.json";
+    private static final int MAX_LINKS = 8;
+    private static final int MAX_TEXT_LENGTH = 80;
+
+    // Menú y titulares de la portada (solo enlaces del propio sitio)
+    static final String CAPTURE_SCRIPT = "(function(){"
+            + "var b=window." + JS_BRIDGE_NAME + ";if(!b)return;"
+            + "function links(sel){var out=[],seen={};"
+            + "document.querySelectorAll(sel).forEach(function(a){"
+            + "if(out.length>=" + MAX_LINKS + ")return;"
+            + "var t=(a.textContent||'').replace(/\\s+/g,' ').trim();"
+            + "if(!t||t.length>" + MAX_TEXT_LENGTH + "||a.origin!==location.origin||seen[a.href])return;"
+            + "seen[a.href]=1;out.push({text:t,href:a.href.split('#')[0]});});return out;}"
+            + "var m=document.querySelector('meta[property=\"og:site_name\"]');"
+            + "b.report(JSON.stringify({url:location.href,site:m?m.content:document.title,"
+            + "menu:links('header nav a,nav a,[role=navigation] a'),"
+            + "headlines:links('main h1 a,main h2 a,main h3 a,article h2 a,article h3 a,h2 a,h3 a')}));"
+            + "})();";
+
+    /**
+     * Un enlace del esqueleto (menú o titular)
+     */
+    public static final class Link {
+        public final String text;
+        public final String href;
+
+        Link(String text, String href) {
+            this.text = text;
+            this.href = href;
+        }
+    }
+
+    /**
+     * Lo que se pinta en el esqueleto
+     */
+    public static final class Data {
+        public final String siteName;
+        public final List<Link> menu;
+        public final List<Link> headlines;
+
+        Data(String siteName, List<Link> menu, List<Link> headlines) {
+            this.siteName = siteName;
+            this.menu = Collections.unmodifiableList(menu);
+            this.headlines = Collections.unmodifiableList(headlines);
+        }
+    }
+
+    private static AppShell instance;
+
+    private final Context appContext;
+    // getFilesDir() toca disco: se resuelve en la primera lectura o escritura (hilo del executor)
+    @Nullable private File file;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "AppShell");
+        thread.setDaemon(true);
+        return thread;
+    });
+    @Nullable private Future<Data> pending;
+    @Nullable private volatile String lastSaved;
+
+    @MainThread
+    public static AppShell get(Context context) {
+        if (instance == null) {
+            instance = new AppShell(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private AppShell(Context appContext) {
+        this.appContext = appContext;
+    }
+
+    // Solo desde el hilo del executor
+    private File file() {
+        if (file == null) {
+            file = new File(appContext.getFilesDir(), FILE_NAME);
+        }
+        return file;
+    }
+
+    // =============================================
+    // LECTURA (para el arranque)
+    // =============================================
+
+    /**
+     * Empieza a leer el esqueleto guardado (sin bloquear)
+     */
+    @MainThread
+    public void preload() {
+        if (pending == null) {
+            pending = executor.submit(this::read);
+        }
+    }
+
+    /**
+     * El esqueleto ya leído, esperando como mucho waitMs; null si no hay o no llegó a tiempo
+     */
+    @MainThread
+    @Nullable
+    public Data await(long waitMs) {
+        preload();
+        try {
+            return pending.get(waitMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            Log.d(TAG, "El esqueleto no se leyó a tiempo");
+            return null;
+        } catch (ExecutionException | InterruptedException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Ya hay esqueleto leído y listo para pintar (no espera)
+     */
+    @MainThread
+    public boolean isReady() {
+        return pending != null && pending.isDone() && await(0) != null;
+    }
+
+    @Nullable
+    private Data read() {
+        File file = file();
+        if (!file.isFile()) return null;
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] bytes = new byte[(int) Math.min(file.length(), 64 * 1024)];
+            int total = 0;
+            int read;
+            while (total < bytes.length && (read = in.read(bytes, total, bytes.length - total)) != -1) {
+                total += read;
+            }
+            String json = new String(bytes, 0, total, StandardCharsets.UTF_8);
+            lastSaved = json;
+            return parse(json);
+        } catch (IOException | JSONException e) {
+            Log.w(TAG, "Esqueleto guardado no válido: " + e.getMessage());
+            return null;
+        }
+    }
+
+    @NonNull
+    private static Data parse(String json) throws JSONException {
+        JSONObject root = new JSONObject(json);
+        return new Data(root.optString("site"), parseLinks(root.optJSONArray("menu")),
+                parseLinks(root.optJSONArray("headlines")));
+    }
+
+    private static List<Link> parseLinks(@Nullable JSONArray array) {
+        List<Link> links = new ArrayList<>();
+        if (array == null) return links;
+        for (int i = 0; i < array.length() && links.size() < MAX_LINKS; i++) {
+            JSONObject item = array.optJSONObject(i);
+            if (item == null) continue;
+            String text = item.optString("text").trim();
+            String href = item.optString("href");
+            if (text.isEmpty() || !isSiteUrl(href)) continue;
+            if (text.length() > MAX_TEXT_LENGTH) text = text.substring(0, MAX_TEXT_LENGTH);
+            links.add(new Link(text, href));
+        }
+        return links;
+    }
+
+    private static boolean isSiteUrl(String url) {
+        Uri uri = Uri.parse(url);
+        return "https".equals(uri.getScheme()) && WebAssetCache.isSiteHost(uri.getHost());
+    }
+
+    // =============================================
+    // ESCRITURA (desde el puente JS)
+    // =============================================
+
+    private void save(String json) {
+        Data data;
+        try {
+            JSONObject root = new JSONObject(json);
+            // Solo la portada define el esqueleto
+            if (!isStartPage(root.optString("url"))) return;
+            data = parse(json);
+        } catch (JSONException e) {
+            return;
+        }
+        if (data.menu.isEmpty() && data.headlines.isEmpty()) return;
+
+        executor.execute(() -> {
+            if (json.equals(lastSaved)) return;
+            File file = file();
+            File temp = new File(file.getPath() + ".tmp");
+            try (OutputStream out = new FileOutputStream(temp)) {
+                out.write(json.getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                Log.w(TAG, "No se pudo guardar el esqueleto: " + e.getMessage());
+                //noinspection ResultOfMethodCallIgnored
+                temp.delete();
+                return;
+            }
+            if (temp.renameTo(file)) {
+                lastSaved = json;
+            } else {
+                //noinspection ResultOfMethodCallIgnored
+                temp.delete();
+            }
+        });
+    }
+
+    static boolean isStartPage(@Nullable String url) {
+        if (url == null) return false;
+        Uri uri = Uri.parse(url);
+        Uri start = Uri.parse(MainActivity.WEB_URL);
+        String path = uri.getPath() == null || uri.getPath().isEmpty() ? "/" : uri.getPath();
+        return "https".equals(uri.getScheme()) && start.getHost().equals(uri.getHost())
+                && path.equals(start.getPath()) && uri.getQuery() == null;
+    }
+
+    /**
+     * Objeto que se expone a la página con addJavascriptInterface
+     */
+    static final class JsBridge {
+        private final AppShell appShell;
+
+        JsBridge(AppShell appShell) {
+            this.appShell = appShell;
+        }
+
+        @JavascriptInterface
+        public void report(String json) {
+            appShell.save(json);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.buscandoadios.espana;
+
+import androidx.annotation.AnyThread;
+import androidx.tracing.Trace;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * AppTrace - Secciones y contadores propios en las trazas del sistema (Perfetto / systrace)
+ *
+ * Los nombres son los que busca :benchmark (TraceSectionMetric) y los que se ven en
+ * ui.perfetto.dev: cambiar uno aquí obliga a cambiarlo allí y en trace-budgets.properties.
+ * Una sección nueva lleva su presupuesto, o en TraceSectionBenchmark el motivo de no medirla.
+ *  - Secciones (hilo principal): fases de SplashActivity y MainActivity
+ *  - Secciones asíncronas: cada navegación del WebView y cada descarga, de principio a fin
+ *  - Contadores: llamadas HTTP en curso, descargas en la cola y tamaño de las cachés
+ * Si no se está trazando, cada llamada se queda en una comprobación; los contadores que
+ * cuestan calcular se protegen con isEnabled().
+ */
+public final class AppTrace {
+
+    // Secciones de arranque e interacción
+    public static final String SPLASH_ON_CREATE = "SplashActivity.onCreate";
+    public static final String MAIN_ON_CREATE = "MainActivity.onCreate";
+    public static final String MAIN_SETUP_WEBVIEW = "MainActivity.setupWebView";
+    public static final String MAIN_SETUP_DOWNLOADS = "MainActivity.setupDownloads";
+    public static final String MAIN_LOAD_WEBSITE = "MainActivity.loadWebsite";
+    public static final String MAIN_RESTORE_SESSION = "MainActivity.restoreSession";
+    public static final String MAIN_ON_ACTIVITY_RESULT = "MainActivity.onActivityResult";
+
+    // Secciones asíncronas
+    public static final String ASYNC_NAVIGATION = "Navigation";
+    public static final String ASYNC_DOWNLOAD = "Download";
+    public static final String ASYNC_SEGMENTED_DOWNLOAD = "SegmentedDownload";
+
+    // Contadores
+    public static final String COUNTER_HTTP_IN_FLIGHT = "SiteHttpClient.inFlight";
+    public static final String COUNTER_ASSET_FETCHES = "WebAssetCache.fetchesInFlight";
+    public static final String COUNTER_DOWNLOADS_QUEUED = "DownloadQueue.queued";
+    public static final String COUNTER_DOWNLOADS_RUNNING = "DownloadQueue.running";
+    public static final String COUNTER_PREFETCHED_BYTES = "PagePrefetcher.bytes";
+    // Más el nombre de la carpeta del DiskLruStore (web_assets, web_images...)
+    public static final String COUNTER_DISK_CACHE_PREFIX = "DiskCache.";
+
+    private static final AtomicInteger nextCookie = new AtomicInteger();
+
+    private AppTrace() {
+    }
+
+    @AnyThread
+    public static boolean isEnabled() {
+        return Trace.isEnabled();
+    }
+
+    /**
+     * Abre una sección en el hilo actual; cerrarla con end() en un finally
+     */
+    @AnyThread
+    public static void begin(String section) {
+        Trace.beginSection(section);
+    }
+
+    @AnyThread
+    public static void end() {
+        Trace.endSection();
+    }
+
+    /**
+     * Identificador para una sección asíncrona (cada navegación, cada descarga)
+     */
+    @AnyThread
+    public static int newCookie() {
+        return nextCookie.incrementAndGet();
+    }
+
+    /**
+     * Sección que puede empezar y acabar en hilos distintos; se cierra con el mismo nombre y cookie
+     */
+    @AnyThread
+    public static void beginAsync(String section, int cookie) {
+        Trace.beginAsyncSection(section, cookie);
+    }
+
+    @AnyThread
+    public static void endAsync(String section, int cookie) {
+        Trace.endAsyncSection(section, cookie);
+    }
+
+    @AnyThread
+    public static void counter(String name, long value) {
+        if (!Trace.isEnabled()) return;
+        Trace.setCounter(name, (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, value)));
+    }
+}
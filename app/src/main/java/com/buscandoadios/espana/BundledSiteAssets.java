@@ -0,0 +1,253 @@
+package com.buscandoadios.espana;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.os.Process;
+import android.util.Log;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+import androidx.webkit.WebViewAssetLoader;
+
+import com.buscandoadios.espana.core.BundledAssetVerifier;
+
+import okhttp3.OkHttpClient;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * BundledSiteAssets - Recursos del sitio que vienen dentro del APK (logo, fuentes, CSS y JS base)
+ *
+ * La tarea de Gradle syncSiteAssets los genera en los assets (site/) junto con manifest.json
+ * (ruta, SHA-256 y validadores de cada uno, y una versión del conjunto). Las peticiones del
+ * WebView que coinciden con el manifiesto se responden desde el APK con WebViewAssetLoader.
+ * Una vez al día se pregunta al servidor si cada recurso sigue igual (BundledAssetVerifier);
+ * los que cambiaron dejan de servirse desde el APK hasta el siguiente build.
+ * Sin manifiesto (build normal) no hace nada.
+ */
+public final class BundledSiteAssets {
+
+    private static final String TAG = "BundledSiteAssets";
+
+    private static final String ASSET_DIR = "site/";
+    private static final String MANIFEST = ASSET_DIR + "manifest.json";
+    private static final String PREFS = "bundled_site_assets";
+    private static final String PREF_VERSION = "version";
+    private static final String PREF_INVALID = "invalid";
+    private static final String PREF_CHECKED_AT = "checked_at";
+    private static final long CHECK_INTERVAL_MS = 24L * 60 * 60 * 1000;
+
+    /**
+     * Un recurso del manifiesto
+     */
+    private static final class Asset {
+        final String url;           // ruta y query tal como las pide la web ("/css/base.css?ver=3")
+        final String mimeType;
+        final String sha256;
+        final String etag;
+        final String lastModified;
+
+        Asset(JSONObject json) {
+            url = json.optString("url");
+            mimeType = json.optString("mimeType");
+            sha256 = json.optString("sha256");
+            etag = json.optString("etag");
+            lastModified = json.optString("lastModified");
+        }
+    }
+
+    private static volatile BundledSiteAssets instance;
+    private static volatile boolean verifying;
+
+    private final Context appContext;
+    private final String version;
+    private final Map<String, Asset> assets;
+    private final WebViewAssetLoader loader;
+    // Recursos que el servidor ya tiene distintos: se piden a la red (y a WebAssetCache)
+    private final Set<String> invalidated = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private final AtomicLong hits = new AtomicLong();
+
+    public static BundledSiteAssets getInstance(Context context) {
+        if (instance == null) {
+            synchronized (BundledSiteAssets.class) {
+                if (instance == null) {
+                    instance = new BundledSiteAssets(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    private BundledSiteAssets(Context appContext) {
+        // Lee el manifiesto del APK: crear la instancia desde un hilo de fondo
+        this.appContext = appContext;
+        Map<String, Asset> parsed = new HashMap<>();
+        String parsedVersion = "";
+        try {
+            JSONObject manifest = new JSONObject(readAsset(MANIFEST));
+            parsedVersion = manifest.getString("version");
+            JSONArray list = manifest.getJSONArray("assets");
+            for (int i = 0; i < list.length(); i++) {
+                Asset asset = new Asset(list.getJSONObject(i));
+                parsed.put(asset.url, asset);
+            }
+        } catch (FileNotFoundException e) {
+            // Build sin recursos empaquetados
+        } catch (IOException | JSONException e) {
+            Log.w(TAG, "Manifiesto de recursos no válido: " + e.getMessage());
+            parsed.clear();
+        }
+        version = parsedVersion;
+        assets = parsed;
+
+        // El APK trae los archivos en los assets, bajo site/, con la misma ruta que en la web
+        WebViewAssetLoader.AssetsPathHandler assetsHandler = new WebViewAssetLoader.AssetsPathHandler(appContext);
+        loader = new WebViewAssetLoader.Builder()
+                .setDomain(WebAssetCache.SITE_HOST)
+                .addPathHandler("/", path -> assetsHandler.handle(ASSET_DIR + path))
+                .build();
+
+        if (!assets.isEmpty()) {
+            SharedPreferences prefs = prefs();
+            if (version.equals(prefs.getString(PREF_VERSION, null))) {
+                invalidated.addAll(prefs.getStringSet(PREF_INVALID, Collections.emptySet()));
+            } else {
+                // Build nuevo: lo invalidado del anterior ya no cuenta
+                prefs.edit().clear().putString(PREF_VERSION, version).apply();
+            }
+            Log.i(TAG, "Recursos en el APK: " + assets.size() + " (versión " + version
+                    + ", invalidados " + invalidated.size() + ")");
+        }
+    }
+
+    /**
+     * Punto de entrada desde shouldInterceptRequest (hilo de fondo).
+     * Devuelve null si el recurso no viene en el APK o el servidor ya lo cambió.
+     */
+    @Nullable
+    public WebResourceResponse intercept(WebResourceRequest request) {
+        if (assets.isEmpty() || request.isForMainFrame()) return null;
+        if (!"GET".equalsIgnoreCase(request.getMethod())) return null;
+
+        Uri uri = request.getUrl();
+        if (!"https".equals(uri.getScheme()) || !WebAssetCache.SITE_HOST.equals(uri.getHost())) return null;
+        Asset asset = assets.get(keyFor(uri));
+        if (asset == null || invalidated.contains(asset.url)) return null;
+
+        WebResourceResponse response = loader.shouldInterceptRequest(uri);
+        if (response == null) return null;
+        if (!asset.mimeType.isEmpty()) {
+            // AssetsPathHandler lo adivina por la extensión; el manifiesto trae el del servidor
+            response.setMimeType(asset.mimeType);
+        }
+        hits.incrementAndGet();
+        return response;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    private static String keyFor(Uri uri) {
+        String path = uri.getEncodedPath() != null ? uri.getEncodedPath() : "/";
+        String query = uri.getEncodedQuery();
+        return query != null ? path + "?" + query : path;
+    }
+
+    // =============================================
+    // INVALIDACIÓN (una vez al día, hilo de fondo)
+    // =============================================
+
+    /**
+     * Comprueba en segundo plano los recursos empaquetados contra el servidor
+     */
+    public static void verifyAsync(Context context) {
+        if (verifying) return;
+        verifying = true;
+        Context appContext = context.getApplicationContext();
+        Thread thread = new Thread(() -> {
+            try {
+                getInstance(appContext).verify();
+            } finally {
+                verifying = false;
+            }
+        }, "BundledSiteAssets");
+        thread.start();
+    }
+
+    @WorkerThread
+    private void verify() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        if (assets.isEmpty()) return;
+        SharedPreferences prefs = prefs();
+        if (System.currentTimeMillis() - prefs.getLong(PREF_CHECKED_AT, 0) < CHECK_INTERVAL_MS) return;
+
+        Map<String, String> headers = new HashMap<>();
+        headers.put("User-Agent", System.getProperty("http.agent", "") + WebViewConfigurator.USER_AGENT_SUFFIX);
+        OkHttpClient client = SiteHttpClient.get().client();
+        Set<String> changed = new HashSet<>();
+        for (Asset asset : assets.values()) {
+            if (invalidated.contains(asset.url)) continue;
+            BundledAssetVerifier.Status status = BundledAssetVerifier.check(client,
+                    "https://" + WebAssetCache.SITE_HOST + asset.url,
+                    asset.etag, asset.lastModified, asset.sha256, headers);
+            if (status == BundledAssetVerifier.Status.UNKNOWN) {
+                // Sin red o servidor caído: se guarda lo ya visto y el resto se repite en el
+                // próximo arranque (sin PREF_CHECKED_AT)
+                Log.d(TAG, "Comprobación interrumpida en " + asset.url);
+                saveInvalidated(prefs, changed).apply();
+                return;
+            }
+            if (status == BundledAssetVerifier.Status.CHANGED) {
+                changed.add(asset.url);
+                invalidated.add(asset.url);
+            }
+        }
+        saveInvalidated(prefs, changed)
+                .putLong(PREF_CHECKED_AT, System.currentTimeMillis())
+                .apply();
+    }
+
+    private SharedPreferences.Editor saveInvalidated(SharedPreferences prefs, Set<String> changed) {
+        if (!changed.isEmpty()) {
+            Log.i(TAG, "Recursos del APK desactualizados: " + changed);
+        }
+        return prefs.edit().putStringSet(PREF_INVALID, new HashSet<>(invalidated));
+    }
+
+    private SharedPreferences prefs() {
+        return appContext.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+    }
+
+    @NonNull
+    private String readAsset(String name) throws IOException {
+        try (InputStream in = appContext.getAssets().open(name)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.buscandoadios.espana;
+
+import android.app.Application;
+import android.content.ComponentCallbacks2;
+import android.content.pm.ApplicationInfo;
+import android.os.Looper;
+import android.os.StrictMode;
+
+import com.tuapp.utils.UploadQueue;
+
+/**
+ * BuscandoADiosApp - Clase Application
+ * Punto de entrada del proceso: aquí viven los componentes compartidos por todas las pantallas
+ */
+public class BuscandoADiosApp extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        enableStrictModeIfDebuggable();
+        DebugCommandReceiver.registerIfDebuggable(this);
+        MemoryTrimManager.get(this).onProcessStart();
+        // Esqueleto de la portada leído ya, antes de que MainActivity lo necesite
+        AppShell.get(this).preload();
+        // Y el estado guardado de la sesión, por si MainActivity viene de una muerte del proceso
+        SessionState.get(this).preload();
+        // Subidas que quedaron a medias (proceso cerrado, sin red...),
+        // cuando el hilo principal quede libre para no retrasar el arranque
+        Looper.myQueue().addIdleHandler(() -> {
+            UploadQueue.get(this).resumePending();
+            // ¿Siguen al día los recursos del sitio que trae el APK? (como mucho una vez al día)
+            BundledSiteAssets.verifyAsync(this);
+            return false;
+        });
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        MemoryTrimManager.get(this).onTrimMemory(level);
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        MemoryTrimManager.get(this).onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+    }
+
+    /**
+     * En builds depurables, avisa en el log de cualquier lectura o escritura en disco desde el
+     * hilo principal (p. ej. un CookieManager.flush() en onPause/onStop). Se suma a la política
+     * que ya hubiera: la de los tests instrumentados (StrictModeTestRunner) hace fallar el test.
+     */
+    private void enableStrictModeIfDebuggable() {
+        if ((getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) == 0) {
+            return;
+        }
+        StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder(StrictMode.getThreadPolicy())
+                .detectDiskReads()
+                .detectDiskWrites()
+                .penaltyLog()
+                .build());
+    }
+}
@@ -0,0 +1,187 @@
+package com.buscandoadios.espana;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * ConnectivityMonitor - Estado de la red siempre a mano, sin consultar a ConnectivityManager
+ *
+ * Escucha la red por defecto con NetworkCallback y guarda el último estado (conectada,
+ * validada, de pago por uso, ancho de banda estimado). getState() es una lectura de campo.
+ * Los listeners se llaman en el hilo principal solo cuando cambia conectada, validada o de
+ * pago: el ancho de banda estimado se mueve a cada momento y se lee en getState().
+ */
+public final class ConnectivityMonitor {
+
+    private static final String TAG = "ConnectivityMonitor";
+
+    /**
+     * Foto del estado de la red (inmutable). equals() compara solo conectada, validada y de
+     * pago, no el ancho de banda.
+     */
+    public static final class State {
+        static final State OFFLINE = new State(false, false, false, 0);
+
+        private final boolean connected;
+        private final boolean validated;
+        private final boolean metered;
+        private final int downstreamKbps;
+
+        State(boolean connected, boolean validated, boolean metered, int downstreamKbps) {
+            this.connected = connected;
+            this.validated = validated;
+            this.metered = metered;
+            this.downstreamKbps = downstreamKbps;
+        }
+
+        /** Hay una red con acceso a Internet (puede que aún sin comprobar) */
+        public boolean isConnected() {
+            return connected;
+        }
+
+        /** El sistema comprobó que la red llega a Internet (no es un portal cautivo) */
+        public boolean isValidated() {
+            return validated;
+        }
+
+        /** Datos móviles o red de pago por uso */
+        public boolean isMetered() {
+            return metered;
+        }
+
+        /** Estimación del sistema, 0 si no la hay (sus cambios no avisan a los listeners) */
+        public int getDownstreamKbps() {
+            return downstreamKbps;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof State)) return false;
+            State other = (State) o;
+            return connected == other.connected && validated == other.validated
+                    && metered == other.metered;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(connected, validated, metered);
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "connected=%b validated=%b metered=%b down=%dkbps",
+                    connected, validated, metered, downstreamKbps);
+        }
+    }
+
+    public interface Listener {
+        @MainThread
+        void onConnectivityChanged(State state);
+    }
+
+    private static ConnectivityMonitor instance;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<Listener> listeners = new ArrayList<>();
+    private volatile State state;
+
+    // Los avisos de NetworkCallback llegan en otro hilo: se pasan al principal
+    private final ConnectivityManager.NetworkCallback callback = new ConnectivityManager.NetworkCallback() {
+        @Override
+        public void onCapabilitiesChanged(@NonNull Network network, @NonNull NetworkCapabilities capabilities) {
+            State next = fromCapabilities(capabilities);
+            mainHandler.post(() -> update(next));
+        }
+
+        @Override
+        public void onLost(@NonNull Network network) {
+            mainHandler.post(() -> update(State.OFFLINE));
+        }
+    };
+
+    @MainThread
+    public static ConnectivityMonitor get(Context context) {
+        if (instance == null) {
+            instance = new ConnectivityMonitor(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private ConnectivityMonitor(Context appContext) {
+        ConnectivityManager cm = (ConnectivityManager) appContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        State initial = State.OFFLINE;
+        if (cm != null) {
+            // Estado inicial síncrono (una vez); después, solo los avisos del callback
+            Network active = cm.getActiveNetwork();
+            NetworkCapabilities capabilities = active != null ? cm.getNetworkCapabilities(active) : null;
+            initial = fromCapabilities(capabilities);
+            try {
+                cm.registerDefaultNetworkCallback(callback);
+            } catch (RuntimeException e) {
+                // Demasiados callbacks registrados en el proceso: nos quedamos con el estado inicial
+                Log.w(TAG, "No se pudo escuchar la red", e);
+            }
+        }
+        state = initial;
+    }
+
+    /**
+     * Último estado conocido (cualquier hilo)
+     */
+    @NonNull
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Añade un listener. Si notifyNow, se le llama enseguida con el estado actual.
+     */
+    @MainThread
+    public void addListener(Listener listener, boolean notifyNow) {
+        listeners.add(listener);
+        if (notifyNow) listener.onConnectivityChanged(state);
+    }
+
+    @MainThread
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    @MainThread
+    private void update(State next) {
+        State previous = state;
+        // Siempre el último, para que getState() tenga el ancho de banda al día
+        state = next;
+        if (next.equals(previous)) return;
+        Log.d(TAG, "Red: " + next);
+        for (Listener listener : new ArrayList<>(listeners)) {
+            listener.onConnectivityChanged(next);
+        }
+    }
+
+    private static State fromCapabilities(@Nullable NetworkCapabilities capabilities) {
+        if (capabilities == null
+                || !capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)) {
+            return State.OFFLINE;
+        }
+        return new State(true,
+                capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED),
+                !capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED),
+                capabilities.getLinkDownstreamBandwidthKbps());
+    }
+}
@@ -0,0 +1,94 @@
+package com.buscandoadios.espana;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+import android.webkit.CookieManager;
+
+import androidx.annotation.AnyThread;
+
+/**
+ * CookieFlushScheduler - Guarda las cookies del WebView en disco sin bloquear el hilo principal
+ *
+ * CookieManager.flush() escribe en disco y bloquea a quien lo llama. Aquí se hace en un hilo
+ * propio: requestFlush() agrupa las peticiones seguidas (espera QUIET_MS sin nuevas, pero nunca
+ * más de MAX_DELAY_MS desde la primera) y flushNow() guarda ya, para cuando importa no perder
+ * nada (la app pasa a segundo plano o el sistema pide memoria).
+ */
+public final class CookieFlushScheduler {
+
+    private static final String TAG = "CookieFlushScheduler";
+
+    private static final long QUIET_MS = 1000;
+    private static final long MAX_DELAY_MS = 5000;
+
+    private static volatile CookieFlushScheduler instance;
+
+    private final Handler handler;
+    private final Runnable flushRunnable = this::flush;
+    private final Object lock = new Object();
+    private long firstRequestAt = -1;   // -1: nada pendiente
+    private long flushCount;
+    private long requestCount;
+
+    @AnyThread
+    public static CookieFlushScheduler get() {
+        if (instance == null) {
+            synchronized (CookieFlushScheduler.class) {
+                if (instance == null) {
+                    instance = new CookieFlushScheduler();
+                }
+            }
+        }
+        return instance;
+    }
+
+    private CookieFlushScheduler() {
+        HandlerThread thread = new HandlerThread("CookieFlush", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Hay cookies nuevas (página cargada, sesión iniciada...): se guardarán pronto
+     */
+    @AnyThread
+    public void requestFlush() {
+        long now = SystemClock.uptimeMillis();
+        synchronized (lock) {
+            requestCount++;
+            if (firstRequestAt < 0) firstRequestAt = now;
+            long delay = Math.min(QUIET_MS, firstRequestAt + MAX_DELAY_MS - now);
+            handler.removeCallbacks(flushRunnable);
+            handler.postDelayed(flushRunnable, Math.max(0, delay));
+        }
+    }
+
+    /**
+     * Guardar ya (sin esperar en el hilo que llama): segundo plano, poca memoria...
+     */
+    @AnyThread
+    public void flushNow() {
+        synchronized (lock) {
+            requestCount++;
+            handler.removeCallbacks(flushRunnable);
+            handler.postAtFrontOfQueue(flushRunnable);
+        }
+    }
+
+    private void flush() {
+        long flushes;
+        long requests;
+        synchronized (lock) {
+            firstRequestAt = -1;
+            flushes = ++flushCount;
+            requests = requestCount;
+        }
+        long start = SystemClock.uptimeMillis();
+        CookieManager.getInstance().flush();
+        Log.d(TAG, "Cookies guardadas en " + (SystemClock.uptimeMillis() - start) + " ms ("
+                + flushes + " escrituras para " + requests + " peticiones)");
+    }
+}
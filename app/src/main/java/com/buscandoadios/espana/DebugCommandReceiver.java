@@ -0,0 +1,57 @@
+package com.buscandoadios.espana;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.ApplicationInfo;
+
+import androidx.core.content.ContextCompat;
+
+/**
+ * DebugCommandReceiver - Órdenes de depuración por adb (solo en builds depurables)
+ *
+ * Uso:
+ *   adb shell am broadcast -a com.buscandoadios.espana.DUMP_METRICS
+ * El resumen queda en el log (tag PageLoadMetrics) y en files/metrics/summary.txt
+ *
+ *   adb shell am broadcast -a com.buscandoadios.espana.START_TRACE
+ *   (navegar)
+ *   adb shell am broadcast -a com.buscandoadios.espana.DUMP_TRACE
+ *   adb exec-out run-as com.buscandoadios.espana cat files/metrics/network-trace-XXX.json > trace.json
+ * La traza de red (NetworkTracer) se abre en ui.perfetto.dev o chrome://tracing
+ */
+final class DebugCommandReceiver extends BroadcastReceiver {
+
+    static final String ACTION_DUMP_METRICS = "com.buscandoadios.espana.DUMP_METRICS";
+    static final String ACTION_START_TRACE = "com.buscandoadios.espana.START_TRACE";
+    static final String ACTION_DUMP_TRACE = "com.buscandoadios.espana.DUMP_TRACE";
+
+    /**
+     * Registra el receptor solo si la app es depurable
+     */
+    static void registerIfDebuggable(Context context) {
+        if ((context.getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) == 0) {
+            return;
+        }
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(ACTION_DUMP_METRICS);
+        filter.addAction(ACTION_START_TRACE);
+        filter.addAction(ACTION_DUMP_TRACE);
+        // Exportado para que adb pueda enviarlo
+        ContextCompat.registerReceiver(context, new DebugCommandReceiver(), filter,
+                ContextCompat.RECEIVER_EXPORTED);
+    }
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        String action = intent.getAction();
+        if (ACTION_DUMP_METRICS.equals(action)) {
+            PageLoadMetrics.get(context).exportSummaryAsync();
+        } else if (ACTION_START_TRACE.equals(action)) {
+            NetworkTracer.get().start();
+        } else if (ACTION_DUMP_TRACE.equals(action)) {
+            NetworkTracer.get().stopAndExportAsync(context);
+        }
+    }
+}
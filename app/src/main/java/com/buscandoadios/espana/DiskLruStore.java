@@ -0,0 +1,331 @@
+package com.buscandoadios.espana;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * DiskLruStore - Almacén en disco con tamaño máximo y expulsión LRU
+ * Cada entrada son dos ficheros: <clave>.meta (cabeceras) y <clave>.body (contenido).
+ * Los métodos hacen E/S de disco: no llamar desde el hilo principal.
+ */
+final class DiskLruStore {
+
+    private static final int META_VERSION = 1;
+    private static final String META_SUFFIX = ".meta";
+    private static final String BODY_SUFFIX = ".body";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File directory;
+    private final String sizeCounter;
+    private final long maxBytes;
+    private long totalBytes;
+    private boolean initialized;
+    private int tempCounter;
+
+    // Orden de acceso: la primera entrada es la menos usada recientemente
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<>(64, 0.75f, true);
+
+    /**
+     * Cabeceras y datos de frescura guardados junto al contenido
+     */
+    static final class Metadata {
+        String url = "";
+        int statusCode = 200;
+        String reasonPhrase = "OK";
+        String mimeType = "application/octet-stream";
+        String encoding = "";
+        long storedAt;
+        long expiresAt;
+        long staleUntil;
+        boolean noCache;
+        String etag = "";
+        String lastModified = "";
+        final Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    }
+
+    /**
+     * Entrada leída del almacén: metadatos + fichero con el contenido
+     */
+    static final class Snapshot {
+        final String key;
+        final Metadata metadata;
+        final File body;
+
+        Snapshot(String key, Metadata metadata, File body) {
+            this.key = key;
+            this.metadata = metadata;
+            this.body = body;
+        }
+    }
+
+    /**
+     * Escritura en curso: el contenido va a un temporal y solo se publica en commit()
+     */
+    final class Editor {
+        final String key;
+        final File tempBody;
+        private boolean done;
+
+        Editor(String key, File tempBody) {
+            this.key = key;
+            this.tempBody = tempBody;
+        }
+
+        void commit(Metadata metadata) throws IOException {
+            if (done) return;
+            done = true;
+            publish(key, tempBody, metadata);
+        }
+
+        void abort() {
+            if (done) return;
+            done = true;
+            //noinspection ResultOfMethodCallIgnored
+            tempBody.delete();
+        }
+    }
+
+    DiskLruStore(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.sizeCounter = AppTrace.COUNTER_DISK_CACHE_PREFIX + directory.getName();
+    }
+
+    /**
+     * Lee el índice desde disco la primera vez que se usa el almacén
+     */
+    private synchronized void ensureInitialized() {
+        if (initialized) return;
+        initialized = true;
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            return;
+        }
+
+        File[] files = directory.listFiles();
+        if (files == null) return;
+
+        // Reconstruir el orden LRU a partir de la fecha de último acceso
+        List<File> bodies = new ArrayList<>();
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(TEMP_SUFFIX)) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            } else if (name.endsWith(BODY_SUFFIX)) {
+                bodies.add(file);
+            }
+        }
+        File[] sorted = bodies.toArray(new File[0]);
+        Arrays.sort(sorted, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+
+        for (File body : sorted) {
+            String key = body.getName().substring(0, body.getName().length() - BODY_SUFFIX.length());
+            if (!metaFile(key).exists()) {
+                //noinspection ResultOfMethodCallIgnored
+                body.delete();
+                continue;
+            }
+            long size = body.length();
+            index.put(key, size);
+            totalBytes += size;
+        }
+        trimToSize(maxBytes);
+    }
+
+    @Nullable
+    synchronized Snapshot get(String key) {
+        ensureInitialized();
+        if (!index.containsKey(key)) return null;
+
+        File body = bodyFile(key);
+        Metadata metadata = readMetadata(metaFile(key));
+        if (metadata == null || !body.exists()) {
+            removeLocked(key);
+            return null;
+        }
+        //noinspection ResultOfMethodCallIgnored
+        body.setLastModified(System.currentTimeMillis());
+        return new Snapshot(key, metadata, body);
+    }
+
+    synchronized Editor edit(String key) {
+        ensureInitialized();
+        File temp = new File(directory, key + "." + (tempCounter++) + TEMP_SUFFIX);
+        return new Editor(key, temp);
+    }
+
+    /**
+     * Sustituye solo los metadatos (por ejemplo tras una revalidación 304)
+     */
+    synchronized void updateMetadata(String key, Metadata metadata) {
+        ensureInitialized();
+        if (!index.containsKey(key)) return;
+        try {
+            writeMetadata(metaFile(key), metadata);
+        } catch (IOException e) {
+            removeLocked(key);
+        }
+    }
+
+    synchronized void remove(String key) {
+        ensureInitialized();
+        removeLocked(key);
+    }
+
+    private synchronized void publish(String key, File tempBody, Metadata metadata) throws IOException {
+        File body = bodyFile(key);
+        File meta = metaFile(key);
+        try {
+            writeMetadata(meta, metadata);
+            if (!tempBody.renameTo(body)) {
+                throw new IOException("No se pudo mover " + tempBody + " a " + body);
+            }
+        } catch (IOException e) {
+            //noinspection ResultOfMethodCallIgnored
+            tempBody.delete();
+            removeLocked(key);
+            throw e;
+        }
+
+        Long previous = index.put(key, body.length());
+        if (previous != null) {
+            totalBytes -= previous;
+        }
+        totalBytes += body.length();
+        trimToSize(maxBytes);
+    }
+
+    private void trimToSize(long targetBytes) {
+        Iterator<Map.Entry<String, Long>> it = index.entrySet().iterator();
+        while (totalBytes > targetBytes && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            it.remove();
+            totalBytes -= eldest.getValue();
+            deleteFiles(eldest.getKey());
+        }
+        AppTrace.counter(sizeCounter, totalBytes);
+    }
+
+    private void removeLocked(String key) {
+        Long size = index.remove(key);
+        if (size != null) {
+            totalBytes -= size;
+            AppTrace.counter(sizeCounter, totalBytes);
+        }
+        deleteFiles(key);
+    }
+
+    private void deleteFiles(String key) {
+        //noinspection ResultOfMethodCallIgnored
+        bodyFile(key).delete();
+        //noinspection ResultOfMethodCallIgnored
+        metaFile(key).delete();
+    }
+
+    private File bodyFile(String key) {
+        return new File(directory, key + BODY_SUFFIX);
+    }
+
+    private File metaFile(String key) {
+        return new File(directory, key + META_SUFFIX);
+    }
+
+    // =============================================
+    // SERIALIZACIÓN DE METADATOS
+    // =============================================
+
+    private static void writeMetadata(File file, Metadata m) throws IOException {
+        File temp = new File(file.getPath() + TEMP_SUFFIX);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(META_VERSION);
+            out.writeUTF(m.url);
+            out.writeInt(m.statusCode);
+            out.writeUTF(m.reasonPhrase);
+            out.writeUTF(m.mimeType);
+            out.writeUTF(m.encoding);
+            out.writeLong(m.storedAt);
+            out.writeLong(m.expiresAt);
+            out.writeLong(m.staleUntil);
+            out.writeBoolean(m.noCache);
+            out.writeUTF(m.etag);
+            out.writeUTF(m.lastModified);
+            out.writeInt(m.headers.size());
+            for (Map.Entry<String, String> header : m.headers.entrySet()) {
+                out.writeUTF(header.getKey());
+                out.writeUTF(header.getValue());
+            }
+        }
+        if (!temp.renameTo(file)) {
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            throw new IOException("No se pudo guardar " + file);
+        }
+    }
+
+    @Nullable
+    private static Metadata readMetadata(File file) {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != META_VERSION) return null;
+            Metadata m = new Metadata();
+            m.url = in.readUTF();
+            m.statusCode = in.readInt();
+            m.reasonPhrase = in.readUTF();
+            m.mimeType = in.readUTF();
+            m.encoding = in.readUTF();
+            m.storedAt = in.readLong();
+            m.expiresAt = in.readLong();
+            m.staleUntil = in.readLong();
+            m.noCache = in.readBoolean();
+            m.etag = in.readUTF();
+            m.lastModified = in.readUTF();
+            int headerCount = in.readInt();
+            for (int i = 0; i < headerCount; i++) {
+                m.headers.put(in.readUTF(), in.readUTF());
+            }
+            return m;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Convierte una URL (o cualquier texto) en un nombre de fichero seguro
+     */
+    @NonNull
+    static String keyFor(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+                sb.append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
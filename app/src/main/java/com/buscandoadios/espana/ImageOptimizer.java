@@ -0,0 +1,551 @@
+package com.buscandoadios.espana;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.media.ExifInterface;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Process;
+import android.util.DisplayMetrics;
+import android.util.Log;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ImageOptimizer - Reduce las fotos JPEG/PNG del sitio al ancho de la pantalla y las pasa a WebP
+ *
+ * La web sirve fotos pensadas para escritorio (2000 px o más) que el WebView decodifica enteras
+ * para pintarlas a 400 CSS px. Aquí se piden como siempre (a través de WebAssetCache, que guarda
+ * el original y lo revalida), se decodifican ya reducidas en un pool de pocos hilos, se ajustan
+ * al ancho del viewport en píxeles físicos (densidad limitada a MAX_DENSITY) y se recomprimen en
+ * WebP. La versión reducida se guarda en cache/web_images por URL y ancho.
+ *
+ * El original se copia a un temporal en disco (cache/web_images_src) y se decodifica desde ahí:
+ * en memoria solo están los píxeles, que cuentan en DECODE_BUDGET_BYTES, y el WebP se escribe
+ * directamente al almacén. La primera descarga sigue siendo el original entero: las estadísticas
+ * miden cuánto menos pesa lo recodificado (lo que el WebView recibe, decodifica y guarda en
+ * memoria), no ahorro de red. Las visitas siguientes no tocan el original mientras la versión
+ * reducida esté fresca. Se llama desde shouldInterceptRequest (hilo de fondo).
+ */
+public final class ImageOptimizer {
+
+    private static final String TAG = "ImageOptimizer";
+
+    private static final long MAX_CACHE_BYTES = 20L * 1024 * 1024; // 20 MB
+    // Originales más grandes no se copian a disco: se entregan tal cual
+    private static final int MAX_SOURCE_BYTES = 8 * 1024 * 1024;
+    // Píxeles decodificados en curso entre todos los hilos (ARGB_8888: 4 bytes por píxel)
+    private static final int DECODE_BUDGET_BYTES = 24 * 1024 * 1024;
+    private static final int WORKERS = 2;
+    private static final int MAX_QUEUED = 8;
+    private static final long ENCODE_TIMEOUT_MS = 4000;
+    private static final int WEBP_QUALITY = 75;
+    // Más allá de esta densidad no se nota la diferencia en una foto
+    private static final float MAX_DENSITY = 2.5f;
+    private static final int WIDTH_STEP = 128;
+    // Si la versión reducida no pesa al menos un 10% menos, se sirve el original
+    private static final double MIN_REDUCTION = 0.9;
+    private static final long DEFAULT_LIFETIME_MS = 24L * 60 * 60 * 1000;
+    private static final int MAX_SKIPPED = 256;
+    // Cabecera interna con el tamaño del original (no se entrega al WebView)
+    private static final String ORIGINAL_LENGTH_HEADER = "X-Original-Length";
+
+    /**
+     * Reducción por recodificar de la sesión actual (desde la última vuelta a primer plano) y
+     * total del proceso: bytes del original menos bytes del WebP servido en su lugar. El
+     * original ya se descargó entero, así que no es ahorro de red.
+     */
+    public static final class Stats {
+        final AtomicLong optimized = new AtomicLong();
+        final AtomicLong fromCache = new AtomicLong();
+        final AtomicLong skipped = new AtomicLong();
+        final AtomicLong overBudget = new AtomicLong();
+        final AtomicLong sessionOriginalBytes = new AtomicLong();
+        final AtomicLong sessionReencodedBytes = new AtomicLong();
+        final AtomicLong totalReencodeReductionBytes = new AtomicLong();
+
+        public long getSessionReencodeReductionBytes() {
+            return sessionOriginalBytes.get() - sessionReencodedBytes.get();
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "optimized=%d fromCache=%d skipped=%d overBudget=%d sessionOriginal=%d "
+                            + "sessionReencoded=%d sessionReencodeReduction=%d totalReencodeReduction=%d",
+                    optimized.get(), fromCache.get(), skipped.get(), overBudget.get(),
+                    sessionOriginalBytes.get(), sessionReencodedBytes.get(),
+                    getSessionReencodeReductionBytes(), totalReencodeReductionBytes.get());
+        }
+    }
+
+    private static volatile ImageOptimizer instance;
+
+    private final Context appContext;
+    @Nullable private DiskLruStore store;
+    @Nullable private File sourceDir;
+    private final int targetWidth;
+    private final Stats stats = new Stats();
+    private final Semaphore decodeBudget = new Semaphore(DECODE_BUDGET_BYTES);
+    private final ThreadPoolExecutor workers = new ThreadPoolExecutor(WORKERS, WORKERS,
+            30, TimeUnit.SECONDS, new ArrayBlockingQueue<>(MAX_QUEUED), r -> {
+                Thread thread = new Thread(() -> {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }, "ImageOptimizer");
+                thread.setDaemon(true);
+                return thread;
+            });
+    // Imágenes que no ganan nada al reducirlas (ya pequeñas, formato raro...): no se reintentan
+    private final Set<String> skippedUrls = Collections.synchronizedSet(Collections.newSetFromMap(
+            new LinkedHashMap<String, Boolean>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                    return size() > MAX_SKIPPED;
+                }
+            }));
+
+    public static ImageOptimizer get(Context context) {
+        if (instance == null) {
+            synchronized (ImageOptimizer.class) {
+                if (instance == null) {
+                    instance = new ImageOptimizer(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    private ImageOptimizer(Context appContext) {
+        this.appContext = appContext;
+        targetWidth = targetWidthFor(Resources.getSystem().getDisplayMetrics());
+        workers.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Ancho del viewport en píxeles físicos, en vertical (el lado corto), redondeado hacia
+     * arriba a WIDTH_STEP para que la clave de caché no cambie por unos píxeles
+     */
+    static int targetWidthFor(DisplayMetrics metrics) {
+        float density = Math.max(1f, metrics.density);
+        float cssWidth = Math.min(metrics.widthPixels, metrics.heightPixels) / density;
+        int pixels = Math.round(cssWidth * Math.min(density, MAX_DENSITY));
+        return (pixels + WIDTH_STEP - 1) / WIDTH_STEP * WIDTH_STEP;
+    }
+
+    // getCacheDir() puede tocar disco: el almacén se crea la primera vez que se usa (hilo de fondo)
+    private synchronized DiskLruStore store() {
+        if (store == null) {
+            store = new DiskLruStore(new File(appContext.getCacheDir(), "web_images"), MAX_CACHE_BYTES);
+        }
+        return store;
+    }
+
+    // Temporales con los originales mientras se reducen; los de un proceso anterior sobran
+    private synchronized File sourceDir() {
+        if (sourceDir == null) {
+            sourceDir = new File(appContext.getCacheDir(), "web_images_src");
+            File[] leftovers = sourceDir.listFiles();
+            if (leftovers != null) {
+                for (File file : leftovers) {
+                    //noinspection ResultOfMethodCallIgnored
+                    file.delete();
+                }
+            }
+            //noinspection ResultOfMethodCallIgnored
+            sourceDir.mkdirs();
+        }
+        return sourceDir;
+    }
+
+    public Stats getStats() {
+        return stats;
+    }
+
+    /**
+     * Nueva sesión de uso (la app vuelve a primer plano): contadores de la sesión a cero
+     */
+    @MainThread
+    public void startSession() {
+        stats.sessionOriginalBytes.set(0);
+        stats.sessionReencodedBytes.set(0);
+    }
+
+    /**
+     * true si la petición es una foto del sitio que este optimizador atiende
+     */
+    public boolean handles(WebResourceRequest request) {
+        if (request.isForMainFrame() || !"GET".equalsIgnoreCase(request.getMethod())) return false;
+        Map<String, String> headers = request.getRequestHeaders();
+        if (headers != null && (headers.containsKey("Range") || headers.containsKey("range"))) return false;
+
+        Uri uri = request.getUrl();
+        if (!"https".equals(uri.getScheme()) || !WebAssetCache.isSiteHost(uri.getHost())) return false;
+        String path = uri.getPath();
+        if (path == null) return false;
+        String lower = path.toLowerCase(Locale.ROOT);
+        return lower.endsWith(".jpg") || lower.endsWith(".jpeg") || lower.endsWith(".png");
+    }
+
+    /**
+     * Respuesta para una petición que handles() aceptó: la versión reducida si se puede, si no
+     * el original de WebAssetCache (o null si ni eso, y el WebView la pide por su cuenta)
+     */
+    @Nullable
+    public WebResourceResponse intercept(WebResourceRequest request) {
+        String url = request.getUrl().toString();
+        String key = DiskLruStore.keyFor(url + "#w" + targetWidth);
+        long now = System.currentTimeMillis();
+
+        DiskLruStore.Snapshot variant = store().get(key);
+        if (variant != null && now < variant.metadata.expiresAt) {
+            WebResourceResponse cached = respondFromDisk(variant);
+            if (cached != null) return cached;
+        }
+
+        WebResourceResponse original = WebAssetCache.getInstance(appContext).intercept(request);
+        if (original == null || original.getStatusCode() != 200 || original.getData() == null) return original;
+        if (skippedUrls.contains(url)) return original;
+
+        // Sin cambios en el servidor: la versión reducida sigue valiendo otro periodo
+        if (variant != null && sameValidators(variant.metadata, original.getResponseHeaders())) {
+            DiskLruStore.Metadata refreshed = variant.metadata;
+            refreshed.storedAt = now;
+            refreshed.expiresAt = now + lifetimeOf(original.getResponseHeaders());
+            store().updateMetadata(key, refreshed);
+            WebResourceResponse cached = respondFromDisk(new DiskLruStore.Snapshot(key, refreshed, variant.body));
+            if (cached != null) {
+                closeQuietly(original.getData());
+                return cached;
+            }
+        }
+
+        return optimize(url, key, original);
+    }
+
+    // =============================================
+    // REDUCCIÓN (pool de WORKERS hilos)
+    // =============================================
+
+    @Nullable
+    private WebResourceResponse optimize(String url, String key, WebResourceResponse original) {
+        File source;
+        try {
+            source = spool(original);
+        } catch (IOException e) {
+            return null;
+        }
+        if (source == null) {
+            // Demasiado grande: el original, tal cual se estaba leyendo
+            stats.skipped.incrementAndGet();
+            return original;
+        }
+
+        try {
+            WebResourceResponse reduced = reduce(url, key, original, source);
+            if (reduced != null) return reduced;
+            // El descriptor abierto sigue leyendo el temporal aunque se borre en el finally
+            original.setData(new FileInputStream(source));
+            return original;
+        } catch (IOException e) {
+            return null;
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            source.delete();
+        }
+    }
+
+    /**
+     * Versión reducida de la foto copiada en source, o null si hay que servir el original
+     */
+    @Nullable
+    private WebResourceResponse reduce(String url, String key, WebResourceResponse original, File source) {
+        long sourceLength = source.length();
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(source.getPath(), bounds);
+        int rotation = readRotation(source);
+        int width = rotation % 180 == 0 ? bounds.outWidth : bounds.outHeight;
+        if (bounds.outWidth <= 0 || width <= targetWidth) {
+            skip(url);
+            return null;
+        }
+
+        int sampleSize = sampleSizeFor(width, targetWidth);
+        long estimated = (bounds.outWidth / sampleSize + 1L) * (bounds.outHeight / sampleSize + 1L) * 4;
+        int decodedBytes = (int) Math.min(estimated, Integer.MAX_VALUE);
+        if (estimated > DECODE_BUDGET_BYTES || !decodeBudget.tryAcquire(decodedBytes)) {
+            // Otras fotos ocupan ya la memoria de decodificación: esta, sin reducir
+            stats.overBudget.incrementAndGet();
+            return null;
+        }
+
+        DiskLruStore.Editor editor = store().edit(key);
+        Future<Boolean> task;
+        try {
+            task = workers.submit(() -> {
+                try {
+                    return encode(source, sampleSize, rotation, editor.tempBody);
+                } finally {
+                    decodeBudget.release(decodedBytes);
+                    // Cancelada por lenta: el temporal pudo crearse después del abort()
+                    if (Thread.interrupted()) {
+                        //noinspection ResultOfMethodCallIgnored
+                        editor.tempBody.delete();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            decodeBudget.release(decodedBytes);
+            stats.overBudget.incrementAndGet();
+            return null;
+        }
+
+        boolean encoded;
+        try {
+            encoded = task.get(ENCODE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            task.cancel(true);
+            editor.abort();
+            Log.d(TAG, "Reducción demasiado lenta: " + url);
+            return null;
+        } catch (ExecutionException | InterruptedException e) {
+            editor.abort();
+            return null;
+        }
+        long webpLength = editor.tempBody.length();
+        if (!encoded || webpLength > sourceLength * MIN_REDUCTION) {
+            editor.abort();
+            skip(url);
+            return null;
+        }
+
+        InputStream webp;
+        try {
+            // Abierto antes de publicar: sigue valiendo aunque el almacén lo expulse enseguida
+            webp = new FileInputStream(editor.tempBody);
+        } catch (IOException e) {
+            editor.abort();
+            return null;
+        }
+        stats.optimized.incrementAndGet();
+        DiskLruStore.Metadata meta = variantMetadata(url, original, sourceLength);
+        try {
+            editor.commit(meta);
+        } catch (IOException e) {
+            Log.d(TAG, "No se pudo guardar la versión reducida: " + e.getMessage());
+        }
+        return respond(meta, webp, sourceLength, webpLength);
+    }
+
+    /**
+     * Decodifica ya reducida (inSampleSize), ajusta al ancho exacto, gira según EXIF y escribe
+     * el WebP en target. false si no se pudo decodificar o comprimir.
+     */
+    private boolean encode(File source, int sampleSize, int rotation, File target) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize;
+        Bitmap decoded = BitmapFactory.decodeFile(source.getPath(), options);
+        if (decoded == null) return false;
+
+        int width = rotation % 180 == 0 ? decoded.getWidth() : decoded.getHeight();
+        Matrix matrix = new Matrix();
+        float scale = Math.min(1f, targetWidth / (float) width);
+        if (scale < 1f) matrix.postScale(scale, scale);
+        if (rotation != 0) matrix.postRotate(rotation);
+        Bitmap output = matrix.isIdentity() ? decoded
+                : Bitmap.createBitmap(decoded, 0, 0, decoded.getWidth(), decoded.getHeight(), matrix, true);
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(target))) {
+            return output.compress(webpFormat(), WEBP_QUALITY, out);
+        } finally {
+            if (output != decoded) output.recycle();
+            decoded.recycle();
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Bitmap.CompressFormat webpFormat() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+                ? Bitmap.CompressFormat.WEBP_LOSSY : Bitmap.CompressFormat.WEBP;
+    }
+
+    /**
+     * Mayor potencia de 2 que deja el ancho todavía >= target
+     */
+    static int sampleSizeFor(int width, int target) {
+        int sampleSize = 1;
+        while (width / (sampleSize * 2) >= target) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private static int readRotation(File source) {
+        try {
+            ExifInterface exif = new ExifInterface(source.getPath());
+            switch (exif.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL)) {
+                case ExifInterface.ORIENTATION_ROTATE_90:
+                    return 90;
+                case ExifInterface.ORIENTATION_ROTATE_180:
+                    return 180;
+                case ExifInterface.ORIENTATION_ROTATE_270:
+                    return 270;
+                default:
+                    return 0;
+            }
+        } catch (IOException | RuntimeException e) {
+            return 0;
+        }
+    }
+
+    private void skip(String url) {
+        stats.skipped.incrementAndGet();
+        skippedUrls.add(url);
+    }
+
+    /**
+     * Copia el cuerpo a un temporal en disco si cabe en MAX_SOURCE_BYTES. Si no, devuelve null
+     * y deja en response un stream con lo ya copiado seguido del resto.
+     */
+    @Nullable
+    private File spool(WebResourceResponse response) throws IOException {
+        InputStream in = response.getData();
+        File temp = File.createTempFile("src", ".tmp", sourceDir());
+        long copied = 0;
+        try (OutputStream out = new FileOutputStream(temp)) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while (copied <= MAX_SOURCE_BYTES && (read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                copied += read;
+            }
+        } catch (IOException e) {
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            closeQuietly(in);
+            throw e;
+        }
+        if (copied > MAX_SOURCE_BYTES) {
+            InputStream head = new FileInputStream(temp);
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            response.setData(new SequenceInputStream(head, in));
+            return null;
+        }
+        in.close();
+        return temp;
+    }
+
+    // =============================================
+    // CACHÉ DE VERSIONES REDUCIDAS
+    // =============================================
+
+    private static DiskLruStore.Metadata variantMetadata(String url, WebResourceResponse original, long originalLength) {
+        Map<String, String> headers = original.getResponseHeaders();
+        DiskLruStore.Metadata meta = new DiskLruStore.Metadata();
+        meta.url = url;
+        meta.mimeType = "image/webp";
+        meta.storedAt = System.currentTimeMillis();
+        meta.expiresAt = meta.storedAt + lifetimeOf(headers);
+        meta.staleUntil = meta.expiresAt;
+        if (headers != null) {
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                String name = header.getKey().toLowerCase(Locale.ROOT);
+                if (name.equals("content-type") || name.equals("content-length")) continue;
+                meta.headers.put(header.getKey(), header.getValue());
+            }
+            meta.etag = valueOf(headers, "ETag");
+            meta.lastModified = valueOf(headers, "Last-Modified");
+        }
+        meta.headers.put(ORIGINAL_LENGTH_HEADER, String.valueOf(originalLength));
+        return meta;
+    }
+
+    private static boolean sameValidators(DiskLruStore.Metadata meta, @Nullable Map<String, String> headers) {
+        if (headers == null) return false;
+        String etag = valueOf(headers, "ETag");
+        String lastModified = valueOf(headers, "Last-Modified");
+        if (etag.isEmpty() && lastModified.isEmpty()) return false;
+        return etag.equals(meta.etag) && lastModified.equals(meta.lastModified);
+    }
+
+    private static long lifetimeOf(@Nullable Map<String, String> headers) {
+        WebAssetCache.CacheControl cc = WebAssetCache.CacheControl.parse(
+                headers != null ? valueOf(headers, "Cache-Control") : null);
+        if (cc.noStore || cc.noCache) return 0;
+        return cc.maxAgeSeconds >= 0 ? cc.maxAgeSeconds * 1000L : DEFAULT_LIFETIME_MS;
+    }
+
+    private static String valueOf(Map<String, String> headers, String name) {
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if (header.getKey() != null && header.getKey().equalsIgnoreCase(name)) {
+                return header.getValue() != null ? header.getValue() : "";
+            }
+        }
+        return "";
+    }
+
+    @Nullable
+    private WebResourceResponse respondFromDisk(DiskLruStore.Snapshot snapshot) {
+        try {
+            long originalLength = Long.parseLong(snapshot.metadata.headers.get(ORIGINAL_LENGTH_HEADER));
+            InputStream in = new FileInputStream(snapshot.body);
+            stats.fromCache.incrementAndGet();
+            return respond(snapshot.metadata, in, originalLength, snapshot.body.length());
+        } catch (IOException | NumberFormatException e) {
+            store().remove(snapshot.key);
+            return null;
+        }
+    }
+
+    private WebResourceResponse respond(DiskLruStore.Metadata meta, InputStream body,
+                                        long originalLength, long servedLength) {
+        stats.sessionOriginalBytes.addAndGet(originalLength);
+        stats.sessionReencodedBytes.addAndGet(servedLength);
+        stats.totalReencodeReductionBytes.addAndGet(originalLength - servedLength);
+
+        Map<String, String> headers = new HashMap<>(meta.headers);
+        headers.remove(ORIGINAL_LENGTH_HEADER);
+        return new WebResourceResponse(meta.mimeType, null, 200, "OK", headers, body);
+    }
+
+    private static void closeQuietly(InputStream in) {
+        try {
+            in.close();
+        } catch (IOException ignored) {
+            // Nada que hacer
+        }
+    }
+}
@@ -3,47 +3,52 @@ package com.buscandoadios.espana;
 import android.Manifest;
 import android.app.Activity;
 import android.app.AlertDialog;
-import android.app.DownloadManager;
-import android.content.BroadcastReceiver;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.pm.PackageManager;
-import android.database.Cursor;
 import android.graphics.Bitmap;
-import android.net.ConnectivityManager;
-import android.net.NetworkInfo;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Environment;
+import android.os.SystemClock;
 import android.provider.MediaStore;
+import android.util.Log;
 import android.view.KeyEvent;
 import android.view.View;
-import android.webkit.CookieManager;
+import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
 import android.webkit.DownloadListener;
 import android.webkit.GeolocationPermissions;
-import android.webkit.MimeTypeMap;
+import android.webkit.RenderProcessGoneDetail;
 import android.webkit.URLUtil;
 import android.webkit.ValueCallback;
-import android.webkit.WebChromeClient;
 import android.webkit.WebResourceError;
 import android.webkit.WebResourceRequest;
 import android.webkit.WebSettings;
 import android.webkit.WebView;
-import android.webkit.WebViewClient;
 import android.widget.Button;
 import android.widget.LinearLayout;
 import android.widget.ProgressBar;
+import android.widget.TextView;
 import android.widget.Toast;
 
+import androidx.annotation.ColorRes;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 import androidx.core.content.FileProvider;
+import androidx.lifecycle.Lifecycle;
 import androidx.swiperefreshlayout.widget.SwipeRefreshLayout;
 
+import com.buscandoadios.espana.core.NavigationPolicy;
+import com.tuapp.utils.DownloadHelper;
+import com.tuapp.utils.UploadQueue;
+
 import java.io.File;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
@@ -54,18 +59,49 @@ import java.util.Locale;
  * MainActivity - Actividad principal con WebView
  * Carga la web de Buscando a Dios España
  */
-public class MainActivity extends AppCompatActivity {
+public class MainActivity extends AppCompatActivity implements UploadBridge.Host {
+
+    private static final String TAG = "MainActivity";
 
     // =============================================
     // CONFIGURACIÓN - CAMBIAR AQUÍ LA URL
     // =============================================
-    private static final String WEB_URL = "https://buscandoadios-espana.com/";
+    static final String WEB_URL = "https://buscandoadios-espana.com/";
     // =============================================
 
+    // URL de inicio alternativa, solo para el build "benchmark" (ver resolveStartUrl)
+    static final String EXTRA_START_URL = "com.buscandoadios.espana.START_URL";
+
     private WebView webView;
     private ProgressBar progressBar;
     private LinearLayout noInternetLayout;
+    private TextView offlineBanner;
     private SwipeRefreshLayout swipeRefresh;
+    private String startUrl = WEB_URL;
+    private boolean fullyDrawnReported;
+
+    // Esqueleto de la portada mientras llega la web (AppShell), con sus tiempos de pintado
+    private static final long APP_SHELL_WAIT_MS = 50;
+    private LinearLayout appShellView;
+    private long createdAt;
+    private long shellPaintMs = -1;
+    private boolean startupPaintPending;
+
+    // Vuelta a donde estaba el usuario (muerte del proceso o del renderer), ver SessionState
+    private static final long SESSION_RESTORE_WAIT_MS = 100;
+    private static final long RENDERER_REBUILD_GAP_MS = 30_000;
+    private boolean restoringSession;
+    private int pendingScrollY;
+    private long lastRendererRebuildAt = -RENDERER_REBUILD_GAP_MS;
+
+    // Recarga automática al volver la red (con espera, para no recargar en bucle si la red va y viene)
+    private static final long RECONNECT_DEBOUNCE_MS = 1500;
+    private static final long MIN_AUTO_RELOAD_GAP_MS = 10_000;
+    private String failedMainFrameUrl;
+    private long lastAutoReloadAt;
+    private boolean reconnectPending;
+    private final Runnable reconnectReload = this::reloadAfterReconnect;
+    private final ConnectivityMonitor.Listener connectivityListener = this::onConnectivityChanged;
 
     // Para subir archivos
     private ValueCallback<Uri[]> filePathCallback;
@@ -73,94 +109,140 @@ public class MainActivity extends AppCompatActivity {
     private static final int FILE_CHOOSER_REQUEST = 1;
     private static final int PERMISSION_REQUEST = 2;
     private static final int STORAGE_PERMISSION_REQUEST = 3;
+    private static final int UPLOAD_CHOOSER_REQUEST = 4;
+
+    // Subidas nativas pedidas por la página (UploadBridge)
+    private String pendingUploadEndpoint;
+    private String pendingUploadTag;
+    private final UploadQueue.Listener uploadListener = upload -> {
+        if (webView != null) {
+            webView.evaluateJavascript(UploadBridge.eventScript(upload), null);
+        }
+    };
 
-    // Para descargas
-    private long currentDownloadId = -1;
-    private BroadcastReceiver downloadReceiver;
+    // Para descargas (cola compartida en DownloadQueue)
+    private DownloadHelper downloadHelper;
     private String pendingDownloadUrl;
     private String pendingDownloadMimeType;
     private String pendingDownloadFileName;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
-        super.onCreate(savedInstanceState);
-        setContentView(R.layout.activity_main);
-
-        // Inicializar vistas
-        webView = findViewById(R.id.webView);
-        progressBar = findViewById(R.id.progressBar);
-        noInternetLayout = findViewById(R.id.noInternetLayout);
-        swipeRefresh = findViewById(R.id.swipeRefresh);
-
-        // Configurar botón reintentar
-        Button btnRetry = findViewById(R.id.btnRetry);
-        btnRetry.setOnClickListener(v -> loadWebsite());
-
-        // Configurar SwipeRefresh (deslizar para actualizar)
-        swipeRefresh.setColorSchemeColors(
-            ContextCompat.getColor(this, R.color.dorado)
-        );
-        swipeRefresh.setOnRefreshListener(() -> {
-            webView.reload();
-        });
+        AppTrace.begin(AppTrace.MAIN_ON_CREATE);
+        try {
+            super.onCreate(savedInstanceState);
+            createdAt = SystemClock.uptimeMillis();
+            setContentView(R.layout.activity_main);
+            startUrl = resolveStartUrl(this, getIntent());
+
+            // Inicializar vistas
+            progressBar = findViewById(R.id.progressBar);
+            noInternetLayout = findViewById(R.id.noInternetLayout);
+            offlineBanner = findViewById(R.id.offlineBanner);
+            appShellView = findViewById(R.id.appShell);
+            swipeRefresh = findViewById(R.id.swipeRefresh);
+
+            // WebView precargado desde el splash (si lo hay) o uno del pool
+            WebViewPreloader preloader = WebViewPreloader.take(this);
+            webView = preloader != null ? preloader.getWebView() : WebViewPool.get(this).acquire(this);
+            swipeRefresh.addView(webView, new ViewGroup.LayoutParams(
+                    ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+
+            // Configurar botón reintentar
+            Button btnRetry = findViewById(R.id.btnRetry);
+            btnRetry.setOnClickListener(v -> loadWebsite());
+            // Desde una copia sin conexión, reintentar la página real
+            offlineBanner.setOnClickListener(v -> retryLivePage());
+
+            // Configurar SwipeRefresh (deslizar para actualizar)
+            swipeRefresh.setColorSchemeColors(
+                ContextCompat.getColor(this, R.color.dorado)
+            );
+            swipeRefresh.setOnRefreshListener(() -> {
+                if (failedMainFrameUrl != null) {
+                    retryLivePage();
+                } else {
+                    webView.reload();
+                }
+            });
+
+            // Descargas: varias a la vez, avisando al terminar cada una
+            AppTrace.begin(AppTrace.MAIN_SETUP_DOWNLOADS);
+            try {
+                downloadHelper = new DownloadHelper(this);
+            } finally {
+                AppTrace.end();
+            }
 
-        // Configurar receptor de descargas completadas
-        setupDownloadReceiver();
+            // Progreso de las subidas nativas, como eventos para la página
+            UploadQueue.get(this).addListener(uploadListener);
 
-        // Configurar WebView
-        setupWebView();
+            // Configurar WebView
+            setupWebView();
+
+            // Tras la muerte del proceso: la página, el historial y el desplazamiento de antes
+            SessionState.Snapshot session = SessionState.get(this).restore(savedInstanceState,
+                    SESSION_RESTORE_WAIT_MS);
 
-        // Cargar la web
-        loadWebsite();
+            // Si la portada aún no ha pintado, su esqueleto de la sesión anterior al instante
+            if (session == null && WEB_URL.equals(startUrl) && (preloader == null || !preloader.isReady())) {
+                showAppShell();
+            }
+
+            // Cargar la web (si el splash ya la cargó, solo sincronizar la barra de progreso)
+            if (session != null) {
+                restoreSession(session);
+            } else if (preloader != null && !preloader.hasMainFrameFailed()) {
+                int progress = webView.getProgress();
+                progressBar.setProgress(progress);
+                progressBar.setVisibility(progress < 100 ? View.VISIBLE : View.GONE);
+                if (preloader.isReady()) {
+                    reportFullyDrawnOnce();
+                }
+            } else {
+                loadWebsite();
+            }
+        } finally {
+            AppTrace.end();
+        }
     }
 
     private void setupWebView() {
-        WebSettings settings = webView.getSettings();
-        
-        // Habilitar JavaScript
-        settings.setJavaScriptEnabled(true);
-        
-        // Habilitar DOM Storage (localStorage)
-        settings.setDomStorageEnabled(true);
-        
-        // Habilitar caché
-        settings.setCacheMode(WebSettings.LOAD_DEFAULT);
-        
-        // Habilitar zoom
-        settings.setSupportZoom(true);
-        settings.setBuiltInZoomControls(true);
-        settings.setDisplayZoomControls(false);
-        
-        // Ajustar contenido al ancho
-        settings.setLoadWithOverviewMode(true);
-        settings.setUseWideViewPort(true);
-        
-        // Habilitar formularios
-        settings.setSaveFormData(true);
-        
-        // Habilitar acceso a archivos
-        settings.setAllowFileAccess(true);
-        settings.setAllowContentAccess(true);
-        
-        // Habilitar mixed content (HTTP en HTTPS) si es necesario
-        settings.setMixedContentMode(WebSettings.MIXED_CONTENT_COMPATIBILITY_MODE);
-        
-        // User Agent personalizado
-        String userAgent = settings.getUserAgentString();
-        settings.setUserAgentString(userAgent + " BuscandoADiosApp/1.0");
+        AppTrace.begin(AppTrace.MAIN_SETUP_WEBVIEW);
+        try {
+            configureWebView();
+        } finally {
+            AppTrace.end();
+        }
+    }
 
-        // Habilitar cookies persistentes
-        CookieManager cookieManager = CookieManager.getInstance();
-        cookieManager.setAcceptCookie(true);
-        cookieManager.setAcceptThirdPartyCookies(webView, true);
+    private void configureWebView() {
+        // Ajustes comunes (JavaScript, caché, zoom, user agent, cookies...)
+        WebViewConfigurator.applySettings(webView);
 
-        // Configurar WebViewClient
-        webView.setWebViewClient(new WebViewClient() {
+        // Configurar WebViewClient (la interceptación de recursos viene de SiteWebViewClient)
+        webView.setWebViewClient(new SiteWebViewClient() {
             @Override
             public void onPageStarted(WebView view, String url, Bitmap favicon) {
                 super.onPageStarted(view, url, favicon);
                 progressBar.setVisibility(View.VISIBLE);
                 noInternetLayout.setVisibility(View.GONE);
+                boolean offlineCopy = OfflineSnapshots.get(MainActivity.this).isSnapshotUrl(url);
+                offlineBanner.setVisibility(offlineCopy ? View.VISIBLE : View.GONE);
+            }
+
+            @Override
+            public void onPageCommitVisible(WebView view, String url) {
+                super.onPageCommitVisible(view, url);
+                // La copia sin conexión no cuenta: la página real sigue pendiente de recargar
+                if (!OfflineSnapshots.get(MainActivity.this).isSnapshotUrl(url)) {
+                    failedMainFrameUrl = null;
+                    // Ya pinta la web real: fuera el esqueleto
+                    hideAppShell();
+                    reportStartupPaint();
+                }
+                // Primer pintado de la página: fin del arranque para Macrobenchmark
+                reportFullyDrawnOnce();
             }
 
             @Override
@@ -168,56 +250,90 @@ public class MainActivity extends AppCompatActivity {
                 super.onPageFinished(view, url);
                 progressBar.setVisibility(View.GONE);
                 swipeRefresh.setRefreshing(false);
+
+                // La página pudo dejar cookies nuevas (inicio de sesión...)
+                CookieFlushScheduler.get().requestFlush();
+
+                if (restoringSession) {
+                    restoringSession = false;
+                    // Ya pintada desde la caché: lo siguiente, a la red como siempre
+                    view.getSettings().setCacheMode(WebSettings.LOAD_DEFAULT);
+                    if (pendingScrollY > 0 && view.getScrollY() == 0) {
+                        view.scrollTo(0, pendingScrollY);
+                    }
+                    pendingScrollY = 0;
+                }
+                // Historial al día por si el renderer muere
+                SessionState.get(MainActivity.this).capture(view);
+
+                // Copia para leerla sin conexión más adelante (si la página cargó bien)
+                if (failedMainFrameUrl == null) {
+                    OfflineSnapshots.get(MainActivity.this).capture(view, url);
+                }
+
+                // Con la página ya cargada, preparar un WebView de reserva en tiempo ocioso
+                WebViewPool.get(MainActivity.this).scheduleRefill();
             }
 
             @Override
             public void onReceivedError(WebView view, WebResourceRequest request, WebResourceError error) {
                 super.onReceivedError(view, request, error);
-                // Solo mostrar error si es la página principal
+                // Solo mostrar error si es la página principal (se recarga sola al volver la red)
                 if (request.isForMainFrame()) {
-                    showNoInternet();
+                    String url = request.getUrl().toString();
+                    if (OfflineSnapshots.get(MainActivity.this).isSnapshotUrl(url)) {
+                        // Falló la propia copia: no hay más que ofrecer
+                        showNoInternet();
+                        return;
+                    }
+                    failedMainFrameUrl = url;
+                    showOfflineCopyOrNoInternet(url);
                 }
             }
 
+            @Override
+            @RequiresApi(Build.VERSION_CODES.O)
+            public boolean onRenderProcessGone(WebView view, RenderProcessGoneDetail detail) {
+                if (view != webView) {
+                    return super.onRenderProcessGone(view, detail);
+                }
+                Log.w(TAG, "Renderer del WebView perdido (fallo: " + detail.didCrash() + ")");
+                // Antes de destruirlo: su URL y desplazamiento
+                SessionState.Snapshot snapshot = SessionState.get(MainActivity.this).forRebuild(view);
+                super.onRenderProcessGone(view, detail);
+                rebuildWebView(snapshot);
+                return true;
+            }
+
             @Override
             public boolean shouldOverrideUrlLoading(WebView view, WebResourceRequest request) {
                 String url = request.getUrl().toString();
-                
-                // Abrir enlaces externos en el navegador
-                if (!url.contains("buscandoadios-espana.com")) {
+
+                switch (NavigationPolicy.classify(url)) {
                     // Enlaces de teléfono
-                    if (url.startsWith("tel:")) {
-                        Intent intent = new Intent(Intent.ACTION_DIAL, Uri.parse(url));
-                        startActivity(intent);
+                    case DIAL:
+                        startActivity(new Intent(Intent.ACTION_DIAL, Uri.parse(url)));
                         return true;
-                    }
                     // Enlaces de email
-                    if (url.startsWith("mailto:")) {
-                        Intent intent = new Intent(Intent.ACTION_SENDTO, Uri.parse(url));
-                        startActivity(intent);
+                    case SEND_EMAIL:
+                        startActivity(new Intent(Intent.ACTION_SENDTO, Uri.parse(url)));
                         return true;
-                    }
-                    // Enlaces de WhatsApp
-                    if (url.contains("whatsapp.com") || url.contains("wa.me")) {
-                        Intent intent = new Intent(Intent.ACTION_VIEW, Uri.parse(url));
-                        startActivity(intent);
-                        return true;
-                    }
-                    // Otros enlaces externos
-                    if (url.startsWith("http://") || url.startsWith("https://")) {
-                        Intent intent = new Intent(Intent.ACTION_VIEW, Uri.parse(url));
-                        startActivity(intent);
+                    // Enlaces de WhatsApp y otros enlaces externos: al navegador / app
+                    case OPEN_WHATSAPP:
+                    case OPEN_EXTERNAL:
+                        startActivity(new Intent(Intent.ACTION_VIEW, Uri.parse(url)));
                         return true;
-                    }
+                    default:
+                        return false; // Cargar en WebView
                 }
-                return false; // Cargar en WebView
             }
         });
 
         // Configurar WebChromeClient (para subir archivos, geolocalización, etc.)
-        webView.setWebChromeClient(new WebChromeClient() {
+        webView.setWebChromeClient(new SiteWebChromeClient() {
             @Override
             public void onProgressChanged(WebView view, int newProgress) {
+                super.onProgressChanged(view, newProgress);
                 progressBar.setProgress(newProgress);
             }
 
@@ -286,61 +402,10 @@ public class MainActivity extends AppCompatActivity {
     }
 
     /**
-     * Inicia la descarga usando DownloadManager
+     * Inicia la descarga usando DownloadManager (a través de la cola de DownloadHelper)
      */
     private void startDownload(String url, String fileName, String mimeType, String userAgent) {
-        try {
-            // Crear request de descarga
-            DownloadManager.Request request = new DownloadManager.Request(Uri.parse(url));
-            
-            // Configurar notificación
-            request.setTitle(fileName);
-            request.setDescription("Descargando archivo...");
-            request.setNotificationVisibility(DownloadManager.Request.VISIBILITY_VISIBLE_NOTIFY_COMPLETED);
-            
-            // Destino: carpeta Descargas pública
-            request.setDestinationInExternalPublicDir(Environment.DIRECTORY_DOWNLOADS, fileName);
-            
-            // Permitir en datos móviles y roaming
-            request.setAllowedOverMetered(true);
-            request.setAllowedOverRoaming(true);
-            
-            // Headers
-            if (userAgent != null) {
-                request.addRequestHeader("User-Agent", userAgent);
-            }
-            
-            // Cookies del WebView
-            String cookies = CookieManager.getInstance().getCookie(url);
-            if (cookies != null) {
-                request.addRequestHeader("Cookie", cookies);
-            }
-            
-            // MIME type
-            if (mimeType != null && !mimeType.isEmpty()) {
-                request.setMimeType(mimeType);
-            } else {
-                // Intentar detectar por extensión
-                String extension = MimeTypeMap.getFileExtensionFromUrl(url);
-                if (extension != null) {
-                    String detectedMime = MimeTypeMap.getSingleton().getMimeTypeFromExtension(extension);
-                    if (detectedMime != null) {
-                        request.setMimeType(detectedMime);
-                    }
-                }
-            }
-            
-            // Obtener DownloadManager e iniciar descarga
-            DownloadManager downloadManager = (DownloadManager) getSystemService(Context.DOWNLOAD_SERVICE);
-            if (downloadManager != null) {
-                currentDownloadId = downloadManager.enqueue(request);
-                Toast.makeText(this, "📥 Descargando: " + fileName, Toast.LENGTH_SHORT).show();
-            }
-            
-        } catch (Exception e) {
-            e.printStackTrace();
-            Toast.makeText(this, "Error al iniciar descarga: " + e.getMessage(), Toast.LENGTH_LONG).show();
-            
+        if (!downloadHelper.downloadFile(url, fileName, mimeType, userAgent)) {
             // Fallback: abrir en navegador
             try {
                 Intent intent = new Intent(Intent.ACTION_VIEW, Uri.parse(url));
@@ -351,71 +416,238 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    private void loadWebsite() {
+        AppTrace.begin(AppTrace.MAIN_LOAD_WEBSITE);
+        try {
+            // La página local de prueba del build "benchmark" no necesita red
+            boolean isLocalPage = startUrl.startsWith("file:");
+            if (isLocalPage || ConnectivityMonitor.get(this).getState().isConnected()) {
+                noInternetLayout.setVisibility(View.GONE);
+                webView.setVisibility(View.VISIBLE);
+                webView.loadUrl(startUrl);
+            } else {
+                failedMainFrameUrl = startUrl;
+                showOfflineCopyOrNoInternet(startUrl);
+            }
+        } finally {
+            AppTrace.end();
+        }
+    }
+
+    // =============================================
+    // RESTAURACIÓN DE LA SESIÓN
+    // =============================================
+
     /**
-     * Configura el receptor para saber cuando termina la descarga
+     * Vuelve a la página e historial guardados, desde la caché HTTP sin esperar a la red
+     * (sin caché, o sin red, sigue el camino normal: red o copia sin conexión)
      */
-    private void setupDownloadReceiver() {
-        downloadReceiver = new BroadcastReceiver() {
-            @Override
-            public void onReceive(Context context, Intent intent) {
-                long id = intent.getLongExtra(DownloadManager.EXTRA_DOWNLOAD_ID, -1);
-                
-                if (id == currentDownloadId) {
-                    DownloadManager downloadManager = (DownloadManager) getSystemService(Context.DOWNLOAD_SERVICE);
-                    if (downloadManager != null) {
-                        DownloadManager.Query query = new DownloadManager.Query();
-                        query.setFilterById(id);
-                        Cursor cursor = downloadManager.query(query);
-                        
-                        if (cursor != null && cursor.moveToFirst()) {
-                            int statusIndex = cursor.getColumnIndex(DownloadManager.COLUMN_STATUS);
-                            int status = cursor.getInt(statusIndex);
-                            
-                            if (status == DownloadManager.STATUS_SUCCESSFUL) {
-                                Toast.makeText(MainActivity.this, "✅ Descarga completada", Toast.LENGTH_SHORT).show();
-                            } else if (status == DownloadManager.STATUS_FAILED) {
-                                Toast.makeText(MainActivity.this, "❌ Error en la descarga", Toast.LENGTH_SHORT).show();
-                            }
-                            cursor.close();
-                        }
-                    }
-                }
+    private void restoreSession(SessionState.Snapshot snapshot) {
+        AppTrace.begin(AppTrace.MAIN_RESTORE_SESSION);
+        try {
+            noInternetLayout.setVisibility(View.GONE);
+            webView.setVisibility(View.VISIBLE);
+            restoringSession = true;
+            pendingScrollY = snapshot.scrollY;
+            webView.getSettings().setCacheMode(WebSettings.LOAD_CACHE_ELSE_NETWORK);
+            Bundle state = snapshot.webStateBundle();
+            if (state == null || webView.restoreState(state) == null) {
+                webView.loadUrl(snapshot.url);
             }
-        };
-        
-        // Registrar el receptor
-        IntentFilter filter = new IntentFilter(DownloadManager.ACTION_DOWNLOAD_COMPLETE);
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
-            registerReceiver(downloadReceiver, filter, Context.RECEIVER_NOT_EXPORTED);
+            Log.i(TAG, "Restaurando " + snapshot.url + (state != null ? " con historial" : ""));
+        } finally {
+            AppTrace.end();
+        }
+    }
+
+    /**
+     * Nuevo WebView en lugar del que perdió su renderer, en la misma página si se puede
+     */
+    private void rebuildWebView(@Nullable SessionState.Snapshot snapshot) {
+        // Las reservas compartían el renderer muerto
+        WebViewPool.get(this).releaseSpares();
+        webView = WebViewPool.get(this).acquire(this);
+        swipeRefresh.addView(webView, new ViewGroup.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+        setupWebView();
+        restoringSession = false;
+        failedMainFrameUrl = null;
+
+        // Si vuelve a caer enseguida, la página puede ser la causa: a la portada
+        long now = SystemClock.uptimeMillis();
+        boolean repeated = now - lastRendererRebuildAt < RENDERER_REBUILD_GAP_MS;
+        lastRendererRebuildAt = now;
+        if (snapshot != null && !repeated) {
+            restoreSession(snapshot);
         } else {
-            registerReceiver(downloadReceiver, filter);
+            loadWebsite();
         }
+        Toast.makeText(this, "🔄 La página se ha vuelto a abrir", Toast.LENGTH_SHORT).show();
     }
 
-    private void loadWebsite() {
-        if (isNetworkAvailable()) {
+    // =============================================
+    // RECONEXIÓN
+    // =============================================
+
+    private void onConnectivityChanged(ConnectivityMonitor.State state) {
+        if (!state.isValidated()) {
+            // Sin red (o red que aún no llega a Internet): esperar a que vuelva
+            webView.removeCallbacks(reconnectReload);
+            reconnectPending = false;
+            return;
+        }
+        if (failedMainFrameUrl == null || reconnectPending) return;
+        reconnectPending = true;
+        long earliest = lastAutoReloadAt + MIN_AUTO_RELOAD_GAP_MS - SystemClock.uptimeMillis();
+        webView.postDelayed(reconnectReload, Math.max(RECONNECT_DEBOUNCE_MS, earliest));
+    }
+
+    private void reloadAfterReconnect() {
+        reconnectPending = false;
+        String url = failedMainFrameUrl;
+        if (url == null || !ConnectivityMonitor.get(this).getState().isValidated()) return;
+        lastAutoReloadAt = SystemClock.uptimeMillis();
+        Log.i(TAG, "Red recuperada: recargando " + url);
+        noInternetLayout.setVisibility(View.GONE);
+        webView.setVisibility(View.VISIBLE);
+        webView.loadUrl(url);
+    }
+
+    /**
+     * URL con la que arranca la app. Solo el build "benchmark" acepta EXTRA_START_URL.
+     */
+    static String resolveStartUrl(Context context, Intent intent) {
+        if (intent != null && context.getResources().getBoolean(R.bool.benchmark_mode)) {
+            String url = intent.getStringExtra(EXTRA_START_URL);
+            if (url != null) {
+                return url;
+            }
+        }
+        return WEB_URL;
+    }
+
+    private void reportFullyDrawnOnce() {
+        if (fullyDrawnReported) return;
+        fullyDrawnReported = true;
+        reportFullyDrawn();
+    }
+
+    /**
+     * Sin red: la copia sin conexión de url si la hay (con el aviso arriba), si no "Sin conexión"
+     */
+    private void showOfflineCopyOrNoInternet(String url) {
+        // Mientras se busca la copia, no enseñar la página de error del WebView
+        hideAppShell();
+        progressBar.setVisibility(View.GONE);
+        swipeRefresh.setRefreshing(false);
+        webView.setVisibility(View.INVISIBLE);
+        OfflineSnapshots.get(this).find(url, snapshot -> {
+            // Entre tanto la Activity pudo cerrarse o la navegación seguir a otra página
+            if (isDestroyed() || !url.equals(failedMainFrameUrl)) return;
+            if (snapshot == null) {
+                showNoInternet();
+                return;
+            }
+            Log.i(TAG, "Sin red: abriendo la copia de " + url);
             noInternetLayout.setVisibility(View.GONE);
             webView.setVisibility(View.VISIBLE);
-            webView.loadUrl(WEB_URL);
-        } else {
-            showNoInternet();
-        }
+            webView.loadUrl(Uri.fromFile(snapshot.file).toString());
+        });
+    }
+
+    /**
+     * Vuelve a pedir la página que falló (desde la copia sin conexión)
+     */
+    private void retryLivePage() {
+        String url = failedMainFrameUrl;
+        if (url == null) return;
+        webView.loadUrl(url);
     }
 
     private void showNoInternet() {
+        hideAppShell();
         progressBar.setVisibility(View.GONE);
         swipeRefresh.setRefreshing(false);
         webView.setVisibility(View.GONE);
+        offlineBanner.setVisibility(View.GONE);
         noInternetLayout.setVisibility(View.VISIBLE);
     }
 
-    private boolean isNetworkAvailable() {
-        ConnectivityManager cm = (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
-        if (cm != null) {
-            NetworkInfo activeNetwork = cm.getActiveNetworkInfo();
-            return activeNetwork != null && activeNetwork.isConnected();
+    // =============================================
+    // ESQUELETO DE LA PORTADA (AppShell)
+    // =============================================
+
+    private void showAppShell() {
+        // Normalmente ya está leído (BuscandoADiosApp lo pide al arrancar el proceso)
+        AppShell.Data data = AppShell.get(this).await(APP_SHELL_WAIT_MS);
+        TextView title = findViewById(R.id.appShellTitle);
+        LinearLayout menu = findViewById(R.id.appShellMenu);
+        LinearLayout headlines = findViewById(R.id.appShellHeadlines);
+
+        if (data != null) {
+            if (!data.siteName.isEmpty()) title.setText(data.siteName);
+            for (AppShell.Link link : data.menu) {
+                menu.addView(shellLink(link, 14, R.color.dorado_oscuro));
+            }
+            for (AppShell.Link link : data.headlines) {
+                headlines.addView(shellLink(link, 17, R.color.texto_oscuro));
+            }
+        }
+        if (headlines.getChildCount() == 0) {
+            // Primera vez (sin sesión anterior): barras de relleno
+            for (int i = 0; i < 5; i++) {
+                View bar = new View(this);
+                bar.setBackgroundColor(ContextCompat.getColor(this, R.color.texto_gris));
+                bar.setAlpha(0.15f);
+                LinearLayout.LayoutParams params = new LinearLayout.LayoutParams(
+                        i % 2 == 0 ? ViewGroup.LayoutParams.MATCH_PARENT : dp(220), dp(18));
+                params.bottomMargin = dp(20);
+                headlines.addView(bar, params);
+            }
         }
-        return false;
+
+        appShellView.setVisibility(View.VISIBLE);
+        startupPaintPending = true;
+        appShellView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                appShellView.getViewTreeObserver().removeOnPreDrawListener(this);
+                shellPaintMs = SystemClock.uptimeMillis() - createdAt;
+                return true;
+            }
+        });
+    }
+
+    private TextView shellLink(AppShell.Link link, int textSizeSp, @ColorRes int color) {
+        TextView view = new TextView(this);
+        view.setText(link.text);
+        view.setTextSize(textSizeSp);
+        view.setTextColor(ContextCompat.getColor(this, color));
+        view.setPadding(dp(8), dp(8), dp(8), dp(8));
+        // Tocar un enlace del esqueleto ya navega (el esqueleto sigue hasta que pinte)
+        view.setOnClickListener(v -> webView.loadUrl(link.href));
+        return view;
+    }
+
+    private void hideAppShell() {
+        if (appShellView.getVisibility() != View.VISIBLE) return;
+        appShellView.animate().alpha(0f).setDuration(150).withEndAction(() -> {
+            appShellView.setVisibility(View.GONE);
+            appShellView.setAlpha(1f);
+        });
+    }
+
+    /**
+     * Tiempos del arranque con esqueleto: primer pintado del esqueleto y de la web real
+     */
+    private void reportStartupPaint() {
+        if (!startupPaintPending) return;
+        startupPaintPending = false;
+        PageLoadMetrics.get(this).onStartupPainted(shellPaintMs, SystemClock.uptimeMillis() - createdAt);
+    }
+
+    private int dp(int value) {
+        return Math.round(value * getResources().getDisplayMetrics().density);
     }
 
     // =============================================
@@ -469,6 +701,22 @@ public class MainActivity extends AppCompatActivity {
         startActivityForResult(chooserIntent, FILE_CHOOSER_REQUEST);
     }
 
+    /**
+     * La página pide subir archivos por UploadQueue (AndroidUploads.pick)
+     */
+    @Override
+    public void pickFilesForUpload(String endpoint, String tag) {
+        pendingUploadEndpoint = endpoint;
+        pendingUploadTag = tag;
+
+        Intent intent = new Intent(Intent.ACTION_GET_CONTENT);
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        intent.setType("*/*");
+        intent.putExtra(Intent.EXTRA_MIME_TYPES, new String[]{"image/*", "application/pdf"});
+        intent.putExtra(Intent.EXTRA_ALLOW_MULTIPLE, true);
+        startActivityForResult(Intent.createChooser(intent, "Seleccionar archivo"), UPLOAD_CHOOSER_REQUEST);
+    }
+
     private File createImageFile() throws IOException {
         String timeStamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
         String imageFileName = "JPEG_" + timeStamp + "_";
@@ -478,31 +726,75 @@ public class MainActivity extends AppCompatActivity {
 
     @Override
     protected void onActivityResult(int requestCode, int resultCode, Intent data) {
-        super.onActivityResult(requestCode, resultCode, data);
+        AppTrace.begin(AppTrace.MAIN_ON_ACTIVITY_RESULT);
+        try {
+            super.onActivityResult(requestCode, resultCode, data);
+
+            if (requestCode == UPLOAD_CHOOSER_REQUEST) {
+                String endpoint = pendingUploadEndpoint;
+                String tag = pendingUploadTag;
+                pendingUploadEndpoint = null;
+                pendingUploadTag = null;
+                if (resultCode != Activity.RESULT_OK || data == null || endpoint == null) return;
+
+                Uri[] chosen;
+                if (data.getClipData() != null) {
+                    chosen = new Uri[data.getClipData().getItemCount()];
+                    for (int i = 0; i < chosen.length; i++) {
+                        chosen[i] = data.getClipData().getItemAt(i).getUri();
+                    }
+                } else if (data.getData() != null) {
+                    chosen = new Uri[]{data.getData()};
+                } else {
+                    return;
+                }
+
+                // Las fotos se reducen antes, igual que en el selector normal
+                UploadQueue queue = UploadQueue.get(this);
+                UploadImageProcessor.get(this).process(chosen, false, processed -> {
+                    for (Uri uri : processed) {
+                        queue.enqueue(uri, endpoint, tag, null);
+                    }
+                });
+                return;
+            }
 
-        if (requestCode == FILE_CHOOSER_REQUEST) {
-            if (filePathCallback == null) return;
+            if (requestCode == FILE_CHOOSER_REQUEST) {
+                if (filePathCallback == null) return;
 
-            Uri[] results = null;
+                Uri[] results = null;
+                boolean fromCamera = false;
 
-            if (resultCode == Activity.RESULT_OK) {
-                if (data == null || data.getData() == null) {
-                    // Foto de cámara
-                    if (cameraPhotoPath != null) {
-                        results = new Uri[]{Uri.fromFile(new File(cameraPhotoPath))};
+                if (resultCode == Activity.RESULT_OK) {
+                    if (data == null || data.getData() == null) {
+                        // Foto de cámara
+                        if (cameraPhotoPath != null) {
+                            results = new Uri[]{Uri.fromFile(new File(cameraPhotoPath))};
+                            fromCamera = true;
+                        }
+                    } else {
+                        // Archivo seleccionado
+                        String dataString = data.getDataString();
+                        if (dataString != null) {
+                            results = new Uri[]{Uri.parse(dataString)};
+                        }
                     }
+                }
+
+                ValueCallback<Uri[]> callback = filePathCallback;
+                filePathCallback = null;
+                cameraPhotoPath = null;
+
+                if (results == null) {
+                    callback.onReceiveValue(null);
                 } else {
-                    // Archivo seleccionado
-                    String dataString = data.getDataString();
-                    if (dataString != null) {
-                        results = new Uri[]{Uri.parse(dataString)};
-                    }
+                    // Fotos reducidas y recomprimidas en segundo plano antes de subirlas
+                    // (la foto temporal de la cámara ya no hace falta después)
+                    UploadImageProcessor.get(this).process(results, fromCamera, callback::onReceiveValue);
                 }
             }
-
-            filePathCallback.onReceiveValue(results);
-            filePathCallback = null;
-            cameraPhotoPath = null;
+        } finally {
+            AppTrace.end();
         }
     }
 
@@ -570,29 +862,82 @@ public class MainActivity extends AppCompatActivity {
     protected void onResume() {
         super.onResume();
         webView.onResume();
-        CookieManager.getInstance().flush();
     }
 
     @Override
     protected void onPause() {
         super.onPause();
         webView.onPause();
-        CookieManager.getInstance().flush();
+        // Cookies a disco en segundo plano (agrupado con otras peticiones cercanas)
+        CookieFlushScheduler.get().requestFlush();
+        Log.i(TAG, "Caché de recursos: " + WebAssetCache.getInstance(this).getStats());
+        Log.i(TAG, "Precarga: " + PagePrefetcher.get(this).getStats());
+        Log.i(TAG, "Imágenes: " + ImageOptimizer.get(this).getStats());
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        // Por si se pausaron al faltar memoria en segundo plano (MemoryTrimManager)
+        webView.resumeTimers();
+        // Si la página falló sin red y la red ya volvió mientras tanto, se recarga
+        ConnectivityMonitor.get(this).addListener(connectivityListener, true);
+        // Cada vuelta a primer plano, presupuesto de precarga nuevo
+        PagePrefetcher.get(this).startSession();
+        // Y ahorro de imágenes contado desde cero
+        ImageOptimizer.get(this).startSession();
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        // En segundo plano el proceso puede morir: las cookies, guardadas ya
+        CookieFlushScheduler.get().flushNow();
+        // Y dónde estaba el usuario, también en disco
+        SessionState.get(this).save(webView, null);
+        ConnectivityMonitor.get(this).removeListener(connectivityListener);
+        webView.removeCallbacks(reconnectReload);
+        reconnectPending = false;
+        // En segundo plano no se precarga nada
+        PagePrefetcher.get(this).cancel();
+        // Guardar las métricas de carga pendientes al pasar a segundo plano
+        PageLoadMetrics.get(this).flushAsync();
+    }
+
+    @Override
+    protected void onSaveInstanceState(@NonNull Bundle outState) {
+        super.onSaveInstanceState(outState);
+        SessionState.get(this).save(webView, outState);
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (webView != null) {
+            boolean visible = getLifecycle().getCurrentState().isAtLeast(Lifecycle.State.STARTED);
+            MemoryTrimManager.get(this).trimWebView(webView, level, visible);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        if (webView != null) {
+            boolean visible = getLifecycle().getCurrentState().isAtLeast(Lifecycle.State.STARTED);
+            MemoryTrimManager.get(this).trimWebView(webView, ComponentCallbacks2.TRIM_MEMORY_COMPLETE, visible);
+        }
     }
 
     @Override
     protected void onDestroy() {
-        // Desregistrar receptor de descargas
-        if (downloadReceiver != null) {
-            try {
-                unregisterReceiver(downloadReceiver);
-            } catch (Exception e) {
-                // Ignorar si no estaba registrado
-            }
+        // Dejar de escuchar las colas de descargas y subidas (siguen en marcha)
+        if (downloadHelper != null) {
+            downloadHelper.unregister();
         }
+        UploadQueue.get(this).removeListener(uploadListener);
         
         if (webView != null) {
-            webView.destroy();
+            WebViewPool.get(this).release(webView);
         }
         super.onDestroy();
     }
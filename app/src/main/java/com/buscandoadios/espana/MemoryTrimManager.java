@@ -0,0 +1,118 @@
+package com.buscandoadios.espana;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.webkit.WebView;
+
+import androidx.annotation.MainThread;
+
+/**
+ * MemoryTrimManager - Qué se suelta cuando el sistema pide memoria (onTrimMemory / onLowMemory)
+ *
+ * En gama baja el sistema mata el proceso entero en segundo plano y la siguiente apertura es un
+ * arranque en frío. Cada nivel de onTrimMemory cae en un escalón, y cada escalón suelta más:
+ *  - MODERADO (RUNNING_MODERATE, UI_HIDDEN): el bitmap decodificado de las subidas y las
+ *    páginas precargadas ya caducadas. UI_HIDDEN llega cada vez que la app pasa a segundo
+ *    plano: solo se suelta lo que ya no sirve
+ *  - BAJO (RUNNING_LOW, BACKGROUND): además todas las páginas precargadas y los WebView de
+ *    reserva; si MainActivity no se ve, se pausan los temporizadores del WebView
+ *  - CRÍTICO (RUNNING_CRITICAL, MODERATE, COMPLETE, onLowMemory): además la caché en memoria
+ *    del WebView (clearCache(false): la de disco se conserva)
+ * Solo se suelta memoria: las cachés en disco (WebAssetCache, ImageOptimizer) no liberan RAM y
+ * se quedan como están, con su propio tamaño máximo.
+ * Cada acción queda en PageLoadMetrics (files/metrics/memory_trims.csv) junto a los arranques
+ * en frío del proceso. Todo se llama desde el hilo principal.
+ */
+public final class MemoryTrimManager {
+
+    static final int TIER_NONE = 0;
+    static final int TIER_MODERATE = 1;
+    static final int TIER_LOW = 2;
+    static final int TIER_CRITICAL = 3;
+
+    private static MemoryTrimManager instance;
+
+    private final Context appContext;
+    private final PageLoadMetrics metrics;
+
+    @MainThread
+    public static MemoryTrimManager get(Context context) {
+        if (instance == null) {
+            instance = new MemoryTrimManager(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private MemoryTrimManager(Context appContext) {
+        this.appContext = appContext;
+        this.metrics = PageLoadMetrics.get(appContext);
+    }
+
+    /**
+     * Escalón que corresponde a un nivel de onTrimMemory
+     */
+    static int tierFor(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) return TIER_CRITICAL;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) return TIER_LOW;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) return TIER_MODERATE;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) return TIER_CRITICAL;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) return TIER_LOW;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) return TIER_MODERATE;
+        return TIER_NONE;
+    }
+
+    /**
+     * Arranque del proceso (BuscandoADiosApp.onCreate): si antes hubo recortes en segundo
+     * plano, en memory_trims.csv se ve si el sistema acabó matando el proceso
+     */
+    @MainThread
+    public void onProcessStart() {
+        metrics.onMemoryTrim(-1, "cold_start", -1);
+    }
+
+    /**
+     * Cachés de la aplicación (desde BuscandoADiosApp)
+     */
+    @MainThread
+    public void onTrimMemory(int level) {
+        int tier = tierFor(level);
+        if (tier == TIER_NONE) return;
+
+        // El bitmap vive en el hilo de UploadImageProcessor: se apunta cuando se suelta
+        UploadImageProcessor.get(appContext).releaseDecodedBitmap(
+                bytes -> metrics.onMemoryTrim(level, "drop_decoded_images", bytes));
+
+        long pageBytes = PagePrefetcher.get(appContext).trimMemory(tier >= TIER_LOW);
+        if (pageBytes > 0) {
+            metrics.onMemoryTrim(level, "drop_prefetched_pages", pageBytes);
+        }
+
+        if (tier >= TIER_LOW && WebViewPool.get(appContext).releaseSpares() > 0) {
+            metrics.onMemoryTrim(level, "release_spare_webviews", -1);
+        }
+
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            // El proceso puede morir pronto: cookies y métricas a disco sin esperar
+            CookieFlushScheduler.get().flushNow();
+            metrics.flushAsync();
+        }
+    }
+
+    /**
+     * WebView de MainActivity (desde su onTrimMemory). visible: la Activity está entre
+     * onStart y onStop.
+     */
+    @MainThread
+    public void trimWebView(WebView webView, int level, boolean visible) {
+        int tier = tierFor(level);
+        if (tier >= TIER_LOW && !visible) {
+            // pauseTimers() vale para todos los WebView del proceso: MainActivity los reanuda en onStart
+            webView.pauseTimers();
+            metrics.onMemoryTrim(level, "pause_webview_timers", -1);
+        }
+        if (tier == TIER_CRITICAL) {
+            webView.clearCache(false);
+            metrics.onMemoryTrim(level, "clear_webview_memory_cache", -1);
+        }
+    }
+}
@@ -0,0 +1,429 @@
+package com.buscandoadios.espana;
+
+import android.content.Context;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+import android.webkit.JavascriptInterface;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.Nullable;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * NetworkTracer - Traza de red de cada petición, exportable a Perfetto / chrome://tracing
+ *
+ * Solo graba entre start() y stopAndExportAsync() (órdenes de DebugCommandReceiver). Fuentes:
+ *  - shouldInterceptRequest: cuánto tarda cada petición del WebView en resolverse y quién la
+ *    sirve (prefetch, apk, image, cache o webview si sigue su camino)
+ *  - SiteHttpClient: DNS, TCP, TLS, espera del primer byte y cuerpo de cada llamada de OkHttp
+ *  - la página: entradas 'resource' y 'navigation' de PerformanceObserver por un puente JS
+ *    (también las peticiones que el WebView hace por su cuenta)
+ * Cada hilo escribe en su propio buffer sin bloqueos (un solo escritor que publica con un
+ * contador volatile); el volcado solo lee lo ya publicado. Se exporta como JSON de Trace
+ * Event a files/metrics/network-trace-*.json. Todo en tiempo de reloj (µs desde epoch) para
+ * poder alinear los tiempos de la página (timeOrigin) con los nativos.
+ */
+public final class NetworkTracer {
+
+    private static final String TAG = "NetworkTracer";
+
+    static final String JS_BRIDGE_NAME = "BuscandoADiosNetTrace";
+
+    // Eventos por hilo y sesión; los que no caben se cuentan y se descartan
+    private static final int THREAD_CAPACITY = 4096;
+    private static final long JS_FLUSH_MS = 1000;
+
+    static final String SOURCE_PREFETCH = "prefetch";
+    static final String SOURCE_APK = "apk";
+    static final String SOURCE_IMAGE = "image";
+    static final String SOURCE_CACHE = "cache";
+    static final String SOURCE_WEBVIEW = "webview";
+
+    // Envía en lotes las entradas de Resource/Navigation Timing (también las anteriores al script)
+    static final String RESOURCE_SCRIPT = "(function(){"
+            + "var b=window." + JS_BRIDGE_NAME + ";"
+            + "if(!b||!window.PerformanceObserver||window.__badNetTrace)return;window.__badNetTrace=1;"
+            + "var q=[],t=0;"
+            + "function flush(){t=0;if(!q.length)return;"
+            + "b.entries(JSON.stringify({o:performance.timeOrigin,e:q}));q=[];}"
+            + "function watch(type){try{new PerformanceObserver(function(l){"
+            + "l.getEntries().forEach(function(e){q.push({n:e.name,i:e.initiatorType||type,"
+            + "p:e.nextHopProtocol,s:e.startTime,ds:e.domainLookupStart,de:e.domainLookupEnd,"
+            + "cs:e.connectStart,ss:e.secureConnectionStart,ce:e.connectEnd,qs:e.requestStart,"
+            + "rs:e.responseStart,re:e.responseEnd,ts:e.transferSize,bs:e.encodedBodySize});});"
+            + "if(!t)t=setTimeout(flush," + JS_FLUSH_MS + ");"
+            + "}).observe({type:type,buffered:true});}catch(x){}}"
+            + "watch('navigation');watch('resource');"
+            + "window.addEventListener('pagehide',flush);"
+            + "})();";
+
+    private static volatile NetworkTracer instance;
+
+    // null: sin grabar
+    @Nullable private volatile Session session;
+    private final ThreadLocal<ThreadBuffer> buffers = new ThreadLocal<>();
+    private final AtomicLong nextId = new AtomicLong();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "NetworkTracer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Tiempos de una llamada de OkHttp (System.nanoTime, 0 si la fase no ocurrió).
+     * Lo rellena un EventListener por llamada en SiteHttpClient.
+     */
+    static final class HttpTiming {
+        String url;
+        @Nullable String protocol;
+        @Nullable String error;
+        long callStart;
+        long dnsStart;
+        long dnsEnd;
+        long connectStart;
+        long secureConnectStart;
+        long secureConnectEnd;
+        long connectEnd;
+        long requestStart;
+        long responseStart;
+        long callEnd;
+    }
+
+    /**
+     * Una grabación: el reloj de referencia y los buffers de los hilos que han escrito en ella
+     */
+    private static final class Session {
+        final long startEpochMicros = System.currentTimeMillis() * 1000;
+        final long startNanos = System.nanoTime();
+        final ConcurrentLinkedQueue<ThreadBuffer> buffers = new ConcurrentLinkedQueue<>();
+
+        long epochMicros(long nanos) {
+            return startEpochMicros + (nanos - startNanos) / 1000;
+        }
+    }
+
+    /**
+     * Eventos de un hilo en una sesión. Solo escribe el hilo dueño; count (volatile) se
+     * incrementa después de rellenar la posición, así quien lee hasta count ve datos completos.
+     */
+    private static final class ThreadBuffer {
+        final Session session;
+        final int tid = Process.myTid();
+        final String threadName = Thread.currentThread().getName();
+        final String[] names = new String[THREAD_CAPACITY];
+        final String[] categories = new String[THREAD_CAPACITY];
+        final long[] starts = new long[THREAD_CAPACITY];
+        final long[] ends = new long[THREAD_CAPACITY];
+        final long[] asyncIds = new long[THREAD_CAPACITY];
+        final String[] args = new String[THREAD_CAPACITY];
+        volatile int count;
+        int dropped;
+
+        ThreadBuffer(Session session) {
+            this.session = session;
+        }
+
+        void add(String name, String category, long startMicros, long endMicros, long asyncId,
+                 @Nullable String argsJson) {
+            int i = count;
+            if (i >= THREAD_CAPACITY) {
+                dropped++;
+                return;
+            }
+            names[i] = name;
+            categories[i] = category;
+            starts[i] = startMicros;
+            ends[i] = Math.max(startMicros, endMicros);
+            asyncIds[i] = asyncId;
+            args[i] = argsJson;
+            count = i + 1;
+        }
+    }
+
+    @AnyThread
+    public static NetworkTracer get() {
+        if (instance == null) {
+            synchronized (NetworkTracer.class) {
+                if (instance == null) {
+                    instance = new NetworkTracer();
+                }
+            }
+        }
+        return instance;
+    }
+
+    private NetworkTracer() {
+    }
+
+    @AnyThread
+    public boolean isEnabled() {
+        return session != null;
+    }
+
+    // =============================================
+    // GRABACIÓN
+    // =============================================
+
+    /**
+     * Empieza una grabación nueva (descarta la anterior si no se exportó)
+     */
+    @AnyThread
+    public void start() {
+        session = new Session();
+        Log.i(TAG, "Grabando la traza de red");
+    }
+
+    /**
+     * Deja de grabar y escribe la traza en segundo plano
+     */
+    @AnyThread
+    public void stopAndExportAsync(Context context) {
+        Session finished = session;
+        session = null;
+        if (finished == null) {
+            Log.w(TAG, "No se estaba grabando ninguna traza");
+            return;
+        }
+        Context appContext = context.getApplicationContext();
+        executor.execute(() -> export(appContext, finished));
+    }
+
+    /**
+     * Petición del WebView resuelta en shouldInterceptRequest (en el hilo de la petición)
+     */
+    void onIntercepted(WebResourceRequest request, String source, long startNanos,
+                       @Nullable WebResourceResponse response) {
+        Session s = session;
+        if (s == null) return;
+        long end = System.nanoTime();
+        String url = request.getUrl().toString();
+        StringBuilder json = new StringBuilder(128);
+        json.append("{\"url\":").append(JSONObject.quote(url))
+                .append(",\"method\":").append(JSONObject.quote(request.getMethod()))
+                .append(",\"source\":").append(JSONObject.quote(source))
+                .append(",\"mainFrame\":").append(request.isForMainFrame());
+        if (response != null) {
+            json.append(",\"status\":").append(response.getStatusCode());
+            if (response.getMimeType() != null) {
+                json.append(",\"mime\":").append(JSONObject.quote(response.getMimeType()));
+            }
+        }
+        json.append('}');
+        buffer(s).add("intercept " + source + " " + shortName(url), "intercept",
+                s.epochMicros(startNanos), s.epochMicros(end), 0, json.toString());
+    }
+
+    /**
+     * Llamada de OkHttp terminada: la llamada y cada fase como eventos asíncronos anidados
+     */
+    void onHttpCall(HttpTiming t) {
+        Session s = session;
+        if (s == null || t.callStart == 0) return;
+        ThreadBuffer buffer = buffer(s);
+        long id = nextId.incrementAndGet();
+        StringBuilder json = new StringBuilder(128);
+        json.append("{\"url\":").append(JSONObject.quote(t.url))
+                .append(",\"reused\":").append(t.connectStart == 0);
+        if (t.protocol != null) json.append(",\"protocol\":").append(JSONObject.quote(t.protocol));
+        if (t.error != null) json.append(",\"error\":").append(JSONObject.quote(t.error));
+        json.append('}');
+
+        buffer.add("http " + shortName(t.url), "okhttp", s.epochMicros(t.callStart),
+                s.epochMicros(t.callEnd), id, json.toString());
+        addPhase(buffer, s, "dns", t.dnsStart, t.dnsEnd, id);
+        addPhase(buffer, s, "connect", t.connectStart, t.connectEnd, id);
+        addPhase(buffer, s, "tls", t.secureConnectStart, t.secureConnectEnd, id);
+        addPhase(buffer, s, "ttfb", t.requestStart, t.responseStart, id);
+        addPhase(buffer, s, "download", t.responseStart, t.callEnd, id);
+    }
+
+    private static void addPhase(ThreadBuffer buffer, Session s, String name, long startNanos,
+                                 long endNanos, long id) {
+        if (startNanos == 0 || endNanos < startNanos) return;
+        buffer.add(name, "okhttp", s.epochMicros(startNanos), s.epochMicros(endNanos), id, null);
+    }
+
+    /**
+     * Lote del puente JS: {o: timeOrigin, e: [entradas]} con tiempos en ms desde timeOrigin
+     */
+    void onResourceEntries(String json) {
+        Session s = session;
+        if (s == null) return;
+        ThreadBuffer buffer = buffer(s);
+        try {
+            JSONObject batch = new JSONObject(json);
+            double origin = batch.getDouble("o");
+            JSONArray entries = batch.getJSONArray("e");
+            for (int i = 0; i < entries.length(); i++) {
+                addResource(buffer, origin, entries.getJSONObject(i));
+            }
+        } catch (JSONException e) {
+            Log.d(TAG, "Lote de tiempos no válido: " + e.getMessage());
+        }
+    }
+
+    private void addResource(ThreadBuffer buffer, double origin, JSONObject e) {
+        String url = e.optString("n");
+        long id = nextId.incrementAndGet();
+        StringBuilder json = new StringBuilder(128);
+        json.append("{\"url\":").append(JSONObject.quote(url))
+                .append(",\"initiator\":").append(JSONObject.quote(e.optString("i")))
+                .append(",\"transferSize\":").append(e.optLong("ts"))
+                .append(",\"encodedBodySize\":").append(e.optLong("bs"));
+        String protocol = e.optString("p");
+        if (!protocol.isEmpty()) json.append(",\"protocol\":").append(JSONObject.quote(protocol));
+        json.append('}');
+
+        double start = e.optDouble("s", 0);
+        double end = e.optDouble("re", 0);
+        buffer.add(e.optString("i") + " " + shortName(url), "resource", micros(origin, start),
+                micros(origin, Math.max(start, end)), id, json.toString());
+        // Sin Timing-Allow-Origin, las fases de otros dominios llegan a 0 y no se pintan
+        addPhase(buffer, origin, "dns", e.optDouble("ds", 0), e.optDouble("de", 0), id);
+        addPhase(buffer, origin, "connect", e.optDouble("cs", 0), e.optDouble("ce", 0), id);
+        addPhase(buffer, origin, "tls", e.optDouble("ss", 0), e.optDouble("ce", 0), id);
+        addPhase(buffer, origin, "ttfb", e.optDouble("qs", 0), e.optDouble("rs", 0), id);
+        addPhase(buffer, origin, "download", e.optDouble("rs", 0), end, id);
+    }
+
+    private static void addPhase(ThreadBuffer buffer, double origin, String name, double start,
+                                 double end, long id) {
+        if (start <= 0 || end <= start) return;
+        buffer.add(name, "resource", micros(origin, start), micros(origin, end), id, null);
+    }
+
+    private static long micros(double originMillis, double offsetMillis) {
+        return (long) ((originMillis + offsetMillis) * 1000);
+    }
+
+    private ThreadBuffer buffer(Session s) {
+        ThreadBuffer buffer = buffers.get();
+        if (buffer == null || buffer.session != s) {
+            buffer = new ThreadBuffer(s);
+            buffers.set(buffer);
+            s.buffers.add(buffer);
+        }
+        return buffer;
+    }
+
+    /**
+     * Último tramo de la ruta, para que los nombres de los eventos se lean en la línea de tiempo
+     */
+    static String shortName(String url) {
+        int query = url.indexOf('?');
+        String path = query >= 0 ? url.substring(0, query) : url;
+        int slash = path.lastIndexOf('/', path.length() - 2);
+        return slash >= 0 && slash < path.length() - 1 ? path.substring(slash + 1) : path;
+    }
+
+    /**
+     * Objeto que se expone a la página con addJavascriptInterface
+     */
+    static final class JsBridge {
+        private final NetworkTracer tracer;
+
+        JsBridge(NetworkTracer tracer) {
+            this.tracer = tracer;
+        }
+
+        @JavascriptInterface
+        public void entries(String json) {
+            tracer.onResourceEntries(json);
+        }
+    }
+
+    // =============================================
+    // EXPORTACIÓN (hilo de fondo)
+    // =============================================
+
+    private void export(Context appContext, Session s) {
+        List<ThreadBuffer> all = new ArrayList<>(s.buffers);
+        // Hasta donde cada hilo había publicado; lo que escriba después no se lee
+        int[] counts = new int[all.size()];
+        long origin = Long.MAX_VALUE;
+        int events = 0;
+        int dropped = 0;
+        for (int b = 0; b < all.size(); b++) {
+            ThreadBuffer buffer = all.get(b);
+            counts[b] = buffer.count;
+            events += counts[b];
+            dropped += buffer.dropped;
+            for (int i = 0; i < counts[b]; i++) {
+                origin = Math.min(origin, buffer.starts[i]);
+            }
+        }
+        if (events == 0) {
+            Log.i(TAG, "Traza de red vacía: no se escribe");
+            return;
+        }
+
+        String stamp = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date());
+        File file = new File(PageLoadMetrics.metricsDir(appContext), "network-trace-" + stamp + ".json");
+        int pid = Process.myPid();
+        long start = SystemClock.uptimeMillis();
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file),
+                StandardCharsets.UTF_8))) {
+            out.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[\n");
+            out.write("{\"name\":\"process_name\",\"ph\":\"M\",\"pid\":" + pid
+                    + ",\"args\":{\"name\":" + JSONObject.quote(appContext.getPackageName()) + "}}");
+            for (int b = 0; b < all.size(); b++) {
+                ThreadBuffer buffer = all.get(b);
+                out.write(",\n{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":" + pid + ",\"tid\":"
+                        + buffer.tid + ",\"args\":{\"name\":" + JSONObject.quote(buffer.threadName) + "}}");
+                for (int i = 0; i < counts[b]; i++) {
+                    writeEvent(out, buffer, i, pid, origin);
+                }
+            }
+            out.write("\n]}\n");
+        } catch (IOException e) {
+            Log.w(TAG, "No se pudo escribir " + file + ": " + e.getMessage());
+            return;
+        }
+        Log.i(TAG, "Traza de red: " + file + " (" + events + " eventos de " + all.size()
+                + " hilos, " + dropped + " descartados, " + (SystemClock.uptimeMillis() - start) + " ms)");
+    }
+
+    /**
+     * Sin id: evento completo (X) en el hilo. Con id: pareja b/e asíncrona, y las fases con
+     * el mismo id quedan anidadas bajo su petición aunque se solapen con otras.
+     */
+    private static void writeEvent(Writer out, ThreadBuffer buffer, int i, int pid, long origin)
+            throws IOException {
+        String common = "\"name\":" + JSONObject.quote(buffer.names[i]) + ",\"cat\":\""
+                + buffer.categories[i] + "\",\"pid\":" + pid + ",\"tid\":" + buffer.tid;
+        String args = buffer.args[i] != null ? ",\"args\":" + buffer.args[i] : "";
+        long ts = buffer.starts[i] - origin;
+        long dur = buffer.ends[i] - buffer.starts[i];
+        long id = buffer.asyncIds[i];
+        if (id == 0) {
+            out.write(",\n{" + common + ",\"ph\":\"X\",\"ts\":" + ts + ",\"dur\":" + dur + args + "}");
+        } else {
+            String hexId = ",\"id\":\"0x" + Long.toHexString(id) + "\"";
+            out.write(",\n{" + common + ",\"ph\":\"b\"" + hexId + ",\"ts\":" + ts + args + "}");
+            out.write(",\n{" + common + ",\"ph\":\"e\"" + hexId + ",\"ts\":" + (ts + dur) + "}");
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.buscandoadios.espana;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import android.webkit.WebView;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.Nullable;
+
+import com.buscandoadios.espana.core.SnapshotIndex;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * OfflineSnapshots - Copias sin conexión (MHTML) de las páginas visitadas
+ *
+ * Al terminar de cargar una página del sitio se guarda con WebView.saveWebArchive (como mucho
+ * una vez cada pocos minutos por página). Si después falla la carga por falta de red, MainActivity
+ * abre la copia en lugar de la pantalla "Sin conexión". El tamaño y la antigüedad de las copias
+ * los limita SnapshotIndex; el disco solo se toca desde un hilo propio.
+ */
+public final class OfflineSnapshots {
+
+    private static final String TAG = "OfflineSnapshots";
+
+    private static final long MAX_BYTES = 40L * 1024 * 1024;
+    private static final long MAX_AGE_MS = 7L * 24 * 60 * 60 * 1000;
+    // Si la página se acaba de guardar, no se repite en cada visita
+    private static final long RESAVE_INTERVAL_MS = 5 * 60 * 1000;
+    // Tras onPageFinished, margen para que la página termine de pintarse
+    private static final long SETTLE_DELAY_MS = 1500;
+
+    /**
+     * Resultado de find() (en el hilo principal)
+     */
+    public interface Callback {
+        @MainThread
+        void onResult(@Nullable SnapshotIndex.Entry snapshot);
+    }
+
+    private static OfflineSnapshots instance;
+
+    private final SnapshotIndex index;
+    private final String snapshotUrlPrefix;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            r.run();
+        }, "OfflineSnapshots");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @MainThread
+    public static OfflineSnapshots get(Context context) {
+        if (instance == null) {
+            instance = new OfflineSnapshots(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private OfflineSnapshots(Context appContext) {
+        // La misma ruta que getFilesDir(), sin tocar disco: se construye en el hilo principal
+        // (primer isSnapshotUrl) y la carpeta la crea el índice en su hilo
+        File directory = new File(new File(appContext.getApplicationInfo().dataDir, "files"), "offline_pages");
+        index = new SnapshotIndex(directory, ".mht", MAX_BYTES, MAX_AGE_MS);
+        snapshotUrlPrefix = Uri.fromFile(directory).toString() + "/";
+        executor.execute(() -> index.prune(System.currentTimeMillis()));
+    }
+
+    /**
+     * La URL es una copia sin conexión abierta en el WebView (file://.../offline_pages/...)
+     */
+    public boolean isSnapshotUrl(@Nullable String url) {
+        return url != null && url.startsWith(snapshotUrlPrefix);
+    }
+
+    /**
+     * Guarda la página que acaba de cargar view (solo páginas https del sitio)
+     */
+    @MainThread
+    public void capture(WebView view, String url) {
+        if (!isCapturable(url)) return;
+        executor.execute(() -> {
+            if (index.isRecent(url, System.currentTimeMillis(), RESAVE_INTERVAL_MS)) return;
+            String path = index.tempFileFor(url).getAbsolutePath();
+            mainHandler.postDelayed(() -> save(view, url, path), SETTLE_DELAY_MS);
+        });
+    }
+
+    @MainThread
+    private void save(WebView view, String url, String path) {
+        // Para entonces el WebView puede estar ya en otra página (o devuelto al pool)
+        if (view.getParent() == null || !url.equals(view.getUrl())) return;
+        String title = view.getTitle();
+        view.saveWebArchive(path, false, savedPath -> {
+            if (savedPath == null) {
+                Log.w(TAG, "No se pudo guardar la copia de " + url);
+                return;
+            }
+            executor.execute(() -> {
+                try {
+                    SnapshotIndex.Entry entry = index.commit(url, title, System.currentTimeMillis());
+                    Log.d(TAG, "Copia guardada: " + url + " (" + entry.size / 1024 + " KB, total "
+                            + index.size() / 1024 + " KB en " + index.count() + ")");
+                } catch (IOException e) {
+                    Log.w(TAG, "No se pudo guardar la copia de " + url, e);
+                }
+            });
+        });
+    }
+
+    /**
+     * Busca la copia vigente de url
+     */
+    @MainThread
+    public void find(String url, Callback callback) {
+        executor.execute(() -> {
+            SnapshotIndex.Entry entry = index.find(url, System.currentTimeMillis());
+            mainHandler.post(() -> callback.onResult(entry));
+        });
+    }
+
+    private static boolean isCapturable(@Nullable String url) {
+        if (url == null) return false;
+        Uri uri = Uri.parse(url);
+        return "https".equals(uri.getScheme()) && WebAssetCache.isSiteHost(uri.getHost());
+    }
+}
@@ -0,0 +1,449 @@
+package com.buscandoadios.espana;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+import android.webkit.JavascriptInterface;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * PageLoadMetrics - Tiempos de carga de cada navegación
+ *
+ * Guarda por navegación: inicio, primer progreso, página terminada y los valores de
+ * Navigation/Paint Timing que la propia página envía por un puente JS.
+ * Los registros viven en un buffer circular en memoria y se vuelcan periódicamente
+ * a files/metrics/page_loads.csv. summarize() calcula p50/p90/p99.
+ * Los arranques en frío y las respuestas a la falta de memoria (MemoryTrimManager) van a
+ * files/metrics/memory_trims.csv, para ver si un recorte precede a un arranque en frío.
+ */
+public final class PageLoadMetrics {
+
+    private static final String TAG = "PageLoadMetrics";
+
+    static final String JS_BRIDGE_NAME = "BuscandoADiosPerf";
+
+    private static final int CAPACITY = 256;
+    private static final int STARTUP_CAPACITY = 64;
+    private static final long FLUSH_INTERVAL_MS = 60_000;
+    private static final long JS_REPORT_GRACE_MS = 10_000;
+    private static final long MAX_FILE_BYTES = 256 * 1024;
+    private static final String CSV_HEADER =
+            "epoch_ms,url,first_progress_ms,page_finished_ms,ttfb_ms,dcl_ms,load_ms,fp_ms,fcp_ms\n";
+    private static final String TRIM_CSV_HEADER = "epoch_ms,uptime_ms,level,action,freed_bytes\n";
+
+    // Lee Navigation Timing y Paint Timing cuando la página termina su evento load
+    static final String TIMING_SCRIPT = "(function(){"
+            + "var b=window." + JS_BRIDGE_NAME + ";if(!b)return;"
+            + "function send(){"
+            + "var r={url:location.href},n=performance.getEntriesByType&&performance.getEntriesByType('navigation')[0];"
+            + "if(n){r.ttfb=n.responseStart;r.dcl=n.domContentLoadedEventEnd;r.load=n.loadEventEnd;}"
+            + "else if(performance.timing){var t=performance.timing,s=t.navigationStart;"
+            + "r.ttfb=t.responseStart-s;r.dcl=t.domContentLoadedEventEnd-s;r.load=t.loadEventEnd-s;}"
+            + "(performance.getEntriesByType?performance.getEntriesByType('paint'):[]).forEach(function(p){"
+            + "if(p.name==='first-paint')r.fp=p.startTime;"
+            + "if(p.name==='first-contentful-paint')r.fcp=p.startTime;});"
+            + "b.report(JSON.stringify(r));}"
+            + "if(document.readyState==='complete'){setTimeout(send,0);}"
+            + "else{window.addEventListener('load',function(){setTimeout(send,0);});}"
+            + "})();";
+
+    private static volatile PageLoadMetrics instance;
+
+    private final Context appContext;
+    private final NavigationRecord[] ring = new NavigationRecord[CAPACITY];
+    private int head;   // Próxima posición a escribir
+    private int size;
+    private long nextSeq = 1;
+    private long flushedSeq;
+    @Nullable private NavigationRecord current;
+
+    // Arranques con esqueleto (AppShell): ms desde MainActivity.onCreate, -1 si no se conocen
+    private final long[] shellPaints = new long[STARTUP_CAPACITY];
+    private final long[] livePaints = new long[STARTUP_CAPACITY];
+    private int startupCount;
+
+    // Recortes de memoria: filas pendientes de volcar y cuántas veces se hizo cada acción
+    private final StringBuilder pendingTrims = new StringBuilder();
+    private final Map<String, Integer> trimCounts = new TreeMap<>();
+
+    private final Object lock = new Object();
+    @Nullable private Handler ioHandler;
+    private boolean flushScheduled;
+
+    /**
+     * Una navegación. Los tiempos son milisegundos desde el inicio; -1 si no se conocen.
+     */
+    static final class NavigationRecord {
+        long seq;
+        long epochMs;
+        long startUptime;
+        String url = "";
+        long firstProgressMs = -1;
+        long pageFinishedMs = -1;
+        long finishedUptime = -1;
+        long ttfbMs = -1;
+        long domContentLoadedMs = -1;
+        long loadMs = -1;
+        long firstPaintMs = -1;
+        long firstContentfulPaintMs = -1;
+        boolean jsReported;
+
+        boolean isClosed(long nowUptime, boolean superseded) {
+            if (superseded) return true;
+            if (pageFinishedMs < 0) return false;
+            return jsReported || nowUptime - finishedUptime > JS_REPORT_GRACE_MS;
+        }
+
+        String toCsv() {
+            return epochMs + "," + url.replace(",", "%2C") + "," + firstProgressMs + ","
+                    + pageFinishedMs + "," + ttfbMs + "," + domContentLoadedMs + ","
+                    + loadMs + "," + firstPaintMs + "," + firstContentfulPaintMs + "\n";
+        }
+    }
+
+    public static PageLoadMetrics get(Context context) {
+        if (instance == null) {
+            synchronized (PageLoadMetrics.class) {
+                if (instance == null) {
+                    instance = new PageLoadMetrics(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    private PageLoadMetrics(Context appContext) {
+        this.appContext = appContext;
+    }
+
+    // =============================================
+    // EVENTOS DEL WEBVIEW (hilo principal)
+    // =============================================
+
+    void onNavigationStarted(String url) {
+        synchronized (lock) {
+            NavigationRecord record = new NavigationRecord();
+            record.seq = nextSeq++;
+            record.epochMs = System.currentTimeMillis();
+            record.startUptime = SystemClock.uptimeMillis();
+            record.url = url != null ? url : "";
+            current = record;
+
+            ring[head] = record;
+            head = (head + 1) % CAPACITY;
+            if (size < CAPACITY) size++;
+        }
+        scheduleFlush();
+    }
+
+    void onProgress(int progress) {
+        synchronized (lock) {
+            if (current != null && current.firstProgressMs < 0 && progress > 0) {
+                current.firstProgressMs = SystemClock.uptimeMillis() - current.startUptime;
+            }
+        }
+    }
+
+    void onPageFinished(String url) {
+        synchronized (lock) {
+            if (current == null || current.pageFinishedMs >= 0) return;
+            current.finishedUptime = SystemClock.uptimeMillis();
+            current.pageFinishedMs = current.finishedUptime - current.startUptime;
+        }
+    }
+
+    /**
+     * Valores que envía la página (ver TIMING_SCRIPT)
+     */
+    void onWebTimings(String json) {
+        try {
+            JSONObject timings = new JSONObject(json);
+            String url = timings.optString("url");
+            synchronized (lock) {
+                NavigationRecord record = findLatest(url);
+                if (record == null) record = current; // Redirecciones: la URL final puede cambiar
+                if (record == null || record.jsReported) return;
+                record.ttfbMs = optMillis(timings, "ttfb");
+                record.domContentLoadedMs = optMillis(timings, "dcl");
+                record.loadMs = optMillis(timings, "load");
+                record.firstPaintMs = optMillis(timings, "fp");
+                record.firstContentfulPaintMs = optMillis(timings, "fcp");
+                record.jsReported = true;
+            }
+        } catch (JSONException e) {
+            Log.w(TAG, "Tiempos de la página no válidos: " + e.getMessage());
+        }
+    }
+
+    private static long optMillis(JSONObject json, String name) {
+        double value = json.optDouble(name, -1);
+        return Double.isNaN(value) || value <= 0 ? -1 : Math.round(value);
+    }
+
+    /**
+     * Un arranque de MainActivity sin la página pintada: cuándo se vio el esqueleto
+     * (shellMs, -1 si no se llegó a pintar) y cuándo la web real (liveMs)
+     */
+    void onStartupPainted(long shellMs, long liveMs) {
+        synchronized (lock) {
+            int slot = startupCount % STARTUP_CAPACITY;
+            shellPaints[slot] = shellMs;
+            livePaints[slot] = liveMs;
+            startupCount++;
+        }
+        Log.i(TAG, "Arranque: esqueleto " + shellMs + " ms, web " + liveMs + " ms");
+    }
+
+    /**
+     * Una acción de MemoryTrimManager (level: el de onTrimMemory; freedBytes: -1 si no se sabe).
+     * Con action "cold_start" marca el arranque del proceso.
+     */
+    void onMemoryTrim(int level, String action, long freedBytes) {
+        synchronized (lock) {
+            pendingTrims.append(System.currentTimeMillis()).append(',')
+                    .append(SystemClock.uptimeMillis()).append(',')
+                    .append(level).append(',').append(action).append(',')
+                    .append(freedBytes).append('\n');
+            Integer count = trimCounts.get(action);
+            trimCounts.put(action, count == null ? 1 : count + 1);
+        }
+        Log.i(TAG, "Memoria: " + action + " (nivel " + level + ", " + freedBytes + " bytes)");
+        scheduleFlush();
+    }
+
+    @Nullable
+    private NavigationRecord findLatest(String url) {
+        for (int i = 1; i <= size; i++) {
+            NavigationRecord record = ring[(head - i + CAPACITY) % CAPACITY];
+            if (record != null && record.url.equals(url)) {
+                return record;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Objeto que se expone a la página con addJavascriptInterface
+     */
+    static final class JsBridge {
+        private final PageLoadMetrics metrics;
+
+        JsBridge(PageLoadMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        @JavascriptInterface
+        public void report(String json) {
+            metrics.onWebTimings(json);
+        }
+    }
+
+    // =============================================
+    // RESUMEN (p50 / p90 / p99)
+    // =============================================
+
+    @NonNull
+    public String summarize() {
+        List<NavigationRecord> records = new ArrayList<>();
+        synchronized (lock) {
+            for (int i = 0; i < size; i++) {
+                NavigationRecord r = ring[(head - size + i + CAPACITY) % CAPACITY];
+                if (r != null) records.add(r);
+            }
+        }
+
+        int n = records.size();
+        long[] firstProgress = new long[n];
+        long[] finished = new long[n];
+        long[] ttfb = new long[n];
+        long[] dcl = new long[n];
+        long[] load = new long[n];
+        long[] fcp = new long[n];
+        for (int i = 0; i < n; i++) {
+            NavigationRecord r = records.get(i);
+            firstProgress[i] = r.firstProgressMs;
+            finished[i] = r.pageFinishedMs;
+            ttfb[i] = r.ttfbMs;
+            dcl[i] = r.domContentLoadedMs;
+            load[i] = r.loadMs;
+            fcp[i] = r.firstContentfulPaintMs;
+        }
+
+        long[] shell;
+        long[] live;
+        String trims;
+        synchronized (lock) {
+            int count = Math.min(startupCount, STARTUP_CAPACITY);
+            shell = Arrays.copyOf(shellPaints, count);
+            live = Arrays.copyOf(livePaints, count);
+            trims = trimCounts.toString();
+        }
+        // Lo que ve el usuario: el esqueleto si llegó a pintarse, si no la web
+        long[] perceived = new long[shell.length];
+        for (int i = 0; i < shell.length; i++) {
+            perceived[i] = shell[i] >= 0 ? shell[i] : live[i];
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("Navegaciones: ").append(n).append('\n');
+        appendPercentiles(sb, "first_progress", firstProgress);
+        appendPercentiles(sb, "page_finished", finished);
+        appendPercentiles(sb, "ttfb", ttfb);
+        appendPercentiles(sb, "dom_content_loaded", dcl);
+        appendPercentiles(sb, "load", load);
+        appendPercentiles(sb, "first_contentful_paint", fcp);
+        sb.append("Arranques con esqueleto: ").append(shell.length).append('\n');
+        appendPercentiles(sb, "shell_first_paint", shell);
+        appendPercentiles(sb, "live_first_paint", live);
+        appendPercentiles(sb, "perceived_first_paint", perceived);
+        sb.append("Memoria (en este proceso): ").append(trims).append('\n');
+        return sb.toString();
+    }
+
+    private static void appendPercentiles(StringBuilder sb, String name, long[] values) {
+        long[] known = Arrays.stream(values).filter(v -> v >= 0).sorted().toArray();
+        sb.append(String.format(Locale.US, "%-24s n=%-4d p50=%-6d p90=%-6d p99=%d%n", name, known.length,
+                percentile(known, 50), percentile(known, 90), percentile(known, 99)));
+    }
+
+    /**
+     * Percentil por rango más cercano sobre un array ordenado (-1 si está vacío)
+     */
+    static long percentile(long[] sorted, int p) {
+        if (sorted.length == 0) return -1;
+        int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+    }
+
+    // =============================================
+    // VOLCADO A DISCO (hilo de fondo)
+    // =============================================
+
+    private Handler ioHandler() {
+        synchronized (lock) {
+            if (ioHandler == null) {
+                HandlerThread thread = new HandlerThread("PageLoadMetrics-io", Process.THREAD_PRIORITY_BACKGROUND);
+                thread.start();
+                ioHandler = new Handler(thread.getLooper());
+            }
+            return ioHandler;
+        }
+    }
+
+    private void scheduleFlush() {
+        synchronized (lock) {
+            if (flushScheduled) return;
+            flushScheduled = true;
+        }
+        ioHandler().postDelayed(() -> {
+            synchronized (lock) {
+                flushScheduled = false;
+            }
+            flush();
+        }, FLUSH_INTERVAL_MS);
+    }
+
+    /**
+     * Vuelca ya lo pendiente (por ejemplo al pasar a segundo plano)
+     */
+    public void flushAsync() {
+        ioHandler().post(this::flush);
+    }
+
+    /**
+     * Escribe el resumen de percentiles en files/metrics/summary.txt y en el log
+     */
+    public void exportSummaryAsync() {
+        ioHandler().post(() -> {
+            flush();
+            String summary = summarize() + "\nCaché de recursos: "
+                    + WebAssetCache.getInstance(appContext).getStats() + "\nDesde el APK: "
+                    + BundledSiteAssets.getInstance(appContext).getHits() + " recursos\nPrecarga: "
+                    + PagePrefetcher.get(appContext).getStats() + "\nImágenes: "
+                    + ImageOptimizer.get(appContext).getStats() + "\nConexiones: "
+                    + SiteHttpClient.get().getStats() + '\n';
+            Log.i(TAG, summary);
+            File file = new File(metricsDir(appContext), "summary.txt");
+            try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+                out.write(summary);
+            } catch (IOException e) {
+                Log.w(TAG, "No se pudo escribir " + file + ": " + e.getMessage());
+            }
+        });
+    }
+
+    private void flush() {
+        StringBuilder lines = new StringBuilder();
+        long now = SystemClock.uptimeMillis();
+        boolean pending = false;
+        String trims;
+        synchronized (lock) {
+            trims = pendingTrims.toString();
+            pendingTrims.setLength(0);
+            for (int i = 0; i < size; i++) {
+                NavigationRecord r = ring[(head - size + i + CAPACITY) % CAPACITY];
+                if (r == null || r.seq <= flushedSeq) continue;
+                if (!r.isClosed(now, r != current)) {
+                    pending = true;
+                    break;
+                }
+                lines.append(r.toCsv());
+                flushedSeq = r.seq;
+            }
+        }
+
+        if (lines.length() > 0) {
+            appendToFile("page_loads", CSV_HEADER, lines.toString());
+        }
+        if (!trims.isEmpty()) {
+            appendToFile("memory_trims", TRIM_CSV_HEADER, trims);
+        }
+        if (pending) {
+            scheduleFlush();
+        }
+    }
+
+    private void appendToFile(String name, String header, String lines) {
+        File dir = metricsDir(appContext);
+        File file = new File(dir, name + ".csv");
+        if (file.length() > MAX_FILE_BYTES) {
+            //noinspection ResultOfMethodCallIgnored
+            file.renameTo(new File(dir, name + ".1.csv"));
+        }
+        boolean writeHeader = !file.exists();
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8)) {
+            if (writeHeader) out.write(header);
+            out.write(lines);
+        } catch (IOException e) {
+            Log.w(TAG, "No se pudo escribir " + file + ": " + e.getMessage());
+        }
+    }
+
+    static File metricsDir(Context context) {
+        File dir = new File(context.getFilesDir(), "metrics");
+        //noinspection ResultOfMethodCallIgnored
+        dir.mkdirs();
+        return dir;
+    }
+}
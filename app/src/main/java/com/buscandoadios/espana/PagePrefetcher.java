@@ -0,0 +1,590 @@
+package com.buscandoadios.espana;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.PowerManager;
+import android.os.Process;
+import android.util.Log;
+import android.webkit.CookieManager;
+import android.webkit.JavascriptInterface;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+import android.webkit.WebView;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.buscandoadios.espana.core.CriticalResources;
+
+import okhttp3.Call;
+import okhttp3.Headers;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * PagePrefetcher - Precarga de las páginas del sitio que el usuario tiene a la vista
+ *
+ * Un script (OBSERVER_SCRIPT) avisa por el puente JS de los enlaces del mismo origen que
+ * entran en pantalla. Cuando el hilo principal queda ocioso, con red sin límite de datos y
+ * sin ahorro de batería, se descarga el HTML de esas páginas (en memoria, unos minutos) y sus
+ * hojas de estilo, scripts y fuentes (a WebAssetCache), dentro de un presupuesto de bytes por
+ * sesión. Cualquier navegación cancela lo que esté en marcha. Si el usuario abre una página
+ * precargada, serve() la entrega desde shouldInterceptRequest sin ir a la red.
+ *
+ * Solo se precarga lo que no puede tener efectos: páginas del propio sitio sin query, fuera
+ * de la API y de las descargas. Una precarga no toca las cookies: si la respuesta trae
+ * Set-Cookie, se descarta y la página la pide el WebView al abrirla.
+ */
+public final class PagePrefetcher {
+
+    private static final String TAG = "PagePrefetcher";
+
+    static final String JS_BRIDGE_NAME = "AndroidPrefetch";
+
+    // Presupuesto por sesión (desde que la app pasa a primer plano)
+    private static final long SESSION_BUDGET_BYTES = 3L * 1024 * 1024;
+    private static final int MAX_PAGE_BYTES = 512 * 1024;
+    private static final int MAX_PAGES_PER_SCREEN = 4;
+    private static final int MAX_RESOURCES_PER_PAGE = 8;
+    private static final int MAX_STORED_PAGES = 8;
+    private static final long PAGE_TTL_MS = 5 * 60 * 1000;
+    private static final int CONNECT_TIMEOUT_MS = 10_000;
+    private static final int READ_TIMEOUT_MS = 15_000;
+
+    // Avisa de los enlaces visibles (una vez por enlace) con IntersectionObserver
+    static final String OBSERVER_SCRIPT = "(function(){"
+            + "var b=window." + JS_BRIDGE_NAME + ";"
+            + "if(!b||!window.IntersectionObserver||window.__prefetchObserver)return;"
+            + "var seen={},queue=[],timer=0,scan=0;"
+            + "function flush(){timer=0;if(queue.length){b.visibleLinks(JSON.stringify(queue));queue=[];}}"
+            + "var io=new IntersectionObserver(function(entries){entries.forEach(function(e){"
+            + "if(!e.isIntersecting)return;io.unobserve(e.target);"
+            + "var h=e.target.href.split('#')[0];if(seen[h])return;seen[h]=1;queue.push(h);});"
+            + "if(queue.length&&!timer)timer=setTimeout(flush,500);});"
+            + "window.__prefetchObserver=io;"
+            + "function observe(){scan=0;document.querySelectorAll('a[href]').forEach(function(a){"
+            + "if(a.__prefetchSeen)return;a.__prefetchSeen=1;"
+            + "if(a.origin!==location.origin||a.search||a.hasAttribute('download')||a.target==='_blank'"
+            + "||/\\bnoprefetch\\b/.test(a.rel))return;"
+            + "if(a.pathname===location.pathname&&a.search===location.search)return;"
+            + "io.observe(a);});}"
+            + "observe();"
+            + "new MutationObserver(function(){if(!scan)scan=setTimeout(observe,1000);})"
+            + ".observe(document.body,{childList:true,subtree:true});"
+            + "})();";
+
+    // Rutas que nunca se piden por adelantado (un GET puede cerrar la sesión, contar una
+    // descarga o llamar a la API)
+    private static final String[] UNSAFE_PATH_WORDS = {
+            "logout", "logoff", "salir", "cerrar-sesion", "wp-login", "wp-admin", "/cart", "carrito",
+            "/api/", "download.php"};
+
+    /**
+     * Contadores para medir si la precarga compensa
+     */
+    public static final class Stats {
+        final AtomicLong linksReported = new AtomicLong();
+        final AtomicLong pagesPrefetched = new AtomicLong();
+        final AtomicLong resourcesPrefetched = new AtomicLong();
+        final AtomicLong bytesPrefetched = new AtomicLong();
+        final AtomicLong cancelled = new AtomicLong();
+        final AtomicLong taps = new AtomicLong();
+        final AtomicLong tapHits = new AtomicLong();
+        final AtomicLong hits = new AtomicLong();
+        final AtomicLong unused = new AtomicLong();
+
+        /**
+         * Fracción de toques en enlaces servidos con la página ya precargada
+         */
+        public double getTapHitRate() {
+            long total = taps.get();
+            return total == 0 ? 0 : (double) tapHits.get() / total;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "taps=%d tapHits=%d hitRate=%.2f hits=%d links=%d pages=%d resources=%d "
+                            + "bytes=%d cancelled=%d unused=%d",
+                    taps.get(), tapHits.get(), getTapHitRate(), hits.get(), linksReported.get(),
+                    pagesPrefetched.get(), resourcesPrefetched.get(), bytesPrefetched.get(),
+                    cancelled.get(), unused.get());
+        }
+    }
+
+    /**
+     * Página descargada por adelantado (se entrega una sola vez)
+     */
+    private static final class PrefetchedPage {
+        final String mimeType;
+        final String encoding;
+        final Map<String, String> headers;
+        final byte[] body;
+        final long fetchedAt;
+
+        PrefetchedPage(String mimeType, String encoding, Map<String, String> headers, byte[] body, long fetchedAt) {
+            this.mimeType = mimeType;
+            this.encoding = encoding;
+            this.headers = headers;
+            this.body = body;
+            this.fetchedAt = fetchedAt;
+        }
+    }
+
+    private static volatile PagePrefetcher instance;
+
+    private final Context appContext;
+    private final Stats stats = new Stats();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            r.run();
+        }, "PagePrefetcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Hilo principal
+    private final ArrayDeque<String> candidates = new ArrayDeque<>();
+    private boolean idleScheduled;
+    private boolean running;
+    @Nullable private String userAgent;
+
+    // Cualquier hilo
+    private final AtomicInteger generation = new AtomicInteger();
+    private final AtomicLong sessionBytes = new AtomicLong();
+    private final LinkedHashMap<String, PrefetchedPage> pages = new LinkedHashMap<>();
+    private volatile Call activeCall;
+    // Se crea en el hilo de precarga, la primera vez que hace falta
+    @Nullable private volatile OkHttpClient client;
+
+    public static PagePrefetcher get(Context context) {
+        if (instance == null) {
+            synchronized (PagePrefetcher.class) {
+                if (instance == null) {
+                    instance = new PagePrefetcher(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    private PagePrefetcher(Context appContext) {
+        this.appContext = appContext;
+    }
+
+    public Stats getStats() {
+        return stats;
+    }
+
+    // =============================================
+    // SESIÓN Y CANCELACIÓN (hilo principal)
+    // =============================================
+
+    /**
+     * Nueva sesión de uso (la app vuelve a primer plano): presupuesto de bytes completo
+     */
+    @MainThread
+    public void startSession() {
+        sessionBytes.set(0);
+    }
+
+    /**
+     * Empieza una navegación (o la app pasa a segundo plano): se para lo pendiente.
+     * Las páginas ya descargadas se conservan para serve().
+     */
+    @MainThread
+    public void cancel() {
+        generation.incrementAndGet();
+        if (!candidates.isEmpty() || running) {
+            stats.cancelled.incrementAndGet();
+        }
+        candidates.clear();
+        Call call = activeCall;
+        if (call != null) {
+            // cancel() no espera a la red: se puede llamar desde el hilo principal
+            call.cancel();
+        }
+    }
+
+    /**
+     * Respuesta a la falta de memoria: suelta las páginas caducadas, o todas si dropAll.
+     * Devuelve los bytes liberados.
+     */
+    @AnyThread
+    public long trimMemory(boolean dropAll) {
+        long freed = 0;
+        long now = System.currentTimeMillis();
+        synchronized (pages) {
+            Iterator<PrefetchedPage> it = pages.values().iterator();
+            while (it.hasNext()) {
+                PrefetchedPage page = it.next();
+                if (dropAll || now - page.fetchedAt >= PAGE_TTL_MS) {
+                    freed += page.body.length;
+                    it.remove();
+                    stats.unused.incrementAndGet();
+                }
+            }
+            tracePagesLocked();
+        }
+        return freed;
+    }
+
+    // =============================================
+    // ENLACES VISIBLES
+    // =============================================
+
+    private void onLinksVisible(String json, String pageUserAgent) {
+        JSONArray links;
+        try {
+            links = new JSONArray(json);
+        } catch (JSONException e) {
+            return;
+        }
+        mainHandler.post(() -> {
+            userAgent = pageUserAgent;
+            stats.linksReported.addAndGet(links.length());
+            for (int i = 0; i < links.length() && candidates.size() < MAX_PAGES_PER_SCREEN; i++) {
+                String url = links.optString(i);
+                if (isPrefetchable(url) && !candidates.contains(url) && !hasPage(url)) {
+                    candidates.add(url);
+                }
+            }
+            scheduleWhenIdle();
+        });
+    }
+
+    @MainThread
+    private void scheduleWhenIdle() {
+        if (idleScheduled || running || candidates.isEmpty()) return;
+        idleScheduled = true;
+        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+            @Override
+            public boolean queueIdle() {
+                idleScheduled = false;
+                startNext();
+                return false;
+            }
+        });
+    }
+
+    @MainThread
+    private void startNext() {
+        if (running || candidates.isEmpty()) return;
+        if (!canPrefetchNow()) {
+            // Se vuelve a intentar con los próximos enlaces que avise la página
+            candidates.clear();
+            return;
+        }
+        String url = candidates.poll();
+        String agent = userAgent;
+        int started = generation.get();
+        running = true;
+        executor.execute(() -> {
+            prefetchPage(url, agent, started);
+            mainHandler.post(() -> {
+                running = false;
+                scheduleWhenIdle();
+            });
+        });
+    }
+
+    @MainThread
+    private boolean canPrefetchNow() {
+        if (sessionBytes.get() >= SESSION_BUDGET_BYTES) return false;
+        ConnectivityMonitor.State network = ConnectivityMonitor.get(appContext).getState();
+        if (!network.isValidated() || network.isMetered()) return false;
+        PowerManager power = (PowerManager) appContext.getSystemService(Context.POWER_SERVICE);
+        return power == null || !power.isPowerSaveMode();
+    }
+
+    private static boolean isPrefetchable(@Nullable String url) {
+        if (url == null) return false;
+        Uri uri = Uri.parse(url);
+        if (!"https".equals(uri.getScheme()) || !WebAssetCache.isSiteHost(uri.getHost())
+                || uri.getPort() != -1) return false;
+        // Con query puede ser una acción (?action=logout, ?add-to-cart=...): no se adivina
+        if (uri.getEncodedQuery() != null) return false;
+        String path = uri.getPath() != null ? uri.getPath().toLowerCase(Locale.ROOT) : "";
+        for (String word : UNSAFE_PATH_WORDS) {
+            if (path.contains(word)) return false;
+        }
+        // Solo páginas: sin extensión o con una de página (nada de PDFs, audios, imágenes...)
+        int dot = path.lastIndexOf('.');
+        if (dot < 0 || dot < path.lastIndexOf('/')) return true;
+        String extension = path.substring(dot + 1);
+        return extension.equals("html") || extension.equals("htm") || extension.equals("php");
+    }
+
+    // =============================================
+    // DESCARGA (hilo de fondo)
+    // =============================================
+
+    private void prefetchPage(String url, @Nullable String agent, int started) {
+        long remaining = SESSION_BUDGET_BYTES - sessionBytes.get();
+        if (started != generation.get() || remaining <= 0) return;
+
+        Map<String, String> headers = new HashMap<>();
+        if (agent != null) headers.put("User-Agent", agent);
+        // Para que el servidor distinga la precarga (y pueda rechazarla con un 503)
+        headers.put("Sec-Purpose", "prefetch");
+
+        byte[] body;
+        String contentType;
+        Call call;
+        try {
+            call = client().newCall(request(url, headers));
+        } catch (IllegalArgumentException e) {
+            Log.d(TAG, "Petición no válida a " + url + ": " + e.getMessage());
+            return;
+        }
+        activeCall = call;
+        if (started != generation.get()) {
+            activeCall = null;
+            return;
+        }
+        try (Response response = call.execute()) {
+            int code = response.code();
+            contentType = response.header("Content-Type");
+            String cacheControl = response.header("Cache-Control");
+            // Set-Cookie: la página depende de esa cookie, y guardarla sería un efecto de la
+            // precarga (p. ej. una sesión nueva) sin que el usuario la haya abierto
+            if (!response.headers("Set-Cookie").isEmpty()) return;
+            if (code != HttpURLConnection.HTTP_OK || contentType == null
+                    || !contentType.toLowerCase(Locale.ROOT).startsWith("text/html")
+                    || (cacheControl != null && cacheControl.toLowerCase(Locale.ROOT).contains("no-store"))) {
+                return;
+            }
+
+            body = readLimited(response.body().byteStream(), Math.min(MAX_PAGE_BYTES, remaining));
+            if (body == null || started != generation.get()) return;
+            sessionBytes.addAndGet(body.length);
+            stats.bytesPrefetched.addAndGet(body.length);
+            storePage(url, response, contentType, body);
+            stats.pagesPrefetched.incrementAndGet();
+        } catch (IOException e) {
+            // Cancelada o sin red: no pasa nada, la página se pedirá al abrirla
+            Log.d(TAG, "Precarga fallida de " + url + ": " + e.getMessage());
+            return;
+        } finally {
+            activeCall = null;
+        }
+
+        // Lo que bloquea el pintado de esa página, a la caché de recursos
+        WebAssetCache assetCache = WebAssetCache.getInstance(appContext);
+        String html = new String(body, charsetOf(contentType));
+        List<String> resources = CriticalResources.extract(html, url, MAX_RESOURCES_PER_PAGE);
+        for (String resource : resources) {
+            remaining = SESSION_BUDGET_BYTES - sessionBytes.get();
+            if (started != generation.get() || remaining <= 0) return;
+            try {
+                long bytes = assetCache.prefetch(resource, headers, remaining);
+                if (bytes > 0) {
+                    sessionBytes.addAndGet(bytes);
+                    stats.bytesPrefetched.addAndGet(bytes);
+                    stats.resourcesPrefetched.incrementAndGet();
+                }
+            } catch (IOException e) {
+                Log.d(TAG, "Precarga fallida de " + resource + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private OkHttpClient client() {
+        OkHttpClient current = client;
+        if (current == null) {
+            current = SiteHttpClient.get().withTimeouts(CONNECT_TIMEOUT_MS, READ_TIMEOUT_MS)
+                    .newBuilder()
+                    // Una redirección cambiaría la URL de la página: mejor que la siga el WebView
+                    .followRedirects(false)
+                    .build();
+            client = current;
+        }
+        return current;
+    }
+
+    private static Request request(String url, Map<String, String> headers) {
+        Request.Builder request = new Request.Builder().url(url);
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            request.header(header.getKey(), header.getValue());
+        }
+        String cookies = CookieManager.getInstance().getCookie(url);
+        if (cookies != null) {
+            request.header("Cookie", cookies);
+        }
+        return request.build();
+    }
+
+    /**
+     * Lee como mucho limit bytes; null si la respuesta es más grande
+     */
+    @Nullable
+    private static byte[] readLimited(InputStream stream, long limit) throws IOException {
+        try (InputStream in = stream) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                if (out.size() + read > limit) return null;
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    private static Charset charsetOf(@Nullable String contentType) {
+        String encoding = encodingOf(contentType);
+        try {
+            return encoding != null ? Charset.forName(encoding) : StandardCharsets.UTF_8;
+        } catch (IllegalArgumentException e) {
+            return StandardCharsets.UTF_8;
+        }
+    }
+
+    @Nullable
+    private static String encodingOf(@Nullable String contentType) {
+        if (contentType == null) return null;
+        for (String part : contentType.split(";")) {
+            String param = part.trim();
+            if (param.regionMatches(true, 0, "charset=", 0, 8)) {
+                return param.substring(8).replace("\"", "").trim();
+            }
+        }
+        return null;
+    }
+
+    // =============================================
+    // PÁGINAS PRECARGADAS
+    // =============================================
+
+    private void storePage(String url, Response response, String contentType, byte[] body) {
+        Map<String, String> headers = new HashMap<>();
+        Headers responseHeaders = response.headers();
+        for (String name : responseHeaders.names()) {
+            String lower = name.toLowerCase(Locale.ROOT);
+            // Con Set-Cookie no se llega aquí; el resto lo recalcula el WebView
+            if (lower.equals("set-cookie") || lower.equals("content-length")
+                    || lower.equals("content-encoding") || lower.equals("transfer-encoding")) continue;
+            headers.put(name, responseHeaders.get(name));
+        }
+        String mimeType = contentType.split(";")[0].trim();
+        PrefetchedPage page = new PrefetchedPage(mimeType, encodingOf(contentType), headers, body,
+                System.currentTimeMillis());
+        synchronized (pages) {
+            pages.put(url, page);
+            Iterator<PrefetchedPage> it = pages.values().iterator();
+            while (pages.size() > MAX_STORED_PAGES && it.hasNext()) {
+                it.next();
+                it.remove();
+                stats.unused.incrementAndGet();
+            }
+            tracePagesLocked();
+        }
+    }
+
+    /**
+     * Bytes de páginas en memoria, como contador de AppTrace (con pages bloqueado)
+     */
+    private void tracePagesLocked() {
+        if (!AppTrace.isEnabled()) return;
+        long bytes = 0;
+        for (PrefetchedPage page : pages.values()) {
+            bytes += page.body.length;
+        }
+        AppTrace.counter(AppTrace.COUNTER_PREFETCHED_BYTES, bytes);
+    }
+
+    private boolean hasPage(String url) {
+        synchronized (pages) {
+            PrefetchedPage page = pages.get(url);
+            return page != null && System.currentTimeMillis() - page.fetchedAt < PAGE_TTL_MS;
+        }
+    }
+
+    /**
+     * Desde shouldInterceptRequest (hilo de fondo): la página precargada, si la hay y está al día.
+     * Cada página se entrega una vez; recargarla ya va a la red.
+     */
+    @Nullable
+    WebResourceResponse serve(WebResourceRequest request) {
+        if (!request.isForMainFrame() || !"GET".equalsIgnoreCase(request.getMethod())) return null;
+        Uri uri = request.getUrl();
+        if (!"https".equals(uri.getScheme()) || !WebAssetCache.isSiteHost(uri.getHost())) return null;
+
+        boolean tap = request.hasGesture();
+        if (tap) stats.taps.incrementAndGet();
+
+        PrefetchedPage page;
+        synchronized (pages) {
+            page = pages.remove(uri.toString());
+            // De paso, fuera las que ya caducaron
+            long now = System.currentTimeMillis();
+            Iterator<PrefetchedPage> it = pages.values().iterator();
+            while (it.hasNext()) {
+                if (now - it.next().fetchedAt >= PAGE_TTL_MS) {
+                    it.remove();
+                    stats.unused.incrementAndGet();
+                }
+            }
+            if (page != null && now - page.fetchedAt >= PAGE_TTL_MS) {
+                stats.unused.incrementAndGet();
+                page = null;
+            }
+            tracePagesLocked();
+        }
+        if (page == null) return null;
+
+        stats.hits.incrementAndGet();
+        if (tap) stats.tapHits.incrementAndGet();
+        return new WebResourceResponse(page.mimeType, page.encoding, 200, "OK",
+                new HashMap<>(page.headers), new ByteArrayInputStream(page.body));
+    }
+
+    /**
+     * Objeto que se expone a la página con addJavascriptInterface
+     */
+    static final class JsBridge {
+        private final PagePrefetcher prefetcher;
+        private final String userAgent;
+
+        JsBridge(PagePrefetcher prefetcher, WebView webView) {
+            this.prefetcher = prefetcher;
+            this.userAgent = webView.getSettings().getUserAgentString();
+        }
+
+        @JavascriptInterface
+        public void visibleLinks(String json) {
+            prefetcher.onLinksVisible(json, userAgent);
+        }
+    }
+}
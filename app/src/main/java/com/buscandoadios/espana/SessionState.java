@@ -0,0 +1,315 @@
+package com.buscandoadios.espana;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Parcel;
+import android.util.Log;
+import android.webkit.WebView;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.Nullable;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * SessionState - Dónde estaba el usuario en MainActivity, para volver ahí sin recargar desde cero
+ *
+ * Guarda el historial del WebView (saveState), la URL y el desplazamiento vertical:
+ *  - en el Bundle de onSaveInstanceState, si el historial es pequeño (límite de Binder)
+ *  - siempre en files/session_state.bin, que el Bundle referencia por su marca de tiempo
+ * Tras la muerte del proceso, MainActivity recibe el Bundle y restaura desde él o desde el
+ * archivo. Si el renderer del WebView muere, se reconstruye con la última captura en memoria.
+ * El archivo se lee en segundo plano desde BuscandoADiosApp (preload), como AppShell.
+ */
+public final class SessionState {
+
+    private static final String TAG = "SessionState";
+
+    private static final String FILE_NAME = "session_state.bin";
+    private static final int VERSION = 1;
+    // Historial más grande que esto no va en el Bundle (solo en disco)
+    private static final int MAX_BUNDLE_STATE_BYTES = 64 * 1024;
+    // Ni en disco: con más, solo URL y desplazamiento
+    private static final int MAX_STATE_BYTES = 512 * 1024;
+
+    private static final String KEY_WEB_STATE = "session_web_state";
+    private static final String KEY_URL = "session_url";
+    private static final String KEY_SCROLL_Y = "session_scroll_y";
+    private static final String KEY_SAVED_AT = "session_saved_at";
+
+    /**
+     * Lo necesario para restaurar. webState (historial en bytes de Parcel) puede ser null.
+     */
+    public static final class Snapshot {
+        @Nullable final byte[] webState;
+        final String url;
+        final int scrollY;
+        final long savedAt;
+
+        Snapshot(@Nullable byte[] webState, String url, int scrollY, long savedAt) {
+            this.webState = webState;
+            this.url = url;
+            this.scrollY = scrollY;
+            this.savedAt = savedAt;
+        }
+
+        boolean sameAs(@Nullable Snapshot other) {
+            return other != null && url.equals(other.url) && scrollY == other.scrollY
+                    && Arrays.equals(webState, other.webState);
+        }
+
+        /**
+         * Historial para WebView.restoreState, o null si no hay o no se puede leer
+         */
+        @Nullable
+        Bundle webStateBundle() {
+            if (webState == null) return null;
+            Parcel parcel = Parcel.obtain();
+            try {
+                parcel.unmarshall(webState, 0, webState.length);
+                parcel.setDataPosition(0);
+                return parcel.readBundle(SessionState.class.getClassLoader());
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Historial guardado no válido: " + e.getMessage());
+                return null;
+            } finally {
+                parcel.recycle();
+            }
+        }
+    }
+
+    private static SessionState instance;
+
+    private final Context appContext;
+    // getFilesDir() toca disco: se resuelve en la primera lectura o escritura (hilo del executor)
+    @Nullable private File file;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "SessionState");
+        thread.setDaemon(true);
+        return thread;
+    });
+    @Nullable private Future<Snapshot> pending;
+    // Última captura (para reconstruir tras la muerte del renderer)
+    @Nullable private Snapshot latest;
+    // Solo desde el hilo del executor
+    @Nullable private Snapshot lastWritten;
+
+    @MainThread
+    public static SessionState get(Context context) {
+        if (instance == null) {
+            instance = new SessionState(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private SessionState(Context appContext) {
+        this.appContext = appContext;
+    }
+
+    // Solo desde el hilo del executor
+    private File file() {
+        if (file == null) {
+            file = new File(appContext.getFilesDir(), FILE_NAME);
+        }
+        return file;
+    }
+
+    // =============================================
+    // CAPTURA
+    // =============================================
+
+    /**
+     * Toma el estado actual del WebView solo en memoria (al terminar cada página)
+     */
+    @MainThread
+    public void capture(WebView webView) {
+        Snapshot snapshot = snapshotOf(webView);
+        if (snapshot != null) latest = snapshot;
+    }
+
+    /**
+     * Toma el estado actual, lo escribe en disco (en segundo plano) y, si outState no es null,
+     * lo deja también en el Bundle de onSaveInstanceState
+     */
+    @MainThread
+    public void save(WebView webView, @Nullable Bundle outState) {
+        Snapshot current = snapshotOf(webView);
+        if (current == null) return;
+        // Sin cambios desde la última captura: misma marca, y el disco no se reescribe
+        Snapshot snapshot = current.sameAs(latest) ? latest : current;
+        latest = snapshot;
+        executor.execute(() -> write(snapshot));
+
+        if (outState != null) {
+            outState.putString(KEY_URL, snapshot.url);
+            outState.putInt(KEY_SCROLL_Y, snapshot.scrollY);
+            outState.putLong(KEY_SAVED_AT, snapshot.savedAt);
+            if (snapshot.webState != null && snapshot.webState.length <= MAX_BUNDLE_STATE_BYTES) {
+                outState.putByteArray(KEY_WEB_STATE, snapshot.webState);
+            }
+        }
+    }
+
+    @Nullable
+    private static Snapshot snapshotOf(WebView webView) {
+        String url = webView.getUrl();
+        // Ni páginas de error ni copias sin conexión: se restaura la página real
+        if (url == null || !url.startsWith("http")) return null;
+
+        byte[] webState = null;
+        Bundle state = new Bundle();
+        if (webView.saveState(state) != null) {
+            Parcel parcel = Parcel.obtain();
+            try {
+                parcel.writeBundle(state);
+                webState = parcel.marshall();
+            } finally {
+                parcel.recycle();
+            }
+            if (webState.length > MAX_STATE_BYTES) {
+                Log.d(TAG, "Historial demasiado grande (" + webState.length + " bytes): solo la URL");
+                webState = null;
+            }
+        }
+        return new Snapshot(webState, url, webView.getScrollY(), System.currentTimeMillis());
+    }
+
+    // =============================================
+    // RESTAURACIÓN
+    // =============================================
+
+    /**
+     * Empieza a leer el estado guardado en disco (sin bloquear)
+     */
+    @MainThread
+    public void preload() {
+        if (pending == null) {
+            pending = executor.submit(this::read);
+        }
+    }
+
+    /**
+     * Estado a restaurar en MainActivity.onCreate, o null si no hay (arranque normal).
+     * Espera al disco como mucho waitMs cuando el historial no cabía en el Bundle.
+     */
+    @MainThread
+    @Nullable
+    public Snapshot restore(@Nullable Bundle savedInstanceState, long waitMs) {
+        if (savedInstanceState == null) return null;
+        String url = savedInstanceState.getString(KEY_URL);
+        if (url == null) return null;
+        int scrollY = savedInstanceState.getInt(KEY_SCROLL_Y);
+        long savedAt = savedInstanceState.getLong(KEY_SAVED_AT);
+
+        byte[] webState = savedInstanceState.getByteArray(KEY_WEB_STATE);
+        if (webState == null) {
+            // El historial no cabía: en memoria si el proceso sigue vivo, si no en disco
+            // (vale si es de la misma vez)
+            Snapshot saved = latest != null && latest.savedAt == savedAt ? latest : awaitSaved(waitMs);
+            if (saved != null && saved.savedAt == savedAt) {
+                webState = saved.webState;
+            }
+        }
+        latest = new Snapshot(webState, url, scrollY, savedAt);
+        return latest;
+    }
+
+    /**
+     * Estado con el que reconstruir un WebView cuyo renderer ha muerto: el último historial
+     * capturado con la URL y el desplazamiento que tenía el WebView muerto
+     */
+    @MainThread
+    @Nullable
+    public Snapshot forRebuild(WebView deadWebView) {
+        String url = deadWebView.getUrl();
+        if (url == null || !url.startsWith("http")) {
+            return latest;
+        }
+        // Si el historial capturado acaba en otra página, mejor solo la URL actual
+        byte[] webState = latest != null && url.equals(latest.url) ? latest.webState : null;
+        return new Snapshot(webState, url, deadWebView.getScrollY(), System.currentTimeMillis());
+    }
+
+    @Nullable
+    private Snapshot awaitSaved(long waitMs) {
+        preload();
+        try {
+            return pending.get(waitMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            Log.d(TAG, "El estado guardado no se leyó a tiempo");
+            return null;
+        } catch (ExecutionException | InterruptedException e) {
+            return null;
+        }
+    }
+
+    // =============================================
+    // DISCO (hilo de fondo)
+    // =============================================
+
+    @Nullable
+    private Snapshot read() {
+        File file = file();
+        if (!file.isFile()) return null;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            if (in.readInt() != VERSION) return null;
+            long savedAt = in.readLong();
+            String url = in.readUTF();
+            int scrollY = in.readInt();
+            int length = in.readInt();
+            byte[] webState = null;
+            if (length > 0 && length <= MAX_STATE_BYTES) {
+                webState = new byte[length];
+                in.readFully(webState);
+            }
+            Snapshot snapshot = new Snapshot(webState, url, scrollY, savedAt);
+            lastWritten = snapshot;
+            return snapshot;
+        } catch (IOException e) {
+            Log.w(TAG, "Estado guardado no válido: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void write(Snapshot snapshot) {
+        Snapshot previous = lastWritten;
+        if (previous != null && previous.savedAt == snapshot.savedAt) return;
+        File file = file();
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(temp))) {
+            out.writeInt(VERSION);
+            out.writeLong(snapshot.savedAt);
+            out.writeUTF(snapshot.url);
+            out.writeInt(snapshot.scrollY);
+            if (snapshot.webState != null) {
+                out.writeInt(snapshot.webState.length);
+                out.write(snapshot.webState);
+            } else {
+                out.writeInt(0);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "No se pudo guardar el estado: " + e.getMessage());
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            return;
+        }
+        if (temp.renameTo(file)) {
+            lastWritten = snapshot;
+        } else {
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package com.buscandoadios.espana;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.ConnectionPool;
+import okhttp3.Dns;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.UnknownHostException;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SiteHttpClient - Un solo cliente HTTP para todo lo que la app pide al sitio por su cuenta
+ *
+ * WebAssetCache, PagePrefetcher, las descargas por tramos y su revalidación (/api/download.php),
+ * las subidas y la comprobación de los recursos del APK comparten este OkHttpClient: un pool de
+ * conexiones (HTTP/2 si el servidor lo ofrece, varias peticiones por una conexión), una caché de
+ * DNS y un único conjunto de hilos. Una conexión que abre cualquiera de ellos (o preconnect()
+ * desde el splash) la aprovechan los demás. Cada uso deriva su cliente con withTimeouts() o
+ * newBuilder(), que comparten pool y DNS.
+ * Las cookies no las gestiona el cliente: cada llamador las sigue tomando de CookieManager.
+ * Las descargas que hace DownloadManager van por otro proceso y no pasan por aquí.
+ * Con la traza de red en marcha (NetworkTracer), cada llamada lleva su propio listener que
+ * apunta los tiempos de DNS, conexión, TLS y primer byte.
+ */
+public final class SiteHttpClient {
+
+    private static final String TAG = "SiteHttpClient";
+
+    private static final int MAX_IDLE_CONNECTIONS = 5;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+    private static final long DNS_TTL_MS = 5 * 60 * 1000;
+    private static final int PRECONNECT_TIMEOUT_MS = 5000;
+
+    private static volatile SiteHttpClient instance;
+    private static final AtomicBoolean preconnectStarted = new AtomicBoolean();
+
+    private final ConnectionPool pool = new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES);
+    private final Stats stats = new Stats(pool);
+    private final PoolListener poolListener = new PoolListener();
+    private final OkHttpClient client;
+
+    /**
+     * Uso del pool: cuántas peticiones reutilizaron una conexión ya abierta
+     */
+    public static final class Stats {
+        private final ConnectionPool pool;
+        final AtomicLong calls = new AtomicLong();
+        final AtomicLong callsInFlight = new AtomicLong();
+        final AtomicLong connectionsAcquired = new AtomicLong();
+        final AtomicLong connectionsOpened = new AtomicLong();
+        final AtomicLong http2Acquired = new AtomicLong();
+        final AtomicLong dnsLookups = new AtomicLong();
+        final AtomicLong dnsCacheHits = new AtomicLong();
+        final AtomicLong preconnectMillis = new AtomicLong(-1);
+
+        Stats(ConnectionPool pool) {
+            this.pool = pool;
+        }
+
+        public long getConnectionsOpened() {
+            return connectionsOpened.get();
+        }
+
+        /**
+         * Peticiones que no tuvieron que abrir conexión (ni DNS, ni TCP, ni TLS)
+         */
+        public long getConnectionsReused() {
+            return Math.max(0, connectionsAcquired.get() - connectionsOpened.get());
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            long acquired = connectionsAcquired.get();
+            long reusePercent = acquired == 0 ? 0 : getConnectionsReused() * 100 / acquired;
+            return String.format(Locale.US,
+                    "calls=%d opened=%d reused=%d (%d%%) h2=%d dns=%d dnsCached=%d "
+                            + "pool=%d idle=%d preconnectMs=%d",
+                    calls.get(), connectionsOpened.get(), getConnectionsReused(), reusePercent,
+                    http2Acquired.get(), dnsLookups.get(), dnsCacheHits.get(),
+                    pool.connectionCount(), pool.idleConnectionCount(), preconnectMillis.get());
+        }
+    }
+
+    @AnyThread
+    public static SiteHttpClient get() {
+        if (instance == null) {
+            synchronized (SiteHttpClient.class) {
+                if (instance == null) {
+                    instance = new SiteHttpClient();
+                }
+            }
+        }
+        return instance;
+    }
+
+    private SiteHttpClient() {
+        client = new OkHttpClient.Builder()
+                .connectionPool(pool)
+                .dns(new CachingDns())
+                .eventListenerFactory(call -> NetworkTracer.get().isEnabled()
+                        ? new TracingListener(call) : poolListener)
+                .build();
+    }
+
+    /**
+     * El cliente compartido, con los tiempos de espera por defecto
+     */
+    public OkHttpClient client() {
+        return client;
+    }
+
+    /**
+     * Cliente con otros tiempos de espera sobre el mismo pool y DNS
+     */
+    public OkHttpClient withTimeouts(int connectTimeoutMs, int readTimeoutMs) {
+        return client.newBuilder()
+                .connectTimeout(connectTimeoutMs, TimeUnit.MILLISECONDS)
+                .readTimeout(readTimeoutMs, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    public Stats getStats() {
+        return stats;
+    }
+
+    // =============================================
+    // PRECONEXIÓN (desde SplashActivity.onCreate)
+    // =============================================
+
+    /**
+     * Resuelve el DNS y deja abierta en el pool una conexión TLS con el sitio mientras se
+     * muestra el splash. Todo en un hilo propio, también crear el cliente (lee los certificados
+     * del sistema). La resolución queda además en la caché del sistema, que usa el WebView.
+     */
+    @AnyThread
+    public static void preconnect(String siteUrl) {
+        if (!preconnectStarted.compareAndSet(false, true)) return;
+
+        Thread thread = new Thread(() -> get().connect(siteUrl), "SitePreconnect");
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        thread.start();
+    }
+
+    private void connect(String siteUrl) {
+        long start = SystemClock.uptimeMillis();
+        try {
+            Request request = new Request.Builder().url(siteUrl).head().build();
+            try (Response response = withTimeouts(PRECONNECT_TIMEOUT_MS, PRECONNECT_TIMEOUT_MS)
+                    .newCall(request).execute()) {
+                stats.preconnectMillis.set(SystemClock.uptimeMillis() - start);
+                Log.d(TAG, "Preconexión lista en " + stats.preconnectMillis.get() + " ms ("
+                        + response.protocol() + ")");
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            // Sin red: el WebView mostrará el error cuando corresponda
+            Log.d(TAG, "Preconexión fallida: " + e.getMessage());
+            preconnectStarted.set(false);
+        }
+    }
+
+    // =============================================
+    // DNS Y MÉTRICAS DEL POOL
+    // =============================================
+
+    /**
+     * Caché de DNS del proceso: una resolución sirve DNS_TTL_MS a todas las peticiones.
+     * Si una resolución nueva falla, se usan las direcciones de antes.
+     */
+    private final class CachingDns implements Dns {
+        private final ConcurrentHashMap<String, CachedLookup> cache = new ConcurrentHashMap<>();
+
+        @NonNull
+        @Override
+        public List<InetAddress> lookup(@NonNull String hostname) throws UnknownHostException {
+            long now = SystemClock.elapsedRealtime();
+            CachedLookup cached = cache.get(hostname);
+            if (cached != null && now < cached.expiresAt) {
+                stats.dnsCacheHits.incrementAndGet();
+                return cached.addresses;
+            }
+            stats.dnsLookups.incrementAndGet();
+            try {
+                List<InetAddress> addresses = Dns.SYSTEM.lookup(hostname);
+                cache.put(hostname, new CachedLookup(addresses, now + DNS_TTL_MS));
+                return addresses;
+            } catch (UnknownHostException e) {
+                if (cached != null) return cached.addresses;
+                throw e;
+            }
+        }
+    }
+
+    private static final class CachedLookup {
+        final List<InetAddress> addresses;
+        final long expiresAt;
+
+        CachedLookup(List<InetAddress> addresses, long expiresAt) {
+            this.addresses = addresses;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * Cuenta las conexiones nuevas frente a las que se toman del pool, y las llamadas en curso
+     * (contador de AppTrace)
+     */
+    private class PoolListener extends EventListener {
+        @Override
+        public void callStart(@NonNull Call call) {
+            stats.calls.incrementAndGet();
+            AppTrace.counter(AppTrace.COUNTER_HTTP_IN_FLIGHT, stats.callsInFlight.incrementAndGet());
+        }
+
+        @Override
+        public void callEnd(@NonNull Call call) {
+            AppTrace.counter(AppTrace.COUNTER_HTTP_IN_FLIGHT, stats.callsInFlight.decrementAndGet());
+        }
+
+        @Override
+        public void callFailed(@NonNull Call call, @NonNull IOException ioe) {
+            AppTrace.counter(AppTrace.COUNTER_HTTP_IN_FLIGHT, stats.callsInFlight.decrementAndGet());
+        }
+
+        @Override
+        public void connectEnd(@NonNull Call call, @NonNull InetSocketAddress inetSocketAddress,
+                               @NonNull Proxy proxy, @Nullable Protocol protocol) {
+            stats.connectionsOpened.incrementAndGet();
+        }
+
+        @Override
+        public void connectionAcquired(@NonNull Call call, @NonNull Connection connection) {
+            stats.connectionsAcquired.incrementAndGet();
+            if (connection.protocol() == Protocol.HTTP_2) {
+                stats.http2Acquired.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Además de contar, toma los tiempos de una llamada para NetworkTracer (uno por llamada)
+     */
+    private final class TracingListener extends PoolListener {
+        private final NetworkTracer.HttpTiming timing = new NetworkTracer.HttpTiming();
+
+        TracingListener(Call call) {
+            timing.url = call.request().url().toString();
+        }
+
+        @Override
+        public void callStart(@NonNull Call call) {
+            super.callStart(call);
+            timing.callStart = System.nanoTime();
+        }
+
+        @Override
+        public void dnsStart(@NonNull Call call, @NonNull String domainName) {
+            timing.dnsStart = System.nanoTime();
+        }
+
+        @Override
+        public void dnsEnd(@NonNull Call call, @NonNull String domainName,
+                           @NonNull List<InetAddress> inetAddressList) {
+            timing.dnsEnd = System.nanoTime();
+        }
+
+        @Override
+        public void connectStart(@NonNull Call call, @NonNull InetSocketAddress inetSocketAddress,
+                                 @NonNull Proxy proxy) {
+            timing.connectStart = System.nanoTime();
+        }
+
+        @Override
+        public void secureConnectStart(@NonNull Call call) {
+            timing.secureConnectStart = System.nanoTime();
+        }
+
+        @Override
+        public void secureConnectEnd(@NonNull Call call, @Nullable Handshake handshake) {
+            timing.secureConnectEnd = System.nanoTime();
+        }
+
+        @Override
+        public void connectEnd(@NonNull Call call, @NonNull InetSocketAddress inetSocketAddress,
+                               @NonNull Proxy proxy, @Nullable Protocol protocol) {
+            super.connectEnd(call, inetSocketAddress, proxy, protocol);
+            timing.connectEnd = System.nanoTime();
+        }
+
+        @Override
+        public void connectionAcquired(@NonNull Call call, @NonNull Connection connection) {
+            super.connectionAcquired(call, connection);
+            timing.protocol = connection.protocol().toString();
+        }
+
+        @Override
+        public void requestHeadersStart(@NonNull Call call) {
+            // Si hubo reintento, cuenta el último
+            timing.requestStart = System.nanoTime();
+        }
+
+        @Override
+        public void responseHeadersStart(@NonNull Call call) {
+            timing.responseStart = System.nanoTime();
+        }
+
+        @Override
+        public void callEnd(@NonNull Call call) {
+            super.callEnd(call);
+            timing.callEnd = System.nanoTime();
+            NetworkTracer.get().onHttpCall(timing);
+        }
+
+        @Override
+        public void callFailed(@NonNull Call call, @NonNull IOException ioe) {
+            super.callFailed(call, ioe);
+            timing.callEnd = System.nanoTime();
+            timing.error = call.isCanceled() ? "canceled" : String.valueOf(ioe.getMessage());
+            NetworkTracer.get().onHttpCall(timing);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.buscandoadios.espana;
+
+import android.webkit.WebChromeClient;
+import android.webkit.WebView;
+
+/**
+ * SiteWebChromeClient - WebChromeClient base de todos los WebView de la app
+ * Registra el primer progreso de cada navegación; MainActivity lo extiende
+ * para la barra de progreso, la subida de archivos, etc.
+ */
+class SiteWebChromeClient extends WebChromeClient {
+
+    @Override
+    public void onProgressChanged(WebView view, int newProgress) {
+        super.onProgressChanged(view, newProgress);
+        PageLoadMetrics.get(view.getContext()).onProgress(newProgress);
+    }
+}
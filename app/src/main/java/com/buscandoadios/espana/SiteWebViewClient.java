@@ -0,0 +1,118 @@
+package com.buscandoadios.espana;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.webkit.RenderProcessGoneDetail;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+import android.webkit.WebView;
+import android.webkit.WebViewClient;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * SiteWebViewClient - Cliente base de todos los WebView de la app
+ * Se encarga de la interceptación de peticiones (caché propia de recursos) y de
+ * las métricas de carga; MainActivity y la precarga lo extienden con su propia
+ * lógica de interfaz (siempre llamando a super).
+ */
+class SiteWebViewClient extends WebViewClient {
+
+    // Navegación abierta en la traza de cada WebView (el cliente cambia al pasar del splash a MainActivity)
+    private static final Map<WebView, Integer> openNavigations = new WeakHashMap<>();
+
+    @Override
+    public void onPageStarted(WebView view, String url, Bitmap favicon) {
+        super.onPageStarted(view, url, favicon);
+        endNavigationTrace(view);
+        int cookie = AppTrace.newCookie();
+        openNavigations.put(view, cookie);
+        AppTrace.beginAsync(AppTrace.ASYNC_NAVIGATION, cookie);
+        PageLoadMetrics.get(view.getContext()).onNavigationStarted(url);
+        // La red, para la página que empieza: fuera las precargas en marcha
+        PagePrefetcher.get(view.getContext()).cancel();
+    }
+
+    @Override
+    public void onPageFinished(WebView view, String url) {
+        super.onPageFinished(view, url);
+        endNavigationTrace(view);
+        PageLoadMetrics.get(view.getContext()).onPageFinished(url);
+        // La página nos envía sus tiempos de Navigation/Paint Timing
+        view.evaluateJavascript(PageLoadMetrics.TIMING_SCRIPT, null);
+        // Y nos avisa de los enlaces que quedan a la vista, para precargarlos
+        view.evaluateJavascript(PagePrefetcher.OBSERVER_SCRIPT, null);
+        // La portada guarda su menú y titulares para el esqueleto del próximo arranque
+        if (AppShell.isStartPage(url)) {
+            view.evaluateJavascript(AppShell.CAPTURE_SCRIPT, null);
+        }
+        // Con la traza de red en marcha, la página envía sus tiempos por recurso
+        if (NetworkTracer.get().isEnabled()) {
+            view.evaluateJavascript(NetworkTracer.RESOURCE_SCRIPT, null);
+        }
+    }
+
+    /**
+     * El renderer murió (fallo o el sistema lo mató por memoria). Devolver false cerraría la
+     * app entera; el WebView ya no sirve y se descarta. MainActivity reconstruye el suyo.
+     */
+    @Override
+    @RequiresApi(Build.VERSION_CODES.O)
+    public boolean onRenderProcessGone(WebView view, RenderProcessGoneDetail detail) {
+        PageLoadMetrics.get(view.getContext()).onMemoryTrim(-1,
+                detail.didCrash() ? "renderer_crashed" : "renderer_killed", -1);
+        endNavigationTrace(view);
+        WebViewPool.get(view.getContext()).discard(view);
+        return true;
+    }
+
+    private static void endNavigationTrace(WebView view) {
+        Integer cookie = openNavigations.remove(view);
+        if (cookie != null) {
+            AppTrace.endAsync(AppTrace.ASYNC_NAVIGATION, cookie);
+        }
+    }
+
+    @Override
+    public WebResourceResponse shouldInterceptRequest(WebView view, WebResourceRequest request) {
+        long start = System.nanoTime();
+
+        // Página ya precargada al tocar su enlace (corre en hilo de fondo)
+        WebResourceResponse prefetched = PagePrefetcher.get(view.getContext()).serve(request);
+        if (prefetched != null) return traced(request, NetworkTracer.SOURCE_PREFETCH, start, prefetched);
+
+        // Logo, fuentes, CSS y JS base que vienen dentro del APK
+        WebResourceResponse bundled = BundledSiteAssets.getInstance(view.getContext()).intercept(request);
+        if (bundled != null) return traced(request, NetworkTracer.SOURCE_APK, start, bundled);
+
+        // Fotos del sitio reducidas al ancho de la pantalla (el original pasa por WebAssetCache)
+        ImageOptimizer images = ImageOptimizer.get(view.getContext());
+        if (images.handles(request)) {
+            WebResourceResponse image = images.intercept(request);
+            if (image != null) return traced(request, NetworkTracer.SOURCE_IMAGE, start, image);
+            return traced(request, NetworkTracer.SOURCE_WEBVIEW, start, super.shouldInterceptRequest(view, request));
+        }
+
+        // Recursos estáticos desde nuestra caché en disco
+        WebResourceResponse cached = WebAssetCache.getInstance(view.getContext()).intercept(request);
+        if (cached != null) return traced(request, NetworkTracer.SOURCE_CACHE, start, cached);
+        return traced(request, NetworkTracer.SOURCE_WEBVIEW, start, super.shouldInterceptRequest(view, request));
+    }
+
+    /**
+     * Apunta la petición en la traza de red si se está grabando (solo depuración)
+     */
+    @Nullable
+    private static WebResourceResponse traced(WebResourceRequest request, String source, long startNanos,
+                                              @Nullable WebResourceResponse response) {
+        NetworkTracer tracer = NetworkTracer.get();
+        if (tracer.isEnabled()) {
+            tracer.onIntercepted(request, source, startNanos, response);
+        }
+        return response;
+    }
+}
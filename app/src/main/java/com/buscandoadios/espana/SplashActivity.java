@@ -4,33 +4,108 @@ import android.content.Intent;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
+import android.view.Choreographer;
+
 import androidx.appcompat.app.AppCompatActivity;
 
 /**
  * SplashActivity - Pantalla de bienvenida
- * Muestra el logo durante 2.5 segundos y luego abre la app
+ * Muestra el logo mientras se precarga la web y abre la app en cuanto
+ * la página tiene su primer pintado (con un mínimo y un máximo de espera)
  */
 public class SplashActivity extends AppCompatActivity {
 
-    private static final int SPLASH_DURATION = 2500; // 2.5 segundos
+    private static final long MIN_DISPLAY_MS = 600;   // Para que el logo no sea un parpadeo
+    private static final long MAX_WAIT_MS = 4000;     // Con red lenta no esperamos más
+
+    // Solo el build "benchmark": abrir MainActivity sin WebView precargado (ver skipsPreload)
+    static final String EXTRA_NO_PRELOAD = "com.buscandoadios.espana.NO_PRELOAD";
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable openMainRunnable = this::openMain;
+    private WebViewPreloader preloader;
+    private String startUrl;
+    private long shownAt;
+    private boolean mainOpened;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
-        super.onCreate(savedInstanceState);
-        setContentView(R.layout.activity_splash);
-
-        // Esperar y luego abrir MainActivity
-        new Handler(Looper.getMainLooper()).postDelayed(new Runnable() {
-            @Override
-            public void run() {
-                Intent intent = new Intent(SplashActivity.this, MainActivity.class);
-                startActivity(intent);
-                finish(); // Cerrar splash para que no vuelva con "atrás"
-                
-                // Animación suave de transición
-                overridePendingTransition(android.R.anim.fade_in, android.R.anim.fade_out);
+        AppTrace.begin(AppTrace.SPLASH_ON_CREATE);
+        try {
+            super.onCreate(savedInstanceState);
+            setContentView(R.layout.activity_splash);
+            shownAt = SystemClock.uptimeMillis();
+            startUrl = MainActivity.resolveStartUrl(this, getIntent());
+
+            // DNS + TLS en paralelo con la carga del WebView
+            SiteHttpClient.preconnect(MainActivity.WEB_URL);
+
+            if (skipsPreload(getIntent())) {
+                // MainActivity carga la página ella misma, como al volver sin el splash
+                handler.postDelayed(openMainRunnable, MIN_DISPLAY_MS);
+                return;
             }
-        }, SPLASH_DURATION);
+
+            // Crear el WebView después del primer frame para que el logo se vea ya
+            Choreographer.getInstance().postFrameCallback(frameTimeNanos -> handler.post(() -> {
+                if (isFinishing() || mainOpened) return;
+                preloader = WebViewPreloader.start(this, startUrl);
+                preloader.setListener(this::onPreloadReady);
+            }));
+
+            // Como mucho esperamos MAX_WAIT_MS
+            handler.postDelayed(openMainRunnable, MAX_WAIT_MS);
+            // Con esqueleto de la portada guardado no hace falta esperar a la red
+            handler.postDelayed(this::openIfAppShellReady, MIN_DISPLAY_MS);
+        } finally {
+            AppTrace.end();
+        }
+    }
+
+    /**
+     * Para que :benchmark mida MainActivity.loadWebsite. Solo el build "benchmark" acepta el extra.
+     */
+    private boolean skipsPreload(Intent intent) {
+        return intent != null && getResources().getBoolean(R.bool.benchmark_mode)
+                && intent.getBooleanExtra(EXTRA_NO_PRELOAD, false);
+    }
+
+    private void openIfAppShellReady() {
+        if (MainActivity.WEB_URL.equals(startUrl) && AppShell.get(this).isReady()) {
+            openMain();
+        }
+    }
+
+    private void onPreloadReady() {
+        long elapsed = SystemClock.uptimeMillis() - shownAt;
+        handler.removeCallbacks(openMainRunnable);
+        handler.postDelayed(openMainRunnable, Math.max(0, MIN_DISPLAY_MS - elapsed));
+    }
+
+    private void openMain() {
+        if (mainOpened) return;
+        mainOpened = true;
+        handler.removeCallbacksAndMessages(null);
+
+        Intent intent = new Intent(SplashActivity.this, MainActivity.class);
+        if (!MainActivity.WEB_URL.equals(startUrl)) {
+            intent.putExtra(MainActivity.EXTRA_START_URL, startUrl);
+        }
+        startActivity(intent);
+        finish(); // Cerrar splash para que no vuelva con "atrás"
+
+        // Animación suave de transición
+        overridePendingTransition(android.R.anim.fade_in, android.R.anim.fade_out);
+    }
+
+    @Override
+    protected void onDestroy() {
+        handler.removeCallbacksAndMessages(null);
+        if (preloader != null) {
+            preloader.setListener(null);
+        }
+        super.onDestroy();
     }
 
     @Override
@@ -0,0 +1,137 @@
+package com.buscandoadios.espana;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.webkit.JavascriptInterface;
+import android.webkit.WebView;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+
+import com.tuapp.utils.UploadQueue;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * UploadBridge - Puente JS para subir archivos con UploadQueue (window.AndroidUploads)
+ *
+ * Desde la página:
+ *   AndroidUploads.pick("https://buscandoadios-espana.com/api/upload.php", "perfil")
+ *   AndroidUploads.cancel(id)
+ *   JSON.parse(AndroidUploads.pending())   // p. ej. al cargar, tras reiniciar la app
+ *   window.addEventListener("nativeupload", e => e.detail)   // progreso y resultado
+ *
+ * Solo se aceptan endpoints https de nuestro dominio.
+ */
+public final class UploadBridge {
+
+    private static final String TAG = "UploadBridge";
+
+    static final String JS_BRIDGE_NAME = "AndroidUploads";
+    static final String EVENT_NAME = "nativeupload";
+
+    /**
+     * Activity que sabe abrir el selector de archivos
+     */
+    public interface Host {
+        @MainThread
+        void pickFilesForUpload(String endpoint, String tag);
+    }
+
+    private final WebView webView;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    UploadBridge(WebView webView) {
+        this.webView = webView;
+    }
+
+    // =============================================
+    // LLAMADAS DESDE JS (hilo del puente)
+    // =============================================
+
+    @JavascriptInterface
+    public boolean pick(String endpoint, String tag) {
+        if (!isAllowedEndpoint(endpoint)) {
+            Log.w(TAG, "Endpoint de subida no permitido: " + endpoint);
+            return false;
+        }
+        mainHandler.post(() -> {
+            Host host = findHost(webView.getContext());
+            if (host != null) {
+                host.pickFilesForUpload(endpoint, tag != null ? tag : "");
+            }
+        });
+        return true;
+    }
+
+    @JavascriptInterface
+    public void cancel(String id) {
+        try {
+            UploadQueue.get(webView.getContext()).cancel(Long.parseLong(id));
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "Id de subida no válido: " + id);
+        }
+    }
+
+    @JavascriptInterface
+    public String pending() {
+        JSONArray array = new JSONArray();
+        for (UploadQueue.Upload upload : UploadQueue.get(webView.getContext()).pending()) {
+            array.put(toJson(upload));
+        }
+        return array.toString();
+    }
+
+    // =============================================
+    // AVISOS A LA PÁGINA
+    // =============================================
+
+    /**
+     * Script que lanza el evento "nativeupload" con el estado de la subida
+     */
+    @NonNull
+    static String eventScript(UploadQueue.Upload upload) {
+        return "window.dispatchEvent(new CustomEvent('" + EVENT_NAME + "',{detail:"
+                + toJson(upload) + "}));";
+    }
+
+    private static JSONObject toJson(UploadQueue.Upload upload) {
+        JSONObject json = new JSONObject();
+        try {
+            // El id como texto: es lo que espera cancel()
+            json.put("id", String.valueOf(upload.getId()));
+            json.put("tag", upload.getTag());
+            json.put("fileName", upload.getFileName());
+            json.put("status", upload.getStatus().name());
+            json.put("sentBytes", upload.getSentBytes());
+            json.put("totalBytes", upload.getTotalBytes());
+            json.put("attempts", upload.getAttempts());
+            if (upload.getStatusCode() != 0) json.put("statusCode", upload.getStatusCode());
+            if (upload.getResponse() != null) json.put("response", upload.getResponse());
+        } catch (JSONException e) {
+            // No pasa con valores de estos tipos
+        }
+        return json;
+    }
+
+    static boolean isAllowedEndpoint(String endpoint) {
+        if (endpoint == null) return false;
+        Uri uri = Uri.parse(endpoint);
+        return "https".equals(uri.getScheme()) && WebAssetCache.isSiteHost(uri.getHost());
+    }
+
+    private static Host findHost(Context context) {
+        // Los WebView del pool van sobre un MutableContextWrapper con la Activity dentro
+        while (context instanceof ContextWrapper) {
+            if (context instanceof Host) return (Host) context;
+            context = ((ContextWrapper) context).getBaseContext();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,340 @@
+package com.buscandoadios.espana;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.media.ExifInterface;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+import android.os.Process;
+import android.util.Log;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongConsumer;
+
+/**
+ * UploadImageProcessor - Prepara las fotos antes de subirlas desde el selector de archivos
+ *
+ * Una foto de cámara pesa 8-12 MB; subida tal cual por datos móviles tarda demasiado.
+ * Cada imagen (de la cámara o de la galería) se gira según su EXIF, se reduce a un tamaño
+ * máximo (decodificando ya reducida con inSampleSize) y se vuelve a comprimir en JPEG o WebP
+ * bajando la calidad hasta que cabe en el presupuesto de bytes. Lo que no es imagen (PDF...)
+ * o ya es pequeño se entrega tal cual.
+ *
+ * Todo corre en un hilo de fondo; el resultado llega en el hilo principal. El bitmap
+ * decodificado se reutiliza entre fotos (inBitmap) y se libera al vaciarse la cola.
+ */
+public final class UploadImageProcessor {
+
+    private static final String TAG = "UploadImageProcessor";
+
+    private static final String OUTPUT_DIR = "uploads";
+    private static final long OUTPUT_MAX_AGE_MS = 24L * 60 * 60 * 1000; // 1 día
+    private static final int QUALITY_STEP = 10;
+
+    /**
+     * Tamaño y calidad objetivo de las imágenes subidas
+     */
+    public static final class Budget {
+        // JPEG por defecto: es lo que seguro acepta el formulario de la web
+        public static final Budget DEFAULT = new Budget(2048, 1024 * 1024, 85, 55, Bitmap.CompressFormat.JPEG);
+
+        final int maxDimension;     // lado mayor, en píxeles
+        final long maxBytes;
+        final int quality;          // calidad inicial
+        final int minQuality;       // no se baja de aquí aunque no quepa en maxBytes
+        final Bitmap.CompressFormat format;
+
+        public Budget(int maxDimension, long maxBytes, int quality, int minQuality,
+                      Bitmap.CompressFormat format) {
+            this.maxDimension = maxDimension;
+            this.maxBytes = maxBytes;
+            this.quality = quality;
+            this.minQuality = minQuality;
+            this.format = format;
+        }
+
+        String extension() {
+            return format == Bitmap.CompressFormat.JPEG ? ".jpg" : ".webp";
+        }
+    }
+
+    public interface Callback {
+        void onProcessed(Uri[] uris);
+    }
+
+    private static UploadImageProcessor instance;
+
+    private final Context appContext;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(() -> {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        r.run();
+    }, "UploadImageProcessor"));
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private volatile Budget budget = Budget.DEFAULT;
+    private final AtomicInteger pendingBatches = new AtomicInteger();
+
+    // Solo desde el hilo del executor
+    private Bitmap reusable;
+    private boolean cleanedUp;
+
+    @MainThread
+    public static UploadImageProcessor get(Context context) {
+        if (instance == null) {
+            instance = new UploadImageProcessor(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private UploadImageProcessor(Context appContext) {
+        this.appContext = appContext;
+    }
+
+    public void setBudget(Budget budget) {
+        this.budget = budget;
+    }
+
+    // =============================================
+    // API PÚBLICA
+    // =============================================
+
+    /**
+     * Procesa las Uris elegidas. El callback recibe, en el mismo orden, la versión
+     * reducida de cada imagen o la Uri original si no hacía falta (o falló).
+     * Si deleteOriginals, las originales que se sustituyen se borran (fotos temporales de cámara).
+     */
+    @MainThread
+    public void process(Uri[] uris, boolean deleteOriginals, Callback callback) {
+        Budget current = budget;
+        pendingBatches.incrementAndGet();
+        executor.execute(() -> {
+            cleanUpOldOutputs();
+            Uri[] results = new Uri[uris.length];
+            for (int i = 0; i < uris.length; i++) {
+                Uri processed = processOne(uris[i], current);
+                results[i] = processed != null ? processed : uris[i];
+                if (processed != null && deleteOriginals) {
+                    deleteFileUri(uris[i]);
+                }
+            }
+            // Cola vacía: soltar el bitmap reutilizable (puede ocupar más de 10 MB)
+            if (pendingBatches.decrementAndGet() == 0 && reusable != null) {
+                reusable.recycle();
+                reusable = null;
+            }
+            mainHandler.post(() -> callback.onProcessed(results));
+        });
+    }
+
+    /**
+     * Respuesta a la falta de memoria: suelta el bitmap reutilizable si no hay fotos en cola.
+     * onReleased recibe (en el hilo de fondo) los bytes liberados, solo si se liberó algo.
+     */
+    public void releaseDecodedBitmap(LongConsumer onReleased) {
+        executor.execute(() -> {
+            if (pendingBatches.get() > 0 || reusable == null) return;
+            long bytes = reusable.getAllocationByteCount();
+            reusable.recycle();
+            reusable = null;
+            onReleased.accept(bytes);
+        });
+    }
+
+    // =============================================
+    // PROCESADO (hilo de fondo)
+    // =============================================
+
+    /**
+     * Devuelve la Uri del archivo procesado, o null si hay que subir el original
+     */
+    @Nullable
+    private Uri processOne(Uri uri, Budget budget) {
+        ContentResolver resolver = appContext.getContentResolver();
+        String mimeType = resolver.getType(uri);
+        if (mimeType != null && (!mimeType.startsWith("image/") || mimeType.equals("image/gif"))) {
+            return null;    // PDFs y GIF animados, tal cual
+        }
+
+        try {
+            BitmapFactory.Options bounds = new BitmapFactory.Options();
+            bounds.inJustDecodeBounds = true;
+            try (InputStream in = resolver.openInputStream(uri)) {
+                if (in == null) return null;
+                BitmapFactory.decodeStream(in, null, bounds);
+            }
+            if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+                return null;    // No es una imagen que sepamos decodificar
+            }
+
+            int rotation = readRotation(resolver, uri);
+            long originalBytes = sizeOf(resolver, uri);
+            int longSide = Math.max(bounds.outWidth, bounds.outHeight);
+            if (rotation == 0 && longSide <= budget.maxDimension
+                    && originalBytes > 0 && originalBytes <= budget.maxBytes) {
+                return null;    // Ya cabe en el presupuesto
+            }
+
+            Bitmap decoded = decode(resolver, uri, bounds, budget.maxDimension);
+            if (decoded == null) return null;
+
+            // Ajuste fino (inSampleSize solo reduce a potencias de 2) y giro, en un solo paso
+            Matrix matrix = new Matrix();
+            float scale = Math.min(1f, budget.maxDimension
+                    / (float) Math.max(decoded.getWidth(), decoded.getHeight()));
+            if (scale < 1f) matrix.postScale(scale, scale);
+            if (rotation != 0) matrix.postRotate(rotation);
+            Bitmap output = matrix.isIdentity() ? decoded
+                    : Bitmap.createBitmap(decoded, 0, 0, decoded.getWidth(), decoded.getHeight(), matrix, true);
+
+            try {
+                File file = encode(output, budget);
+                Log.d(TAG, "Imagen " + bounds.outWidth + "x" + bounds.outHeight + " (" + originalBytes
+                        + " B) -> " + output.getWidth() + "x" + output.getHeight() + " (" + file.length() + " B)");
+                return Uri.fromFile(file);
+            } finally {
+                if (output != decoded) output.recycle();
+            }
+        } catch (IOException | RuntimeException | OutOfMemoryError e) {
+            Log.w(TAG, "No se pudo procesar " + uri + ", se sube el original", e);
+            return null;
+        }
+    }
+
+    /**
+     * Decodifica ya reducida (inSampleSize) y, si se puede, sobre el bitmap de la foto anterior
+     */
+    @Nullable
+    private Bitmap decode(ContentResolver resolver, Uri uri, BitmapFactory.Options bounds,
+                          int maxDimension) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSizeFor(bounds.outWidth, bounds.outHeight, maxDimension);
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        options.inMutable = true;
+
+        int width = (bounds.outWidth + options.inSampleSize - 1) / options.inSampleSize;
+        int height = (bounds.outHeight + options.inSampleSize - 1) / options.inSampleSize;
+        if (reusable != null && !reusable.isRecycled()
+                && reusable.getAllocationByteCount() >= width * height * 4) {
+            options.inBitmap = reusable;
+        }
+
+        Bitmap bitmap;
+        try (InputStream in = resolver.openInputStream(uri)) {
+            bitmap = BitmapFactory.decodeStream(in, null, options);
+        } catch (IllegalArgumentException e) {
+            // El bitmap a reutilizar no vale para esta imagen: decodificar en uno nuevo
+            options.inBitmap = null;
+            try (InputStream in = resolver.openInputStream(uri)) {
+                bitmap = BitmapFactory.decodeStream(in, null, options);
+            }
+        }
+        if (bitmap != null && bitmap != reusable) {
+            if (reusable != null) reusable.recycle();
+            reusable = bitmap;
+        }
+        return bitmap;
+    }
+
+    /**
+     * Mayor potencia de 2 que deja el lado mayor todavía >= maxDimension
+     */
+    static int sampleSizeFor(int width, int height, int maxDimension) {
+        int longSide = Math.max(width, height);
+        int sampleSize = 1;
+        while (longSide / (sampleSize * 2) >= maxDimension) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Comprime directamente al archivo; si se pasa de maxBytes, otra vez con menos calidad
+     */
+    private File encode(Bitmap bitmap, Budget budget) throws IOException {
+        File dir = new File(appContext.getCacheDir(), OUTPUT_DIR);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("No se puede crear " + dir);
+        }
+        File file = File.createTempFile("upload_", budget.extension(), dir);
+        Bitmap.CompressFormat format = budget.format;
+
+        int quality = budget.quality;
+        while (true) {
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+                if (!bitmap.compress(format, quality, out)) {
+                    throw new IOException("Fallo al comprimir la imagen");
+                }
+            }
+            if (file.length() <= budget.maxBytes || quality <= budget.minQuality) {
+                return file;
+            }
+            quality = Math.max(budget.minQuality, quality - QUALITY_STEP);
+        }
+    }
+
+    private static int readRotation(ContentResolver resolver, Uri uri) {
+        try (InputStream in = resolver.openInputStream(uri)) {
+            if (in == null) return 0;
+            ExifInterface exif = new ExifInterface(in);
+            switch (exif.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL)) {
+                case ExifInterface.ORIENTATION_ROTATE_90:
+                    return 90;
+                case ExifInterface.ORIENTATION_ROTATE_180:
+                    return 180;
+                case ExifInterface.ORIENTATION_ROTATE_270:
+                    return 270;
+                default:
+                    return 0;
+            }
+        } catch (IOException | RuntimeException e) {
+            return 0;
+        }
+    }
+
+    private static long sizeOf(ContentResolver resolver, Uri uri) {
+        try (ParcelFileDescriptor fd = resolver.openFileDescriptor(uri, "r")) {
+            return fd != null ? fd.getStatSize() : -1;
+        } catch (IOException | RuntimeException e) {
+            return -1;
+        }
+    }
+
+    private static void deleteFileUri(Uri uri) {
+        if ("file".equals(uri.getScheme()) && uri.getPath() != null) {
+            //noinspection ResultOfMethodCallIgnored
+            new File(uri.getPath()).delete();
+        }
+    }
+
+    /**
+     * Borra procesados de otras sesiones (la web ya los habrá subido)
+     */
+    private void cleanUpOldOutputs() {
+        if (cleanedUp) return;
+        cleanedUp = true;
+        File[] files = new File(appContext.getCacheDir(), OUTPUT_DIR).listFiles();
+        if (files == null) return;
+        long cutoff = System.currentTimeMillis() - OUTPUT_MAX_AGE_MS;
+        for (File file : files) {
+            if (file.lastModified() < cutoff) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+    }
+}
@@ -0,0 +1,902 @@
+package com.buscandoadios.espana;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+import android.webkit.CookieManager;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import okhttp3.Headers;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * WebAssetCache - Caché en disco propia para los recursos estáticos de la web
+ * (CSS, JS, fuentes e imágenes de buscandoadios-espana.com).
+ *
+ * Se usa desde WebViewClient.shouldInterceptRequest, que ya corre fuera del hilo
+ * principal. Respeta Cache-Control/ETag/Last-Modified, sirve contenido caducado
+ * mientras revalida en segundo plano y, sin red, sirve la última copia que tenga.
+ * Las peticiones simultáneas a la misma URL comparten una sola descarga (Flight), y todas
+ * van por el cliente HTTP compartido de la app (SiteHttpClient).
+ */
+public final class WebAssetCache {
+
+    private static final String TAG = "WebAssetCache";
+
+    static final String SITE_HOST = "buscandoadios-espana.com";
+
+    private static final long MAX_CACHE_BYTES = 50L * 1024 * 1024; // 50 MB
+    private static final long DEFAULT_STALE_WINDOW_MS = 7L * 24 * 60 * 60 * 1000; // 7 días
+    private static final long MAX_HEURISTIC_LIFETIME_MS = 24L * 60 * 60 * 1000; // 1 día
+    private static final int CONNECT_TIMEOUT_MS = 15000;
+    private static final int READ_TIMEOUT_MS = 20000;
+
+    // Cómo acabó la primera petición de una descarga compartida (Flight)
+    private static final int FLIGHT_UNSHARED = 0;
+    private static final int FLIGHT_SHARED = 1;
+    private static final int FLIGHT_NOT_MODIFIED = 2;
+
+    // Extensiones que consideramos recursos estáticos
+    private static final Set<String> STATIC_EXTENSIONS = new HashSet<>(Arrays.asList(
+            "css", "js", "mjs", "woff", "woff2", "ttf", "otf", "eot",
+            "png", "jpg", "jpeg", "gif", "webp", "svg", "ico"));
+
+    // Cabeceras que no se deben repetir al servir desde disco
+    private static final Set<String> SKIPPED_HEADERS = new HashSet<>(Arrays.asList(
+            "connection", "keep-alive", "transfer-encoding", "content-encoding",
+            "content-length", "set-cookie", "proxy-connection", "upgrade"));
+
+    private static volatile WebAssetCache instance;
+
+    private final Context appContext;
+    @Nullable private DiskLruStore store;
+    private final OkHttpClient client;
+    private final Stats stats = new Stats();
+    private final ExecutorService revalidationExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "WebAssetCache-revalidate");
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+    private final Set<String> revalidating = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    // Descargas en curso por clave: las peticiones iguales simultáneas comparten una sola
+    private final ConcurrentHashMap<String, Flight> inFlight = new ConcurrentHashMap<>();
+    private final ExecutorService fetchExecutor = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "WebAssetCache-fetch");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Contadores de aciertos, fallos y bytes para medir el ahorro
+     */
+    public static final class Stats {
+        final AtomicLong hits = new AtomicLong();
+        final AtomicLong staleHits = new AtomicLong();
+        final AtomicLong misses = new AtomicLong();
+        final AtomicLong revalidations = new AtomicLong();
+        final AtomicLong notModified = new AtomicLong();
+        final AtomicLong offlineFallbacks = new AtomicLong();
+        final AtomicLong bytesFromCache = new AtomicLong();
+        final AtomicLong bytesFromNetwork = new AtomicLong();
+        final AtomicLong networkFetches = new AtomicLong();
+        final AtomicLong networkMillis = new AtomicLong();
+        final AtomicLong coalesced = new AtomicLong();
+
+        public long getHits() {
+            return hits.get() + staleHits.get();
+        }
+
+        public long getMisses() {
+            return misses.get();
+        }
+
+        public long getBytesFromCache() {
+            return bytesFromCache.get();
+        }
+
+        public long getBytesFromNetwork() {
+            return bytesFromNetwork.get();
+        }
+
+        /**
+         * Latencia ahorrada estimada: aciertos x tiempo medio hasta cabeceras por red
+         */
+        public long getEstimatedSavedMillis() {
+            long fetches = networkFetches.get();
+            if (fetches == 0) return 0;
+            return getHits() * (networkMillis.get() / fetches);
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "hits=%d stale=%d misses=%d revalidations=%d notModified=%d offline=%d "
+                            + "coalesced=%d bytesCache=%d bytesNet=%d savedMs=%d",
+                    hits.get(), staleHits.get(), misses.get(), revalidations.get(),
+                    notModified.get(), offlineFallbacks.get(), coalesced.get(), bytesFromCache.get(),
+                    bytesFromNetwork.get(), getEstimatedSavedMillis());
+        }
+    }
+
+    public static WebAssetCache getInstance(Context context) {
+        if (instance == null) {
+            synchronized (WebAssetCache.class) {
+                if (instance == null) {
+                    instance = new WebAssetCache(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    private WebAssetCache(Context appContext) {
+        this.appContext = appContext;
+        client = SiteHttpClient.get().withTimeouts(CONNECT_TIMEOUT_MS, READ_TIMEOUT_MS);
+    }
+
+    // getCacheDir() puede tocar disco: el almacén se crea la primera vez que se usa (hilo de fondo),
+    // y getInstance() vale también en el hilo principal (p. ej. para getStats())
+    private synchronized DiskLruStore store() {
+        if (store == null) {
+            store = new DiskLruStore(new File(appContext.getCacheDir(), "web_assets"), MAX_CACHE_BYTES);
+        }
+        return store;
+    }
+
+    public Stats getStats() {
+        return stats;
+    }
+
+    /**
+     * Punto de entrada desde shouldInterceptRequest.
+     * Devuelve null si la petición no es cacheable y debe seguir su camino normal.
+     */
+    @Nullable
+    public WebResourceResponse intercept(WebResourceRequest request) {
+        if (!isCacheable(request)) return null;
+
+        String url = request.getUrl().toString();
+        String key = DiskLruStore.keyFor(url);
+        Map<String, String> requestHeaders = request.getRequestHeaders();
+        long now = System.currentTimeMillis();
+
+        DiskLruStore.Snapshot snapshot = store().get(key);
+        if (snapshot != null) {
+            DiskLruStore.Metadata meta = snapshot.metadata;
+
+            // Fresco: servir directamente
+            if (!meta.noCache && now < meta.expiresAt) {
+                stats.hits.incrementAndGet();
+                return respondFromDisk(snapshot);
+            }
+
+            // Caducado pero dentro de la ventana: servir y revalidar en segundo plano
+            if (!meta.noCache && now < meta.staleUntil) {
+                stats.staleHits.incrementAndGet();
+                scheduleRevalidation(url, key, requestHeaders, meta);
+                return respondFromDisk(snapshot);
+            }
+
+            // Hay que revalidar antes de servir
+            try {
+                return fetchShared(url, key, requestHeaders, meta, snapshot);
+            } catch (IOException e) {
+                // Sin red: mejor una copia antigua que nada
+                stats.offlineFallbacks.incrementAndGet();
+                return respondFromDisk(snapshot);
+            }
+        }
+
+        stats.misses.incrementAndGet();
+        try {
+            return fetchShared(url, key, requestHeaders, null, null);
+        } catch (IOException e) {
+            Log.w(TAG, "Fallo al descargar " + url + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Precarga url en la caché si no hay ya una copia fresca (lo usa PagePrefetcher).
+     * Devuelve los bytes descargados: 0 si no hacía falta o no es un recurso cacheable.
+     * Si el recurso pasa de maxBytes se descarta y lanza IOException. Hilo de fondo.
+     * Como las páginas de PagePrefetcher, no toca las cookies: una respuesta con Set-Cookie
+     * se descarta y el recurso se pedirá de verdad cuando la página lo use.
+     */
+    long prefetch(String url, @Nullable Map<String, String> requestHeaders, long maxBytes) throws IOException {
+        if (!isCacheableUrl(Uri.parse(url))) return 0;
+
+        String key = DiskLruStore.keyFor(url);
+        DiskLruStore.Snapshot snapshot = store().get(key);
+        DiskLruStore.Metadata cached = snapshot != null ? snapshot.metadata : null;
+        if (cached != null && !cached.noCache && System.currentTimeMillis() < cached.expiresAt) {
+            return 0;
+        }
+
+        try (Response response = execute(url, requestHeaders, cached)) {
+            int code = response.code();
+            if (!response.headers("Set-Cookie").isEmpty()) return 0;
+            if (code == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+                store().updateMetadata(key, refreshMetadata(cached, response));
+                return 0;
+            }
+            if (code != HttpURLConnection.HTTP_OK) return 0;
+
+            DiskLruStore.Metadata meta = buildMetadata(url, response);
+            if (meta == null) return 0;
+            return writeBody(response, key, meta, maxBytes);
+        }
+    }
+
+    private static boolean isCacheable(WebResourceRequest request) {
+        if (request.isForMainFrame()) return false;
+        if (!"GET".equalsIgnoreCase(request.getMethod())) return false;
+
+        Map<String, String> headers = request.getRequestHeaders();
+        if (headers != null && (headers.containsKey("Range") || headers.containsKey("range"))) {
+            return false;
+        }
+        return isCacheableUrl(request.getUrl());
+    }
+
+    private static boolean isCacheableUrl(Uri uri) {
+        if (!"https".equals(uri.getScheme())) return false;
+        if (!isSiteHost(uri.getHost())) return false;
+
+        String path = uri.getPath();
+        if (path == null) return false;
+        int dot = path.lastIndexOf('.');
+        if (dot < 0 || dot < path.lastIndexOf('/')) return false;
+        return STATIC_EXTENSIONS.contains(path.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    static boolean isSiteHost(@Nullable String host) {
+        if (host == null) return false;
+        return host.equals(SITE_HOST) || host.endsWith("." + SITE_HOST);
+    }
+
+    // =============================================
+    // RED
+    // =============================================
+
+    /**
+     * fetch() con coalescencia: si ya hay una descarga de la misma clave en curso, se espera
+     * a sus cabeceras y se lee su cuerpo a la vez que ella (ver Flight)
+     */
+    @Nullable
+    private WebResourceResponse fetchShared(String url, String key, @Nullable Map<String, String> requestHeaders,
+                                            @Nullable DiskLruStore.Metadata cached,
+                                            @Nullable DiskLruStore.Snapshot snapshot) throws IOException {
+        Flight flight = new Flight(key);
+        Flight existing = inFlight.putIfAbsent(key, flight);
+        if (existing == null) {
+            AppTrace.counter(AppTrace.COUNTER_ASSET_FETCHES, inFlight.size());
+        } else {
+            WebResourceResponse shared = existing.join();
+            if (shared != null) {
+                stats.coalesced.incrementAndGet();
+                return shared;
+            }
+            // La primera no tenía nada que compartir: petición propia, sin coalescer
+            flight = null;
+        }
+        try {
+            return fetch(flight, url, key, requestHeaders, cached, snapshot);
+        } finally {
+            if (flight != null && flight.decided.getCount() > 0) {
+                flight.decideUnshared();
+            }
+        }
+    }
+
+    /**
+     * Descarga (o revalida, si hay copia) el recurso.
+     * Con 304 actualiza los metadatos y sirve la copia; con 200 la guarda mientras la sirve
+     * (y la comparte con las peticiones que se unan a flight, si lo hay).
+     */
+    @Nullable
+    private WebResourceResponse fetch(@Nullable Flight flight, String url, String key,
+                                      @Nullable Map<String, String> requestHeaders,
+                                      @Nullable DiskLruStore.Metadata cached,
+                                      @Nullable DiskLruStore.Snapshot snapshot) throws IOException {
+        long start = System.currentTimeMillis();
+        Response response = execute(url, requestHeaders, cached);
+        int code = response.code();
+        stats.networkFetches.incrementAndGet();
+        stats.networkMillis.addAndGet(System.currentTimeMillis() - start);
+        storeCookies(url, response);
+
+        if (code == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null && snapshot != null) {
+            response.close();
+            stats.notModified.incrementAndGet();
+            DiskLruStore.Metadata refreshed = refreshMetadata(cached, response);
+            store().updateMetadata(key, refreshed);
+            DiskLruStore.Snapshot updated = new DiskLruStore.Snapshot(key, refreshed, snapshot.body);
+            if (flight != null) {
+                flight.decideNotModified(updated);
+            }
+            return respondFromDisk(updated);
+        }
+
+        if (code < 200 || code >= 300 && code < 400 || code > 599) {
+            // Redirecciones sin seguir o códigos raros: que lo resuelva el WebView
+            response.close();
+            return null;
+        }
+
+        DiskLruStore.Metadata meta = buildMetadata(url, response);
+        // Cerrar el cuerpo devuelve la conexión al pool
+        InputStream networkStream = new CountingInputStream(response.body().byteStream(), stats.bytesFromNetwork);
+
+        if (code == HttpURLConnection.HTTP_OK && meta != null) {
+            if (flight == null) {
+                // Petición que no pudo unirse a otra: se sirve tal cual, sin tocar la caché
+                return buildResponse(meta, networkStream);
+            }
+            return flight.startBody(meta, networkStream);
+        }
+
+        // No cacheable: se sirve tal cual y se borra una copia anterior si existía
+        if (meta == null) {
+            store().remove(key);
+            meta = describeOnly(url, response);
+        }
+        return buildResponse(meta, networkStream);
+    }
+
+    private Response execute(String url, @Nullable Map<String, String> requestHeaders,
+                             @Nullable DiskLruStore.Metadata cached) throws IOException {
+        Request.Builder request;
+        try {
+            request = new Request.Builder().url(url);
+            if (requestHeaders != null) {
+                for (Map.Entry<String, String> header : requestHeaders.entrySet()) {
+                    String name = header.getKey();
+                    // OkHttp gestiona la compresión por su cuenta
+                    if (name.equalsIgnoreCase("Accept-Encoding")) continue;
+                    if (name.regionMatches(true, 0, "If-", 0, 3)) continue;
+                    request.header(name, header.getValue());
+                }
+            }
+
+            String cookies = CookieManager.getInstance().getCookie(url);
+            if (cookies != null) {
+                request.header("Cookie", cookies);
+            }
+
+            if (cached != null) {
+                if (!cached.etag.isEmpty()) {
+                    request.header("If-None-Match", cached.etag);
+                }
+                if (!cached.lastModified.isEmpty()) {
+                    request.header("If-Modified-Since", cached.lastModified);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            // Cabecera con caracteres que OkHttp no acepta: como un fallo de red
+            throw new IOException("Petición no válida a " + url + ": " + e.getMessage(), e);
+        }
+        return client.newCall(request.build()).execute();
+    }
+
+    private static void storeCookies(String url, Response response) {
+        List<String> setCookies = response.headers("Set-Cookie");
+        if (setCookies.isEmpty()) return;
+        CookieManager cookieManager = CookieManager.getInstance();
+        for (String cookie : setCookies) {
+            cookieManager.setCookie(url, cookie);
+        }
+    }
+
+    private void scheduleRevalidation(String url, String key, @Nullable Map<String, String> requestHeaders,
+                                      DiskLruStore.Metadata cached) {
+        if (!revalidating.add(key)) return;
+
+        // Copia defensiva: el mapa de la petición pertenece al WebView
+        Map<String, String> headers = requestHeaders != null ? new HashMap<>(requestHeaders) : null;
+        revalidationExecutor.execute(() -> {
+            try {
+                revalidate(url, key, headers, cached);
+            } finally {
+                revalidating.remove(key);
+            }
+        });
+    }
+
+    private void revalidate(String url, String key, @Nullable Map<String, String> requestHeaders,
+                            DiskLruStore.Metadata cached) {
+        stats.revalidations.incrementAndGet();
+        try (Response response = execute(url, requestHeaders, cached)) {
+            int code = response.code();
+            storeCookies(url, response);
+
+            if (code == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                stats.notModified.incrementAndGet();
+                store().updateMetadata(key, refreshMetadata(cached, response));
+                return;
+            }
+            if (code != HttpURLConnection.HTTP_OK) return;
+
+            DiskLruStore.Metadata meta = buildMetadata(url, response);
+            if (meta == null) {
+                store().remove(key);
+                return;
+            }
+
+            writeBody(response, key, meta, Long.MAX_VALUE);
+        } catch (IOException e) {
+            Log.d(TAG, "Revalidación fallida para " + url + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Guarda el cuerpo de la respuesta en la caché; devuelve los bytes escritos
+     */
+    private long writeBody(Response response, String key, DiskLruStore.Metadata meta,
+                           long maxBytes) throws IOException {
+        DiskLruStore.Editor editor = store().edit(key);
+        long total = 0;
+        try (InputStream in = new CountingInputStream(response.body().byteStream(), stats.bytesFromNetwork);
+             OutputStream out = new BufferedOutputStream(new FileOutputStream(editor.tempBody))) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                total += read;
+                if (total > maxBytes) {
+                    throw new IOException("Recurso demasiado grande: " + meta.url);
+                }
+                out.write(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            editor.abort();
+            throw e;
+        }
+        editor.commit(meta);
+        return total;
+    }
+
+    // =============================================
+    // FRESCURA (Cache-Control / Expires / Last-Modified)
+    // =============================================
+
+    /**
+     * Metadatos para guardar la respuesta, o null si no se debe guardar
+     */
+    @Nullable
+    private static DiskLruStore.Metadata buildMetadata(String url, Response response) {
+        CacheControl cc = CacheControl.parse(response.header("Cache-Control"));
+        if (cc.noStore) return null;
+
+        DiskLruStore.Metadata meta = describeOnly(url, response);
+        applyFreshness(meta, cc, response);
+        return meta;
+    }
+
+    private static DiskLruStore.Metadata describeOnly(String url, Response response) {
+        DiskLruStore.Metadata meta = new DiskLruStore.Metadata();
+        meta.url = url;
+        meta.statusCode = response.code();
+        // Con HTTP/2 no hay frase de estado
+        String reason = response.message();
+        meta.reasonPhrase = reason.trim().isEmpty() ? "OK" : reason;
+
+        String contentType = response.header("Content-Type");
+        if (contentType != null) {
+            String[] parts = contentType.split(";");
+            meta.mimeType = parts[0].trim();
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim();
+                if (param.regionMatches(true, 0, "charset=", 0, 8)) {
+                    meta.encoding = param.substring(8).replace("\"", "").trim();
+                }
+            }
+        }
+
+        Headers headers = response.headers();
+        for (String name : headers.names()) {
+            if (SKIPPED_HEADERS.contains(name.toLowerCase(Locale.ROOT))) continue;
+            meta.headers.put(name, headers.get(name));
+        }
+
+        String etag = response.header("ETag");
+        meta.etag = etag != null ? etag : "";
+        String lastModified = response.header("Last-Modified");
+        meta.lastModified = lastModified != null ? lastModified : "";
+        meta.storedAt = System.currentTimeMillis();
+        return meta;
+    }
+
+    private static DiskLruStore.Metadata refreshMetadata(DiskLruStore.Metadata cached, Response response) {
+        DiskLruStore.Metadata meta = new DiskLruStore.Metadata();
+        meta.url = cached.url;
+        meta.statusCode = cached.statusCode;
+        meta.reasonPhrase = cached.reasonPhrase;
+        meta.mimeType = cached.mimeType;
+        meta.encoding = cached.encoding;
+        meta.headers.putAll(cached.headers);
+        meta.etag = cached.etag;
+        meta.lastModified = cached.lastModified;
+
+        // Un 304 puede traer validadores y Cache-Control nuevos
+        String etag = response.header("ETag");
+        if (etag != null) meta.etag = etag;
+        String lastModified = response.header("Last-Modified");
+        if (lastModified != null) meta.lastModified = lastModified;
+        String cacheControl = response.header("Cache-Control");
+        if (cacheControl != null) meta.headers.put("Cache-Control", cacheControl);
+
+        meta.storedAt = System.currentTimeMillis();
+        applyFreshness(meta, CacheControl.parse(meta.headers.get("Cache-Control")), response);
+        return meta;
+    }
+
+    private static void applyFreshness(DiskLruStore.Metadata meta, CacheControl cc, Response response) {
+        long now = meta.storedAt;
+        long lifetime;
+        if (cc.maxAgeSeconds >= 0) {
+            lifetime = cc.maxAgeSeconds * 1000L;
+        } else {
+            long date = dateHeader(response, "Date", now);
+            long expires = dateHeader(response, "Expires", -1);
+            long lastModified = dateHeader(response, "Last-Modified", -1);
+            if (expires > 0) {
+                lifetime = Math.max(0, expires - date);
+            } else if (lastModified > 0 && lastModified < date) {
+                // Heurística habitual: 10% de la edad del recurso
+                lifetime = Math.min((date - lastModified) / 10, MAX_HEURISTIC_LIFETIME_MS);
+            } else {
+                lifetime = 0;
+            }
+        }
+
+        meta.noCache = cc.noCache;
+        meta.expiresAt = now + lifetime;
+        if (cc.mustRevalidate) {
+            meta.staleUntil = meta.expiresAt;
+        } else if (cc.staleWhileRevalidateSeconds >= 0) {
+            meta.staleUntil = meta.expiresAt + cc.staleWhileRevalidateSeconds * 1000L;
+        } else {
+            meta.staleUntil = meta.expiresAt + DEFAULT_STALE_WINDOW_MS;
+        }
+    }
+
+    private static long dateHeader(Response response, String name, long fallback) {
+        Date date = response.headers().getDate(name);
+        return date != null ? date.getTime() : fallback;
+    }
+
+    /**
+     * Directivas de Cache-Control que nos interesan
+     */
+    static final class CacheControl {
+        boolean noStore;
+        boolean noCache;
+        boolean mustRevalidate;
+        long maxAgeSeconds = -1;
+        long staleWhileRevalidateSeconds = -1;
+
+        static CacheControl parse(@Nullable String header) {
+            CacheControl cc = new CacheControl();
+            if (header == null) return cc;
+            for (String part : header.split(",")) {
+                String directive = part.trim().toLowerCase(Locale.ROOT);
+                if (directive.equals("no-store")) {
+                    cc.noStore = true;
+                } else if (directive.equals("no-cache")) {
+                    cc.noCache = true;
+                } else if (directive.equals("must-revalidate") || directive.equals("proxy-revalidate")) {
+                    cc.mustRevalidate = true;
+                } else if (directive.startsWith("max-age=")) {
+                    cc.maxAgeSeconds = parseSeconds(directive.substring(8));
+                } else if (directive.startsWith("stale-while-revalidate=")) {
+                    cc.staleWhileRevalidateSeconds = parseSeconds(directive.substring(23));
+                }
+            }
+            return cc;
+        }
+
+        private static long parseSeconds(String value) {
+            try {
+                return Long.parseLong(value.replace("\"", "").trim());
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+    }
+
+    // =============================================
+    // RESPUESTAS PARA EL WEBVIEW
+    // =============================================
+
+    @Nullable
+    private WebResourceResponse respondFromDisk(DiskLruStore.Snapshot snapshot) {
+        try {
+            InputStream in = new CountingInputStream(new FileInputStream(snapshot.body), stats.bytesFromCache);
+            return buildResponse(snapshot.metadata, in);
+        } catch (IOException e) {
+            store().remove(snapshot.key);
+            return null;
+        }
+    }
+
+    private static WebResourceResponse buildResponse(DiskLruStore.Metadata meta, InputStream body) {
+        String encoding = meta.encoding.isEmpty() ? null : meta.encoding;
+        return new WebResourceResponse(meta.mimeType, encoding, meta.statusCode,
+                meta.reasonPhrase, new HashMap<>(meta.headers), body);
+    }
+
+    /**
+     * Cuenta los bytes leídos
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        private final AtomicLong counter;
+
+        CountingInputStream(InputStream in, AtomicLong counter) {
+            super(in);
+            this.counter = counter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) counter.incrementAndGet();
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) counter.addAndGet(read);
+            return read;
+        }
+    }
+
+    /**
+     * Descarga compartida (single-flight): la primera petición de una URL la hace y las que
+     * llegan mientras tanto se unen a ella. Un hilo de fetchExecutor copia la red a disco
+     * (el temporal de la entrada del almacén) y cada petición lee ese fichero según crece con
+     * su propio TailInputStream: el cuerpo nunca está entero en memoria.
+     * Si todos los lectores cierran antes del final, la descarga se abandona.
+     */
+    private final class Flight {
+        final String key;
+        private final CountDownLatch decided = new CountDownLatch(1);
+        private int outcome = FLIGHT_UNSHARED;
+        @Nullable private DiskLruStore.Metadata metadata;
+        @Nullable private DiskLruStore.Snapshot notModified;
+        @Nullable private File tempBody;
+        private long written;
+        private boolean done;
+        @Nullable private IOException error;
+        private int readers;
+        private boolean abandoned;
+
+        Flight(String key) {
+            this.key = key;
+        }
+
+        /**
+         * Deja de ser la descarga en curso de su clave
+         */
+        private void leave() {
+            if (inFlight.remove(key, this)) {
+                AppTrace.counter(AppTrace.COUNTER_ASSET_FETCHES, inFlight.size());
+            }
+        }
+
+        /**
+         * Respuesta para una petición que se une a la descarga, o null si tiene que hacer la suya
+         */
+        @Nullable
+        WebResourceResponse join() {
+            try {
+                if (!decided.await(CONNECT_TIMEOUT_MS + READ_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    return null;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            if (outcome == FLIGHT_NOT_MODIFIED && notModified != null) {
+                return respondFromDisk(notModified);
+            }
+            return outcome == FLIGHT_SHARED ? openReader() : null;
+        }
+
+        /**
+         * Sin cuerpo que compartir (no cacheable, error, redirección...): cada uno por su cuenta
+         */
+        void decideUnshared() {
+            leave();
+            decided.countDown();
+        }
+
+        void decideNotModified(DiskLruStore.Snapshot refreshed) {
+            notModified = refreshed;
+            outcome = FLIGHT_NOT_MODIFIED;
+            leave();
+            decided.countDown();
+        }
+
+        /**
+         * 200 cacheable: empieza a copiar la red a disco y devuelve la respuesta del primero
+         */
+        @Nullable
+        WebResourceResponse startBody(DiskLruStore.Metadata meta, InputStream network) throws IOException {
+            DiskLruStore.Editor editor = store().edit(key);
+            OutputStream out;
+            try {
+                out = new FileOutputStream(editor.tempBody);
+            } catch (IOException e) {
+                editor.abort();
+                network.close();
+                throw e;
+            }
+            metadata = meta;
+            tempBody = editor.tempBody;
+            outcome = FLIGHT_SHARED;
+            WebResourceResponse response = openReader();
+            decided.countDown();
+            fetchExecutor.execute(() -> pump(network, out, editor));
+            return response;
+        }
+
+        private void pump(InputStream network, OutputStream out, DiskLruStore.Editor editor) {
+            byte[] buffer = new byte[8192];
+            try {
+                try {
+                    int read;
+                    while ((read = network.read(buffer)) != -1) {
+                        out.write(buffer, 0, read);
+                        synchronized (this) {
+                            if (abandoned) throw new IOException("Descarga abandonada: " + key);
+                            written += read;
+                            notifyAll();
+                        }
+                    }
+                } finally {
+                    out.close();
+                }
+                editor.commit(metadata);
+                synchronized (this) {
+                    done = true;
+                    notifyAll();
+                }
+            } catch (IOException e) {
+                editor.abort();
+                synchronized (this) {
+                    error = e;
+                    notifyAll();
+                }
+            } finally {
+                leave();
+                try {
+                    network.close();
+                } catch (IOException ignored) {
+                    // Nada que hacer
+                }
+            }
+        }
+
+        @Nullable
+        private WebResourceResponse openReader() {
+            boolean complete;
+            synchronized (this) {
+                if (abandoned || error != null) return null;
+                complete = done;
+                if (!complete) readers++;
+            }
+            if (!complete) {
+                try {
+                    return buildResponse(metadata, new TailInputStream(this, new FileInputStream(tempBody)));
+                } catch (IOException e) {
+                    // Ya terminada y movida a su sitio entre tanto
+                    readerClosed();
+                }
+            }
+            DiskLruStore.Snapshot snapshot = store().get(key);
+            return snapshot != null ? respondFromDisk(snapshot) : null;
+        }
+
+        /**
+         * Espera hasta que haya datos más allá de position. -1 si ya no habrá más.
+         */
+        synchronized long awaitData(long position) throws IOException {
+            while (position >= written && !done && error == null) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrumpido esperando " + key);
+                }
+            }
+            if (error != null) throw new IOException("Fallo al descargar " + key, error);
+            return position < written ? written - position : -1;
+        }
+
+        synchronized void readerClosed() {
+            readers--;
+            if (readers == 0 && !done) {
+                // Nadie más lo quiere (el WebView canceló): fuera, sin terminar de descargar
+                abandoned = true;
+                leave();
+            }
+        }
+    }
+
+    /**
+     * Lee el temporal de una Flight a medida que se escribe
+     */
+    private static final class TailInputStream extends InputStream {
+        private final Flight flight;
+        private final InputStream file;
+        private long position;
+        private boolean closed;
+
+        TailInputStream(Flight flight, InputStream file) {
+            this.flight = flight;
+            this.file = file;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int read = read(single, 0, 1);
+            return read == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            long available = flight.awaitData(position);
+            if (available < 0) return -1;
+            int read = file.read(b, off, (int) Math.min(len, available));
+            if (read > 0) position += read;
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            try {
+                file.close();
+            } finally {
+                flight.readerClosed();
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.buscandoadios.espana;
+
+import android.webkit.CookieManager;
+import android.webkit.WebSettings;
+import android.webkit.WebView;
+
+/**
+ * WebViewConfigurator - Ajustes comunes de todos los WebView de la app
+ * Se usa tanto en MainActivity como en el WebView precargado desde el splash
+ */
+final class WebViewConfigurator {
+
+    static final String USER_AGENT_SUFFIX = " BuscandoADiosApp/1.0";
+
+    private WebViewConfigurator() {
+    }
+
+    static void applySettings(WebView webView) {
+        WebSettings settings = webView.getSettings();
+
+        // Habilitar JavaScript
+        settings.setJavaScriptEnabled(true);
+
+        // Habilitar DOM Storage (localStorage)
+        settings.setDomStorageEnabled(true);
+
+        // Habilitar caché
+        settings.setCacheMode(WebSettings.LOAD_DEFAULT);
+
+        // Habilitar zoom
+        settings.setSupportZoom(true);
+        settings.setBuiltInZoomControls(true);
+        settings.setDisplayZoomControls(false);
+
+        // Ajustar contenido al ancho
+        settings.setLoadWithOverviewMode(true);
+        settings.setUseWideViewPort(true);
+
+        // Habilitar formularios
+        settings.setSaveFormData(true);
+
+        // Habilitar acceso a archivos
+        settings.setAllowFileAccess(true);
+        settings.setAllowContentAccess(true);
+
+        // Habilitar mixed content (HTTP en HTTPS) si es necesario
+        settings.setMixedContentMode(WebSettings.MIXED_CONTENT_COMPATIBILITY_MODE);
+
+        // User Agent personalizado (sin duplicarlo si el WebView ya venía configurado)
+        String userAgent = settings.getUserAgentString();
+        if (!userAgent.endsWith(USER_AGENT_SUFFIX)) {
+            settings.setUserAgentString(userAgent + USER_AGENT_SUFFIX);
+        }
+
+        // Habilitar cookies persistentes
+        CookieManager cookieManager = CookieManager.getInstance();
+        cookieManager.setAcceptCookie(true);
+        cookieManager.setAcceptThirdPartyCookies(webView, true);
+    }
+}
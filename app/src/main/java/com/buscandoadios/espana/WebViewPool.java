@@ -0,0 +1,159 @@
+package com.buscandoadios.espana;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.content.MutableContextWrapper;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.util.Log;
+import android.view.ViewGroup;
+import android.webkit.WebView;
+
+import androidx.annotation.MainThread;
+
+import java.util.ArrayDeque;
+
+/**
+ * WebViewPool - Reserva de WebView ya creados y configurados, a nivel de aplicación.
+ *
+ * Crear el primer WebView carga el proveedor de Chromium, lo más caro del arranque.
+ * El pool crea instancias sobre un MutableContextWrapper (contexto de la aplicación)
+ * cuando el hilo principal está ocioso, y las entrega ya configuradas.
+ * En dispositivos con poca memoria no guarda reservas, y las suelta cuando falta memoria.
+ * Todo se usa desde el hilo principal.
+ */
+public final class WebViewPool {
+
+    private static final String TAG = "WebViewPool";
+
+    // Memoria por app a partir de la cual nos permitimos tener un WebView de reserva
+    private static final int MIN_MEMORY_CLASS_MB = 192;
+    private static final int MAX_SPARES = 1;
+
+    private static WebViewPool instance;
+
+    private final Context appContext;
+    private final ArrayDeque<WebView> spares = new ArrayDeque<>();
+    private final int maxSpares;
+    private boolean refillScheduled;
+    private boolean refillSuspended;
+
+    @MainThread
+    public static WebViewPool get(Context context) {
+        if (instance == null) {
+            instance = new WebViewPool(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private WebViewPool(Context appContext) {
+        this.appContext = appContext;
+        ActivityManager am = (ActivityManager) appContext.getSystemService(Context.ACTIVITY_SERVICE);
+        boolean lowMemory = am == null || am.isLowRamDevice() || am.getMemoryClass() < MIN_MEMORY_CLASS_MB;
+        maxSpares = lowMemory ? 0 : MAX_SPARES;
+    }
+
+    /**
+     * Entrega un WebView configurado, ligado al contexto indicado
+     */
+    @MainThread
+    public WebView acquire(Context context) {
+        WebView webView = spares.poll();
+        if (webView == null) {
+            webView = create();
+        }
+        rebind(webView, context);
+        return webView;
+    }
+
+    /**
+     * Cambia el contexto de un WebView del pool (por ejemplo, de la aplicación a la Activity)
+     */
+    @MainThread
+    public void rebind(WebView webView, Context context) {
+        if (webView.getContext() instanceof MutableContextWrapper) {
+            ((MutableContextWrapper) webView.getContext()).setBaseContext(context);
+        }
+    }
+
+    /**
+     * Destruye un WebView que ya no se usa. No se reutiliza: arrastra historial y estado.
+     */
+    @MainThread
+    public void release(WebView webView) {
+        if (webView.getParent() instanceof ViewGroup) {
+            ((ViewGroup) webView.getParent()).removeView(webView);
+        }
+        rebind(webView, appContext);
+        webView.destroy();
+    }
+
+    /**
+     * Descarta un WebView cuyo renderer ha muerto (ya no se puede usar): si era una reserva,
+     * sale del pool
+     */
+    @MainThread
+    public void discard(WebView webView) {
+        spares.remove(webView);
+        release(webView);
+    }
+
+    /**
+     * Programa la reposición de reservas para cuando el hilo principal quede libre.
+     * Se llama cuando la página visible ha terminado de cargar, para no competir con ella.
+     */
+    @MainThread
+    public void scheduleRefill() {
+        refillSuspended = false;
+        if (refillScheduled || spares.size() >= maxSpares) return;
+        refillScheduled = true;
+
+        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+            @Override
+            public boolean queueIdle() {
+                refillScheduled = false;
+                if (refillSuspended || spares.size() >= maxSpares) return false;
+                spares.add(create());
+                // Si aún faltan, seguir en el próximo momento ocioso
+                if (spares.size() < maxSpares) {
+                    scheduleRefill();
+                }
+                return false;
+            }
+        });
+    }
+
+    /**
+     * Respuesta a la falta de memoria (MemoryTrimManager): libera las reservas y no repone
+     * hasta la próxima carga. Devuelve cuántas se liberaron.
+     */
+    @MainThread
+    public int releaseSpares() {
+        refillSuspended = true;
+        int released = spares.size();
+        WebView spare;
+        while ((spare = spares.poll()) != null) {
+            spare.destroy();
+        }
+        if (released > 0) {
+            Log.i(TAG, "Liberados " + released + " WebView de reserva");
+        }
+        return released;
+    }
+
+    private WebView create() {
+        WebView webView = new WebView(new MutableContextWrapper(appContext));
+        WebViewConfigurator.applySettings(webView);
+        webView.setWebViewClient(new SiteWebViewClient());
+        webView.setWebChromeClient(new SiteWebChromeClient());
+        // Los puentes JS se añaden aquí para que existan ya en la primera página
+        webView.addJavascriptInterface(new PageLoadMetrics.JsBridge(PageLoadMetrics.get(appContext)),
+                PageLoadMetrics.JS_BRIDGE_NAME);
+        webView.addJavascriptInterface(new UploadBridge(webView), UploadBridge.JS_BRIDGE_NAME);
+        webView.addJavascriptInterface(new PagePrefetcher.JsBridge(PagePrefetcher.get(appContext), webView),
+                PagePrefetcher.JS_BRIDGE_NAME);
+        webView.addJavascriptInterface(new AppShell.JsBridge(AppShell.get(appContext)), AppShell.JS_BRIDGE_NAME);
+        webView.addJavascriptInterface(new NetworkTracer.JsBridge(NetworkTracer.get()), NetworkTracer.JS_BRIDGE_NAME);
+        return webView;
+    }
+}
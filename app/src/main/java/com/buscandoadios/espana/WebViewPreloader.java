@@ -0,0 +1,149 @@
+package com.buscandoadios.espana;
+
+import android.app.Activity;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.webkit.RenderProcessGoneDetail;
+import android.webkit.WebResourceError;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebView;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+
+/**
+ * WebViewPreloader - Crea el WebView y empieza a cargar la web mientras
+ * se muestra el splash, para que MainActivity lo reciba ya pintado.
+ *
+ * El WebView sale de WebViewPool ligado al contexto de la aplicación;
+ * al entregarlo se liga a la Activity.
+ * Todo se usa desde el hilo principal.
+ */
+final class WebViewPreloader {
+
+    /**
+     * Aviso de que la página ya tiene su primer pintado (o ha fallado)
+     */
+    interface Listener {
+        void onPreloadReady();
+    }
+
+    @Nullable private static WebViewPreloader current;
+
+    private final WebView webView;
+    @Nullable private Listener listener;
+    private boolean ready;
+    private boolean mainFrameFailed;
+
+    private WebViewPreloader(Context context) {
+        webView = WebViewPool.get(context).acquire(context.getApplicationContext());
+        webView.setWebViewClient(new PreloadClient());
+    }
+
+    /**
+     * Empieza a precargar la URL (o devuelve la precarga ya en marcha)
+     */
+    @MainThread
+    static WebViewPreloader start(Context context, String url) {
+        if (current == null) {
+            current = new WebViewPreloader(context);
+            current.webView.loadUrl(url);
+        }
+        return current;
+    }
+
+    /**
+     * Entrega el WebView precargado a la Activity, o null si no hay ninguno
+     */
+    @MainThread
+    @Nullable
+    static WebViewPreloader take(Activity activity) {
+        WebViewPreloader preloader = current;
+        current = null;
+        if (preloader != null) {
+            preloader.listener = null;
+            WebViewPool.get(activity).rebind(preloader.webView, activity);
+        }
+        return preloader;
+    }
+
+    @MainThread
+    void setListener(@Nullable Listener listener) {
+        this.listener = listener;
+        if (ready && listener != null) {
+            listener.onPreloadReady();
+        }
+    }
+
+    WebView getWebView() {
+        return webView;
+    }
+
+    boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * true si la carga de la página principal falló durante la precarga
+     */
+    boolean hasMainFrameFailed() {
+        return mainFrameFailed;
+    }
+
+    private void markReady() {
+        if (ready) return;
+        ready = true;
+        if (listener != null) {
+            listener.onPreloadReady();
+        }
+    }
+
+    /**
+     * Cliente mínimo mientras nadie muestra el WebView. MainActivity pone el suyo al recibirlo.
+     */
+    private final class PreloadClient extends SiteWebViewClient {
+
+        @Override
+        public void onPageStarted(WebView view, String url, Bitmap favicon) {
+            super.onPageStarted(view, url, favicon);
+            mainFrameFailed = false;
+        }
+
+        @Override
+        public void onPageCommitVisible(WebView view, String url) {
+            super.onPageCommitVisible(view, url);
+            // Primer pintado con contenido de la nueva página
+            markReady();
+        }
+
+        @Override
+        public void onPageFinished(WebView view, String url) {
+            super.onPageFinished(view, url);
+            markReady();
+        }
+
+        @Override
+        public void onReceivedError(WebView view, WebResourceRequest request, WebResourceError error) {
+            super.onReceivedError(view, request, error);
+            if (request.isForMainFrame()) {
+                mainFrameFailed = true;
+                markReady();
+            }
+        }
+
+        @Override
+        @RequiresApi(Build.VERSION_CODES.O)
+        public boolean onRenderProcessGone(WebView view, RenderProcessGoneDetail detail) {
+            super.onRenderProcessGone(view, detail);
+            // WebView ya destruido: MainActivity no lo recibirá y creará uno nuevo
+            if (current == WebViewPreloader.this) {
+                current = null;
+            }
+            mainFrameFailed = true;
+            markReady();
+            return true;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.tuapp.utils
+
+import android.content.Context
+import android.net.Uri
+import android.os.Handler
+import android.os.Looper
+import android.util.Log
+import android.webkit.CookieManager
+import com.buscandoadios.espana.SiteHttpClient
+import com.buscandoadios.espana.core.DownloadIndex
+import java.io.File
+import java.io.IOException
+import java.util.concurrent.Executors
+
+/**
+ * =========================================================
+ * DOWNLOAD DEDUPLICATOR - No descargar dos veces lo mismo
+ * =========================================================
+ *
+ * Antes de descargar: petición condicional (If-None-Match / If-Modified-Since),
+ * solo si esa URL ya se descargó. Si el servidor responde 304, se devuelve el
+ * archivo que ya está en Descargas sin transferir nada. Una URL nueva empieza a
+ * descargarse sin esperar a la red; sus validadores se piden al terminar.
+ *
+ * Después de descargar: se calcula el SHA-256. Si ese contenido ya estaba
+ * (otra URL, o el servidor no sabe responder 304), se borra la copia nueva
+ * y se usa la antigua: cada archivo distinto se guarda una sola vez.
+ *
+ * El índice (DownloadIndex, en :core) guarda content:// Uris. Los callbacks
+ * se llaman en el hilo principal.
+ * =========================================================
+ */
+class DownloadDeduplicator private constructor(private val appContext: Context) {
+
+    /**
+     * Resultado de check(): existing != null si ya lo tenemos
+     */
+    class Check(val existing: Uri?, val validators: DownloadIndex.Validators)
+
+    companion object {
+        private const val TAG = "DownloadDeduplicator"
+
+        @Volatile
+        private var instance: DownloadDeduplicator? = null
+
+        @JvmStatic
+        fun get(context: Context): DownloadDeduplicator {
+            return instance ?: synchronized(this) {
+                instance ?: DownloadDeduplicator(context.applicationContext).also { instance = it }
+            }
+        }
+    }
+
+    // Se crea la primera vez en el executor
+    private val index by lazy { DownloadIndex(File(appContext.filesDir, "download_index.bin"), SiteHttpClient.get().client()) }
+    private val executor = Executors.newSingleThreadExecutor { r -> Thread(r, "DownloadDeduplicator") }
+    private val mainHandler = Handler(Looper.getMainLooper())
+
+    /**
+     * ¿Ya tenemos esta URL y no ha cambiado en el servidor?
+     */
+    fun check(url: String, userAgent: String?, callback: (Check) -> Unit) {
+        executor.execute {
+            val result = try {
+                // Si el usuario borró el archivo, no vale: se olvida y se descarga otra vez
+                index.forUrl(url)?.let { entry ->
+                    if (!isReadable(Uri.parse(entry.location))) index.forgetLocation(entry.location)
+                }
+                val revalidation = index.revalidate(url, requestHeaders(url, userAgent))
+                Check(revalidation.existing?.let { Uri.parse(it.location) }, revalidation.validators)
+            } catch (e: IOException) {
+                Log.w(TAG, "No se pudo revalidar $url: ${e.message}")
+                Check(null, DownloadIndex.Validators.NONE)
+            }
+            mainHandler.post { callback(result) }
+        }
+    }
+
+    /**
+     * Apunta una descarga terminada. Si su contenido ya estaba guardado, se llama a
+     * discardCopy (desde un hilo de fondo) y el callback recibe el archivo antiguo
+     * con duplicate = true.
+     */
+    fun recordCompleted(
+        url: String,
+        validators: DownloadIndex.Validators,
+        userAgent: String?,
+        locate: () -> Uri?,
+        discardCopy: () -> Unit,
+        callback: (uri: Uri?, duplicate: Boolean) -> Unit
+    ) {
+        executor.execute {
+            var result: Uri? = null
+            var duplicate = false
+            try {
+                val uri = locate()
+                if (uri != null) {
+                    val (hash, size) = hashOf(uri)
+                    // El archivo "original" puede haberse borrado: entonces vale el nuevo
+                    index.locationFor(hash)?.let { previous ->
+                        if (previous != uri.toString() && !isReadable(Uri.parse(previous))) {
+                            index.forgetLocation(previous)
+                        }
+                    }
+                    val current = if (validators.etag.isEmpty() && validators.lastModified.isEmpty()) {
+                        currentValidators(url, userAgent, size)
+                    } else {
+                        validators
+                    }
+                    val location = index.record(url, current, hash, size, uri.toString())
+                    duplicate = location != uri.toString()
+                    if (duplicate) discardCopy()
+                    result = Uri.parse(location)
+                }
+            } catch (e: IOException) {
+                Log.w(TAG, "No se pudo indexar $url: ${e.message}")
+            } catch (e: SecurityException) {
+                Log.w(TAG, "No se pudo indexar $url: ${e.message}")
+            }
+            val uri = result
+            mainHandler.post { callback(uri, duplicate) }
+        }
+    }
+
+    /**
+     * Validadores de una URL que se descargó sin revalidar (nueva, o sin ETag ni Last-Modified)
+     */
+    private fun currentValidators(url: String, userAgent: String?, size: Long): DownloadIndex.Validators {
+        return try {
+            index.currentValidators(url, requestHeaders(url, userAgent), size)
+        } catch (e: IOException) {
+            Log.w(TAG, "Sin validadores para $url: ${e.message}")
+            DownloadIndex.Validators.NONE
+        }
+    }
+
+    private fun hashOf(uri: Uri): Pair<String, Long> {
+        val resolver = appContext.contentResolver
+        val size = resolver.openFileDescriptor(uri, "r")?.use { it.statSize } ?: -1L
+        val hash = resolver.openInputStream(uri)?.use { DownloadIndex.sha256(it) }
+            ?: throw IOException("No se puede leer $uri")
+        return hash to size
+    }
+
+    private fun isReadable(uri: Uri): Boolean {
+        return try {
+            appContext.contentResolver.openFileDescriptor(uri, "r")?.use { true } ?: false
+        } catch (e: Exception) {
+            false
+        }
+    }
+
+    private fun requestHeaders(url: String, userAgent: String?): Map<String, String> {
+        val headers = HashMap<String, String>()
+        userAgent?.let { headers["User-Agent"] = it }
+        CookieManager.getInstance().getCookie(url)?.let { headers["Cookie"] = it }
+        return headers
+    }
+}
@@ -2,10 +2,8 @@ package com.tuapp.utils
 
 import android.Manifest
 import android.app.DownloadManager
-import android.content.BroadcastReceiver
 import android.content.Context
 import android.content.Intent
-import android.content.IntentFilter
 import android.content.pm.PackageManager
 import android.net.Uri
 import android.os.Build
@@ -16,6 +14,8 @@ import android.webkit.URLUtil
 import android.webkit.WebView
 import android.widget.Toast
 import androidx.core.content.ContextCompat
+import com.buscandoadios.espana.core.DownloadFileNames
+import com.buscandoadios.espana.core.DownloadIndex
 import java.io.File
 
 /**
@@ -36,39 +36,87 @@ import java.io.File
  *    
  * 4. En onDestroy:
  *    downloadHelper.unregister()
+ *
+ * Las descargas pasan por DownloadQueue (varias a la vez, con prioridad
+ * y límite por host); aquí solo se avisa al usuario de cada una.
+ * Audios y vídeos van por SegmentedDownloader (tramos en paralelo,
+ * reanudables si se corta la red o se cierra la app).
+ * Antes de descargar se pregunta a DownloadDeduplicator: si el archivo ya
+ * está y no ha cambiado en el servidor, se abre el que hay.
  * =========================================================
  */
 class DownloadHelper(private val context: Context) {
 
-    private var downloadReceiver: BroadcastReceiver? = null
-    private var currentDownloadId: Long = -1
-    
     // Tu URL base del servidor
     private val baseUrl = "https://buscandoadios-espana.com"
     
     companion object {
         const val PERMISSION_REQUEST_CODE = 1001
-        
-        // Tipos MIME comunes
-        private val MIME_TYPES = mapOf(
-            "pdf" to "application/pdf",
-            "doc" to "application/msword",
-            "docx" to "application/vnd.openxmlformats-officedocument.wordprocessingml.document",
-            "xls" to "application/vnd.ms-excel",
-            "xlsx" to "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet",
-            "ppt" to "application/vnd.ms-powerpoint",
-            "pptx" to "application/vnd.openxmlformats-officedocument.presentationml.presentation",
-            "txt" to "text/plain",
-            "jpg" to "image/jpeg",
-            "jpeg" to "image/jpeg",
-            "png" to "image/png",
-            "gif" to "image/gif",
-            "webp" to "image/webp",
-            "mp3" to "audio/mpeg",
-            "mp4" to "video/mp4",
-            "zip" to "application/zip",
-            "apk" to "application/vnd.android.package-archive"
-        )
+    }
+
+    private val queue = DownloadQueue.get(context)
+    private val dedup = DownloadDeduplicator.get(context)
+
+    // Descargas en curso que hay que apuntar en el índice al terminar (hilo principal)
+    private class PendingRecord(val url: String, val validators: DownloadIndex.Validators, val userAgent: String?)
+    private val pendingQueue = HashMap<Long, PendingRecord>()
+    private val pendingSegmented = HashMap<Long, PendingRecord>()
+
+    /** Progreso agregado de todas las descargas (opcional, hilo principal) */
+    var onProgress: ((DownloadQueue.Progress) -> Unit)? = null
+
+    private val queueListener = object : DownloadQueue.Listener {
+        override fun onProgress(progress: DownloadQueue.Progress) {
+            onProgress?.invoke(progress)
+        }
+
+        override fun onDownloadFinished(item: DownloadQueue.Item) {
+            val pending = pendingQueue.remove(item.id)
+            when (item.status) {
+                DownloadQueue.Status.SUCCESSFUL -> {
+                    val downloadManager = context.getSystemService(Context.DOWNLOAD_SERVICE) as DownloadManager
+                    recordCompleted(pending, item.title,
+                        locate = { downloadManager.getUriForDownloadedFile(item.downloadManagerId) },
+                        discardCopy = { downloadManager.remove(item.downloadManagerId) })
+
+                    // Abrir el archivo automáticamente (opcional)
+                    // openDownloadedFile(item.downloadManagerId)
+                }
+                DownloadQueue.Status.FAILED -> {
+                    Toast.makeText(context, "❌ Error en la descarga: ${item.title}", Toast.LENGTH_SHORT).show()
+                }
+                else -> Unit
+            }
+        }
+    }
+
+    private val segmented = SegmentedDownloader.get(context)
+
+    private val segmentedListener = object : SegmentedDownloader.Listener {
+        override fun onProgress(id: Long, title: String, downloadedBytes: Long, totalBytes: Long) = Unit
+
+        override fun onPaused(id: Long, title: String) {
+            // Sigue pendiente (y su PendingRecord también): se reanuda sola al volver la red
+            Toast.makeText(context, "⏸ Descarga en pausa, seguirá al volver la conexión: $title", Toast.LENGTH_SHORT).show()
+        }
+
+        override fun onFinished(id: Long, title: String, uri: Uri?) {
+            val pending = pendingSegmented.remove(id)
+            if (uri != null) {
+                recordCompleted(pending, title,
+                    locate = { uri },
+                    discardCopy = { context.contentResolver.delete(uri, null, null) })
+            } else {
+                Toast.makeText(context, "❌ Error en la descarga: $title", Toast.LENGTH_SHORT).show()
+            }
+        }
+    }
+
+    init {
+        queue.addListener(queueListener)
+        segmented.addListener(segmentedListener)
+        // Audios/vídeos que quedaron a medias la última vez
+        segmented.resumeInterrupted()
     }
     
     /**
@@ -115,20 +163,56 @@ class DownloadHelper(private val context: Context) {
     }
     
     /**
-     * Descarga un archivo usando DownloadManager
+     * Descarga un archivo. Si ya lo tenemos y no ha cambiado en el servidor,
+     * se abre el que hay; si no, audios y vídeos van por tramos (SegmentedDownloader)
+     * y el resto con DownloadManager (a través de la cola).
+     * Devuelve false si no se puede descargar (sin permisos).
      */
+    @JvmOverloads
     fun downloadFile(
         url: String,
         fileName: String,
         mimeType: String? = null,
-        userAgent: String? = null
-    ): Long {
+        userAgent: String? = null,
+        priority: DownloadQueue.Priority = DownloadQueue.Priority.NORMAL
+    ): Boolean {
         if (!hasStoragePermission()) {
             Toast.makeText(context, "Se necesitan permisos de almacenamiento", Toast.LENGTH_LONG).show()
-            return -1
+            return false
         }
-        
+
+        dedup.check(url, userAgent) { check ->
+            val existing = check.existing
+            if (existing != null) {
+                Toast.makeText(context, "📂 Ya descargado: $fileName", Toast.LENGTH_SHORT).show()
+                openFile(existing, mimeType ?: getMimeType(fileName))
+            } else {
+                startTransfer(url, fileName, mimeType, userAgent, priority, check.validators)
+            }
+        }
+        return true
+    }
+
+    private fun startTransfer(
+        url: String,
+        fileName: String,
+        mimeType: String?,
+        userAgent: String?,
+        priority: DownloadQueue.Priority,
+        validators: DownloadIndex.Validators
+    ) {
         try {
+            if (SegmentedDownloader.shouldHandle(fileName, mimeType)) {
+                val id = segmented.enqueue(url, fileName, mimeType ?: getMimeType(fileName), userAgent)
+                if (id == SegmentedDownloader.DUPLICATE_NAME) {
+                    Toast.makeText(context, "⏳ Ya se está descargando otro archivo llamado $fileName", Toast.LENGTH_LONG).show()
+                    return
+                }
+                pendingSegmented[id] = PendingRecord(url, validators, userAgent)
+                Toast.makeText(context, "📥 Descargando: $fileName", Toast.LENGTH_SHORT).show()
+                return
+            }
+
             val request = DownloadManager.Request(Uri.parse(url)).apply {
                 // Título y descripción en notificaciones
                 setTitle(fileName)
@@ -156,20 +240,37 @@ class DownloadHelper(private val context: Context) {
                 setMimeType(finalMimeType)
             }
             
-            val downloadManager = context.getSystemService(Context.DOWNLOAD_SERVICE) as DownloadManager
-            currentDownloadId = downloadManager.enqueue(request)
-            
-            Toast.makeText(context, "Descargando: $fileName", Toast.LENGTH_SHORT).show()
-            
-            // Registrar receiver para notificar cuando termine
-            registerDownloadReceiver()
+            val id = queue.enqueue(request, url, fileName, priority)
+            pendingQueue[id] = PendingRecord(url, validators, userAgent)
             
-            return currentDownloadId
+            Toast.makeText(context, "📥 Descargando: $fileName", Toast.LENGTH_SHORT).show()
             
         } catch (e: Exception) {
             e.printStackTrace()
             Toast.makeText(context, "Error al descargar: ${e.message}", Toast.LENGTH_LONG).show()
-            return -1
+        }
+    }
+
+    /**
+     * Apunta la descarga en el índice; si el contenido ya estaba, se borra la copia nueva
+     */
+    private fun recordCompleted(
+        pending: PendingRecord?,
+        title: String,
+        locate: () -> Uri?,
+        discardCopy: () -> Unit
+    ) {
+        if (pending == null) {
+            // Descarga reanudada de una sesión anterior: no sabemos sus validadores
+            Toast.makeText(context, "✅ Descarga completada: $title", Toast.LENGTH_SHORT).show()
+            return
+        }
+        dedup.recordCompleted(pending.url, pending.validators, pending.userAgent, locate, discardCopy) { _, duplicate ->
+            if (duplicate) {
+                Toast.makeText(context, "📂 Ya lo tenías en Descargas: $title", Toast.LENGTH_SHORT).show()
+            } else {
+                Toast.makeText(context, "✅ Descarga completada: $title", Toast.LENGTH_SHORT).show()
+            }
         }
     }
     
@@ -189,50 +290,6 @@ class DownloadHelper(private val context: Context) {
         }
     }
     
-    /**
-     * Registra un receiver para saber cuando termina la descarga
-     */
-    private fun registerDownloadReceiver() {
-        if (downloadReceiver != null) return
-        
-        downloadReceiver = object : BroadcastReceiver() {
-            override fun onReceive(ctx: Context?, intent: Intent?) {
-                val id = intent?.getLongExtra(DownloadManager.EXTRA_DOWNLOAD_ID, -1) ?: return
-                
-                if (id == currentDownloadId) {
-                    val downloadManager = context.getSystemService(Context.DOWNLOAD_SERVICE) as DownloadManager
-                    val query = DownloadManager.Query().setFilterById(id)
-                    val cursor = downloadManager.query(query)
-                    
-                    if (cursor.moveToFirst()) {
-                        val statusIndex = cursor.getColumnIndex(DownloadManager.COLUMN_STATUS)
-                        val status = cursor.getInt(statusIndex)
-                        
-                        when (status) {
-                            DownloadManager.STATUS_SUCCESSFUL -> {
-                                Toast.makeText(context, "Descarga completada ✓", Toast.LENGTH_SHORT).show()
-                                
-                                // Abrir el archivo automáticamente (opcional)
-                                // openDownloadedFile(id)
-                            }
-                            DownloadManager.STATUS_FAILED -> {
-                                Toast.makeText(context, "Error en la descarga", Toast.LENGTH_SHORT).show()
-                            }
-                        }
-                    }
-                    cursor.close()
-                }
-            }
-        }
-        
-        val filter = IntentFilter(DownloadManager.ACTION_DOWNLOAD_COMPLETE)
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
-            context.registerReceiver(downloadReceiver, filter, Context.RECEIVER_NOT_EXPORTED)
-        } else {
-            context.registerReceiver(downloadReceiver, filter)
-        }
-    }
-    
     /**
      * Abre el archivo descargado
      */
@@ -243,12 +300,23 @@ class DownloadHelper(private val context: Context) {
             val mimeType = downloadManager.getMimeTypeForDownloadedFile(downloadId)
             
             if (uri != null) {
-                val intent = Intent(Intent.ACTION_VIEW).apply {
-                    setDataAndType(uri, mimeType)
-                    flags = Intent.FLAG_ACTIVITY_NEW_TASK or Intent.FLAG_GRANT_READ_URI_PERMISSION
-                }
-                context.startActivity(intent)
+                openFile(uri, mimeType)
+            }
+        } catch (e: Exception) {
+            Toast.makeText(context, "No se puede abrir el archivo", Toast.LENGTH_SHORT).show()
+        }
+    }
+
+    /**
+     * Abre un archivo ya descargado (content://) con la app que corresponda
+     */
+    fun openFile(uri: Uri, mimeType: String?) {
+        try {
+            val intent = Intent(Intent.ACTION_VIEW).apply {
+                setDataAndType(uri, mimeType)
+                flags = Intent.FLAG_ACTIVITY_NEW_TASK or Intent.FLAG_GRANT_READ_URI_PERMISSION
             }
+            context.startActivity(intent)
         } catch (e: Exception) {
             Toast.makeText(context, "No se puede abrir el archivo", Toast.LENGTH_SHORT).show()
         }
@@ -265,19 +333,9 @@ class DownloadHelper(private val context: Context) {
             fileName = URLUtil.guessFileName(url, contentDisposition, mimeType)
         }
         
-        // Si no, extraer de la URL
+        // Si no, extraer de la URL (parámetros file/filename/name o el path)
         if (fileName.isNullOrBlank() || fileName == "downloadfile") {
-            val uri = Uri.parse(url)
-            
-            // Buscar en parámetros
-            fileName = uri.getQueryParameter("file") 
-                ?: uri.getQueryParameter("filename")
-                ?: uri.getQueryParameter("name")
-            
-            // O del path
-            if (fileName.isNullOrBlank()) {
-                fileName = uri.lastPathSegment
-            }
+            fileName = DownloadFileNames.fromUrl(url)
         }
         
         // Generar nombre si todo falla
@@ -287,16 +345,17 @@ class DownloadHelper(private val context: Context) {
         }
         
         // Limpiar el nombre
-        return fileName.replace(Regex("[^a-zA-Z0-9._-]"), "_")
+        return DownloadFileNames.sanitize(fileName)
     }
     
     /**
      * Obtiene el MIME type basado en la extensión
      */
     private fun getMimeType(fileName: String): String? {
-        val extension = fileName.substringAfterLast('.', "").lowercase()
-        return MIME_TYPES[extension] 
-            ?: MimeTypeMap.getSingleton().getMimeTypeFromExtension(extension)
+        return DownloadFileNames.mimeTypeFor(fileName)
+            ?: MimeTypeMap.getSingleton().getMimeTypeFromExtension(
+                fileName.substringAfterLast('.', "").lowercase()
+            )
     }
     
     /**
@@ -315,16 +374,11 @@ class DownloadHelper(private val context: Context) {
     }
     
     /**
-     * Desregistrar el receiver al destruir
+     * Dejar de escuchar la cola al destruir (las descargas siguen en marcha)
      */
     fun unregister() {
-        try {
-            downloadReceiver?.let {
-                context.unregisterReceiver(it)
-                downloadReceiver = null
-            }
-        } catch (e: Exception) {
-            // Ignorar si no estaba registrado
-        }
+        queue.removeListener(queueListener)
+        segmented.removeListener(segmentedListener)
+        onProgress = null
     }
 }
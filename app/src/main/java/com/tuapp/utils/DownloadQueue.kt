@@ -0,0 +1,377 @@
+package com.tuapp.utils
+
+import android.app.DownloadManager
+import android.content.BroadcastReceiver
+import android.content.Context
+import android.content.Intent
+import android.content.IntentFilter
+import android.net.Uri
+import android.os.Handler
+import android.os.HandlerThread
+import android.os.Looper
+import android.os.SystemClock
+import android.util.Log
+import androidx.core.content.ContextCompat
+import com.buscandoadios.espana.AppTrace
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * =========================================================
+ * DOWNLOAD QUEUE - Cola de descargas sobre DownloadManager
+ * =========================================================
+ *
+ * - Varias descargas en marcha a la vez, cada una con su id
+ *   (ya no se pierde el aviso de fin de ninguna)
+ * - Límite de descargas simultáneas, en total y por host; el resto espera en la cola
+ * - Orden por prioridad y, dentro de la misma prioridad, por orden de llegada
+ * - Progreso agregado de todas las descargas del lote
+ * - Una sola consulta a DownloadManager con todos los ids activos, como mucho
+ *   cada POLL_INTERVAL_MS (ACTION_DOWNLOAD_COMPLETE solo adelanta la siguiente)
+ *
+ * Es una por proceso: sobrevive a la Activity (rotaciones, volver atrás...).
+ * El estado vive en un hilo propio; los listeners se llaman en el hilo principal.
+ * =========================================================
+ */
+class DownloadQueue private constructor(private val appContext: Context) {
+
+    enum class Priority { LOW, NORMAL, HIGH }
+
+    enum class Status { QUEUED, RUNNING, SUCCESSFUL, FAILED, CANCELLED }
+
+    /**
+     * Estado de una descarga (copia para los listeners)
+     */
+    data class Item(
+        val id: Long,
+        val title: String,
+        val host: String,
+        val priority: Priority,
+        val status: Status,
+        val downloadManagerId: Long,
+        val downloadedBytes: Long,
+        val totalBytes: Long
+    )
+
+    /**
+     * Progreso agregado del lote actual (desde que la cola estaba vacía)
+     */
+    data class Progress(
+        val queued: Int,
+        val running: Int,
+        val completed: Int,
+        val failed: Int,
+        val downloadedBytes: Long,
+        val totalBytes: Long
+    ) {
+        val isIdle: Boolean get() = queued == 0 && running == 0
+
+        /** 0-100, o -1 si aún no se conoce el tamaño de alguna descarga */
+        val percent: Int
+            get() = if (totalBytes <= 0) -1 else (downloadedBytes * 100 / totalBytes).toInt()
+    }
+
+    interface Listener {
+        fun onProgress(progress: Progress)
+        fun onDownloadFinished(item: Item)
+    }
+
+    companion object {
+        private const val TAG = "DownloadQueue"
+
+        const val DEFAULT_MAX_PARALLEL = 3
+        const val DEFAULT_MAX_PER_HOST = 2
+
+        // Consulta periódica mientras haya descargas activas
+        private const val POLL_INTERVAL_MS = 1000L
+        // Separación mínima entre dos consultas (ráfagas de ACTION_DOWNLOAD_COMPLETE)
+        private const val MIN_POLL_GAP_MS = 250L
+
+        @Volatile
+        private var instance: DownloadQueue? = null
+
+        @JvmStatic
+        fun get(context: Context): DownloadQueue {
+            return instance ?: synchronized(this) {
+                instance ?: DownloadQueue(context.applicationContext).also { instance = it }
+            }
+        }
+    }
+
+    /**
+     * Descarga en la cola (solo se toca desde el hilo de la cola)
+     */
+    private class Entry(
+        val id: Long,
+        val request: DownloadManager.Request,
+        val title: String,
+        val host: String,
+        val priority: Priority
+    ) {
+        var status = Status.QUEUED
+        var downloadManagerId = -1L
+        var downloadedBytes = 0L
+        var totalBytes = -1L
+
+        fun toItem() = Item(id, title, host, priority, status, downloadManagerId, downloadedBytes, totalBytes)
+    }
+
+    private val downloadManager =
+        appContext.getSystemService(Context.DOWNLOAD_SERVICE) as DownloadManager
+    private val thread = HandlerThread("DownloadQueue").apply { start() }
+    private val handler = Handler(thread.looper)
+    private val mainHandler = Handler(Looper.getMainLooper())
+    private val listeners = CopyOnWriteArrayList<Listener>()
+    private val nextId = AtomicLong(1)
+
+    // Estado de la cola (hilo de la cola)
+    private val pending = ArrayList<Entry>()               // ordenada por prioridad y llegada
+    private val running = LinkedHashMap<Long, Entry>()     // por id de DownloadManager
+    private val runningPerHost = HashMap<String, Int>()
+    private var maxParallel = DEFAULT_MAX_PARALLEL
+    private var maxPerHost = DEFAULT_MAX_PER_HOST
+
+    // Lote actual, para el progreso agregado
+    private var completedInBatch = 0
+    private var failedInBatch = 0
+    private var finishedBytesInBatch = 0L
+
+    private var lastPollAt = 0L
+    private var pollScheduled = false
+    private var receiverRegistered = false
+
+    private val pollRunnable = Runnable { poll() }
+
+    // Solo adelanta la consulta: el estado se lee en poll() para todas las descargas a la vez
+    private val completeReceiver = object : BroadcastReceiver() {
+        override fun onReceive(context: Context, intent: Intent) {
+            val id = intent.getLongExtra(DownloadManager.EXTRA_DOWNLOAD_ID, -1)
+            if (running.containsKey(id)) {
+                schedulePoll(0)
+            }
+        }
+    }
+
+    // =============================================
+    // API PÚBLICA (cualquier hilo)
+    // =============================================
+
+    /**
+     * Añade una descarga a la cola. Devuelve el id de la cola (no el de DownloadManager).
+     */
+    fun enqueue(
+        request: DownloadManager.Request,
+        url: String,
+        title: String,
+        priority: Priority = Priority.NORMAL
+    ): Long {
+        val entry = Entry(nextId.getAndIncrement(), request, title, Uri.parse(url).host ?: "", priority)
+        // En la traza, de la cola hasta terminar (ver finish)
+        AppTrace.beginAsync(AppTrace.ASYNC_DOWNLOAD, entry.id.toInt())
+        handler.post {
+            // Inserción estable: detrás de las de igual o mayor prioridad
+            var index = pending.size
+            while (index > 0 && pending[index - 1].priority < entry.priority) index--
+            pending.add(index, entry)
+            dispatch()
+            publishProgress()
+        }
+        return entry.id
+    }
+
+    /**
+     * Cancela una descarga en cola o en curso
+     */
+    fun cancel(id: Long) {
+        handler.post {
+            val queued = pending.firstOrNull { it.id == id }
+            if (queued != null) {
+                pending.remove(queued)
+                finish(queued, Status.CANCELLED)
+            } else {
+                val active = running.values.firstOrNull { it.id == id } ?: return@post
+                downloadManager.remove(active.downloadManagerId)
+                finish(active, Status.CANCELLED)
+            }
+            dispatch()
+            publishProgress()
+        }
+    }
+
+    /**
+     * Cambia el número de descargas simultáneas (total y por host)
+     */
+    fun setParallelism(maxParallel: Int, maxPerHost: Int) {
+        require(maxParallel > 0 && maxPerHost > 0)
+        handler.post {
+            this.maxParallel = maxParallel
+            this.maxPerHost = maxPerHost
+            dispatch()
+        }
+    }
+
+    fun addListener(listener: Listener) {
+        listeners.add(listener)
+    }
+
+    fun removeListener(listener: Listener) {
+        listeners.remove(listener)
+    }
+
+    // =============================================
+    // HILO DE LA COLA
+    // =============================================
+
+    /**
+     * Pasa a DownloadManager las descargas que caben, por orden de prioridad
+     */
+    private fun dispatch() {
+        val iterator = pending.iterator()
+        while (running.size < maxParallel && iterator.hasNext()) {
+            val entry = iterator.next()
+            val perHost = runningPerHost[entry.host] ?: 0
+            if (perHost >= maxPerHost) continue
+
+            iterator.remove()
+            try {
+                entry.downloadManagerId = downloadManager.enqueue(entry.request)
+            } catch (e: Exception) {
+                Log.w(TAG, "No se pudo iniciar ${entry.title}", e)
+                finish(entry, Status.FAILED)
+                continue
+            }
+            entry.status = Status.RUNNING
+            running[entry.downloadManagerId] = entry
+            runningPerHost[entry.host] = perHost + 1
+        }
+
+        if (running.isNotEmpty()) {
+            registerReceiver()
+            if (!pollScheduled) schedulePoll(POLL_INTERVAL_MS)
+        }
+    }
+
+    /**
+     * Programa la siguiente consulta, respetando la separación mínima
+     */
+    private fun schedulePoll(delayMs: Long) {
+        val earliest = lastPollAt + MIN_POLL_GAP_MS - SystemClock.uptimeMillis()
+        handler.removeCallbacks(pollRunnable)
+        handler.postDelayed(pollRunnable, maxOf(delayMs, earliest, 0L))
+        pollScheduled = true
+    }
+
+    /**
+     * Una consulta con todos los ids activos
+     */
+    private fun poll() {
+        pollScheduled = false
+        lastPollAt = SystemClock.uptimeMillis()
+        if (running.isEmpty()) {
+            unregisterReceiver()
+            return
+        }
+
+        val seen = HashSet<Long>()
+        try {
+            val query = DownloadManager.Query().setFilterById(*running.keys.toLongArray())
+            downloadManager.query(query)?.use { cursor ->
+                val idColumn = cursor.getColumnIndexOrThrow(DownloadManager.COLUMN_ID)
+                val statusColumn = cursor.getColumnIndexOrThrow(DownloadManager.COLUMN_STATUS)
+                val downloadedColumn = cursor.getColumnIndexOrThrow(DownloadManager.COLUMN_BYTES_DOWNLOADED_SO_FAR)
+                val totalColumn = cursor.getColumnIndexOrThrow(DownloadManager.COLUMN_TOTAL_SIZE_BYTES)
+
+                while (cursor.moveToNext()) {
+                    val entry = running[cursor.getLong(idColumn)] ?: continue
+                    seen.add(entry.downloadManagerId)
+                    entry.downloadedBytes = cursor.getLong(downloadedColumn)
+                    entry.totalBytes = cursor.getLong(totalColumn)
+                    when (cursor.getInt(statusColumn)) {
+                        DownloadManager.STATUS_SUCCESSFUL -> finish(entry, Status.SUCCESSFUL)
+                        DownloadManager.STATUS_FAILED -> finish(entry, Status.FAILED)
+                    }
+                }
+            }
+        } catch (e: Exception) {
+            Log.w(TAG, "Error consultando DownloadManager", e)
+            schedulePoll(POLL_INTERVAL_MS)
+            return
+        }
+
+        // Las que ya no existen se cancelaron desde la notificación
+        running.values.filter { it.downloadManagerId !in seen }.forEach { finish(it, Status.CANCELLED) }
+
+        dispatch()
+        publishProgress()
+        if (running.isNotEmpty()) {
+            schedulePoll(POLL_INTERVAL_MS)
+        } else {
+            unregisterReceiver()
+        }
+    }
+
+    private fun finish(entry: Entry, status: Status) {
+        AppTrace.endAsync(AppTrace.ASYNC_DOWNLOAD, entry.id.toInt())
+        entry.status = status
+        if (running.remove(entry.downloadManagerId) != null) {
+            val perHost = (runningPerHost[entry.host] ?: 1) - 1
+            if (perHost > 0) runningPerHost[entry.host] = perHost else runningPerHost.remove(entry.host)
+        }
+        when (status) {
+            Status.SUCCESSFUL -> completedInBatch++
+            Status.FAILED -> failedInBatch++
+            else -> Unit
+        }
+        if (status == Status.SUCCESSFUL) {
+            finishedBytesInBatch += maxOf(entry.totalBytes, entry.downloadedBytes, 0L)
+        }
+
+        val item = entry.toItem()
+        mainHandler.post { listeners.forEach { it.onDownloadFinished(item) } }
+    }
+
+    private fun publishProgress() {
+        var downloaded = finishedBytesInBatch
+        var total = finishedBytesInBatch
+        var sizeUnknown = false
+        for (entry in running.values) {
+            downloaded += entry.downloadedBytes
+            if (entry.totalBytes > 0) total += entry.totalBytes else sizeUnknown = true
+        }
+        // En cola todavía no tienen tamaño conocido
+        if (pending.isNotEmpty()) sizeUnknown = true
+
+        val progress = Progress(
+            queued = pending.size,
+            running = running.size,
+            completed = completedInBatch,
+            failed = failedInBatch,
+            downloadedBytes = downloaded,
+            totalBytes = if (sizeUnknown) -1 else total
+        )
+        if (progress.isIdle) {
+            completedInBatch = 0
+            failedInBatch = 0
+            finishedBytesInBatch = 0
+        }
+        AppTrace.counter(AppTrace.COUNTER_DOWNLOADS_QUEUED, pending.size.toLong())
+        AppTrace.counter(AppTrace.COUNTER_DOWNLOADS_RUNNING, running.size.toLong())
+        mainHandler.post { listeners.forEach { it.onProgress(progress) } }
+    }
+
+    private fun registerReceiver() {
+        if (receiverRegistered) return
+        ContextCompat.registerReceiver(
+            appContext, completeReceiver,
+            IntentFilter(DownloadManager.ACTION_DOWNLOAD_COMPLETE),
+            null, handler, ContextCompat.RECEIVER_NOT_EXPORTED
+        )
+        receiverRegistered = true
+    }
+
+    private fun unregisterReceiver() {
+        if (!receiverRegistered) return
+        appContext.unregisterReceiver(completeReceiver)
+        receiverRegistered = false
+    }
+}
@@ -0,0 +1,395 @@
+package com.tuapp.utils
+
+import android.content.ContentValues
+import android.content.Context
+import android.media.MediaScannerConnection
+import android.net.Uri
+import android.os.Build
+import android.os.Environment
+import android.os.Handler
+import android.os.Looper
+import android.provider.MediaStore
+import android.util.Log
+import android.webkit.CookieManager
+import androidx.annotation.MainThread
+import androidx.annotation.RequiresApi
+import androidx.core.content.FileProvider
+import com.buscandoadios.espana.AppTrace
+import com.buscandoadios.espana.ConnectivityMonitor
+import com.buscandoadios.espana.SiteHttpClient
+import com.buscandoadios.espana.core.RangeDownloader
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.io.IOException
+import java.util.Properties
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * =========================================================
+ * SEGMENTED DOWNLOADER - Descargas grandes por tramos
+ * =========================================================
+ *
+ * Alternativa a DownloadManager para audios y vídeos de predicaciones:
+ * - Varios tramos HTTP Range en paralelo (RangeDownloader, en :core)
+ * - Reanudable: el avance se guarda en disco. Si se corta la red, la descarga
+ *   queda en pausa (onPaused) y sigue sola donde se quedó en cuanto vuelve la
+ *   conexión (ConnectivityMonitor) o, como tarde, tras una espera creciente
+ *   (BASE_RESUME_DELAY_MS x 2^pausas, hasta MAX_RESUME_DELAY_MS). Si el proceso
+ *   muere, la retoma resumeInterrupted() en el siguiente arranque
+ * - Si el servidor no acepta Range, se descarga de un tirón
+ *
+ * Se descarga en la carpeta privada de la app y, al terminar, se publica
+ * en Descargas (MediaStore en Android 10+, copia directa en versiones anteriores).
+ * Un nombre de archivo = una descarga a la vez (es su destino en la carpeta privada).
+ * Cada descarga acaba siempre con onFinished (también si falla por algo que no es la red,
+ * o tras MAX_PAUSES pausas seguidas); una pausa no la acaba y conserva su id.
+ * Los listeners se llaman en el hilo principal.
+ * =========================================================
+ */
+class SegmentedDownloader private constructor(private val appContext: Context) {
+
+    interface Listener {
+        fun onProgress(id: Long, title: String, downloadedBytes: Long, totalBytes: Long)
+        /** Se cortó la red: la descarga sigue pendiente y se reanudará sola (mismo id) */
+        fun onPaused(id: Long, title: String)
+        /** uri: el archivo en Descargas, o null si falló o se canceló */
+        fun onFinished(id: Long, title: String, uri: Uri?)
+    }
+
+    companion object {
+        private const val TAG = "SegmentedDownloader"
+
+        /** enqueue(): ya se descarga otro archivo con ese nombre */
+        const val DUPLICATE_NAME = -1L
+
+        // Descargas a la vez (cada una con hasta MAX_SEGMENTS conexiones)
+        private const val MAX_JOBS = 2
+        private const val MAX_SEGMENTS = RangeDownloader.DEFAULT_MAX_SEGMENTS
+
+        // Datos de cada descarga para poder reanudarla tras reiniciar la app
+        private const val JOB_SUFFIX = ".job"
+        // En el .job: ya está entero en la carpeta privada, solo falta publicarlo
+        private const val KEY_DOWNLOADED = "downloaded"
+
+        // Reanudar una descarga en pausa aunque no llegue aviso de la red
+        private const val BASE_RESUME_DELAY_MS = 15_000L
+        private const val MAX_RESUME_DELAY_MS = 5 * 60_000L
+        // Pausas seguidas de una descarga antes de darla por fallida (su .job se queda)
+        private const val MAX_PAUSES = 8
+
+        private val MEDIA_EXTENSIONS = setOf("mp3", "m4a", "aac", "ogg", "opus", "wav", "mp4", "m4v", "webm", "mov")
+
+        @Volatile
+        private var instance: SegmentedDownloader? = null
+
+        @JvmStatic
+        fun get(context: Context): SegmentedDownloader {
+            return instance ?: synchronized(this) {
+                instance ?: SegmentedDownloader(context.applicationContext).also { instance = it }
+            }
+        }
+
+        /**
+         * Audios y vídeos (archivos grandes): por tramos. El resto, DownloadManager.
+         */
+        @JvmStatic
+        fun shouldHandle(fileName: String, mimeType: String?): Boolean {
+            if (mimeType != null && (mimeType.startsWith("audio/") || mimeType.startsWith("video/"))) {
+                return true
+            }
+            return fileName.substringAfterLast('.', "").lowercase() in MEDIA_EXTENSIONS
+        }
+    }
+
+    private val workDir = File(appContext.getExternalFilesDir(Environment.DIRECTORY_DOWNLOADS) ?: appContext.filesDir, "segmented")
+    private val jobExecutor = Executors.newFixedThreadPool(MAX_JOBS)
+    private val segmentExecutor = Executors.newFixedThreadPool(MAX_JOBS * MAX_SEGMENTS)
+    // Lazy: el primer uso (y el del cliente HTTP compartido) es en un hilo de descarga
+    private val downloader by lazy { RangeDownloader(SiteHttpClient.get().client(), segmentExecutor, MAX_SEGMENTS) }
+    private val mainHandler = Handler(Looper.getMainLooper())
+    private val listeners = CopyOnWriteArrayList<Listener>()
+    private val nextId = AtomicLong(1)
+    private val active = ConcurrentHashMap<Long, AtomicBoolean>()   // id -> cancelada
+    private val activeByName = ConcurrentHashMap<String, ActiveJob>()  // en cola o descargando
+
+    private class ActiveJob(val id: Long, val url: String)
+    private val resumeChecked = AtomicBoolean(false)
+
+    // Descargas en pausa esperando red (solo hilo principal)
+    private class PausedJob(val job: Properties, val cancelled: AtomicBoolean, val pauses: Int)
+    private val paused = HashMap<Long, PausedJob>()
+    private val resumeRunnable = Runnable { resumePaused() }
+    private val connectivityListener = ConnectivityMonitor.Listener { state ->
+        if (state.isConnected) resumePaused()
+    }
+    private var listeningConnectivity = false
+
+    // =============================================
+    // API PÚBLICA
+    // =============================================
+
+    /**
+     * Empieza una descarga por tramos. Devuelve su id; si esa URL ya se está descargando,
+     * el id de esa descarga, y DUPLICATE_NAME si el nombre lo usa otra URL.
+     */
+    fun enqueue(url: String, fileName: String, mimeType: String?, userAgent: String?): Long {
+        val id = nextId.getAndIncrement()
+        activeByName.putIfAbsent(fileName, ActiveJob(id, url))?.let { existing ->
+            // Dos descargas con el mismo destino se pisarían el .part y el .job
+            return if (existing.url == url) existing.id else DUPLICATE_NAME
+        }
+        val cancelled = AtomicBoolean(false)
+        active[id] = cancelled
+        jobExecutor.execute {
+            val job = Properties().apply {
+                setProperty("url", url)
+                setProperty("fileName", fileName)
+                mimeType?.let { setProperty("mimeType", it) }
+                userAgent?.let { setProperty("userAgent", it) }
+            }
+            run(id, job, cancelled)
+        }
+        return id
+    }
+
+    /**
+     * Vuelve a lanzar las descargas que quedaron a medias (proceso cerrado, sin red...)
+     */
+    fun resumeInterrupted() {
+        if (!resumeChecked.compareAndSet(false, true)) return
+        jobExecutor.execute {
+            val jobs = workDir.listFiles { file -> file.name.endsWith(JOB_SUFFIX) } ?: return@execute
+            for (jobFile in jobs) {
+                val job = Properties()
+                try {
+                    FileInputStream(jobFile).use { job.load(it) }
+                } catch (e: IOException) {
+                    jobFile.delete()
+                    continue
+                }
+                val fileName = job.getProperty("fileName") ?: continue
+                val url = job.getProperty("url") ?: continue
+                val id = nextId.getAndIncrement()
+                if (activeByName.putIfAbsent(fileName, ActiveJob(id, url)) != null) continue
+
+                Log.i(TAG, "Reanudando $fileName")
+                val cancelled = AtomicBoolean(false)
+                active[id] = cancelled
+                jobExecutor.execute { run(id, job, cancelled) }
+            }
+        }
+    }
+
+    /**
+     * Cancela y borra lo descargado
+     */
+    fun cancel(id: Long) {
+        active[id]?.set(true)
+        // Una en pausa no tiene hilo que vea la cancelación: se acaba aquí
+        mainHandler.post {
+            val job = paused.remove(id) ?: return@post
+            abandon(id, job.job)
+        }
+    }
+
+    fun addListener(listener: Listener) {
+        listeners.add(listener)
+    }
+
+    fun removeListener(listener: Listener) {
+        listeners.remove(listener)
+    }
+
+    // =============================================
+    // DESCARGA (hilos de fondo)
+    // =============================================
+
+    /**
+     * pauses: veces seguidas que esta descarga ya quedó en pausa por la red
+     */
+    private fun run(id: Long, job: Properties, cancelled: AtomicBoolean, pauses: Int = 0) {
+        val url = job.getProperty("url")
+        val fileName = job.getProperty("fileName")
+        val target = File(workDir, fileName)
+        val jobFile = File(workDir, fileName + JOB_SUFFIX)
+        AppTrace.beginAsync(AppTrace.ASYNC_SEGMENTED_DOWNLOAD, id.toInt())
+
+        var published: Uri? = null
+        var pausedNow = false
+        try {
+            workDir.mkdirs()
+            FileOutputStream(jobFile).use { job.store(it, null) }
+
+            // Cookies de ahora (la sesión puede haber cambiado desde que se empezó)
+            val headers = HashMap<String, String>()
+            job.getProperty("userAgent")?.let { headers["User-Agent"] = it }
+            CookieManager.getInstance().getCookie(url)?.let { headers["Cookie"] = it }
+
+            if (job.getProperty(KEY_DOWNLOADED) == null || !target.exists()) {
+                downloader.download(url, headers, target, { downloaded, total ->
+                    mainHandler.post { listeners.forEach { it.onProgress(id, fileName, downloaded, total) } }
+                }, cancelled)
+                job.setProperty(KEY_DOWNLOADED, "true")
+                FileOutputStream(jobFile).use { job.store(it, null) }
+            }
+
+            published = publish(target, fileName, job.getProperty("mimeType"))
+            jobFile.delete()
+        } catch (e: IOException) {
+            if (cancelled.get()) {
+                discardJob(target, jobFile)
+            } else if (pauses < MAX_PAUSES) {
+                // Sigue siendo la misma descarga (mismo id y .job): se reanuda sola
+                Log.w(TAG, "Descarga en pausa: $fileName", e)
+                pausedNow = true
+                mainHandler.post { pause(id, job, cancelled, pauses + 1) }
+            } else {
+                // Se queda el .job: se reanuda en el próximo resumeInterrupted()
+                Log.w(TAG, "Descarga interrumpida tras $pauses pausas: $fileName", e)
+                resumeChecked.set(false)
+            }
+        } catch (e: Throwable) {
+            // Fallo que no es de red (disco, permisos, MediaStore...): reanudarla no lo arreglaría
+            Log.e(TAG, "Descarga fallida: $fileName", e)
+            discardJob(target, jobFile)
+        } finally {
+            AppTrace.endAsync(AppTrace.ASYNC_SEGMENTED_DOWNLOAD, id.toInt())
+            if (!pausedNow) {
+                // Siempre, también tras un fallo inesperado: quien escucha suelta lo que guardaba de esta descarga
+                finish(id, fileName, published)
+            }
+        }
+    }
+
+    private fun finish(id: Long, fileName: String, uri: Uri?) {
+        active.remove(id)
+        activeByName.remove(fileName)
+        mainHandler.post { listeners.forEach { it.onFinished(id, fileName, uri) } }
+    }
+
+    /**
+     * Cancelada mientras estaba en pausa: se borra lo descargado y se acaba
+     */
+    private fun abandon(id: Long, job: Properties) {
+        val fileName = job.getProperty("fileName")
+        jobExecutor.execute {
+            discardJob(File(workDir, fileName), File(workDir, fileName + JOB_SUFFIX))
+            finish(id, fileName, null)
+        }
+    }
+
+    // =============================================
+    // PAUSA Y REANUDACIÓN (hilo principal)
+    // =============================================
+
+    @MainThread
+    private fun pause(id: Long, job: Properties, cancelled: AtomicBoolean, pauses: Int) {
+        if (cancelled.get()) {
+            abandon(id, job)
+            return
+        }
+        paused[id] = PausedJob(job, cancelled, pauses)
+        val fileName = job.getProperty("fileName")
+        listeners.forEach { it.onPaused(id, fileName) }
+
+        if (!listeningConnectivity) {
+            listeningConnectivity = true
+            ConnectivityMonitor.get(appContext).addListener(connectivityListener, false)
+        }
+        // Por si la red nunca llegó a caerse (servidor caído, timeout): otro intento más tarde
+        val delay = minOf(MAX_RESUME_DELAY_MS, BASE_RESUME_DELAY_MS shl (pauses - 1))
+        mainHandler.postDelayed(resumeRunnable, delay)
+    }
+
+    /**
+     * Vuelve a lanzar las descargas en pausa si hay red (si no, espera al aviso de ConnectivityMonitor)
+     */
+    @MainThread
+    private fun resumePaused() {
+        if (paused.isEmpty() || !ConnectivityMonitor.get(appContext).state.isConnected) return
+        val jobs = HashMap(paused)
+        paused.clear()
+        mainHandler.removeCallbacks(resumeRunnable)
+        listeningConnectivity = false
+        ConnectivityMonitor.get(appContext).removeListener(connectivityListener)
+
+        for ((id, pausedJob) in jobs) {
+            Log.i(TAG, "Reanudando ${pausedJob.job.getProperty("fileName")} (pausa ${pausedJob.pauses})")
+            jobExecutor.execute { run(id, pausedJob.job, pausedJob.cancelled, pausedJob.pauses) }
+        }
+    }
+
+    private fun discardJob(target: File, jobFile: File) {
+        RangeDownloader.discard(target)
+        target.delete()
+        jobFile.delete()
+    }
+
+    /**
+     * Mueve el archivo terminado a la carpeta pública de Descargas y devuelve su content://
+     * El original se borra solo si todo fue bien: si no, el siguiente intento lo publica sin bajarlo.
+     */
+    private fun publish(file: File, fileName: String, mimeType: String?): Uri {
+        val uri = if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            publishToMediaStore(file, fileName, mimeType)
+        } else {
+            publishToDownloadsDir(file, fileName, mimeType)
+        }
+        file.delete()
+        return uri
+    }
+
+    @RequiresApi(Build.VERSION_CODES.Q)
+    private fun publishToMediaStore(file: File, fileName: String, mimeType: String?): Uri {
+        val resolver = appContext.contentResolver
+        val values = ContentValues().apply {
+            put(MediaStore.Downloads.DISPLAY_NAME, fileName)
+            mimeType?.let { put(MediaStore.Downloads.MIME_TYPE, it) }
+            put(MediaStore.Downloads.RELATIVE_PATH, Environment.DIRECTORY_DOWNLOADS)
+            put(MediaStore.Downloads.IS_PENDING, 1)
+        }
+        val uri = resolver.insert(MediaStore.Downloads.EXTERNAL_CONTENT_URI, values)
+            ?: throw IOException("MediaStore no devolvió Uri para $fileName")
+        try {
+            resolver.openOutputStream(uri)?.use { out ->
+                FileInputStream(file).use { it.copyTo(out) }
+            } ?: throw IOException("No se puede escribir $uri")
+            values.clear()
+            values.put(MediaStore.Downloads.IS_PENDING, 0)
+            resolver.update(uri, values, null, null)
+            return uri
+        } catch (e: Throwable) {
+            // Si no, queda una entrada IS_PENDING (invisible, a medias) ocupando el nombre
+            try {
+                resolver.delete(uri, null, null)
+            } catch (cleanup: Exception) {
+                e.addSuppressed(cleanup)
+            }
+            throw e
+        }
+    }
+
+    private fun publishToDownloadsDir(file: File, fileName: String, mimeType: String?): Uri {
+        @Suppress("DEPRECATION")
+        val downloads = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS)
+        downloads.mkdirs()
+        val destination = File(downloads, fileName)
+        if (!file.renameTo(destination)) {
+            try {
+                FileInputStream(file).use { input ->
+                    FileOutputStream(destination).use { input.copyTo(it) }
+                }
+            } catch (e: IOException) {
+                destination.delete()
+                throw e
+            }
+        }
+        MediaScannerConnection.scanFile(appContext, arrayOf(destination.path), arrayOf(mimeType), null)
+        return FileProvider.getUriForFile(appContext, appContext.packageName + ".fileprovider", destination)
+    }
+}
@@ -0,0 +1,415 @@
+package com.tuapp.utils
+
+import android.content.Context
+import android.net.ConnectivityManager
+import android.net.Network
+import android.net.Uri
+import android.os.Handler
+import android.os.HandlerThread
+import android.os.Looper
+import android.os.SystemClock
+import android.provider.OpenableColumns
+import android.util.Log
+import android.webkit.CookieManager
+import android.webkit.WebSettings
+import com.buscandoadios.espana.SiteHttpClient
+import com.buscandoadios.espana.core.ChunkedUploader
+import com.buscandoadios.espana.core.UploadJournal
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * =========================================================
+ * UPLOAD QUEUE - Subidas que no se pierden
+ * =========================================================
+ *
+ * - Cada archivo se copia a la carpeta de la app y se apunta en un diario
+ *   (UploadJournal): si el proceso muere, resumePending() lo retoma al volver
+ * - Se sube por trozos (ChunkedUploader): al reanudar se sigue desde lo que
+ *   el servidor ya tiene, no desde cero
+ * - Si falla la red: reintento con espera creciente (BASE_BACKOFF_MS x 2^intentos,
+ *   hasta MAX_BACKOFF_MS), y enseguida en cuanto vuelve la conexión; tras MAX_ATTEMPTS
+ *   intentos, o con un error que no es de red, la subida queda FAILED (la página lo
+ *   recibe por UploadBridge como cualquier otro cambio)
+ * - Una subida a la vez (datos móviles)
+ *
+ * Es una por proceso. El estado vive en un hilo propio; los listeners se
+ * llaman en el hilo principal.
+ * =========================================================
+ */
+class UploadQueue private constructor(private val appContext: Context) {
+
+    enum class Status { QUEUED, RUNNING, WAITING_RETRY, SUCCESSFUL, FAILED, CANCELLED }
+
+    /**
+     * Estado de una subida (copia para los listeners y la página)
+     */
+    data class Upload(
+        val id: Long,
+        val tag: String,
+        val fileName: String,
+        val status: Status,
+        val sentBytes: Long,
+        val totalBytes: Long,
+        val attempts: Int,
+        val statusCode: Int,        // respuesta final del servidor (0 mientras no la hay)
+        val response: String?       // cuerpo de la respuesta final
+    )
+
+    interface Listener {
+        fun onUploadChanged(upload: Upload)
+    }
+
+    companion object {
+        private const val TAG = "UploadQueue"
+
+        private const val BASE_BACKOFF_MS = 2_000L
+        private const val MAX_BACKOFF_MS = 5 * 60_000L
+        private const val MAX_ATTEMPTS = 10
+        // Avisos de progreso como mucho cada tanto (un trozo puede tardar poco)
+        private const val PROGRESS_INTERVAL_MS = 500L
+
+        @Volatile
+        private var instance: UploadQueue? = null
+
+        @JvmStatic
+        fun get(context: Context): UploadQueue {
+            return instance ?: synchronized(this) {
+                instance ?: UploadQueue(context.applicationContext).also { instance = it }
+            }
+        }
+    }
+
+    /**
+     * Subida en la cola (solo se toca desde el hilo de la cola)
+     */
+    private class Entry(val journal: UploadJournal.Entry) {
+        var status = Status.QUEUED
+        var sentBytes = 0L
+        var totalBytes = File(journal.filePath).length()
+        var statusCode = 0
+        var response: String? = null
+        val cancelled = AtomicBoolean(false)
+
+        fun toUpload() = Upload(journal.id, journal.tag, journal.fileName, status,
+            sentBytes, totalBytes, journal.attempts, statusCode, response)
+    }
+
+    // filesDir toca disco: se resuelven la primera vez en el hilo de la cola, no en el principal
+    private val spoolDir by lazy { File(appContext.filesDir, "upload_spool") }
+    private val journal by lazy { UploadJournal(File(appContext.filesDir, "upload_journal.bin")) }
+    // Se crea en el hilo de la subida, no en el principal
+    private val uploader by lazy { ChunkedUploader(SiteHttpClient.get().client(), ChunkedUploader.DEFAULT_CHUNK_BYTES) }
+    private val thread = HandlerThread("UploadQueue").apply { start() }
+    private val handler = Handler(thread.looper)
+    private val mainHandler = Handler(Looper.getMainLooper())
+    private val transferExecutor = Executors.newSingleThreadExecutor { r -> Thread(r, "UploadQueue-transfer") }
+    private val listeners = CopyOnWriteArrayList<Listener>()
+
+    // Estado de la cola (hilo de la cola)
+    private val entries = LinkedHashMap<Long, Entry>()
+    private var running: Entry? = null
+    private var resumed = false
+    private var networkCallbackRegistered = false
+    private var networkLost = false
+
+    // Foto del estado para leer desde otros hilos (puente JS)
+    @Volatile
+    private var snapshot: List<Upload> = emptyList()
+
+    private val retryRunnable = Runnable { retryWaiting() }
+
+    private val connectivity = appContext.getSystemService(Context.CONNECTIVITY_SERVICE) as ConnectivityManager
+
+    // Al registrarse llega un onAvailable si ya hay red: solo cuenta si antes se perdió
+    private val networkCallback = object : ConnectivityManager.NetworkCallback() {
+        override fun onLost(network: Network) {
+            handler.post { networkLost = true }
+        }
+
+        override fun onAvailable(network: Network) {
+            handler.post {
+                if (networkLost) {
+                    networkLost = false
+                    retryWaiting()
+                }
+            }
+        }
+    }
+
+    // =============================================
+    // API PÚBLICA (cualquier hilo)
+    // =============================================
+
+    /**
+     * Añade un archivo (content:// o file://) a la cola de subida hacia endpoint.
+     * tag es un texto libre que se devuelve con cada aviso (para la página).
+     */
+    fun enqueue(uri: Uri, endpoint: String, tag: String, mimeType: String?) {
+        handler.post {
+            resumeLocked()
+            val id = journal.nextId()
+            val fileName = displayName(uri) ?: "archivo_$id"
+            val copy = File(spoolDir, "$id.upload")
+            try {
+                // Copia propia: el permiso sobre un content:// no sobrevive al proceso
+                spoolDir.mkdirs()
+                appContext.contentResolver.openInputStream(uri)?.use { input ->
+                    FileOutputStream(copy).use { input.copyTo(it) }
+                } ?: throw IOException("No se puede leer $uri")
+
+                val type = mimeType ?: appContext.contentResolver.getType(uri) ?: "application/octet-stream"
+                val journalEntry = UploadJournal.Entry(id, endpoint, copy.path, fileName, type, tag)
+                journal.put(journalEntry)
+                val entry = Entry(journalEntry)
+                entries[id] = entry
+                notifyChanged(entry)
+            } catch (e: IOException) {
+                Log.w(TAG, "No se pudo preparar $uri", e)
+                copy.delete()
+                val failed = Upload(id, tag, fileName, Status.FAILED, 0, -1, 0, 0, e.message)
+                mainHandler.post { listeners.forEach { it.onUploadChanged(failed) } }
+            }
+            dispatch()
+        }
+    }
+
+    /**
+     * Retoma las subidas del diario (llamar al arrancar la app)
+     */
+    fun resumePending() {
+        handler.post {
+            resumeLocked()
+            dispatch()
+        }
+    }
+
+    fun cancel(id: Long) {
+        handler.post {
+            val entry = entries[id] ?: return@post
+            entry.cancelled.set(true)
+            // La que está subiendo termina en su hilo y pasa por onTransferDone
+            if (entry !== running) {
+                finish(entry, Status.CANCELLED)
+                dispatch()
+            }
+        }
+    }
+
+    /**
+     * Subidas en curso o pendientes (cualquier hilo)
+     */
+    fun pending(): List<Upload> = snapshot
+
+    fun addListener(listener: Listener) {
+        listeners.add(listener)
+    }
+
+    fun removeListener(listener: Listener) {
+        listeners.remove(listener)
+    }
+
+    // =============================================
+    // HILO DE LA COLA
+    // =============================================
+
+    private fun resumeLocked() {
+        if (resumed) return
+        resumed = true
+        for (journalEntry in journal.entries()) {
+            if (!File(journalEntry.filePath).exists()) {
+                removeFromJournal(journalEntry.id)
+                continue
+            }
+            entries[journalEntry.id] = Entry(journalEntry)
+        }
+        if (entries.isNotEmpty()) {
+            Log.i(TAG, "Retomando ${entries.size} subidas pendientes")
+            publishSnapshot()
+        }
+    }
+
+    /**
+     * Empieza la siguiente subida en cola, si no hay otra en marcha
+     */
+    private fun dispatch() {
+        if (running != null) return
+        val entry = entries.values.firstOrNull { it.status == Status.QUEUED } ?: run {
+            updateNetworkCallback()
+            return
+        }
+
+        running = entry
+        entry.status = Status.RUNNING
+        notifyChanged(entry)
+
+        val journalEntry = entry.journal
+        val headers = requestHeaders(journalEntry.endpoint)
+        transferExecutor.execute {
+            var lastProgressAt = 0L
+            val listener = object : ChunkedUploader.Listener {
+                override fun onSession(sessionUrl: String) {
+                    handler.post {
+                        journalEntry.sessionUrl = sessionUrl
+                        saveToJournal(journalEntry)
+                    }
+                }
+
+                override fun onProgress(sentBytes: Long, totalBytes: Long) {
+                    val now = SystemClock.uptimeMillis()
+                    if (sentBytes < totalBytes && now - lastProgressAt < PROGRESS_INTERVAL_MS) return
+                    lastProgressAt = now
+                    handler.post {
+                        entry.sentBytes = sentBytes
+                        entry.totalBytes = totalBytes
+                        notifyChanged(entry)
+                    }
+                }
+            }
+
+            // Cualquier fallo vuelve a la cola: si el hilo muriera, la subida se quedaría RUNNING
+            val outcome: Any = try {
+                uploader.upload(journalEntry.endpoint, journalEntry.sessionUrl.ifEmpty { null }, headers,
+                    File(journalEntry.filePath), journalEntry.fileName, journalEntry.mimeType,
+                    listener, entry.cancelled)
+            } catch (e: Throwable) {
+                e
+            }
+            handler.post { onTransferDone(entry, outcome) }
+        }
+    }
+
+    private fun onTransferDone(entry: Entry, outcome: Any) {
+        running = null
+        when {
+            entry.cancelled.get() -> finish(entry, Status.CANCELLED)
+            outcome is ChunkedUploader.Result -> {
+                entry.statusCode = outcome.statusCode
+                entry.response = outcome.body
+                entry.sentBytes = entry.totalBytes
+                finish(entry, Status.SUCCESSFUL)
+            }
+            outcome is ChunkedUploader.RejectedException -> {
+                entry.statusCode = outcome.statusCode
+                entry.response = outcome.message
+                finish(entry, Status.FAILED)
+            }
+            outcome is IOException -> {
+                entry.journal.attempts++
+                if (entry.journal.attempts >= MAX_ATTEMPTS) {
+                    Log.w(TAG, "Subida ${entry.journal.id} abandonada tras ${entry.journal.attempts} intentos", outcome)
+                    entry.response = "Sin éxito tras ${entry.journal.attempts} intentos: ${outcome.message}"
+                    finish(entry, Status.FAILED)
+                } else {
+                    // Red caída o error del servidor: se reintenta más tarde
+                    Log.w(TAG, "Subida ${entry.journal.id} interrumpida: ${outcome.message}")
+                    saveToJournal(entry.journal)
+                    if (connectivity.activeNetwork == null) networkLost = true
+                    entry.status = Status.WAITING_RETRY
+                    notifyChanged(entry)
+                    scheduleRetry(entry.journal.attempts)
+                }
+            }
+            else -> {
+                // Fallo que no es de red (archivo, permisos, un error nuestro): reintentar no sirve
+                Log.e(TAG, "Subida ${entry.journal.id} fallida", outcome as Throwable)
+                entry.response = outcome.toString()
+                finish(entry, Status.FAILED)
+            }
+        }
+        dispatch()
+    }
+
+    private fun scheduleRetry(attempts: Int) {
+        val delay = minOf(MAX_BACKOFF_MS, BASE_BACKOFF_MS shl minOf(attempts - 1, 16))
+        handler.removeCallbacks(retryRunnable)
+        handler.postDelayed(retryRunnable, delay)
+    }
+
+    /**
+     * Las que esperaban reintento vuelven a la cola (tiempo cumplido o ha vuelto la red)
+     */
+    private fun retryWaiting() {
+        handler.removeCallbacks(retryRunnable)
+        var any = false
+        for (entry in entries.values) {
+            if (entry.status == Status.WAITING_RETRY) {
+                entry.status = Status.QUEUED
+                notifyChanged(entry)
+                any = true
+            }
+        }
+        if (any) dispatch()
+    }
+
+    private fun finish(entry: Entry, status: Status) {
+        entry.status = status
+        entries.remove(entry.journal.id)
+        removeFromJournal(entry.journal.id)
+        File(entry.journal.filePath).delete()
+        notifyChanged(entry)
+    }
+
+    private fun notifyChanged(entry: Entry) {
+        val upload = entry.toUpload()
+        publishSnapshot()
+        mainHandler.post { listeners.forEach { it.onUploadChanged(upload) } }
+    }
+
+    private fun publishSnapshot() {
+        snapshot = entries.values.map { it.toUpload() }
+    }
+
+    /**
+     * Escuchar la red solo mientras haya subidas esperando
+     */
+    private fun updateNetworkCallback() {
+        val waiting = entries.values.any { it.status == Status.WAITING_RETRY }
+        if (waiting && !networkCallbackRegistered) {
+            connectivity.registerDefaultNetworkCallback(networkCallback)
+            networkCallbackRegistered = true
+        } else if (!waiting && networkCallbackRegistered) {
+            connectivity.unregisterNetworkCallback(networkCallback)
+            networkCallbackRegistered = false
+        }
+    }
+
+    private fun saveToJournal(journalEntry: UploadJournal.Entry) {
+        try {
+            journal.put(journalEntry)
+        } catch (e: IOException) {
+            Log.w(TAG, "No se pudo guardar el diario de subidas", e)
+        }
+    }
+
+    private fun removeFromJournal(id: Long) {
+        try {
+            journal.remove(id)
+        } catch (e: IOException) {
+            Log.w(TAG, "No se pudo guardar el diario de subidas", e)
+        }
+    }
+
+    private fun requestHeaders(endpoint: String): Map<String, String> {
+        val headers = HashMap<String, String>()
+        headers["User-Agent"] = WebSettings.getDefaultUserAgent(appContext)
+        // La sesión de la web (el usuario ya ha iniciado sesión en el WebView)
+        CookieManager.getInstance().getCookie(endpoint)?.let { headers["Cookie"] = it }
+        return headers
+    }
+
+    private fun displayName(uri: Uri): String? {
+        if (uri.scheme == "file") return uri.lastPathSegment
+        return try {
+            appContext.contentResolver.query(uri, arrayOf(OpenableColumns.DISPLAY_NAME), null, null, null)?.use {
+                if (it.moveToFirst()) it.getString(0) else null
+            }
+        } catch (e: Exception) {
+            null
+        }
+    }
+}
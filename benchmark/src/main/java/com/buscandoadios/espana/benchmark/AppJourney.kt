@@ -0,0 +1,51 @@
+package com.buscandoadios.espana.benchmark
+
+import android.content.Intent
+import androidx.benchmark.macro.MacrobenchmarkScope
+import androidx.test.uiautomator.By
+import androidx.test.uiautomator.Direction
+import androidx.test.uiautomator.Until
+
+/**
+ * Recorrido común de los benchmarks: Splash -> MainActivity con la página local de prueba
+ */
+internal const val TARGET_PACKAGE = "com.buscandoadios.espana"
+
+// Página sin red incluida solo en el build "benchmark" (app/src/benchmark/assets)
+internal const val FIXTURE_URL = "file:///android_asset/benchmark/index.html"
+
+private const val EXTRA_START_URL = "com.buscandoadios.espana.START_URL"
+private const val EXTRA_NO_PRELOAD = "com.buscandoadios.espana.NO_PRELOAD"
+private const val WAIT_TIMEOUT_MS = 10_000L
+
+/**
+ * Con preload = false el splash no precarga el WebView y MainActivity pasa por loadWebsite
+ */
+internal fun MacrobenchmarkScope.startAppWithFixture(preload: Boolean = true) {
+    val intent = Intent(Intent.ACTION_MAIN).apply {
+        addCategory(Intent.CATEGORY_LAUNCHER)
+        setClassName(TARGET_PACKAGE, "$TARGET_PACKAGE.SplashActivity")
+        putExtra(EXTRA_START_URL, FIXTURE_URL)
+        if (!preload) putExtra(EXTRA_NO_PRELOAD, true)
+    }
+    startActivityAndWait(intent)
+    waitForWebView()
+}
+
+internal fun MacrobenchmarkScope.waitForWebView() {
+    // MainActivity añade el WebView dentro de swipeRefresh cuando la página ya pinta
+    device.wait(Until.hasObject(By.res(TARGET_PACKAGE, "swipeRefresh")), WAIT_TIMEOUT_MS)
+    device.wait(Until.hasObject(By.text("Página de prueba")), WAIT_TIMEOUT_MS)
+}
+
+internal fun MacrobenchmarkScope.scrollWebView() {
+    val webView = device.findObject(By.clazz("android.webkit.WebView")) ?: return
+    // Margen para no disparar los gestos de sistema en los bordes
+    webView.setGestureMargin(device.displayWidth / 5)
+    repeat(3) {
+        webView.fling(Direction.DOWN)
+        device.waitForIdle()
+    }
+    webView.fling(Direction.UP)
+    device.waitForIdle()
+}
@@ -0,0 +1,33 @@
+package com.buscandoadios.espana.benchmark
+
+import androidx.benchmark.macro.junit4.BaselineProfileRule
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * Genera el Baseline Profile del arranque y del scroll.
+ *
+ * Necesita Android 13+ (o un dispositivo con root). Para actualizar el perfil:
+ *   ./gradlew :benchmark:connectedBenchmarkAndroidTest \
+ *       -P android.testInstrumentationRunnerArguments.class=com.buscandoadios.espana.benchmark.BaselineProfileGenerator
+ * y copiar el *-baseline-prof.txt de benchmark/build/outputs/connected_android_test_additional_output/
+ * a app/src/main/baseline-prof.txt (se incluye en el build de release). Solo se sube al repo
+ * lo que genere esta clase, nunca reglas escritas a mano.
+ */
+@RunWith(AndroidJUnit4::class)
+class BaselineProfileGenerator {
+
+    @get:Rule
+    val baselineProfileRule = BaselineProfileRule()
+
+    @Test
+    fun generate() {
+        baselineProfileRule.collect(packageName = TARGET_PACKAGE) {
+            pressHome()
+            startAppWithFixture()
+            scrollWebView()
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.buscandoadios.espana.benchmark
+
+import androidx.benchmark.macro.BaselineProfileMode
+import androidx.benchmark.macro.CompilationMode
+import androidx.benchmark.macro.StartupMode
+import androidx.benchmark.macro.StartupTimingMetric
+import androidx.benchmark.macro.junit4.MacrobenchmarkRule
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * Arranque en frío, templado y en caliente: SplashActivity -> MainActivity con la página pintada.
+ * timeToFullDisplayMs corresponde al reportFullyDrawn() de MainActivity.
+ *
+ * Ejecutar con: ./gradlew :benchmark:connectedBenchmarkAndroidTest
+ */
+@RunWith(AndroidJUnit4::class)
+class StartupBenchmark {
+
+    @get:Rule
+    val benchmarkRule = MacrobenchmarkRule()
+
+    @Test
+    fun startupColdNoProfile() = startup(StartupMode.COLD, CompilationMode.None())
+
+    @Test
+    fun startupCold() = startup(StartupMode.COLD, CompilationMode.Partial(BaselineProfileMode.Require))
+
+    @Test
+    fun startupWarm() = startup(StartupMode.WARM, CompilationMode.Partial(BaselineProfileMode.Require))
+
+    @Test
+    fun startupHot() = startup(StartupMode.HOT, CompilationMode.Partial(BaselineProfileMode.Require))
+
+    private fun startup(startupMode: StartupMode, compilationMode: CompilationMode) {
+        benchmarkRule.measureRepeated(
+            packageName = TARGET_PACKAGE,
+            metrics = listOf(StartupTimingMetric()),
+            compilationMode = compilationMode,
+            startupMode = startupMode,
+            iterations = 10,
+            setupBlock = { pressHome() }
+        ) {
+            startAppWithFixture()
+        }
+    }
+}
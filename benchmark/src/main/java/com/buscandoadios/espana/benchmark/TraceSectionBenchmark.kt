@@ -0,0 +1,69 @@
+package com.buscandoadios.espana.benchmark
+
+import androidx.benchmark.macro.BaselineProfileMode
+import androidx.benchmark.macro.CompilationMode
+import androidx.benchmark.macro.ExperimentalMetricApi
+import androidx.benchmark.macro.StartupMode
+import androidx.benchmark.macro.TraceSectionMetric
+import androidx.benchmark.macro.junit4.MacrobenchmarkRule
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * Duración de cada fase del arranque, con las secciones de AppTrace de la app.
+ * Cada sección sale en el JSON como "<sección>Ms"; sus presupuestos están en
+ * benchmark/trace-budgets.properties y se comprueban con:
+ *   ./gradlew :benchmark:connectedBenchmarkAndroidTest :benchmark:checkTraceBudgets
+ *
+ * Con el splash, MainActivity recibe el WebView ya cargado; loadWebsite se mide arrancando
+ * sin precarga (lo que pasa cuando MainActivity se abre sin el splash).
+ *
+ * Sin medir: restoreSession (solo restaura páginas http tras la muerte del proceso y la página
+ * de prueba es local), onActivityResult (vuelta del selector de archivos del sistema, distinto
+ * en cada dispositivo) y las descargas (su duración es la de la red, no la de la app).
+ */
+@OptIn(ExperimentalMetricApi::class)
+@RunWith(AndroidJUnit4::class)
+class TraceSectionBenchmark {
+
+    @get:Rule
+    val benchmarkRule = MacrobenchmarkRule()
+
+    @Test
+    fun startupPhasesCold() = phases(StartupMode.COLD)
+
+    @Test
+    fun startupPhasesWarm() = phases(StartupMode.WARM)
+
+    @Test
+    fun startupWithoutPreloadCold() = phases(StartupMode.COLD, preload = false)
+
+    private fun phases(startupMode: StartupMode, preload: Boolean = true) {
+        val sections = if (preload) STARTUP_SECTIONS else STARTUP_SECTIONS + LOAD_WEBSITE
+        benchmarkRule.measureRepeated(
+            packageName = TARGET_PACKAGE,
+            metrics = sections.map { TraceSectionMetric(it, TraceSectionMetric.Mode.First) },
+            compilationMode = CompilationMode.Partial(BaselineProfileMode.Require),
+            startupMode = startupMode,
+            iterations = 10,
+            setupBlock = { pressHome() }
+        ) {
+            startAppWithFixture(preload)
+        }
+    }
+
+    private companion object {
+        // Los mismos nombres que AppTrace en :app
+        val STARTUP_SECTIONS = listOf(
+            "SplashActivity.onCreate",
+            "MainActivity.onCreate",
+            "MainActivity.setupWebView",
+            "MainActivity.setupDownloads",
+            // Asíncrona: la carga de la página de prueba, de onPageStarted a onPageFinished
+            "Navigation"
+        )
+        const val LOAD_WEBSITE = "MainActivity.loadWebsite"
+    }
+}
@@ -0,0 +1,84 @@
+package com.buscandoadios.espana.core;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BundledAssetVerifier - Comprueba si un recurso empaquetado en el APK sigue igual en el servidor
+ *
+ * Pregunta con If-None-Match/If-Modified-Since (los validadores que se guardaron al empaquetar):
+ * con 304 no se descarga nada. Si el servidor manda el recurso, se compara su SHA-256 con el del
+ * manifiesto: un ETag nuevo con el mismo contenido no invalida la copia del APK.
+ * check() bloquea: llamarlo desde un hilo de fondo. client es el cliente compartido de la app.
+ */
+public final class BundledAssetVerifier {
+
+    private static final int CONNECT_TIMEOUT_MS = 10_000;
+    private static final int READ_TIMEOUT_MS = 15_000;
+
+    /**
+     * Resultado de la comprobación
+     */
+    public enum Status {
+        /** El servidor tiene lo mismo que el APK */
+        UNCHANGED,
+        /** Otro contenido (o ya no existe): dejar de servir la copia del APK */
+        CHANGED,
+        /** Sin respuesta útil (sin red, 5xx...): probar otro día */
+        UNKNOWN
+    }
+
+    private BundledAssetVerifier() {
+    }
+
+    public static Status check(OkHttpClient client, String url, String etag, String lastModified,
+                               String sha256, Map<String, String> headers) {
+        Request.Builder request;
+        try {
+            request = new Request.Builder().url(url);
+            if (headers != null) {
+                for (Map.Entry<String, String> header : headers.entrySet()) {
+                    request.header(header.getKey(), header.getValue());
+                }
+            }
+            if (etag != null && !etag.isEmpty()) {
+                request.header("If-None-Match", etag);
+            }
+            if (lastModified != null && !lastModified.isEmpty()) {
+                request.header("If-Modified-Since", lastModified);
+            }
+        } catch (IllegalArgumentException e) {
+            // URL o cabecera no válidas
+            return Status.UNKNOWN;
+        }
+
+        OkHttpClient timed = client.newBuilder()
+                .connectTimeout(CONNECT_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                .readTimeout(READ_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                .build();
+        try (Response response = timed.newCall(request.build()).execute()) {
+            int code = response.code();
+            if (code == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                return Status.UNCHANGED;
+            }
+            if (code == HttpURLConnection.HTTP_NOT_FOUND || code == HttpURLConnection.HTTP_GONE) {
+                return Status.CHANGED;
+            }
+            if (code != HttpURLConnection.HTTP_OK) {
+                return Status.UNKNOWN;
+            }
+            try (InputStream in = response.body().byteStream()) {
+                return DownloadIndex.sha256(in).equalsIgnoreCase(sha256) ? Status.UNCHANGED : Status.CHANGED;
+            }
+        } catch (IOException e) {
+            return Status.UNKNOWN;
+        }
+    }
+}
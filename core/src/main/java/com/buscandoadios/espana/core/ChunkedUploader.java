@@ -0,0 +1,290 @@
+package com.buscandoadios.espana.core;
+
+import okhttp3.Headers;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * ChunkedUploader - Subida por trozos reanudable (protocolo "resumable upload")
+ *
+ * 1. POST al endpoint con X-Upload-Content-Length/Type/Name: el servidor devuelve en
+ *    Location la URL de la sesión de subida.
+ * 2. PUT a la sesión con "Content-Range: bytes *&#47;total" y sin cuerpo: el servidor dice
+ *    cuánto tiene (308 + "Range: bytes=0-N"), o 200/201 si ya está completa.
+ * 3. Un PUT por trozo con "Content-Range: bytes inicio-fin/total" hasta el 200/201 final.
+ *
+ * Al reanudar (otro intento, o tras reiniciar la app) se vuelve al paso 2 con la misma
+ * sesión: el servidor manda sobre el avance, así que nunca se repite lo ya recibido.
+ * upload() bloquea: llamarlo desde un hilo de fondo. No reintenta: eso lo decide quien llama
+ * según la excepción (IOException = reintentar; RejectedException = no insistir, también
+ * cualquier 4xx del endpoint al abrir la sesión).
+ * Las peticiones van por el cliente compartido de la app (misma conexión que el resto).
+ */
+public final class ChunkedUploader {
+
+    // Múltiplo de 256 KB, lo que piden los servidores de este protocolo
+    public static final int DEFAULT_CHUNK_BYTES = 512 * 1024;
+
+    private static final int HTTP_RESUME_INCOMPLETE = 308;
+    private static final int CONNECT_TIMEOUT_MS = 15_000;
+    private static final int READ_TIMEOUT_MS = 30_000;
+    private static final int MAX_RESPONSE_BYTES = 64 * 1024;
+    private static final RequestBody EMPTY_BODY = RequestBody.create(new byte[0], null);
+
+    /**
+     * Avance de la subida (desde el hilo de upload())
+     */
+    public interface Listener {
+        /** Hay sesión nueva: guardarla para reanudar después */
+        void onSession(String sessionUrl);
+
+        void onProgress(long sentBytes, long totalBytes);
+    }
+
+    /**
+     * Respuesta final del servidor (la página la recibe tal cual)
+     */
+    public static final class Result {
+        public final int statusCode;
+        public final String body;
+
+        Result(int statusCode, String body) {
+            this.statusCode = statusCode;
+            this.body = body;
+        }
+    }
+
+    /**
+     * El servidor rechaza la subida (4xx): reintentar no va a servir
+     */
+    public static final class RejectedException extends IOException {
+        public final int statusCode;
+
+        RejectedException(int statusCode, String message) {
+            super(message);
+            this.statusCode = statusCode;
+        }
+    }
+
+    // La sesión ya no existe en el servidor (caducó): hay que abrir otra
+    private static final class SessionExpiredException extends IOException {
+        SessionExpiredException(String message) {
+            super(message);
+        }
+    }
+
+    private final OkHttpClient client;
+    private final int chunkBytes;
+
+    public ChunkedUploader(OkHttpClient client, int chunkBytes) {
+        this.client = client.newBuilder()
+                .connectTimeout(CONNECT_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                .readTimeout(READ_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                // Un trozo entero tiene que salir en este tiempo
+                .writeTimeout(READ_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                // Un 308 aquí no es una redirección
+                .followRedirects(false)
+                .build();
+        this.chunkBytes = chunkBytes;
+    }
+
+    // =============================================
+    // SUBIDA
+    // =============================================
+
+    /**
+     * Sube file a endpoint. sessionUrl es la sesión de un intento anterior (o null).
+     * Con cancelled a true se para entre trozos (lanza IOException).
+     */
+    public Result upload(String endpoint, String sessionUrl, Map<String, String> headers,
+                         File file, String fileName, String mimeType,
+                         Listener listener, AtomicBoolean cancelled) throws IOException {
+        long total = file.length();
+        if (sessionUrl != null) {
+            try {
+                return send(sessionUrl, headers, file, total, listener, cancelled);
+            } catch (SessionExpiredException e) {
+                // Se empieza otra sesión desde cero
+            }
+        }
+        sessionUrl = startSession(endpoint, headers, fileName, mimeType, total);
+        listener.onSession(sessionUrl);
+        return send(sessionUrl, headers, file, total, listener, cancelled);
+    }
+
+    private String startSession(String endpoint, Map<String, String> headers,
+                                String fileName, String mimeType, long total) throws IOException {
+        Headers.Builder extra = new Headers.Builder()
+                .add("X-Upload-Content-Length", Long.toString(total))
+                .add("X-Upload-Content-Type", mimeType)
+                // Nombres con tildes o eñes: OkHttp solo acepta valores no ASCII si se piden así
+                .addUnsafeNonAscii("X-Upload-File-Name", fileName);
+        try (Response response = execute(request(endpoint, headers, extra).post(EMPTY_BODY))) {
+            int code = response.code();
+            // Aquí un 404/410 no es una sesión caducada: el endpoint no existe o no la admite
+            if (isPermanentClientError(code)) {
+                throw new RejectedException(code, "Endpoint de subida rechazado HTTP " + code + " " + endpoint);
+            }
+            checkStatus(code, endpoint);
+            String location = response.header("Location");
+            if (code / 100 != 2 || location == null) {
+                throw new IOException("Sesión de subida sin Location (HTTP " + code + ")");
+            }
+            // Location puede ser relativa al endpoint
+            return new URL(new URL(endpoint), location).toString();
+        }
+    }
+
+    private Result send(String sessionUrl, Map<String, String> headers, File file, long total,
+                        Listener listener, AtomicBoolean cancelled) throws IOException {
+        // Primero, cuánto tiene ya el servidor
+        long offset;
+        Headers.Builder queryRange = new Headers.Builder().add("Content-Range", "bytes */" + total);
+        try (Response query = execute(request(sessionUrl, headers, queryRange).put(EMPTY_BODY))) {
+            int code = query.code();
+            if (code / 100 == 2) {
+                listener.onProgress(total, total);
+                return new Result(code, readBody(query));
+            }
+            expectResumeIncomplete(code, sessionUrl);
+            offset = committedOffset(query.header("Range"));
+        }
+        listener.onProgress(offset, total);
+
+        byte[] buffer = new byte[chunkBytes];
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            while (true) {
+                if (cancelled.get()) {
+                    throw new IOException("Subida cancelada");
+                }
+                if (offset >= total) {
+                    // Todo enviado pero sin 200: el siguiente intento lo confirma con la consulta
+                    throw new IOException("El servidor no confirmó el final de la subida");
+                }
+                int length = (int) Math.min(chunkBytes, total - offset);
+                in.seek(offset);
+                in.readFully(buffer, 0, length);
+
+                Headers.Builder chunkRange = new Headers.Builder().add("Content-Range",
+                        "bytes " + offset + "-" + (offset + length - 1) + "/" + total);
+                // El cuerpo se escribe desde buffer durante execute(): no hace falta copiarlo
+                RequestBody chunk = RequestBody.create(buffer, null, 0, length);
+                try (Response response = execute(request(sessionUrl, headers, chunkRange).put(chunk))) {
+                    int code = response.code();
+                    if (code / 100 == 2) {
+                        listener.onProgress(total, total);
+                        return new Result(code, readBody(response));
+                    }
+                    expectResumeIncomplete(code, sessionUrl);
+                    // El servidor puede quedarse con menos de lo enviado: manda su Range
+                    long committed = committedOffset(response.header("Range"));
+                    if (committed <= offset) {
+                        throw new IOException("El servidor no aceptó el trozo en " + offset);
+                    }
+                    offset = committed;
+                }
+                listener.onProgress(offset, total);
+            }
+        }
+    }
+
+    // =============================================
+    // HTTP
+    // =============================================
+
+    /**
+     * Petición a url con las cabeceras de quien llama más las propias del paso (extra)
+     */
+    private static Request.Builder request(String url, Map<String, String> headers,
+                                           Headers.Builder extra) throws IOException {
+        try {
+            Headers.Builder all = new Headers.Builder();
+            if (headers != null) {
+                for (Map.Entry<String, String> header : headers.entrySet()) {
+                    all.set(header.getKey(), header.getValue());
+                }
+            }
+            Headers own = extra.build();
+            for (String name : own.names()) {
+                all.removeAll(name);
+            }
+            all.addAll(own);
+            return new Request.Builder().url(url).headers(all.build());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Petición no válida a " + url + ": " + e.getMessage(), e);
+        }
+    }
+
+    private Response execute(Request.Builder request) throws IOException {
+        return client.newCall(request.build()).execute();
+    }
+
+    private static void expectResumeIncomplete(int code, String url) throws IOException {
+        checkStatus(code, url);
+        if (code != HTTP_RESUME_INCOMPLETE) {
+            throw new IOException("Respuesta inesperada HTTP " + code + " " + url);
+        }
+    }
+
+    /**
+     * 404/410 = sesión caducada; otros 4xx (salvo 408 y 429) = rechazo; 5xx = reintentar
+     */
+    private static void checkStatus(int code, String url) throws IOException {
+        if (code == HttpURLConnection.HTTP_NOT_FOUND || code == HttpURLConnection.HTTP_GONE) {
+            throw new SessionExpiredException("Sesión de subida caducada: " + url);
+        }
+        if (isPermanentClientError(code)) {
+            throw new RejectedException(code, "Subida rechazada HTTP " + code + " " + url);
+        }
+        if (code >= 500) {
+            throw new IOException("Error del servidor HTTP " + code + " " + url);
+        }
+    }
+
+    /**
+     * 4xx que no se arregla reintentando (408 y 429 sí)
+     */
+    private static boolean isPermanentClientError(int code) {
+        return code >= 400 && code < 500 && code != HttpURLConnection.HTTP_CLIENT_TIMEOUT && code != 429;
+    }
+
+    /**
+     * "bytes=0-1048575" -> 1048576 (lo siguiente que hay que mandar); sin Range, 0
+     */
+    static long committedOffset(String range) {
+        if (range == null) return 0;
+        int dash = range.lastIndexOf('-');
+        if (dash < 0) return 0;
+        try {
+            return Long.parseLong(range.substring(dash + 1).trim()) + 1;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static String readBody(Response response) throws IOException {
+        try (InputStream in = response.body().byteStream()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1 && out.size() < MAX_RESPONSE_BYTES) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.buscandoadios.espana.core;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * CriticalResources - Recursos que bloquean el pintado de una página HTML
+ *
+ * Hojas de estilo, scripts síncronos y los preload de estilos/scripts/fuentes, en el
+ * orden del documento y con las URLs ya absolutas. No es un parser HTML completo:
+ * basta con las etiquetas <link> y <script> que genera el sitio. Sirve para precargar
+ * lo que necesitará la siguiente página antes de que el usuario la abra.
+ */
+public final class CriticalResources {
+
+    private static final Pattern TAG = Pattern.compile(
+            "<(link|script)\\b([^>]*)>", Pattern.CASE_INSENSITIVE);
+    private static final Pattern ATTRIBUTE = Pattern.compile(
+            "([a-zA-Z_:][-a-zA-Z0-9_:.]*)(?:\\s*=\\s*(?:\"([^\"]*)\"|'([^']*)'|([^\\s\"'>]+)))?");
+
+    private CriticalResources() {
+    }
+
+    /**
+     * Hasta max URLs http(s) de recursos críticos de html, resueltas contra pageUrl
+     */
+    public static List<String> extract(String html, String pageUrl, int max) {
+        LinkedHashSet<String> found = new LinkedHashSet<>();
+        URI base;
+        try {
+            base = new URI(pageUrl);
+        } catch (URISyntaxException e) {
+            return new ArrayList<>();
+        }
+
+        Matcher tag = TAG.matcher(html);
+        while (found.size() < max && tag.find()) {
+            String name = tag.group(1).toLowerCase(Locale.ROOT);
+            Map<String, String> attributes = parseAttributes(tag.group(2));
+            String reference = null;
+            if (name.equals("link")) {
+                String rel = attributes.getOrDefault("rel", "").toLowerCase(Locale.ROOT);
+                String as = attributes.getOrDefault("as", "").toLowerCase(Locale.ROOT);
+                boolean stylesheet = hasToken(rel, "stylesheet") && !hasToken(rel, "alternate")
+                        && !attributes.containsKey("disabled");
+                boolean preload = hasToken(rel, "preload")
+                        && (as.equals("style") || as.equals("script") || as.equals("font"));
+                if (stylesheet || preload) reference = attributes.get("href");
+            } else if (!attributes.containsKey("async")) {
+                // Los async no bloquean; los defer sí hacen falta antes de DOMContentLoaded
+                reference = attributes.get("src");
+            }
+
+            String url = resolve(base, reference);
+            if (url != null) found.add(url);
+        }
+        return new ArrayList<>(found);
+    }
+
+    private static Map<String, String> parseAttributes(String text) {
+        Map<String, String> attributes = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        Matcher matcher = ATTRIBUTE.matcher(text);
+        while (matcher.find()) {
+            String value = matcher.group(2);
+            if (value == null) value = matcher.group(3);
+            if (value == null) value = matcher.group(4);
+            attributes.putIfAbsent(matcher.group(1), value != null ? value : "");
+        }
+        return attributes;
+    }
+
+    private static boolean hasToken(String list, String token) {
+        for (String item : list.split("\\s+")) {
+            if (item.equals(token)) return true;
+        }
+        return false;
+    }
+
+    private static String resolve(URI base, String reference) {
+        if (reference == null) return null;
+        reference = reference.trim().replace("&amp;", "&");
+        if (reference.isEmpty() || reference.startsWith("data:")) return null;
+        try {
+            String resolved = base.resolve(reference).toString();
+            if (!resolved.startsWith("https://") && !resolved.startsWith("http://")) return null;
+            // Sin fragmento: es la misma petición
+            int hash = resolved.indexOf('#');
+            return hash >= 0 ? resolved.substring(0, hash) : resolved;
+        } catch (IllegalArgumentException e) {
+            // URL mal escrita en la página
+            return null;
+        }
+    }
+}
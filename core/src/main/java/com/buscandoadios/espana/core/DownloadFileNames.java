@@ -0,0 +1,121 @@
+package com.buscandoadios.espana.core;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * DownloadFileNames - Nombre de archivo y tipo MIME de una descarga
+ * Parte sin Android de DownloadHelper (se ejecuta en el hilo principal en cada descarga).
+ */
+public final class DownloadFileNames {
+
+    // Compilado una vez: antes se creaba un Regex en cada llamada
+    private static final Pattern UNSAFE_CHARS = Pattern.compile("[^a-zA-Z0-9._-]");
+
+    // Tipos MIME comunes
+    private static final Map<String, String> MIME_TYPES = new HashMap<>();
+
+    static {
+        MIME_TYPES.put("pdf", "application/pdf");
+        MIME_TYPES.put("doc", "application/msword");
+        MIME_TYPES.put("docx", "application/vnd.openxmlformats-officedocument.wordprocessingml.document");
+        MIME_TYPES.put("xls", "application/vnd.ms-excel");
+        MIME_TYPES.put("xlsx", "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+        MIME_TYPES.put("ppt", "application/vnd.ms-powerpoint");
+        MIME_TYPES.put("pptx", "application/vnd.openxmlformats-officedocument.presentationml.presentation");
+        MIME_TYPES.put("txt", "text/plain");
+        MIME_TYPES.put("jpg", "image/jpeg");
+        MIME_TYPES.put("jpeg", "image/jpeg");
+        MIME_TYPES.put("png", "image/png");
+        MIME_TYPES.put("gif", "image/gif");
+        MIME_TYPES.put("webp", "image/webp");
+        MIME_TYPES.put("mp3", "audio/mpeg");
+        MIME_TYPES.put("mp4", "video/mp4");
+        MIME_TYPES.put("zip", "application/zip");
+        MIME_TYPES.put("apk", "application/vnd.android.package-archive");
+    }
+
+    private DownloadFileNames() {
+    }
+
+    /**
+     * Nombre a partir de la URL: parámetros file / filename / name, o el último segmento de la ruta.
+     * Devuelve null si no hay ninguno.
+     */
+    public static String fromUrl(String url) {
+        int fragment = url.indexOf('#');
+        int end = fragment >= 0 ? fragment : url.length();
+        int query = url.indexOf('?');
+        if (query > end) query = -1;
+
+        // Buscar en parámetros
+        if (query >= 0) {
+            String name = queryParameter(url, query + 1, end, "file");
+            if (isBlank(name)) name = queryParameter(url, query + 1, end, "filename");
+            if (isBlank(name)) name = queryParameter(url, query + 1, end, "name");
+            if (!isBlank(name)) return name;
+        }
+
+        // O del path
+        int pathEnd = query >= 0 ? query : end;
+        int scheme = url.indexOf("://");
+        int pathStart = scheme >= 0 ? url.indexOf('/', scheme + 3) : 0;
+        if (pathStart < 0 || pathStart >= pathEnd) return null;
+
+        int segmentEnd = pathEnd;
+        while (segmentEnd > pathStart && url.charAt(segmentEnd - 1) == '/') {
+            segmentEnd--;
+        }
+        int segmentStart = url.lastIndexOf('/', segmentEnd - 1) + 1;
+        if (segmentStart >= segmentEnd) return null;
+        // En la ruta '+' es un carácter normal, no un espacio
+        return decode(url.substring(segmentStart, segmentEnd).replace("+", "%2B"));
+    }
+
+    /**
+     * Sustituye todo lo que no sea letra, número, punto, guion o guion bajo
+     */
+    public static String sanitize(String fileName) {
+        return UNSAFE_CHARS.matcher(fileName).replaceAll("_");
+    }
+
+    /**
+     * Tipo MIME de la tabla propia, o null para consultar al sistema
+     */
+    public static String mimeTypeFor(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        if (dot < 0) return null;
+        return MIME_TYPES.get(fileName.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    private static String queryParameter(String url, int start, int end, String name) {
+        int i = start;
+        while (i < end) {
+            int amp = url.indexOf('&', i);
+            if (amp < 0 || amp > end) amp = end;
+            int eq = url.indexOf('=', i);
+            int keyEnd = eq >= 0 && eq < amp ? eq : amp;
+            if (keyEnd - i == name.length() && url.regionMatches(i, name, 0, name.length())) {
+                return eq >= 0 && eq < amp ? decode(url.substring(eq + 1, amp)) : "";
+            }
+            i = amp + 1;
+        }
+        return null;
+    }
+
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            return value;
+        }
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+}
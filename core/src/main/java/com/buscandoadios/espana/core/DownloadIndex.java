@@ -0,0 +1,353 @@
+package com.buscandoadios.espana.core;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DownloadIndex - Índice de descargas por URL (ETag/Last-Modified) y por contenido (SHA-256)
+ *
+ * Cada contenido distinto se guarda una sola vez: varias URLs pueden apuntar al mismo
+ * hash, y cada hash a un único archivo ("location", lo que use la app: un content:// o una ruta).
+ * Antes de descargar, revalidate() pregunta al servidor con If-None-Match/If-Modified-Since
+ * (solo si la URL ya está en el índice); con 304 se devuelve el archivo que ya hay sin
+ * transferir nada.
+ *
+ * Se guarda entero en un archivo (temporal + rename) en cada cambio: son pocas entradas.
+ * Los métodos hacen E/S de disco o de red: no llamar desde el hilo principal.
+ */
+public final class DownloadIndex {
+
+    private static final int INDEX_VERSION = 1;
+    private static final int CONNECT_TIMEOUT_MS = 10_000;
+    private static final int READ_TIMEOUT_MS = 15_000;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Lo que se sabe de una URL ya descargada
+     */
+    public static final class Entry {
+        public final String url;
+        public final String etag;           // "" si el servidor no lo mandó
+        public final String lastModified;   // "" si el servidor no lo mandó
+        public final String contentHash;
+        public final String location;
+        public final long size;
+
+        Entry(String url, String etag, String lastModified, String contentHash, String location, long size) {
+            this.url = url;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.contentHash = contentHash;
+            this.location = location;
+            this.size = size;
+        }
+    }
+
+    /**
+     * ETag/Last-Modified de una respuesta (para guardarlos al terminar la descarga)
+     */
+    public static final class Validators {
+        public static final Validators NONE = new Validators("", "");
+
+        public final String etag;
+        public final String lastModified;
+
+        public Validators(String etag, String lastModified) {
+            this.etag = etag != null ? etag : "";
+            this.lastModified = lastModified != null ? lastModified : "";
+        }
+
+        static Validators of(Response response) {
+            return new Validators(response.header("ETag"), response.header("Last-Modified"));
+        }
+    }
+
+    /**
+     * Resultado de revalidate(): el archivo que ya tenemos (si sirve) y los validadores actuales
+     */
+    public static final class Revalidation {
+        public final Entry existing;        // null: hay que descargar
+        public final Validators validators;
+
+        Revalidation(Entry existing, Validators validators) {
+            this.existing = existing;
+            this.validators = validators;
+        }
+    }
+
+    private static final class UrlRecord {
+        final String etag;
+        final String lastModified;
+        final String contentHash;
+
+        UrlRecord(String etag, String lastModified, String contentHash) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.contentHash = contentHash;
+        }
+    }
+
+    private static final class Blob {
+        final String location;
+        final long size;
+
+        Blob(String location, long size) {
+            this.location = location;
+            this.size = size;
+        }
+    }
+
+    private final File file;
+    private final OkHttpClient client;
+    private final Map<String, UrlRecord> urls = new HashMap<>();
+    private final Map<String, Blob> blobs = new HashMap<>();
+    private boolean loaded;
+
+    public DownloadIndex(File file, OkHttpClient client) {
+        this.file = file;
+        this.client = client.newBuilder()
+                .connectTimeout(CONNECT_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                .readTimeout(READ_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    // =============================================
+    // CONSULTAS
+    // =============================================
+
+    public synchronized Entry forUrl(String url) {
+        ensureLoaded();
+        UrlRecord record = urls.get(url);
+        if (record == null) return null;
+        Blob blob = blobs.get(record.contentHash);
+        if (blob == null) return null;
+        return new Entry(url, record.etag, record.lastModified, record.contentHash, blob.location, blob.size);
+    }
+
+    /**
+     * Location del archivo con ese contenido, o null si no se ha descargado nunca
+     */
+    public synchronized String locationFor(String contentHash) {
+        ensureLoaded();
+        Blob blob = blobs.get(contentHash);
+        return blob != null ? blob.location : null;
+    }
+
+    // =============================================
+    // CAMBIOS
+    // =============================================
+
+    /**
+     * Apunta una descarga terminada. Devuelve la location que hay que usar: si ese
+     * contenido ya estaba guardado en otro sitio, la antigua (y la nueva copia sobra).
+     */
+    public synchronized String record(String url, Validators validators, String contentHash,
+                                      long size, String location) throws IOException {
+        ensureLoaded();
+        Blob blob = blobs.get(contentHash);
+        if (blob == null) {
+            blob = new Blob(location, size);
+            blobs.put(contentHash, blob);
+        }
+        urls.put(url, new UrlRecord(validators.etag, validators.lastModified, contentHash));
+        save();
+        return blob.location;
+    }
+
+    /**
+     * El archivo ya no existe (el usuario lo borró): olvidar el contenido y sus URLs
+     */
+    public synchronized void forgetLocation(String location) throws IOException {
+        ensureLoaded();
+        boolean changed = false;
+        Iterator<Map.Entry<String, Blob>> it = blobs.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Blob> blob = it.next();
+            if (blob.getValue().location.equals(location)) {
+                it.remove();
+                urls.values().removeIf(record -> record.contentHash.equals(blob.getKey()));
+                changed = true;
+            }
+        }
+        if (changed) save();
+    }
+
+    // =============================================
+    // PETICIÓN CONDICIONAL
+    // =============================================
+
+    /**
+     * HEAD con If-None-Match/If-Modified-Since si ya tenemos la URL.
+     * Si no la tenemos (o no hay validadores con que preguntar) no hay nada que revalidar:
+     * se devuelve "sin copia" al momento, sin ir a la red.
+     * 304 (o el mismo ETag, si el servidor ignora las condiciones) = el archivo que hay sirve.
+     * Sin red también se devuelve el que hay: mejor eso que un error.
+     */
+    public Revalidation revalidate(String url, Map<String, String> headers) throws IOException {
+        Entry entry = forUrl(url);
+        if (entry == null || (entry.etag.isEmpty() && entry.lastModified.isEmpty())) {
+            return new Revalidation(null, Validators.NONE);
+        }
+        Request.Builder request = headRequest(url, headers);
+        if (!entry.etag.isEmpty()) {
+            request.header("If-None-Match", entry.etag);
+        }
+        if (!entry.lastModified.isEmpty()) {
+            request.header("If-Modified-Since", entry.lastModified);
+        }
+
+        Response response;
+        try {
+            response = client.newCall(request.build()).execute();
+        } catch (IOException e) {
+            return new Revalidation(entry, Validators.NONE);
+        }
+
+        try (response) {
+            int code = response.code();
+            if (code == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                return new Revalidation(entry, new Validators(entry.etag, entry.lastModified));
+            }
+            Validators validators = code == HttpURLConnection.HTTP_OK
+                    ? Validators.of(response)
+                    : Validators.NONE;
+            if (isStrongMatch(entry.etag, validators.etag)) {
+                return new Revalidation(entry, validators);
+            }
+            return new Revalidation(null, validators);
+        }
+    }
+
+    /**
+     * ETag/Last-Modified actuales de una URL recién descargada que no pasó por revalidate()
+     * con copia (para poder revalidarla la próxima vez). HEAD sin condiciones, después de la
+     * descarga: si el tamaño no cuadra con size, el archivo cambió entre medias y se devuelve
+     * NONE (mejor volver a descargar que dar por buena una copia vieja).
+     */
+    public Validators currentValidators(String url, Map<String, String> headers, long size) throws IOException {
+        try (Response response = client.newCall(headRequest(url, headers).build()).execute()) {
+            if (response.code() != HttpURLConnection.HTTP_OK) return Validators.NONE;
+            String length = response.header("Content-Length");
+            if (length != null && size >= 0 && !length.equals(Long.toString(size))) {
+                return Validators.NONE;
+            }
+            return Validators.of(response);
+        }
+    }
+
+    private static Request.Builder headRequest(String url, Map<String, String> headers) throws IOException {
+        try {
+            Request.Builder request = new Request.Builder().url(url).head();
+            if (headers != null) {
+                for (Map.Entry<String, String> header : headers.entrySet()) {
+                    request.header(header.getKey(), header.getValue());
+                }
+            }
+            return request.header("Accept-Encoding", "identity");
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Petición no válida a " + url + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static boolean isStrongMatch(String stored, String current) {
+        return !stored.isEmpty() && !stored.startsWith("W/") && stored.equals(current);
+    }
+
+    /**
+     * SHA-256 en hexadecimal de todo el contenido del stream (no lo cierra)
+     */
+    public static String sha256(InputStream in) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+        }
+        byte[] hash = digest.digest();
+        StringBuilder sb = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    // =============================================
+    // ARCHIVO DEL ÍNDICE
+    // =============================================
+
+    private void ensureLoaded() {
+        if (loaded) return;
+        loaded = true;
+        if (!file.exists()) return;
+
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != INDEX_VERSION) return;
+            int blobCount = in.readInt();
+            for (int i = 0; i < blobCount; i++) {
+                String hash = in.readUTF();
+                blobs.put(hash, new Blob(in.readUTF(), in.readLong()));
+            }
+            int urlCount = in.readInt();
+            for (int i = 0; i < urlCount; i++) {
+                String url = in.readUTF();
+                urls.put(url, new UrlRecord(in.readUTF(), in.readUTF(), in.readUTF()));
+            }
+        } catch (IOException e) {
+            // Índice dañado: se empieza de cero (como mucho se vuelve a descargar algo)
+            blobs.clear();
+            urls.clear();
+        }
+    }
+
+    private void save() throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null) parent.mkdirs();
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(INDEX_VERSION);
+            out.writeInt(blobs.size());
+            for (Map.Entry<String, Blob> blob : blobs.entrySet()) {
+                out.writeUTF(blob.getKey());
+                out.writeUTF(blob.getValue().location);
+                out.writeLong(blob.getValue().size);
+            }
+            out.writeInt(urls.size());
+            for (Map.Entry<String, UrlRecord> url : urls.entrySet()) {
+                out.writeUTF(url.getKey());
+                out.writeUTF(url.getValue().etag);
+                out.writeUTF(url.getValue().lastModified);
+                out.writeUTF(url.getValue().contentHash);
+            }
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("No se pudo guardar " + file);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.buscandoadios.espana.core;
+
+/**
+ * NavigationAction - Qué hacer con un enlace pulsado dentro del WebView
+ */
+public enum NavigationAction {
+    /** Cargar dentro del WebView */
+    LOAD_IN_WEBVIEW,
+    /** Abrir el marcador de teléfono */
+    DIAL,
+    /** Abrir la app de correo */
+    SEND_EMAIL,
+    /** Abrir WhatsApp */
+    OPEN_WHATSAPP,
+    /** Abrir en el navegador */
+    OPEN_EXTERNAL
+}
@@ -0,0 +1,24 @@
+package com.buscandoadios.espana.core;
+
+/**
+ * NavigationPolicy - Decide si un enlace se abre en el WebView o fuera de la app
+ * Se llama desde shouldOverrideUrlLoading en el hilo principal en cada navegación.
+ * Las reglas están en url_routes.txt y las aplica UrlRouter por esquema y host
+ * (un dominio nuestro en la query de otra web ya no cuenta como interno).
+ */
+public final class NavigationPolicy {
+
+    public static final String SITE_DOMAIN = "buscandoadios-espana.com";
+
+    private NavigationPolicy() {
+    }
+
+    // Se carga la primera vez que se usa
+    private static final class RouterHolder {
+        static final UrlRouter ROUTER = UrlRouter.fromClasspath();
+    }
+
+    public static NavigationAction classify(String url) {
+        return RouterHolder.ROUTER.route(url);
+    }
+}
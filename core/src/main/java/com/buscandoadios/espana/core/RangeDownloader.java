@@ -0,0 +1,532 @@
+package com.buscandoadios.espana.core;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * RangeDownloader - Descarga HTTP por tramos (Range) en paralelo y reanudable
+ *
+ * Divide el archivo en tramos que se piden a la vez; cada uno se escribe en su sitio
+ * del archivo .part con escrituras posicionales de FileChannel. El avance de cada tramo
+ * se guarda en un .state junto al .part: si el proceso muere, la siguiente llamada con
+ * el mismo destino sigue donde se quedó (If-Range comprueba que el archivo no cambió).
+ * Si el servidor no acepta Range, o no da un validador para If-Range (ETag fuerte o
+ * Last-Modified), se descarga de un tirón y al reanudar se empieza de cero: sin validador no
+ * hay forma de saber que dos tramos son del mismo archivo.
+ *
+ * download() bloquea: llamarlo desde un hilo de fondo. Los tramos corren en el executor.
+ * Las peticiones van por el cliente compartido de la app (su pool de conexiones y su DNS).
+ */
+public final class RangeDownloader {
+
+    public static final int DEFAULT_MAX_SEGMENTS = 4;
+    // Por debajo de este tamaño por tramo no compensa abrir más conexiones
+    public static final long MIN_SEGMENT_BYTES = 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_ATTEMPTS = 5;           // reintentos por tramo (cortes de red)
+    private static final long MAX_BACKOFF_MS = 16_000;
+    private static final long CHECKPOINT_MS = 1000;      // guardar avance y avisar del progreso
+    private static final int CONNECT_TIMEOUT_MS = 15_000;
+    private static final int READ_TIMEOUT_MS = 30_000;
+    private static final int STATE_VERSION = 1;
+
+    /**
+     * Progreso de una descarga (se llama desde el hilo de download())
+     */
+    public interface Listener {
+        /** totalBytes es -1 si el servidor no dice el tamaño */
+        void onProgress(long downloadedBytes, long totalBytes);
+    }
+
+    private final OkHttpClient client;
+    private final ExecutorService executor;
+    private final int maxSegments;
+
+    public RangeDownloader(OkHttpClient client, ExecutorService executor, int maxSegments) {
+        this(client, executor, maxSegments, READ_TIMEOUT_MS);
+    }
+
+    // readTimeoutMs corto solo en los tests (tramos que se quedan parados)
+    RangeDownloader(OkHttpClient client, ExecutorService executor, int maxSegments, long readTimeoutMs) {
+        this.client = client.newBuilder()
+                .connectTimeout(CONNECT_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                .readTimeout(readTimeoutMs, TimeUnit.MILLISECONDS)
+                // Tramos en paralelo = conexiones TCP distintas; con HTTP/2 irían todos por una.
+                // Se siguen reutilizando del pool entre tramos y entre descargas.
+                .protocols(Collections.singletonList(Protocol.HTTP_1_1))
+                .build();
+        this.executor = executor;
+        this.maxSegments = maxSegments;
+    }
+
+    public static File partFileFor(File target) {
+        return new File(target.getPath() + ".part");
+    }
+
+    public static File stateFileFor(File target) {
+        return new File(target.getPath() + ".state");
+    }
+
+    /**
+     * Borra lo descargado a medias para ese destino
+     */
+    public static void discard(File target) {
+        partFileFor(target).delete();
+        stateFileFor(target).delete();
+    }
+
+    // =============================================
+    // DESCARGA
+    // =============================================
+
+    /**
+     * Descarga url en target. Si hay una descarga a medias de la misma URL, la continúa.
+     * Con cancelled a true se para lo antes posible (sin borrar el avance).
+     */
+    public void download(String url, Map<String, String> headers, File target,
+                         Listener listener, AtomicBoolean cancelled) throws IOException {
+        File part = partFileFor(target);
+        File stateFile = stateFileFor(target);
+
+        State state = readState(stateFile);
+        if (state != null && (!state.url.equals(url) || !state.rangesSupported
+                || state.validator == null || !part.exists())) {
+            state = null;
+        }
+
+        try {
+            if (state == null) {
+                state = start(url, headers, part, stateFile, listener, cancelled);
+                if (state == null) {
+                    // Sin Range: ya está descargado de un tirón
+                    finish(part, stateFile, target);
+                    return;
+                }
+            }
+            downloadSegments(state, headers, part, stateFile, listener, cancelled);
+        } catch (ChangedOnServerException e) {
+            // El archivo cambió desde que empezamos: otra vez desde cero (una sola vez)
+            discard(target);
+            state = start(url, headers, part, stateFile, listener, cancelled);
+            if (state != null) {
+                downloadSegments(state, headers, part, stateFile, listener, cancelled);
+            }
+        }
+        finish(part, stateFile, target);
+    }
+
+    /**
+     * Pide el primer byte para saber si hay Range y el tamaño total.
+     * Devuelve el plan de tramos, o null si el servidor no acepta Range
+     * (en ese caso el archivo se descarga aquí mismo con esa respuesta).
+     */
+    private State start(String url, Map<String, String> headers, File part, File stateFile,
+                        Listener listener, AtomicBoolean cancelled) throws IOException {
+        Response response = execute(request(url, headers).header("Range", "bytes=0-0"));
+        try {
+            int code = response.code();
+
+            long total = code == HttpURLConnection.HTTP_PARTIAL
+                    ? totalFromContentRange(response.header("Content-Range"))
+                    : -1;
+            if (code == HttpURLConnection.HTTP_OK) {
+                singleStream(response, part, response.body().contentLength(), listener, cancelled);
+                return null;
+            }
+            if (code != HttpURLConnection.HTTP_PARTIAL && code != 416) {
+                throw new IOException("HTTP " + code + " " + url);
+            }
+            String validator = validatorOf(response);
+            if (total < 0 || validator == null) {
+                // Sin tamaño total (o archivo vacío, 416) o sin validador: de un tirón sin Range
+                response.close();
+                response = execute(request(url, headers));
+                expectOk(response, url);
+                singleStream(response, part, response.body().contentLength(), listener, cancelled);
+                return null;
+            }
+
+            State state = new State(url, validator, total, true, plan(total));
+            try (FileChannel channel = FileChannel.open(part.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                // Reservar el tamaño final: cada tramo escribe en su sitio
+                if (total > 0) {
+                    channel.write(ByteBuffer.wrap(new byte[1]), total - 1);
+                }
+            }
+            writeState(state, stateFile);
+            return state;
+        } finally {
+            response.close();
+        }
+    }
+
+    private List<Segment> plan(long total) {
+        int count = (int) Math.max(1, Math.min(maxSegments, total / MIN_SEGMENT_BYTES));
+        long size = total / count;
+        List<Segment> segments = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long start = i * size;
+            long end = i == count - 1 ? total - 1 : start + size - 1;
+            segments.add(new Segment(start, end, 0));
+        }
+        return segments;
+    }
+
+    private void downloadSegments(State state, Map<String, String> headers, File part, File stateFile,
+                                  Listener listener, AtomicBoolean cancelled) throws IOException {
+        // Los tramos miran "stop": se activa al cancelar o cuando falla uno de ellos
+        AtomicBoolean stop = new AtomicBoolean(cancelled.get());
+        try (FileChannel channel = FileChannel.open(part.toPath(), StandardOpenOption.WRITE)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (Segment segment : state.segments) {
+                if (!segment.isComplete()) {
+                    futures.add(executor.submit(() -> {
+                        fetchSegment(state, segment, headers, channel, stop);
+                        return null;
+                    }));
+                }
+            }
+
+            // Este hilo coordina: guarda el avance cada CHECKPOINT_MS hasta que acaben todos
+            IOException failure = null;
+            for (Future<?> future : futures) {
+                while (failure == null) {
+                    try {
+                        future.get(CHECKPOINT_MS, TimeUnit.MILLISECONDS);
+                        break;
+                    } catch (TimeoutException e) {
+                        if (cancelled.get()) stop.set(true);
+                        checkpoint(state, channel, stateFile, listener);
+                    } catch (ExecutionException e) {
+                        failure = asIOException(e.getCause());
+                        // Que paren los demás tramos; el avance se guarda abajo
+                        stop.set(true);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        stop.set(true);
+                        failure = new InterruptedIOException();
+                    }
+                }
+                if (failure != null) {
+                    waitQuietly(future);
+                }
+            }
+
+            checkpoint(state, channel, stateFile, listener);
+            if (failure != null) throw failure;
+            if (cancelled.get()) throw new InterruptedIOException("Descarga cancelada");
+        }
+    }
+
+    /**
+     * Un tramo, con reintentos desde donde se quedó si se corta la red o vence un timeout.
+     * Cancelar se mira en stop, no en el tipo de excepción: SocketTimeoutException también
+     * es una InterruptedIOException.
+     */
+    private void fetchSegment(State state, Segment segment, Map<String, String> headers,
+                              FileChannel channel, AtomicBoolean stop) throws IOException {
+        int attempt = 0;
+        while (!segment.isComplete()) {
+            try {
+                fetchSegmentOnce(state, segment, headers, channel, stop);
+            } catch (ChangedOnServerException e) {
+                throw e;
+            } catch (IOException e) {
+                if (stop.get() || ++attempt >= MAX_ATTEMPTS) throw e;
+                try {
+                    Thread.sleep(Math.min(MAX_BACKOFF_MS, 1000L << attempt));
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+        }
+    }
+
+    private void fetchSegmentOnce(State state, Segment segment, Map<String, String> headers,
+                                  FileChannel channel, AtomicBoolean stop) throws IOException {
+        long from = segment.start + segment.downloaded;
+        Request.Builder request = request(state.url, headers)
+                .header("Range", "bytes=" + from + "-" + segment.end)
+                .header("If-Range", state.validator);
+        try (Response response = execute(request)) {
+            int code = response.code();
+            if (code == HttpURLConnection.HTTP_OK) {
+                // If-Range no coincide: el servidor manda el archivo nuevo entero
+                throw new ChangedOnServerException();
+            }
+            if (code != HttpURLConnection.HTTP_PARTIAL) {
+                throw new IOException("HTTP " + code + " en el tramo " + from + "-" + segment.end);
+            }
+            String contentRange = response.header("Content-Range");
+            if (contentRange == null || !contentRange.startsWith("bytes " + from + "-")) {
+                throw new IOException("Content-Range inesperado: " + contentRange);
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            byte[] bytes = buffer.array();
+            try (InputStream in = response.body().byteStream()) {
+                long remaining = segment.end - from + 1;
+                while (remaining > 0) {
+                    if (stop.get()) throw new InterruptedIOException("Descarga cancelada");
+                    int read = in.read(bytes, 0, (int) Math.min(bytes.length, remaining));
+                    if (read < 0) throw new IOException("Tramo cortado en " + (segment.start + segment.downloaded));
+
+                    buffer.clear().limit(read);
+                    long position = segment.start + segment.downloaded;
+                    while (buffer.hasRemaining()) {
+                        position += channel.write(buffer, position);
+                    }
+                    // Después de escribir: el checkpoint nunca guarda bytes que no están en el archivo
+                    segment.downloaded += read;
+                    remaining -= read;
+                }
+            }
+        }
+    }
+
+    /**
+     * Sin Range: toda la respuesta, en orden, al .part
+     */
+    private void singleStream(Response response, File part, long total,
+                              Listener listener, AtomicBoolean cancelled) throws IOException {
+        long downloaded = 0;
+        long lastReport = System.nanoTime();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = response.body().byteStream();
+             FileOutputStream out = new FileOutputStream(part)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                if (cancelled.get()) throw new InterruptedIOException("Descarga cancelada");
+                out.write(buffer, 0, read);
+                downloaded += read;
+                long now = System.nanoTime();
+                if (now - lastReport >= TimeUnit.MILLISECONDS.toNanos(CHECKPOINT_MS)) {
+                    lastReport = now;
+                    if (listener != null) listener.onProgress(downloaded, total);
+                }
+            }
+            out.getFD().sync();
+        }
+        if (total >= 0 && downloaded != total) {
+            throw new IOException("Descarga incompleta: " + downloaded + " de " + total);
+        }
+        if (listener != null) listener.onProgress(downloaded, downloaded);
+    }
+
+    /**
+     * Primero los datos al disco y luego el avance: tras un cierre brusco, el .state
+     * nunca apunta más allá de lo que hay escrito.
+     */
+    private void checkpoint(State state, FileChannel channel, File stateFile, Listener listener) throws IOException {
+        long[] done = new long[state.segments.size()];
+        long downloaded = 0;
+        for (int i = 0; i < done.length; i++) {
+            done[i] = state.segments.get(i).downloaded;
+            downloaded += done[i];
+        }
+        channel.force(false);
+        writeState(state, done, stateFile);
+        if (listener != null) listener.onProgress(downloaded, state.total);
+    }
+
+    private static void finish(File part, File stateFile, File target) throws IOException {
+        if (target.exists() && !target.delete()) {
+            throw new IOException("No se puede reemplazar " + target);
+        }
+        if (!part.renameTo(target)) {
+            throw new IOException("No se puede mover " + part + " a " + target);
+        }
+        stateFile.delete();
+    }
+
+    // =============================================
+    // HTTP
+    // =============================================
+
+    private static Request.Builder request(String url, Map<String, String> headers) throws IOException {
+        try {
+            Request.Builder request = new Request.Builder().url(url);
+            if (headers != null) {
+                for (Map.Entry<String, String> header : headers.entrySet()) {
+                    request.header(header.getKey(), header.getValue());
+                }
+            }
+            // Los tramos son bytes del archivo tal cual, no de una versión comprimida
+            return request.header("Accept-Encoding", "identity");
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Petición no válida a " + url + ": " + e.getMessage(), e);
+        }
+    }
+
+    private Response execute(Request.Builder request) throws IOException {
+        return client.newCall(request.build()).execute();
+    }
+
+    private static void expectOk(Response response, String url) throws IOException {
+        int code = response.code();
+        if (code != HttpURLConnection.HTTP_OK) {
+            throw new IOException("HTTP " + code + " " + url);
+        }
+    }
+
+    /**
+     * ETag fuerte o, si no hay, Last-Modified (lo que acepta If-Range); null si ninguno
+     */
+    private static String validatorOf(Response response) {
+        String etag = response.header("ETag");
+        if (etag != null && !etag.startsWith("W/")) return etag;
+        return response.header("Last-Modified");
+    }
+
+    /**
+     * "bytes 0-0/12345" -> 12345 (o -1 si es "*" o no se entiende)
+     */
+    static long totalFromContentRange(String contentRange) {
+        if (contentRange == null) return -1;
+        int slash = contentRange.lastIndexOf('/');
+        if (slash < 0) return -1;
+        try {
+            return Long.parseLong(contentRange.substring(slash + 1).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static IOException asIOException(Throwable t) {
+        if (t instanceof IOException) return (IOException) t;
+        return new IOException(t);
+    }
+
+    private static void waitQuietly(Future<?> future) {
+        try {
+            future.get();
+        } catch (Exception ignored) {
+            // Ya tenemos el primer error
+        }
+    }
+
+    // =============================================
+    // ESTADO EN DISCO (.state)
+    // =============================================
+
+    private static final class Segment {
+        final long start;
+        final long end;                 // incluido
+        volatile long downloaded;       // solo lo escribe el hilo del tramo
+
+        Segment(long start, long end, long downloaded) {
+            this.start = start;
+            this.end = end;
+            this.downloaded = downloaded;
+        }
+
+        boolean isComplete() {
+            return start + downloaded > end;
+        }
+    }
+
+    private static final class State {
+        final String url;
+        final String validator;
+        final long total;
+        final boolean rangesSupported;
+        final List<Segment> segments;
+
+        State(String url, String validator, long total, boolean rangesSupported, List<Segment> segments) {
+            this.url = url;
+            this.validator = validator;
+            this.total = total;
+            this.rangesSupported = rangesSupported;
+            this.segments = segments;
+        }
+    }
+
+    private static void writeState(State state, File stateFile) throws IOException {
+        long[] done = new long[state.segments.size()];
+        for (int i = 0; i < done.length; i++) {
+            done[i] = state.segments.get(i).downloaded;
+        }
+        writeState(state, done, stateFile);
+    }
+
+    // Se escribe en un temporal y se renombra: nunca queda un .state a medias
+    private static void writeState(State state, long[] done, File stateFile) throws IOException {
+        File temp = new File(stateFile.getPath() + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(file)) {
+            out.writeInt(STATE_VERSION);
+            out.writeUTF(state.url);
+            out.writeUTF(state.validator != null ? state.validator : "");
+            out.writeLong(state.total);
+            out.writeBoolean(state.rangesSupported);
+            out.writeInt(state.segments.size());
+            for (int i = 0; i < done.length; i++) {
+                Segment segment = state.segments.get(i);
+                out.writeLong(segment.start);
+                out.writeLong(segment.end);
+                out.writeLong(done[i]);
+            }
+            out.flush();
+            file.getFD().sync();
+        }
+        if (!temp.renameTo(stateFile)) {
+            throw new IOException("No se puede guardar " + stateFile);
+        }
+    }
+
+    private static State readState(File stateFile) {
+        if (!stateFile.exists()) return null;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(stateFile))) {
+            if (in.readInt() != STATE_VERSION) return null;
+            String url = in.readUTF();
+            String validator = in.readUTF();
+            long total = in.readLong();
+            boolean rangesSupported = in.readBoolean();
+            int count = in.readInt();
+            List<Segment> segments = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                segments.add(new Segment(in.readLong(), in.readLong(), in.readLong()));
+            }
+            return new State(url, validator.isEmpty() ? null : validator, total, rangesSupported, segments);
+        } catch (IOException e) {
+            return null; // Estado roto: se empieza de cero
+        }
+    }
+
+    /**
+     * El servidor devolvió 200 a una petición con If-Range: el archivo cambió
+     */
+    private static final class ChangedOnServerException extends IOException {
+        ChangedOnServerException() {
+            super("El archivo cambió en el servidor");
+        }
+    }
+}
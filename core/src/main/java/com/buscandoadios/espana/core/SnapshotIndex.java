@@ -0,0 +1,285 @@
+package com.buscandoadios.espana.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * SnapshotIndex - Índice de copias sin conexión de páginas (un archivo por URL)
+ *
+ * Limitado por tamaño total y por antigüedad: al guardar una copia nueva se borran las
+ * caducadas y después las menos usadas hasta caber. Abrir una copia cuenta como uso.
+ * El contenido lo escribe quien llama en tempFileFor(); commit() lo publica con un rename.
+ * Se guarda entero en un archivo (temporal + rename) en cada cambio: son pocas entradas.
+ * Los métodos hacen E/S de disco: no llamar desde el hilo principal.
+ */
+public final class SnapshotIndex {
+
+    private static final int INDEX_VERSION = 1;
+    private static final String INDEX_FILE = "index.bin";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * Una copia guardada
+     */
+    public static final class Entry {
+        public final String url;
+        public final String title;
+        public final File file;
+        public final long savedAt;
+        public final long size;
+
+        Entry(String url, String title, File file, long savedAt, long size) {
+            this.url = url;
+            this.title = title;
+            this.file = file;
+            this.savedAt = savedAt;
+            this.size = size;
+        }
+    }
+
+    private final File directory;
+    private final String extension;
+    private final long maxBytes;
+    private final long maxAgeMs;
+
+    // Orden de acceso: la primera entrada es la menos usada recientemente
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+    private boolean loaded;
+
+    /**
+     * extension es la del archivo de cada copia (".mht": el WebView decide el formato por ella)
+     */
+    public SnapshotIndex(File directory, String extension, long maxBytes, long maxAgeMs) {
+        this.directory = directory;
+        this.extension = extension;
+        this.maxBytes = maxBytes;
+        this.maxAgeMs = maxAgeMs;
+    }
+
+    /**
+     * Misma página = misma copia: sin el fragmento (#...) de la URL
+     */
+    public static String normalize(String url) {
+        int hash = url.indexOf('#');
+        return hash >= 0 ? url.substring(0, hash) : url;
+    }
+
+    /**
+     * Copia vigente de url (o null) y la marca como usada
+     */
+    public synchronized Entry find(String url, long now) {
+        ensureLoaded();
+        String key = normalize(url);
+        Entry entry = entries.get(key);
+        if (entry == null) return null;
+        if (isExpired(entry, now) || !entry.file.isFile()) {
+            removeLocked(key);
+            saveQuietly();
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Hay una copia de url guardada hace menos de intervalMs (no hace falta otra)
+     */
+    public synchronized boolean isRecent(String url, long now, long intervalMs) {
+        ensureLoaded();
+        Entry entry = entries.get(normalize(url));
+        return entry != null && now - entry.savedAt < intervalMs;
+    }
+
+    /**
+     * Dónde escribir la copia nueva de url antes de commit()
+     */
+    public File tempFileFor(String url) {
+        directory.mkdirs();
+        return new File(directory, keyFor(normalize(url)) + extension + TEMP_SUFFIX);
+    }
+
+    /**
+     * Publica la copia escrita en tempFileFor(url) y recorta el índice a sus límites
+     */
+    public synchronized Entry commit(String url, String title, long now) throws IOException {
+        ensureLoaded();
+        String key = normalize(url);
+        File temp = tempFileFor(key);
+        File file = new File(directory, keyFor(key) + extension);
+        if (!temp.isFile() || temp.length() == 0) {
+            temp.delete();
+            throw new IOException("Copia vacía de " + key);
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("No se pudo guardar la copia de " + key);
+        }
+
+        Entry previous = entries.remove(key);
+        if (previous != null) totalBytes -= previous.size;
+        Entry entry = new Entry(key, title != null ? title : "", file, now, file.length());
+        entries.put(key, entry);
+        totalBytes += entry.size;
+
+        trim(now);
+        save();
+        return entries.get(key);
+    }
+
+    /**
+     * Borra las copias caducadas (p. ej. al arrancar)
+     */
+    public synchronized void prune(long now) {
+        ensureLoaded();
+        long before = totalBytes;
+        int count = entries.size();
+        trim(now);
+        if (totalBytes != before || entries.size() != count) {
+            saveQuietly();
+        }
+    }
+
+    public synchronized void remove(String url) throws IOException {
+        ensureLoaded();
+        if (removeLocked(normalize(url))) {
+            save();
+        }
+    }
+
+    public synchronized long size() {
+        ensureLoaded();
+        return totalBytes;
+    }
+
+    public synchronized int count() {
+        ensureLoaded();
+        return entries.size();
+    }
+
+    // =============================================
+    // LÍMITES
+    // =============================================
+
+    private boolean isExpired(Entry entry, long now) {
+        return now - entry.savedAt > maxAgeMs;
+    }
+
+    private void trim(long now) {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next().getValue();
+            if (isExpired(entry, now)) {
+                it.remove();
+                deleteFile(entry);
+            }
+        }
+        // Después, las menos usadas (la más reciente se queda aunque sola no quepa)
+        it = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && entries.size() > 1 && it.hasNext()) {
+            Entry entry = it.next().getValue();
+            it.remove();
+            deleteFile(entry);
+        }
+    }
+
+    private boolean removeLocked(String key) {
+        Entry entry = entries.remove(key);
+        if (entry == null) return false;
+        deleteFile(entry);
+        return true;
+    }
+
+    private void deleteFile(Entry entry) {
+        totalBytes -= entry.size;
+        entry.file.delete();
+    }
+
+    // =============================================
+    // ARCHIVO
+    // =============================================
+
+    private void ensureLoaded() {
+        if (loaded) return;
+        loaded = true;
+        File file = new File(directory, INDEX_FILE);
+        if (!file.exists()) return;
+
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != INDEX_VERSION) return;
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String url = in.readUTF();
+                String title = in.readUTF();
+                File snapshot = new File(directory, in.readUTF());
+                long savedAt = in.readLong();
+                long size = in.readLong();
+                if (snapshot.isFile()) {
+                    entries.put(url, new Entry(url, title, snapshot, savedAt, size));
+                    totalBytes += size;
+                }
+            }
+        } catch (IOException e) {
+            // Índice dañado: se empieza de cero (las copias huérfanas se pisan al volver a guardar)
+            entries.clear();
+            totalBytes = 0;
+        }
+    }
+
+    private void saveQuietly() {
+        try {
+            save();
+        } catch (IOException e) {
+            // Se reintenta con el siguiente cambio
+        }
+    }
+
+    private void save() throws IOException {
+        directory.mkdirs();
+        File file = new File(directory, INDEX_FILE);
+        File temp = new File(directory, INDEX_FILE + TEMP_SUFFIX);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(INDEX_VERSION);
+            out.writeInt(entries.size());
+            // Se escriben en orden LRU, así se conserva al leerlas
+            for (Entry entry : entries.values()) {
+                out.writeUTF(entry.url);
+                out.writeUTF(entry.title);
+                out.writeUTF(entry.file.getName());
+                out.writeLong(entry.savedAt);
+                out.writeLong(entry.size);
+            }
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("No se pudo guardar " + file);
+        }
+    }
+
+    private static String keyFor(String url) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-1").digest(url.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+                sb.append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
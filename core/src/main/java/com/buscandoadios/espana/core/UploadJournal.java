@@ -0,0 +1,147 @@
+package com.buscandoadios.espana.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * UploadJournal - Subidas pendientes guardadas en disco
+ *
+ * Lo justo para retomar una subida si el proceso muere: archivo, endpoint y la sesión
+ * abierta en el servidor (ChunkedUploader pregunta el avance al reanudar).
+ * Se guarda entero (temporal + rename) en cada cambio; son muy pocas entradas.
+ * Los métodos hacen E/S de disco: no llamar desde el hilo principal.
+ */
+public final class UploadJournal {
+
+    private static final int JOURNAL_VERSION = 1;
+
+    /**
+     * Una subida pendiente
+     */
+    public static final class Entry {
+        public final long id;
+        public final String endpoint;
+        public final String filePath;       // copia propia de la app (no caduca como un content://)
+        public final String fileName;
+        public final String mimeType;
+        public final String tag;            // lo que la página quiera para reconocerla
+        public String sessionUrl = "";      // "" hasta que el servidor abra la sesión
+        public int attempts;
+
+        public Entry(long id, String endpoint, String filePath, String fileName, String mimeType, String tag) {
+            this.id = id;
+            this.endpoint = endpoint;
+            this.filePath = filePath;
+            this.fileName = fileName;
+            this.mimeType = mimeType;
+            this.tag = tag;
+        }
+    }
+
+    private final File file;
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>();
+    private long lastId;
+    private boolean loaded;
+
+    public UploadJournal(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Pendientes en orden de llegada
+     */
+    public synchronized List<Entry> entries() {
+        ensureLoaded();
+        return new ArrayList<>(entries.values());
+    }
+
+    /**
+     * Ids crecientes, también entre reinicios
+     */
+    public synchronized long nextId() {
+        ensureLoaded();
+        return ++lastId;
+    }
+
+    /**
+     * Añade o actualiza (tras cambiar sessionUrl o attempts)
+     */
+    public synchronized void put(Entry entry) throws IOException {
+        ensureLoaded();
+        entries.put(entry.id, entry);
+        save();
+    }
+
+    public synchronized void remove(long id) throws IOException {
+        ensureLoaded();
+        if (entries.remove(id) != null) {
+            save();
+        }
+    }
+
+    // =============================================
+    // ARCHIVO
+    // =============================================
+
+    private void ensureLoaded() {
+        if (loaded) return;
+        loaded = true;
+        if (!file.exists()) return;
+
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != JOURNAL_VERSION) return;
+            lastId = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Entry entry = new Entry(in.readLong(), in.readUTF(), in.readUTF(),
+                        in.readUTF(), in.readUTF(), in.readUTF());
+                entry.sessionUrl = in.readUTF();
+                entry.attempts = in.readInt();
+                entries.put(entry.id, entry);
+            }
+        } catch (IOException e) {
+            // Diario dañado: se pierden las pendientes, pero la app sigue funcionando
+            entries.clear();
+        }
+    }
+
+    private void save() throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null) parent.mkdirs();
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+            out.writeInt(JOURNAL_VERSION);
+            out.writeLong(lastId);
+            out.writeInt(entries.size());
+            for (Map.Entry<Long, Entry> item : entries.entrySet()) {
+                Entry entry = item.getValue();
+                out.writeLong(entry.id);
+                out.writeUTF(entry.endpoint);
+                out.writeUTF(entry.filePath);
+                out.writeUTF(entry.fileName);
+                out.writeUTF(entry.mimeType);
+                out.writeUTF(entry.tag);
+                out.writeUTF(entry.sessionUrl);
+                out.writeInt(entry.attempts);
+            }
+            out.flush();
+            stream.getFD().sync();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("No se pudo guardar " + file);
+        }
+    }
+}
@@ -0,0 +1,370 @@
+package com.buscandoadios.espana.core;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * UrlRouter - Tabla de rutas compilada para decidir qué hacer con cada enlace
+ *
+ * Analiza esquema y host una sola vez, sin crear objetos. Lo más habitual, "http(s)://" con
+ * uno de nuestros dominios tal cual, se resuelve con el primer carácter del host y un
+ * indexOf (vectorizado, como el antiguo contains(), pero anclado al host). Si no, se recorre
+ * la autoridad y los dominios de las reglas, agrupados por su último carácter, se comparan
+ * contra el final del host (incluye subdominios), de más largo a más corto. La query no se
+ * recorre: el coste no depende de lo larga que sea.
+ *
+ * Formato de reglas (una por línea, '#' para comentarios):
+ *   host    buscandoadios-espana.com  LOAD_IN_WEBVIEW
+ *   scheme  tel                       DIAL
+ *   default LOAD_IN_WEBVIEW
+ * Las reglas de host se comprueban antes que las de esquema; gana el dominio más largo.
+ */
+public final class UrlRouter {
+
+    // Alfabeto de los nombres de host: a-z, 0-9, '.', '-'
+    private static final int ALPHABET = 38;
+
+    // Tablas ASCII: símbolo de cada carácter de host, caracteres válidos de esquema y
+    // caracteres que importan al recorrer la autoridad
+    private static final byte[] SYMBOLS = new byte[128];
+    private static final byte[] SCHEME_CHARS = new byte[128];
+    private static final byte[] AUTHORITY_CHARS = new byte[128];
+    private static final byte AUTHORITY_END = 1;       // '/', '?', '#', '\\'
+    private static final byte AUTHORITY_USER = 2;      // '@'
+    private static final byte AUTHORITY_PORT = 3;      // ':'
+
+    static {
+        Arrays.fill(SYMBOLS, (byte) -1);
+        for (char c = 'a'; c <= 'z'; c++) {
+            SYMBOLS[c] = (byte) (c - 'a');
+            SYMBOLS[c - 32] = (byte) (c - 'a');
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            SYMBOLS[c] = (byte) (26 + c - '0');
+        }
+        SYMBOLS['.'] = 36;
+        SYMBOLS['-'] = 37;
+
+        for (int c = 0; c < 128; c++) {
+            if (SYMBOLS[c] >= 0 || c == '+') SCHEME_CHARS[c] = 1;
+        }
+
+        AUTHORITY_CHARS['/'] = AUTHORITY_END;
+        AUTHORITY_CHARS['?'] = AUTHORITY_END;
+        AUTHORITY_CHARS['#'] = AUTHORITY_END;
+        AUTHORITY_CHARS['\\'] = AUTHORITY_END;
+        AUTHORITY_CHARS['@'] = AUTHORITY_USER;
+        AUTHORITY_CHARS[':'] = AUTHORITY_PORT;
+    }
+
+    // Por símbolo del último carácter: sus dominios (de más largo a más corto) y acciones
+    private final String[][] domainsByLast;
+    private final NavigationAction[][] actionsByLast;
+    // Por símbolo del primer carácter: los mismos dominios, para el atajo de host exacto
+    private final String[][] domainsByFirst;
+    private final NavigationAction[][] actionsByFirst;
+    private final String[] schemes;
+    private final NavigationAction[] schemeActions;
+    private final NavigationAction defaultAction;
+    // Acción de esquema de http y https, resuelta al construir
+    private final NavigationAction httpAction;
+    private final NavigationAction httpsAction;
+
+    private UrlRouter(String[][] domainsByLast, NavigationAction[][] actionsByLast,
+                      String[][] domainsByFirst, NavigationAction[][] actionsByFirst,
+                      String[] schemes, NavigationAction[] schemeActions, NavigationAction defaultAction) {
+        this.domainsByLast = domainsByLast;
+        this.actionsByLast = actionsByLast;
+        this.domainsByFirst = domainsByFirst;
+        this.actionsByFirst = actionsByFirst;
+        this.schemes = schemes;
+        this.schemeActions = schemeActions;
+        this.defaultAction = defaultAction;
+        NavigationAction http = matchScheme("http", 4);
+        NavigationAction https = matchScheme("https", 5);
+        this.httpAction = http != null ? http : defaultAction;
+        this.httpsAction = https != null ? https : defaultAction;
+    }
+
+    // =============================================
+    // CARGA DE REGLAS
+    // =============================================
+
+    /**
+     * Reglas por defecto de la app (url_routes.txt junto a esta clase)
+     */
+    public static UrlRouter fromClasspath() {
+        try (InputStream in = UrlRouter.class.getResourceAsStream("url_routes.txt")) {
+            if (in == null) {
+                throw new IllegalStateException("No se encuentra url_routes.txt");
+            }
+            return parse(new InputStreamReader(in, StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new IllegalStateException("No se pudo leer url_routes.txt", e);
+        }
+    }
+
+    public static UrlRouter parse(Reader reader) throws IOException {
+        Builder builder = new Builder();
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        int lineNumber = 0;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            int comment = line.indexOf('#');
+            if (comment >= 0) line = line.substring(0, comment);
+            line = line.trim();
+            if (line.isEmpty()) continue;
+
+            String[] parts = line.split("\\s+");
+            try {
+                if (parts[0].equals("default") && parts.length == 2) {
+                    builder.defaultAction(NavigationAction.valueOf(parts[1]));
+                } else if (parts[0].equals("host") && parts.length == 3) {
+                    builder.host(parts[1], NavigationAction.valueOf(parts[2]));
+                } else if (parts[0].equals("scheme") && parts.length == 3) {
+                    builder.scheme(parts[1], NavigationAction.valueOf(parts[2]));
+                } else {
+                    throw new IllegalArgumentException("regla desconocida");
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IOException("url_routes línea " + lineNumber + ": " + e.getMessage() + " (" + line + ")");
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Construye la tabla a partir de reglas sueltas
+     */
+    public static final class Builder {
+        private final List<String> hosts = new ArrayList<>();
+        private final List<NavigationAction> hostActions = new ArrayList<>();
+        private final List<String> schemes = new ArrayList<>();
+        private final List<NavigationAction> schemeActions = new ArrayList<>();
+        private NavigationAction defaultAction = NavigationAction.LOAD_IN_WEBVIEW;
+
+        public Builder host(String domain, NavigationAction action) {
+            String normalized = domain.toLowerCase(Locale.ROOT);
+            if (normalized.isEmpty()) {
+                throw new IllegalArgumentException("host vacío");
+            }
+            for (int i = 0; i < normalized.length(); i++) {
+                if (symbol(normalized.charAt(i)) < 0) {
+                    throw new IllegalArgumentException("host no válido: " + domain);
+                }
+            }
+            hosts.add(normalized);
+            hostActions.add(action);
+            return this;
+        }
+
+        public Builder scheme(String scheme, NavigationAction action) {
+            schemes.add(scheme.toLowerCase(Locale.ROOT));
+            schemeActions.add(action);
+            return this;
+        }
+
+        public Builder defaultAction(NavigationAction action) {
+            defaultAction = action;
+            return this;
+        }
+
+        public UrlRouter build() {
+            // El mismo dominio dos veces: vale la última regla
+            Map<String, NavigationAction> rules = new LinkedHashMap<>();
+            for (int r = 0; r < hosts.size(); r++) {
+                rules.put(hosts.get(r), hostActions.get(r));
+            }
+
+            String[][] domainsByLast = new String[ALPHABET][];
+            NavigationAction[][] actionsByLast = new NavigationAction[ALPHABET][];
+            group(rules, true, domainsByLast, actionsByLast);
+            String[][] domainsByFirst = new String[ALPHABET][];
+            NavigationAction[][] actionsByFirst = new NavigationAction[ALPHABET][];
+            group(rules, false, domainsByFirst, actionsByFirst);
+            return new UrlRouter(domainsByLast, actionsByLast, domainsByFirst, actionsByFirst,
+                    schemes.toArray(new String[0]),
+                    schemeActions.toArray(new NavigationAction[0]),
+                    defaultAction);
+        }
+
+        /**
+         * Reparte los dominios por el símbolo de su último (o primer) carácter,
+         * cada grupo de más largo a más corto: el primero que coincida es el más largo
+         */
+        private static void group(Map<String, NavigationAction> rules, boolean byLast,
+                                  String[][] domains, NavigationAction[][] actions) {
+            List<List<String>> groups = new ArrayList<>();
+            for (int s = 0; s < ALPHABET; s++) {
+                groups.add(new ArrayList<>());
+            }
+            for (String host : rules.keySet()) {
+                groups.get(symbol(host.charAt(byLast ? host.length() - 1 : 0))).add(host);
+            }
+            for (int s = 0; s < ALPHABET; s++) {
+                List<String> group = groups.get(s);
+                if (group.isEmpty()) continue;
+                group.sort(Comparator.comparingInt(String::length).reversed());
+                domains[s] = group.toArray(new String[0]);
+                actions[s] = new NavigationAction[group.size()];
+                for (int i = 0; i < group.size(); i++) {
+                    actions[s][i] = rules.get(group.get(i));
+                }
+            }
+        }
+    }
+
+    // =============================================
+    // DECISIÓN (sin reservar memoria)
+    // =============================================
+
+    public NavigationAction route(String url) {
+        int length = url.length();
+
+        // Lo más habitual, sin analizar el esquema (en minúsculas; si no, por el camino general)
+        if (url.startsWith("https://")) return routeHttp(url, 8, length, httpsAction);
+        if (url.startsWith("http://")) return routeHttp(url, 7, length, httpAction);
+
+        // Esquema: hasta el primer ':' (una letra y luego letras, dígitos, '+', '-', '.')
+        int schemeEnd = url.indexOf(':');
+        if (schemeEnd <= 0) return defaultAction;
+        char first = url.charAt(0);
+        if (first >= 128 || SYMBOLS[first] < 0 || SYMBOLS[first] >= 26) return defaultAction;
+        for (int i = 1; i < schemeEnd; i++) {
+            char c = url.charAt(i);
+            if (c >= 128 || SCHEME_CHARS[c] == 0) return defaultAction;
+        }
+
+        // Host (solo URLs con autoridad: esquema://...)
+        if (schemeEnd + 2 < length && url.charAt(schemeEnd + 1) == '/' && url.charAt(schemeEnd + 2) == '/') {
+            NavigationAction hostAction = matchHost(url, schemeEnd + 3, length);
+            if (hostAction != null) return hostAction;
+        }
+
+        NavigationAction schemeAction = matchScheme(url, schemeEnd);
+        return schemeAction != null ? schemeAction : defaultAction;
+    }
+
+    private NavigationAction routeHttp(String url, int authorityStart, int length, NavigationAction schemeAction) {
+        NavigationAction action = matchExactHost(url, authorityStart, length);
+        if (action == null) action = matchHost(url, authorityStart, length);
+        return action != null ? action : schemeAction;
+    }
+
+    /**
+     * Atajo: uno de nuestros dominios tal cual seguido de fin, '/', '?' o '#'. Si no, null
+     * y se recorre la autoridad (mayúsculas, subdominios, usuario, puerto...)
+     */
+    private NavigationAction matchExactHost(String url, int hostStart, int length) {
+        if (hostStart == length) return null;
+        int first = symbol(url.charAt(hostStart));
+        if (first < 0) return null;
+        String[] domains = domainsByFirst[first];
+        if (domains == null) return null;
+        for (int d = 0; d < domains.length; d++) {
+            String domain = domains[d];
+            int hostEnd = hostStart + domain.length();
+            if (hostEnd > length) continue;
+            if (hostEnd < length) {
+                char next = url.charAt(hostEnd);
+                if (next != '/' && next != '?' && next != '#') continue;
+            }
+            // Último carácter antes que nada: si falla indexOf seguiría buscando por la query
+            if (url.charAt(hostEnd - 1) != domain.charAt(domain.length() - 1)) continue;
+            if (url.indexOf(domain, hostStart) == hostStart) return actionsByFirst[first][d];
+        }
+        return null;
+    }
+
+    private NavigationAction matchHost(String url, int authorityStart, int length) {
+        // Una pasada por la autoridad: [usuario:contraseña@]host[:puerto]
+        // (el resto de la URL no se lee: el coste no depende de la query)
+        int hostStart = authorityStart;
+        int hostEnd = -1;
+        int i = authorityStart;
+        for (; i < length; i++) {
+            char c = url.charAt(i);
+            // Letras (casi todo el host): una sola comparación
+            if (c > '@' && c != '\\') continue;
+            int kind = AUTHORITY_CHARS[c];
+            if (kind == 0) continue;
+            if (kind == AUTHORITY_END) break;
+            if (kind == AUTHORITY_USER) {
+                hostStart = i + 1;
+                hostEnd = -1;
+            } else if (hostEnd < 0) {
+                hostEnd = i;
+            }
+        }
+        if (hostEnd < 0) hostEnd = i;
+        if (hostStart >= hostEnd || url.charAt(hostStart) == '[') {
+            return null; // Sin host, o IPv6: nunca es uno de nuestros dominios
+        }
+        // Punto final ("ejemplo.com.")
+        if (url.charAt(hostEnd - 1) == '.') {
+            hostEnd--;
+            if (hostStart == hostEnd) return null;
+        }
+
+        int last = symbol(url.charAt(hostEnd - 1));
+        if (last < 0) return null;
+        String[] domains = domainsByLast[last];
+        if (domains == null) return null;
+        for (int d = 0; d < domains.length; d++) {
+            String domain = domains[d];
+            int start = hostEnd - domain.length();
+            if (start < hostStart) continue;
+            // Solo cuenta si el dominio empieza justo aquí (host exacto o subdominio)
+            if (start > hostStart && url.charAt(start - 1) != '.') continue;
+            if (regionMatchesDomain(url, start, domain)) return actionsByLast[last][d];
+        }
+        return null;
+    }
+
+    /**
+     * url desde start es domain (ya en minúsculas), sin distinguir mayúsculas en url
+     */
+    private static boolean regionMatchesDomain(String url, int start, String domain) {
+        // Lo normal es que ya venga en minúsculas: indexOf está vectorizado y, si el dominio
+        // está justo en start, para ahí (regionMatches compara carácter a carácter)
+        if (url.charAt(start) == domain.charAt(0) && url.indexOf(domain, start) == start) return true;
+        for (int k = 0, n = domain.length(); k < n; k++) {
+            char c = url.charAt(start + k);
+            char expected = domain.charAt(k);
+            if (c != expected && (c < 'A' || c > 'Z' || c + 32 != expected)) return false;
+        }
+        return true;
+    }
+
+    private NavigationAction matchScheme(String url, int schemeEnd) {
+        for (int i = 0; i < schemes.length; i++) {
+            String scheme = schemes[i];
+            if (scheme.length() != schemeEnd) continue;
+            int j = 0;
+            while (j < schemeEnd && (url.charAt(j) | 0x20) == scheme.charAt(j)) {
+                j++;
+            }
+            if (j == schemeEnd) return schemeActions[i];
+        }
+        return null;
+    }
+
+    /**
+     * Índice de un carácter de host en el alfabeto (sin distinguir mayúsculas), o -1
+     */
+    private static int symbol(char c) {
+        return c < 128 ? SYMBOLS[c] : -1;
+    }
+}
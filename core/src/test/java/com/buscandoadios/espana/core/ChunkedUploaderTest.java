@@ -0,0 +1,468 @@
+package com.buscandoadios.espana.core;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import okhttp3.OkHttpClient;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * ChunkedUploaderTest - Protocolo de subida por trozos contra un servidor local
+ *
+ * FakeUploadServer hace lo que espera ChunkedUploader: POST al endpoint = sesión nueva
+ * (Location), PUT "bytes * /N" = cuánto tiene (308 + Range), PUT con trozo = lo guarda.
+ * Se le puede pedir que pierda un trozo, que se quede solo con parte o que olvide sesiones.
+ */
+public class ChunkedUploaderTest {
+
+    private static final int CHUNK = 1024;
+    private static final int FILE_SIZE = 5 * CHUNK + 300;
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private FakeUploadServer server;
+    private ChunkedUploader uploader;
+    private File file;
+    private byte[] content;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new FakeUploadServer();
+        uploader = new ChunkedUploader(new OkHttpClient(), CHUNK);
+        content = new byte[FILE_SIZE];
+        new Random(42).nextBytes(content);
+        file = temp.newFile("foto.jpg");
+        Files.write(file.toPath(), content);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    // =============================================
+    // SESIÓN NUEVA
+    // =============================================
+
+    @Test
+    public void startsSessionAndSendsEveryChunk() throws IOException {
+        RecordingListener listener = new RecordingListener();
+
+        ChunkedUploader.Result result = upload(null, listener);
+
+        assertEquals(200, result.statusCode);
+        assertEquals("{\"ok\":true}", result.body);
+        assertEquals(1, server.sessionsStarted);
+        assertEquals(1, listener.sessions.size());
+        assertTrue(listener.sessions.get(0).startsWith(server.url("/session/")));
+        assertArrayEquals(content, server.onlySession().received());
+        assertEquals(Arrays.asList(0L, 1024L, 2048L, 3072L, 4096L, 5120L), server.chunkOffsets);
+        assertEquals(FILE_SIZE, listener.lastSent);
+        assertEquals(FILE_SIZE, listener.total);
+    }
+
+    @Test
+    public void sendsUploadMetadataWhenStartingSession() throws IOException {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Cookie", "PHPSESSID=abc");
+        headers.put("Content-Range", "no debe llegar");
+
+        uploader.upload(server.url("/start"), null, headers, file, "señal ñ.jpg", "image/jpeg",
+                new RecordingListener(), new AtomicBoolean());
+
+        assertEquals(Long.toString(FILE_SIZE), server.startHeaders.get("X-Upload-Content-Length"));
+        assertEquals("image/jpeg", server.startHeaders.get("X-Upload-Content-Type"));
+        assertEquals("PHPSESSID=abc", server.startHeaders.get("Cookie"));
+        assertEquals("señal ñ.jpg", new String(
+                server.startHeaders.get("X-Upload-File-Name").getBytes(StandardCharsets.ISO_8859_1),
+                StandardCharsets.UTF_8));
+        // La cabecera propia de cada paso manda sobre la de quien llama
+        assertTrue(server.chunkRanges.get(0).startsWith("bytes 0-1023/"));
+    }
+
+    @Test
+    public void startEndpointNotFoundIsRejectedNotRetried() throws IOException {
+        for (int code : new int[]{404, 410, 403}) {
+            server.startStatus = code;
+            try {
+                upload(null, new RecordingListener());
+                fail("HTTP " + code + " al abrir la sesión debería ser definitivo");
+            } catch (ChunkedUploader.RejectedException e) {
+                assertEquals(code, e.statusCode);
+            }
+        }
+        assertEquals(0, server.sessions.size());
+    }
+
+    @Test
+    public void startEndpointServerErrorIsRetryable() throws IOException {
+        server.startStatus = 503;
+        try {
+            upload(null, new RecordingListener());
+            fail("HTTP 503 debería lanzar IOException");
+        } catch (ChunkedUploader.RejectedException e) {
+            fail("Un 5xx no es definitivo");
+        } catch (IOException expected) {
+            // Se reintenta más tarde
+        }
+    }
+
+    // =============================================
+    // REANUDAR
+    // =============================================
+
+    @Test
+    public void resumesFromServerRangeAfterDroppedChunk() throws IOException {
+        server.dropChunkAt = 3 * CHUNK;
+        RecordingListener first = new RecordingListener();
+        try {
+            upload(null, first);
+            fail("El trozo perdido debería cortar la subida");
+        } catch (IOException expected) {
+            assertFalse(expected instanceof ChunkedUploader.RejectedException);
+        }
+        String session = first.sessions.get(0);
+        assertEquals(3 * CHUNK, server.onlySession().received().length);
+
+        server.chunkOffsets.clear();
+        RecordingListener second = new RecordingListener();
+        ChunkedUploader.Result result = upload(session, second);
+
+        assertEquals(200, result.statusCode);
+        // Misma sesión, y solo lo que faltaba: nada de lo ya recibido se repite
+        assertEquals(1, server.sessionsStarted);
+        assertTrue(second.sessions.isEmpty());
+        assertEquals(Arrays.asList(3072L, 4096L, 5120L), server.chunkOffsets);
+        assertEquals(Long.valueOf(3 * CHUNK), second.progress.get(0));
+        assertArrayEquals(content, server.onlySession().received());
+    }
+
+    @Test
+    public void continuesFromPartiallyCommittedChunk() throws IOException {
+        // El servidor se queda solo con 700 bytes de cada trozo y lo dice en Range
+        server.commitAtMost = 700;
+
+        ChunkedUploader.Result result = upload(null, new RecordingListener());
+
+        assertEquals(200, result.statusCode);
+        assertEquals(Arrays.asList(0L, 700L, 1400L), server.chunkOffsets.subList(0, 3));
+        assertArrayEquals(content, server.onlySession().received());
+    }
+
+    @Test
+    public void completedSessionIsConfirmedWithoutResending() throws IOException {
+        RecordingListener first = new RecordingListener();
+        upload(null, first);
+        server.chunkOffsets.clear();
+
+        ChunkedUploader.Result again = upload(first.sessions.get(0), new RecordingListener());
+
+        assertEquals(200, again.statusCode);
+        assertTrue(server.chunkOffsets.isEmpty());
+    }
+
+    @Test
+    public void expiredSessionStartsANewOne() throws IOException {
+        for (int code : new int[]{404, 410}) {
+            server.expiredStatus = code;
+            RecordingListener first = new RecordingListener();
+            server.dropChunkAt = 2 * CHUNK;
+            try {
+                upload(null, first);
+                fail("El trozo perdido debería cortar la subida");
+            } catch (IOException expected) {
+                // Sesión a medias
+            }
+            String oldSession = first.sessions.get(0);
+            server.forget(oldSession);
+            server.dropChunkAt = -1;
+
+            RecordingListener second = new RecordingListener();
+            ChunkedUploader.Result result = upload(oldSession, second);
+
+            assertEquals(200, result.statusCode);
+            assertEquals(1, second.sessions.size());
+            assertNotEquals(oldSession, second.sessions.get(0));
+            assertArrayEquals(content, server.session(second.sessions.get(0)).received());
+        }
+    }
+
+    @Test
+    public void cancelledUploadStopsBetweenChunks() throws IOException {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        ChunkedUploader.Listener listener = new RecordingListener() {
+            @Override
+            public void onProgress(long sentBytes, long totalBytes) {
+                super.onProgress(sentBytes, totalBytes);
+                if (sentBytes >= 2 * CHUNK) cancelled.set(true);
+            }
+        };
+        try {
+            uploader.upload(server.url("/start"), null, null, file, "foto.jpg", "image/jpeg",
+                    listener, cancelled);
+            fail("Cancelada debería lanzar IOException");
+        } catch (IOException expected) {
+            // Cancelada
+        }
+        assertEquals(2 * CHUNK, server.onlySession().received().length);
+    }
+
+    // =============================================
+    // REANUDAR TRAS MATAR EL PROCESO
+    // =============================================
+
+    @Test
+    public void resumesFromJournalAfterProcessDies() throws IOException {
+        File journalFile = new File(temp.getRoot(), "uploads/journal.bin");
+        UploadJournal journal = new UploadJournal(journalFile);
+        UploadJournal.Entry entry = new UploadJournal.Entry(journal.nextId(), server.url("/start"),
+                file.getPath(), "foto.jpg", "image/jpeg", "perfil");
+        journal.put(entry);
+
+        // Como UploadQueue: la sesión se guarda en cuanto existe
+        server.dropChunkAt = 4 * CHUNK;
+        try {
+            uploader.upload(entry.endpoint, null, null, file, entry.fileName, entry.mimeType,
+                    new RecordingListener() {
+                        @Override
+                        public void onSession(String sessionUrl) {
+                            entry.sessionUrl = sessionUrl;
+                            try {
+                                journal.put(entry);
+                            } catch (IOException e) {
+                                throw new AssertionError(e);
+                            }
+                        }
+                    }, new AtomicBoolean());
+            fail("El trozo perdido debería cortar la subida");
+        } catch (IOException expected) {
+            // El proceso muere aquí: solo queda lo que hay en disco
+        }
+
+        UploadJournal reloaded = new UploadJournal(journalFile);
+        List<UploadJournal.Entry> pending = reloaded.entries();
+        assertEquals(1, pending.size());
+        UploadJournal.Entry restored = pending.get(0);
+        assertEquals(entry.sessionUrl, restored.sessionUrl);
+
+        server.chunkOffsets.clear();
+        ChunkedUploader fresh = new ChunkedUploader(new OkHttpClient(), CHUNK);
+        ChunkedUploader.Result result = fresh.upload(restored.endpoint, restored.sessionUrl, null,
+                new File(restored.filePath), restored.fileName, restored.mimeType,
+                new RecordingListener(), new AtomicBoolean());
+
+        assertEquals(200, result.statusCode);
+        assertEquals(1, server.sessionsStarted);
+        assertEquals(Arrays.asList(4096L, 5120L), server.chunkOffsets);
+        assertArrayEquals(content, server.onlySession().received());
+    }
+
+    // =============================================
+    // Range
+    // =============================================
+
+    @Test
+    public void committedOffsetParsesRangeHeader() {
+        assertEquals(0, ChunkedUploader.committedOffset(null));
+        assertEquals(0, ChunkedUploader.committedOffset("basura"));
+        assertEquals(0, ChunkedUploader.committedOffset("bytes=0-x"));
+        assertEquals(1, ChunkedUploader.committedOffset("bytes=0-0"));
+        assertEquals(1048576, ChunkedUploader.committedOffset("bytes=0-1048575"));
+        assertEquals(1048576, ChunkedUploader.committedOffset("0-1048575"));
+    }
+
+    // =============================================
+    // AYUDAS
+    // =============================================
+
+    private ChunkedUploader.Result upload(String sessionUrl, ChunkedUploader.Listener listener)
+            throws IOException {
+        return uploader.upload(server.url("/start"), sessionUrl, null, file, "foto.jpg", "image/jpeg",
+                listener, new AtomicBoolean());
+    }
+
+    private static class RecordingListener implements ChunkedUploader.Listener {
+        final List<String> sessions = new ArrayList<>();
+        final List<Long> progress = new ArrayList<>();
+        long lastSent = -1;
+        long total = -1;
+
+        @Override
+        public void onSession(String sessionUrl) {
+            sessions.add(sessionUrl);
+        }
+
+        @Override
+        public void onProgress(long sentBytes, long totalBytes) {
+            progress.add(sentBytes);
+            lastSent = sentBytes;
+            total = totalBytes;
+        }
+    }
+
+    /**
+     * Servidor de subidas por trozos en 127.0.0.1 (un hilo: las peticiones van de una en una)
+     */
+    private static final class FakeUploadServer {
+
+        static final class Session {
+            final long total;
+            final ByteArrayOutputStream data = new ByteArrayOutputStream();
+
+            Session(long total) {
+                this.total = total;
+            }
+
+            byte[] received() {
+                return data.toByteArray();
+            }
+        }
+
+        final HttpServer http;
+        final Map<String, Session> sessions = new HashMap<>();
+        final Map<String, String> startHeaders = new HashMap<>();
+        final List<Long> chunkOffsets = new ArrayList<>();
+        final List<String> chunkRanges = new ArrayList<>();
+        volatile int startStatus = 201;
+        volatile int expiredStatus = 404;
+        // Offset del trozo que se pierde (503 sin guardar nada), una sola vez; -1 = ninguno
+        volatile long dropChunkAt = -1;
+        volatile int commitAtMost = Integer.MAX_VALUE;
+        int sessionsStarted;
+
+        FakeUploadServer() throws IOException {
+            http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+            http.createContext("/start", this::start);
+            http.createContext("/session/", this::session);
+            http.start();
+        }
+
+        String url(String path) {
+            return "http://127.0.0.1:" + http.getAddress().getPort() + path;
+        }
+
+        void stop() {
+            http.stop(0);
+        }
+
+        synchronized Session onlySession() {
+            assertEquals(1, sessions.size());
+            return sessions.values().iterator().next();
+        }
+
+        synchronized Session session(String url) {
+            Session session = sessions.get(url.substring(url.indexOf("/session/")));
+            assertNotNull(session);
+            return session;
+        }
+
+        synchronized void forget(String url) {
+            sessions.remove(url.substring(url.indexOf("/session/")));
+        }
+
+        private synchronized void start(HttpExchange exchange) throws IOException {
+            readBody(exchange);
+            for (String name : new String[]{"X-Upload-Content-Length", "X-Upload-Content-Type",
+                    "X-Upload-File-Name", "Cookie"}) {
+                startHeaders.put(name, exchange.getRequestHeaders().getFirst(name));
+            }
+            if (startStatus != 201) {
+                respond(exchange, startStatus, null);
+                return;
+            }
+            sessionsStarted++;
+            // Relativa, como la mandan muchos servidores
+            String path = "/session/" + sessionsStarted + "-" + System.nanoTime();
+            sessions.put(path, new Session(Long.parseLong(
+                    exchange.getRequestHeaders().getFirst("X-Upload-Content-Length"))));
+            exchange.getResponseHeaders().set("Location", path.substring(1));
+            respond(exchange, 201, null);
+        }
+
+        private synchronized void session(HttpExchange exchange) throws IOException {
+            byte[] body = readBody(exchange);
+            Session session = sessions.get(exchange.getRequestURI().getPath());
+            if (session == null) {
+                respond(exchange, expiredStatus, null);
+                return;
+            }
+            String range = exchange.getRequestHeaders().getFirst("Content-Range");
+            if (range.startsWith("bytes */")) {
+                replyProgress(exchange, session);
+                return;
+            }
+            chunkRanges.add(range);
+            // "bytes a-b/N"
+            String[] parts = range.substring("bytes ".length()).split("[-/]");
+            long first = Long.parseLong(parts[0]);
+            chunkOffsets.add(first);
+            if (first == dropChunkAt) {
+                dropChunkAt = -1;
+                respond(exchange, 503, null);
+                return;
+            }
+            if (first != session.data.size()) {
+                respond(exchange, 400, null);
+                return;
+            }
+            session.data.write(body, 0, Math.min(body.length, commitAtMost));
+            replyProgress(exchange, session);
+        }
+
+        private static void replyProgress(HttpExchange exchange, Session session) throws IOException {
+            if (session.data.size() == session.total) {
+                respond(exchange, 200, "{\"ok\":true}");
+                return;
+            }
+            if (session.data.size() > 0) {
+                exchange.getResponseHeaders().set("Range", "bytes=0-" + (session.data.size() - 1));
+            }
+            respond(exchange, 308, null);
+        }
+
+        private static byte[] readBody(HttpExchange exchange) throws IOException {
+            try (InputStream in = exchange.getRequestBody()) {
+                return in.readAllBytes();
+            }
+        }
+
+        private static void respond(HttpExchange exchange, int code, String body) throws IOException {
+            byte[] bytes = body == null ? new byte[0] : body.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(code, bytes.length == 0 ? -1 : bytes.length);
+            if (bytes.length > 0) {
+                exchange.getResponseBody().write(bytes);
+            }
+            exchange.close();
+        }
+    }
+}
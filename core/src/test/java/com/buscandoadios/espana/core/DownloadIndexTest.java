@@ -0,0 +1,164 @@
+package com.buscandoadios.espana.core;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import okhttp3.OkHttpClient;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * DownloadIndexTest - Solo se pregunta al servidor por lo que ya tenemos
+ *
+ * FakeFileServer responde a HEAD como un servidor con ETag: 304 si If-None-Match coincide,
+ * 200 con el ETag actual si no. Cuenta las peticiones que le llegan.
+ */
+public class DownloadIndexTest {
+
+    private static final String HASH = "ab12";
+    private static final String LOCATION = "content://downloads/1";
+    private static final long SIZE = 1234;
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private FakeFileServer server;
+    private DownloadIndex index;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new FakeFileServer("\"v1\"", SIZE);
+        index = new DownloadIndex(new File(temp.getRoot(), "download_index.bin"), new OkHttpClient());
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void unknownUrlIsNotRequested() throws IOException {
+        DownloadIndex.Revalidation revalidation = index.revalidate(server.url(), null);
+
+        assertNull(revalidation.existing);
+        assertSame(DownloadIndex.Validators.NONE, revalidation.validators);
+        assertEquals(0, server.requests.size());
+    }
+
+    @Test
+    public void knownUrlWithoutValidatorsIsNotRequested() throws IOException {
+        index.record(server.url(), DownloadIndex.Validators.NONE, HASH, SIZE, LOCATION);
+
+        assertNull(index.revalidate(server.url(), null).existing);
+        assertEquals(0, server.requests.size());
+    }
+
+    @Test
+    public void unchangedFileIsReused() throws IOException {
+        index.record(server.url(), new DownloadIndex.Validators("\"v1\"", null), HASH, SIZE, LOCATION);
+
+        DownloadIndex.Revalidation revalidation = index.revalidate(server.url(), null);
+
+        assertNotNull(revalidation.existing);
+        assertEquals(LOCATION, revalidation.existing.location);
+        assertEquals("\"v1\"", revalidation.validators.etag);
+        assertEquals(Collections.singletonList("HEAD \"v1\""), server.requests);
+    }
+
+    @Test
+    public void changedFileIsDownloadedAgain() throws IOException {
+        index.record(server.url(), new DownloadIndex.Validators("\"v1\"", null), HASH, SIZE, LOCATION);
+        server.etag = "\"v2\"";
+
+        DownloadIndex.Revalidation revalidation = index.revalidate(server.url(), null);
+
+        assertNull(revalidation.existing);
+        assertEquals("\"v2\"", revalidation.validators.etag);
+    }
+
+    @Test
+    public void knownFileIsKeptWithoutNetwork() throws IOException {
+        String url = server.url();
+        index.record(url, new DownloadIndex.Validators("\"v1\"", null), HASH, SIZE, LOCATION);
+        server.stop();
+
+        DownloadIndex.Revalidation revalidation = index.revalidate(url, null);
+
+        assertNotNull(revalidation.existing);
+        assertEquals(LOCATION, revalidation.existing.location);
+    }
+
+    @Test
+    public void currentValidatorsOfFinishedDownload() throws IOException {
+        assertEquals("\"v1\"", index.currentValidators(server.url(), null, SIZE).etag);
+        assertEquals(Collections.singletonList("HEAD null"), server.requests);
+    }
+
+    @Test
+    public void currentValidatorsIgnoredWhenFileChangedMeanwhile() throws IOException {
+        // Otro tamaño: lo descargado no es lo que describe este ETag
+        assertSame(DownloadIndex.Validators.NONE, index.currentValidators(server.url(), null, SIZE - 1));
+    }
+
+    // =============================================
+    // AYUDAS
+    // =============================================
+
+    /**
+     * Servidor de un archivo en 127.0.0.1 que solo responde a HEAD
+     */
+    private static final class FakeFileServer {
+
+        final HttpServer http;
+        volatile String etag;
+        final long size;
+        // "<método> <If-None-Match>" de cada petición
+        final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+
+        FakeFileServer(String etag, long size) throws IOException {
+            this.etag = etag;
+            this.size = size;
+            http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+            http.createContext("/boletin.pdf", this::serve);
+            http.start();
+        }
+
+        String url() {
+            return "http://127.0.0.1:" + http.getAddress().getPort() + "/boletin.pdf";
+        }
+
+        void stop() {
+            http.stop(0);
+        }
+
+        private void serve(HttpExchange exchange) throws IOException {
+            String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+            requests.add(exchange.getRequestMethod() + " " + ifNoneMatch);
+            exchange.getResponseHeaders().set("ETag", etag);
+            if (etag.equals(ifNoneMatch)) {
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                exchange.getResponseHeaders().set("Content-Length", Long.toString(size));
+                exchange.sendResponseHeaders(200, -1);
+            }
+            exchange.close();
+        }
+    }
+}
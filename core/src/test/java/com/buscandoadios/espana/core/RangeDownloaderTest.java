@@ -0,0 +1,345 @@
+package com.buscandoadios.espana.core;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import okhttp3.OkHttpClient;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * RangeDownloaderTest - Descargas por tramos contra un servidor local
+ *
+ * FakeRangeServer sirve un archivo con ETag y entiende Range e If-Range; se le puede
+ * pedir que ignore Range (siempre 200), que no mande ETag, que cambie el archivo, que corte
+ * cada tramo a la mitad (como si la app muriera a medias: el avance se queda en .part y
+ * .state) o que deje un tramo parado a la mitad (red que se cuelga).
+ */
+public class RangeDownloaderTest {
+
+    private static final int SEGMENTS = 4;
+    private static final int FILE_SIZE = (int) (SEGMENTS * RangeDownloader.MIN_SEGMENT_BYTES) + 123;
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private FakeRangeServer server;
+    private ExecutorService executor;
+    private RangeDownloader downloader;
+    private File target;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new FakeRangeServer(randomBytes(FILE_SIZE, 1), "\"v1\"");
+        executor = Executors.newFixedThreadPool(SEGMENTS);
+        downloader = new RangeDownloader(new OkHttpClient(), executor, SEGMENTS);
+        target = new File(temp.getRoot(), "audio.mp3");
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void downloadsInParallelSegments() throws IOException {
+        List<Long> progress = Collections.synchronizedList(new ArrayList<>());
+
+        downloader.download(server.url(), null, target,
+                (downloaded, total) -> progress.add(downloaded), new AtomicBoolean());
+
+        assertArrayEquals(server.content, Files.readAllBytes(target.toPath()));
+        assertEquals("bytes=0-0", server.ranges.get(0));
+        List<String> segments = server.ranges.subList(1, server.ranges.size());
+        Collections.sort(segments, (a, b) -> Long.compare(rangeStart(a), rangeStart(b)));
+        long size = FILE_SIZE / SEGMENTS;
+        assertEquals(SEGMENTS, segments.size());
+        for (int i = 0; i < SEGMENTS; i++) {
+            long end = i == SEGMENTS - 1 ? FILE_SIZE - 1 : (i + 1) * size - 1;
+            assertEquals("bytes=" + (i * size) + "-" + end, segments.get(i));
+        }
+        // Todos con If-Range del ETag del primer byte
+        assertEquals(Collections.nCopies(SEGMENTS, "\"v1\""), server.ifRanges);
+        assertEquals(Long.valueOf(FILE_SIZE), progress.get(progress.size() - 1));
+        assertNoLeftovers();
+    }
+
+    @Test
+    public void serverIgnoringRangeIsDownloadedInOneGo() throws IOException {
+        server.ignoreRange = true;
+
+        downloader.download(server.url(), null, target, null, new AtomicBoolean());
+
+        assertArrayEquals(server.content, Files.readAllBytes(target.toPath()));
+        // La respuesta 200 al primer byte ya es el archivo entero: ni una petición más
+        assertEquals(1, server.requests.get());
+        assertNoLeftovers();
+    }
+
+    @Test
+    public void emptyFileAnswering416IsDownloadedWithoutRange() throws IOException {
+        server.content = new byte[0];
+
+        downloader.download(server.url(), null, target, null, new AtomicBoolean());
+
+        assertTrue(target.exists());
+        assertEquals(0, target.length());
+        assertEquals(2, server.requests.get());
+        assertEquals(416, server.statuses.get(0).intValue());
+        assertEquals(200, server.statuses.get(1).intValue());
+        assertNoLeftovers();
+    }
+
+    @Test
+    public void resumesFromCheckpointAfterAbortedRun() throws IOException {
+        abortHalfway();
+        assertTrue(RangeDownloader.partFileFor(target).exists());
+        assertTrue(RangeDownloader.stateFileFor(target).exists());
+        assertFalse(target.exists());
+
+        server.reset();
+        new RangeDownloader(new OkHttpClient(), executor, SEGMENTS)
+                .download(server.url(), null, target, null, new AtomicBoolean());
+
+        assertArrayEquals(server.content, Files.readAllBytes(target.toPath()));
+        // Sin volver a preguntar el tamaño, y cada tramo desde su mitad
+        long size = FILE_SIZE / SEGMENTS;
+        List<Long> starts = new ArrayList<>();
+        for (String range : server.ranges) {
+            starts.add(rangeStart(range));
+        }
+        Collections.sort(starts);
+        List<Long> expected = new ArrayList<>();
+        for (int i = 0; i < SEGMENTS; i++) {
+            long end = i == SEGMENTS - 1 ? FILE_SIZE - 1 : (i + 1) * size - 1;
+            expected.add(i * size + (end - i * size + 1) / 2);
+        }
+        assertEquals(expected, starts);
+        assertTrue(server.bytesServed.get() < FILE_SIZE);
+        assertNoLeftovers();
+    }
+
+    @Test
+    public void changedValidatorRestartsFromScratch() throws IOException {
+        abortHalfway();
+
+        // Otro archivo en la misma URL: If-Range "v1" ya no coincide y el servidor manda 200
+        server.reset();
+        server.content = randomBytes(FILE_SIZE, 2);
+        server.etag = "\"v2\"";
+        downloader.download(server.url(), null, target, null, new AtomicBoolean());
+
+        assertArrayEquals(server.content, Files.readAllBytes(target.toPath()));
+        assertTrue(server.statuses.contains(200));
+        assertTrue(server.ranges.contains("bytes=0-0"));
+        assertTrue(server.ifRanges.contains("\"v2\""));
+        assertNoLeftovers();
+    }
+
+    @Test
+    public void stalledSegmentIsRetriedFromWhereItStopped() throws IOException {
+        server.stallNextSegment.set(true);
+        RangeDownloader impatient = new RangeDownloader(new OkHttpClient(), executor, SEGMENTS, 500);
+
+        impatient.download(server.url(), null, target, null, new AtomicBoolean());
+
+        assertArrayEquals(server.content, Files.readAllBytes(target.toPath()));
+        // El primer byte, los tramos y un reintento del parado (el timeout no acaba con la descarga)
+        assertEquals(SEGMENTS + 2, server.ranges.size());
+        String stalled = server.stalledRange;
+        long start = rangeStart(stalled);
+        long end = Long.parseLong(stalled.substring(stalled.indexOf('-') + 1));
+        assertTrue(server.ranges.contains("bytes=" + (start + (end - start + 1) / 2) + "-" + end));
+        assertNoLeftovers();
+    }
+
+    @Test
+    public void withoutValidatorDownloadsInOneGo() throws IOException {
+        server.etag = null;
+
+        downloader.download(server.url(), null, target, null, new AtomicBoolean());
+
+        assertArrayEquals(server.content, Files.readAllBytes(target.toPath()));
+        // Sin If-Range no hay tramos: nada que juntar de dos versiones distintas
+        assertEquals(Collections.singletonList("bytes=0-0"), server.ranges);
+        assertEquals(2, server.requests.get());
+        assertEquals(200, server.statuses.get(1).intValue());
+        assertNoLeftovers();
+    }
+
+    @Test
+    public void totalFromContentRange() {
+        assertEquals(12345, RangeDownloader.totalFromContentRange("bytes 0-0/12345"));
+        assertEquals(-1, RangeDownloader.totalFromContentRange("bytes 0-0/*"));
+        assertEquals(-1, RangeDownloader.totalFromContentRange("basura"));
+        assertEquals(-1, RangeDownloader.totalFromContentRange(null));
+    }
+
+    // =============================================
+    // AYUDAS
+    // =============================================
+
+    /**
+     * Primera pasada cortada: cada tramo recibe la mitad y se cancela la descarga
+     */
+    private void abortHalfway() {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        server.abortHalfway = cancelled;
+        try {
+            downloader.download(server.url(), null, target, null, cancelled);
+            fail("La descarga cortada debería lanzar IOException");
+        } catch (IOException expected) {
+            // El avance queda guardado
+        }
+        server.abortHalfway = null;
+    }
+
+    private void assertNoLeftovers() {
+        assertFalse(RangeDownloader.partFileFor(target).exists());
+        assertFalse(RangeDownloader.stateFileFor(target).exists());
+    }
+
+    private static long rangeStart(String range) {
+        return Long.parseLong(range.substring("bytes=".length(), range.indexOf('-')));
+    }
+
+    private static byte[] randomBytes(int size, long seed) {
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * Servidor de un archivo en 127.0.0.1 con Range, If-Range y ETag
+     */
+    private static final class FakeRangeServer {
+
+        final HttpServer http;
+        volatile byte[] content;
+        // null: sin ETag (ni Last-Modified)
+        volatile String etag;
+        volatile boolean ignoreRange;
+        // Si no es null: cada tramo se corta a la mitad tras activar este aviso de cancelar
+        volatile AtomicBoolean abortHalfway;
+        // El siguiente tramo manda la mitad y se queda parado (sin cerrar la conexión)
+        final AtomicBoolean stallNextSegment = new AtomicBoolean();
+        volatile String stalledRange;
+
+        final List<String> ranges = Collections.synchronizedList(new ArrayList<>());
+        final List<String> ifRanges = Collections.synchronizedList(new ArrayList<>());
+        final List<Integer> statuses = Collections.synchronizedList(new ArrayList<>());
+        final AtomicLong bytesServed = new AtomicLong();
+        final AtomicLong requests = new AtomicLong();
+
+        FakeRangeServer(byte[] content, String etag) throws IOException {
+            this.content = content;
+            this.etag = etag;
+            http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+            http.createContext("/audio.mp3", this::serve);
+            // Los tramos llegan a la vez
+            http.setExecutor(Executors.newCachedThreadPool());
+            http.start();
+        }
+
+        String url() {
+            return "http://127.0.0.1:" + http.getAddress().getPort() + "/audio.mp3";
+        }
+
+        void reset() {
+            ranges.clear();
+            ifRanges.clear();
+            statuses.clear();
+            bytesServed.set(0);
+            requests.set(0);
+        }
+
+        void stop() {
+            http.stop(0);
+        }
+
+        private void serve(HttpExchange exchange) throws IOException {
+            requests.incrementAndGet();
+            byte[] body = content;
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+            if (range != null) ranges.add(range);
+            if (ifRange != null) ifRanges.add(ifRange);
+            String etag = this.etag;
+            if (etag != null) exchange.getResponseHeaders().set("ETag", etag);
+            exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+
+            if (range == null || ignoreRange || (ifRange != null && !ifRange.equals(etag))) {
+                send(exchange, 200, body, 0, body.length, false);
+                return;
+            }
+            long first = rangeStart(range);
+            if (first >= body.length) {
+                exchange.getResponseHeaders().set("Content-Range", "bytes */" + body.length);
+                send(exchange, 416, body, 0, 0, false);
+                return;
+            }
+            long last = Math.min(body.length - 1, Long.parseLong(range.substring(range.indexOf('-') + 1)));
+            exchange.getResponseHeaders().set("Content-Range",
+                    "bytes " + first + "-" + last + "/" + body.length);
+            // El primer byte (para saber el tamaño) nunca se corta
+            boolean segment = !range.equals("bytes=0-0");
+            boolean abort = segment && abortHalfway != null;
+            if (segment && !abort && stallNextSegment.compareAndSet(true, false)) {
+                stalledRange = range;
+                abort = true;
+            }
+            send(exchange, 206, body, (int) first, (int) (last - first + 1), abort);
+        }
+
+        private void send(HttpExchange exchange, int code, byte[] body, int offset, int length,
+                          boolean abort) throws IOException {
+            statuses.add(code);
+            // Al cortar, sin Content-Length (chunked): la respuesta acaba antes de lo que pidió el tramo
+            exchange.sendResponseHeaders(code, abort ? 0 : length == 0 ? -1 : length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                if (!abort) {
+                    out.write(body, offset, length);
+                    bytesServed.addAndGet(length);
+                    return;
+                }
+                out.write(body, offset, length / 2);
+                out.flush();
+                bytesServed.addAndGet(length / 2);
+                AtomicBoolean cancel = abortHalfway;
+                if (cancel != null) cancel.set(true);
+                // Lo justo para que la descarga vea la cancelación (o venza su timeout) antes del corte
+                Thread.sleep(1500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                // Cortada a propósito
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.buscandoadios.espana.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * UploadJournalTest - Lo que queda en disco es lo que ve el siguiente proceso
+ *
+ * "Matar el proceso" = olvidar la instancia y abrir otra sobre el mismo archivo.
+ */
+public class UploadJournalTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void entriesSurviveProcessRestart() throws IOException {
+        File file = journalFile();
+        UploadJournal journal = new UploadJournal(file);
+        UploadJournal.Entry first = entry(journal.nextId(), "a.jpg");
+        journal.put(first);
+        UploadJournal.Entry second = entry(journal.nextId(), "bé ñ.pdf");
+        second.sessionUrl = "https://ejemplo.com/session/7";
+        second.attempts = 3;
+        journal.put(second);
+
+        List<UploadJournal.Entry> restored = new UploadJournal(file).entries();
+
+        assertEquals(2, restored.size());
+        assertSameEntry(first, restored.get(0));
+        assertSameEntry(second, restored.get(1));
+    }
+
+    @Test
+    public void updatesAndRemovalsArePersisted() throws IOException {
+        File file = journalFile();
+        UploadJournal journal = new UploadJournal(file);
+        UploadJournal.Entry kept = entry(journal.nextId(), "a.jpg");
+        UploadJournal.Entry removed = entry(journal.nextId(), "b.jpg");
+        journal.put(kept);
+        journal.put(removed);
+
+        kept.sessionUrl = "https://ejemplo.com/session/1";
+        kept.attempts = 1;
+        journal.put(kept);
+        journal.remove(removed.id);
+
+        List<UploadJournal.Entry> restored = new UploadJournal(file).entries();
+        assertEquals(1, restored.size());
+        assertSameEntry(kept, restored.get(0));
+    }
+
+    @Test
+    public void idsKeepGrowingAcrossRestarts() throws IOException {
+        File file = journalFile();
+        UploadJournal journal = new UploadJournal(file);
+        long id = journal.nextId();
+        journal.put(entry(id, "a.jpg"));
+        journal.remove(id);
+
+        assertTrue(new UploadJournal(file).nextId() > id);
+    }
+
+    @Test
+    public void leftoverTempFileFromInterruptedSaveIsIgnored() throws IOException {
+        File file = journalFile();
+        UploadJournal journal = new UploadJournal(file);
+        UploadJournal.Entry entry = entry(journal.nextId(), "a.jpg");
+        journal.put(entry);
+        // Muerto a mitad de save(): el temporal se queda a medias, el bueno sigue intacto
+        Files.write(new File(file.getPath() + ".tmp").toPath(), new byte[]{0, 0, 0, 1, 9});
+
+        List<UploadJournal.Entry> restored = new UploadJournal(file).entries();
+        assertEquals(1, restored.size());
+        assertSameEntry(entry, restored.get(0));
+    }
+
+    @Test
+    public void corruptJournalStartsEmpty() throws IOException {
+        File file = journalFile();
+        UploadJournal journal = new UploadJournal(file);
+        journal.put(entry(journal.nextId(), "a.jpg"));
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        Files.write(file.toPath(), Arrays.copyOf(bytes, bytes.length / 2));
+
+        UploadJournal reloaded = new UploadJournal(file);
+        assertTrue(reloaded.entries().isEmpty());
+        // Y se puede seguir usando
+        reloaded.put(entry(reloaded.nextId(), "b.jpg"));
+        assertEquals(1, new UploadJournal(file).entries().size());
+    }
+
+    @Test
+    public void missingFileMeansNothingPending() {
+        File file = journalFile();
+        assertTrue(new UploadJournal(file).entries().isEmpty());
+        assertFalse(file.exists());
+    }
+
+    // =============================================
+    // AYUDAS
+    // =============================================
+
+    private File journalFile() {
+        return new File(temp.getRoot(), "uploads/journal.bin");
+    }
+
+    private static UploadJournal.Entry entry(long id, String fileName) {
+        return new UploadJournal.Entry(id, "https://ejemplo.com/api/upload.php",
+                "/data/uploads/" + id, fileName, "image/jpeg", "perfil");
+    }
+
+    private static void assertSameEntry(UploadJournal.Entry expected, UploadJournal.Entry actual) {
+        assertEquals(expected.id, actual.id);
+        assertEquals(expected.endpoint, actual.endpoint);
+        assertEquals(expected.filePath, actual.filePath);
+        assertEquals(expected.fileName, actual.fileName);
+        assertEquals(expected.mimeType, actual.mimeType);
+        assertEquals(expected.tag, actual.tag);
+        assertEquals(expected.sessionUrl, actual.sessionUrl);
+        assertEquals(expected.attempts, actual.attempts);
+    }
+}
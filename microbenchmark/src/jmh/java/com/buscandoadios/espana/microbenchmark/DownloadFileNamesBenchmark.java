@@ -0,0 +1,50 @@
+package com.buscandoadios.espana.microbenchmark;
+
+import com.buscandoadios.espana.core.DownloadFileNames;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Nombre de archivo y tipo MIME de las descargas (DownloadHelper).
+ * Una operación = procesar todo el corpus correspondiente.
+ */
+@State(Scope.Thread)
+public class DownloadFileNamesBenchmark {
+
+    private final String[] downloadUrls = UrlCorpus.DOWNLOADS.clone();
+    private final String[] fileNames = UrlCorpus.FILE_NAMES.clone();
+
+    @Benchmark
+    public void fromUrl(Blackhole bh) {
+        for (String url : downloadUrls) {
+            bh.consume(DownloadFileNames.fromUrl(url));
+        }
+    }
+
+    @Benchmark
+    public void sanitize(Blackhole bh) {
+        for (String name : fileNames) {
+            bh.consume(DownloadFileNames.sanitize(name));
+        }
+    }
+
+    /**
+     * Referencia: la versión anterior compilaba la expresión regular en cada llamada
+     */
+    @Benchmark
+    public void sanitizeRegexPerCall(Blackhole bh) {
+        for (String name : fileNames) {
+            bh.consume(name.replaceAll("[^a-zA-Z0-9._-]", "_"));
+        }
+    }
+
+    @Benchmark
+    public void mimeTypeFor(Blackhole bh) {
+        for (String name : fileNames) {
+            bh.consume(DownloadFileNames.mimeTypeFor(name));
+        }
+    }
+}
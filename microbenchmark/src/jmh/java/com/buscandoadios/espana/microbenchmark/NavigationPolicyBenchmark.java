@@ -0,0 +1,59 @@
+package com.buscandoadios.espana.microbenchmark;
+
+import com.buscandoadios.espana.core.NavigationAction;
+import com.buscandoadios.espana.core.NavigationPolicy;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Decisión de navegación (shouldOverrideUrlLoading) sobre todo el corpus de enlaces.
+ * Una operación = clasificar las URLs de UrlCorpus.NAVIGATION (o LONG_NAVIGATION).
+ * Los métodos *ContainsChain miden la cadena de contains() que había antes de UrlRouter.
+ */
+@State(Scope.Thread)
+public class NavigationPolicyBenchmark {
+
+    private final String[] urls = UrlCorpus.NAVIGATION.clone();
+    private final String[] longUrls = UrlCorpus.LONG_NAVIGATION.clone();
+
+    @Benchmark
+    public void classify(Blackhole bh) {
+        for (String url : urls) {
+            bh.consume(NavigationPolicy.classify(url));
+        }
+    }
+
+    @Benchmark
+    public void classifyLongUrls(Blackhole bh) {
+        for (String url : longUrls) {
+            bh.consume(NavigationPolicy.classify(url));
+        }
+    }
+
+    @Benchmark
+    public void classifyContainsChain(Blackhole bh) {
+        for (String url : urls) {
+            bh.consume(containsChain(url));
+        }
+    }
+
+    @Benchmark
+    public void classifyLongUrlsContainsChain(Blackhole bh) {
+        for (String url : longUrls) {
+            bh.consume(containsChain(url));
+        }
+    }
+
+    private static NavigationAction containsChain(String url) {
+        if (!url.contains(NavigationPolicy.SITE_DOMAIN)) {
+            if (url.startsWith("tel:")) return NavigationAction.DIAL;
+            if (url.startsWith("mailto:")) return NavigationAction.SEND_EMAIL;
+            if (url.contains("whatsapp.com") || url.contains("wa.me")) return NavigationAction.OPEN_WHATSAPP;
+            if (url.startsWith("http://") || url.startsWith("https://")) return NavigationAction.OPEN_EXTERNAL;
+        }
+        return NavigationAction.LOAD_IN_WEBVIEW;
+    }
+}
@@ -0,0 +1,71 @@
+package com.buscandoadios.espana.microbenchmark;
+
+/**
+ * UrlCorpus - URLs reales o realistas de la app para los benchmarks
+ */
+final class UrlCorpus {
+
+    private UrlCorpus() {
+    }
+
+    // Enlaces que se pulsan dentro del WebView (shouldOverrideUrlLoading)
+    static final String[] NAVIGATION = {
+            "https://buscandoadios-espana.com/",
+            "https://buscandoadios-espana.com/eventos/",
+            "https://buscandoadios-espana.com/predicas/2024/05/el-camino-de-emaus/",
+            "https://buscandoadios-espana.com/oracion/?utm_source=whatsapp&utm_medium=share&utm_campaign=semana-santa",
+            "https://www.buscandoadios-espana.com/contacto/#formulario",
+            "https://buscandoadios-espana.com/api/download.php?file=%2Fuploads%2Fboletin-mayo.pdf",
+            "https://buscandoadios-espana.com/wp-content/uploads/2024/03/retiro-jovenes-madrid-2024-programa-completo.pdf",
+            "tel:+34912345678",
+            "mailto:info@buscandoadios-espana.com?subject=Consulta",
+            "mailto:pastor@example.org",
+            "https://wa.me/34600123456?text=Hola%2C%20quiero%20informaci%C3%B3n",
+            "https://api.whatsapp.com/send?phone=34600123456&text=Hola",
+            "https://chat.whatsapp.com/AbCdEfGhIjKlMnOpQrStUv",
+            "https://www.youtube.com/watch?v=dQw4w9WgXcQ&list=PLbuscandoadios&index=4",
+            "https://www.facebook.com/sharer/sharer.php?u=https%3A%2F%2Fbuscandoadios-espana.com%2Feventos%2F",
+            "https://twitter.com/intent/tweet?url=https://buscandoadios-espana.com/predicas/&text=Buscando%20a%20Dios",
+            "https://maps.google.com/?q=Calle+Mayor+1,+Madrid",
+            "https://www.instagram.com/buscandoadios.espana/",
+            "http://example.com/pagina-antigua",
+            "intent://scan/#Intent;scheme=zxing;package=com.google.zxing.client.android;end",
+            "about:blank",
+            "javascript:void(0)",
+    };
+
+    // Enlaces con query larga (fbclid, utm, estado de formularios): unos 2 KB cada uno
+    private static final String LONG_QUERY = "&fbclid=IwAR" + "3xYz_AbCdEfGhIjKlMnOpQrStUvWxYz0123456789-".repeat(40)
+            + "&state=" + "%7B%22paso%22%3A2%2C%22origen%22%3A%22buscandoadios-espana.com%22%7D".repeat(6);
+
+    static final String[] LONG_NAVIGATION = {
+            "https://buscandoadios-espana.com/eventos/?utm_source=facebook" + LONG_QUERY,
+            "https://www.facebook.com/sharer/sharer.php?u=https%3A%2F%2Fbuscandoadios-espana.com%2F" + LONG_QUERY,
+            "https://api.whatsapp.com/send?phone=34600123456&text=Hola" + LONG_QUERY,
+            "https://www.youtube.com/watch?v=dQw4w9WgXcQ" + LONG_QUERY,
+    };
+
+    // URLs de descarga (DownloadListener)
+    static final String[] DOWNLOADS = {
+            "https://buscandoadios-espana.com/api/download.php?file=%2Fuploads%2Fboletin-mayo.pdf",
+            "https://buscandoadios-espana.com/api/download.php?filename=Estudio%20b%C3%ADblico%20-%20Juan%203.docx",
+            "https://buscandoadios-espana.com/api/download.php?name=cancionero+2024.pdf&v=3",
+            "https://buscandoadios-espana.com/wp-content/uploads/2024/03/retiro-jovenes-madrid-2024-programa-completo.pdf",
+            "https://buscandoadios-espana.com/media/predicas/2024-05-12%20Domingo%20ma%C3%B1ana.mp3",
+            "https://buscandoadios-espana.com/media/videos/bautismos-junio.mp4?token=abc123def456&expires=1718000000",
+            "https://buscandoadios-espana.com/descargas/",
+            "https://buscandoadios-espana.com",
+    };
+
+    // Nombres tal y como llegan antes de limpiarlos
+    static final String[] FILE_NAMES = {
+            "boletin-mayo.pdf",
+            "Estudio bíblico - Juan 3.docx",
+            "cancionero 2024.pdf",
+            "2024-05-12 Domingo mañana.mp3",
+            "retiro-jovenes-madrid-2024-programa-completo.pdf",
+            "Foto (1).JPG",
+            "presentación_final_v2 (copia).pptx",
+            "archivo_1718000000.bin",
+    };
+}